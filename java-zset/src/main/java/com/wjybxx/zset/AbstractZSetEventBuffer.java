@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 缓冲事件并批量投递的监听器的公共实现，各类型zset的EventBuffer只负责把回调转换为自己的事件对象。
+ * 修改zset时只把事件追加到列表中，事件数量达到batchSize或者调用{@link #flush()}时，才将整批事件交给consumer，
+ * 下游对每一批事件只处理一次（例如：一次网络同步、一次批量写入），不会拖慢每一次修改。
+ * <p>
+ * 交给consumer的列表不会再被修改，consumer可以直接将其交给其它线程处理。
+ * 通常在每一帧(tick)结束时调用{@link #flush()}，避免事件长时间积压。
+ *
+ * @param <E> the type of event
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@NotThreadSafe
+public abstract class AbstractZSetEventBuffer<E> {
+
+    private final Consumer<List<E>> consumer;
+    private final int batchSize;
+    private final boolean rankRequired;
+    private List<E> events;
+
+    /**
+     * @param consumer     事件的消费者
+     * @param batchSize    事件数量达到该值时自动投递，区间删除事件只计为一个事件
+     * @param rankRequired 是否需要事件中的排名
+     */
+    protected AbstractZSetEventBuffer(@Nonnull Consumer<List<E>> consumer, int batchSize, boolean rankRequired) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize: " + batchSize + " (expected: > 0)");
+        }
+        this.consumer = consumer;
+        this.batchSize = batchSize;
+        this.rankRequired = rankRequired;
+        this.events = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * @return 是否需要事件中的排名
+     */
+    public boolean isRankRequired() {
+        return rankRequired;
+    }
+
+    /**
+     * 将缓冲的事件交给consumer
+     */
+    public void flush() {
+        if (events.isEmpty()) {
+            return;
+        }
+        final List<E> batch = events;
+        events = new ArrayList<>(batchSize);
+        consumer.accept(batch);
+    }
+
+    /**
+     * @return 缓冲的事件数量
+     */
+    public int size() {
+        return events.size();
+    }
+
+    /**
+     * 缓冲一个事件，事件数量达到batchSize时自动投递
+     *
+     * @param event 事件
+     */
+    protected final void add(E event) {
+        events.add(event);
+        if (events.size() >= batchSize) {
+            flush();
+        }
+    }
+}
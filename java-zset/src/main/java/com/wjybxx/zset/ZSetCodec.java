@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset;
+
+import javax.annotation.Nonnull;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * 成员或分数的二进制编解码器，用于快照和日志。
+ * 编码结果必须是自描述长度的（例如：变长的长度 + 内容），解码时只读取编码时写入的字节。
+ * <p>
+ * 编解码器可能在后台线程中使用（例如：重写日志），必须是无状态的。
+ * 常用的实现见{@link ZSetCodecs}。
+ *
+ * @param <T> 编码的数据类型
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public interface ZSetCodec<T> {
+
+    /**
+     * @param value 要编码的值
+     * @return 编码后的最大字节数，调用者保证buffer至少有这么多剩余空间
+     */
+    int maxEncodedSize(@Nonnull T value);
+
+    /**
+     * 将value编码到buffer中
+     *
+     * @param value  要编码的值
+     * @param buffer 剩余空间不小于{@link #maxEncodedSize(Object)}
+     */
+    void encode(@Nonnull T value, ByteBuffer buffer);
+
+    /**
+     * 从buffer的当前位置解码一个值
+     *
+     * @param buffer 数据
+     * @return value
+     * @throws BufferUnderflowException 如果数据不完整
+     */
+    @Nonnull
+    T decode(ByteBuffer buffer);
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset;
+
+import javax.annotation.Nonnull;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 存放一些常用的{@link ZSetCodec}实现，以及变长整数的编解码。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class ZSetCodecs {
+
+    /**
+     * 变长编码的long的最大字节数
+     */
+    public static final int MAX_VAR_LONG_SIZE = 10;
+    /**
+     * 变长编码的int的最大字节数
+     */
+    public static final int MAX_VAR_INT_SIZE = 5;
+
+    private ZSetCodecs() {
+
+    }
+
+    /**
+     * @return Long类型的编解码器，zigzag变长编码，绝对值较小的数字占用的字节较少
+     */
+    public static ZSetCodec<Long> longCodec() {
+        return LongCodec.INSTANCE;
+    }
+
+    /**
+     * @return String类型的编解码器，变长的长度 + UTF-8编码的内容
+     */
+    public static ZSetCodec<String> stringCodec() {
+        return StringCodec.INSTANCE;
+    }
+
+    /**
+     * 写入zigzag变长编码的long
+     */
+    public static void writeVarLong(ByteBuffer buffer, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    /**
+     * 读取zigzag变长编码的long
+     *
+     * @throws BufferUnderflowException 如果数据不完整
+     */
+    public static long readVarLong(ByteBuffer buffer) {
+        long zigzag = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /**
+     * 写入变长编码的非负int
+     */
+    public static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * 读取变长编码的非负int
+     *
+     * @throws BufferUnderflowException 如果数据不完整
+     */
+    public static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static class LongCodec implements ZSetCodec<Long> {
+
+        private static final LongCodec INSTANCE = new LongCodec();
+
+        private LongCodec() {
+
+        }
+
+        @Override
+        public int maxEncodedSize(@Nonnull Long value) {
+            return MAX_VAR_LONG_SIZE;
+        }
+
+        @Override
+        public void encode(@Nonnull Long value, ByteBuffer buffer) {
+            writeVarLong(buffer, value);
+        }
+
+        @Nonnull
+        @Override
+        public Long decode(ByteBuffer buffer) {
+            return readVarLong(buffer);
+        }
+    }
+
+    private static class StringCodec implements ZSetCodec<String> {
+
+        private static final StringCodec INSTANCE = new StringCodec();
+
+        private StringCodec() {
+
+        }
+
+        @Override
+        public int maxEncodedSize(@Nonnull String value) {
+            // UTF-8编码时，一个char最多占用3个字节
+            return MAX_VAR_INT_SIZE + value.length() * 3;
+        }
+
+        @Override
+        public void encode(@Nonnull String value, ByteBuffer buffer) {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(buffer, bytes.length);
+            buffer.put(bytes);
+        }
+
+        @Nonnull
+        @Override
+        public String decode(ByteBuffer buffer) {
+            final int length = readVarInt(buffer);
+            if (buffer.remaining() < length) {
+                throw new BufferUnderflowException();
+            }
+            final String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                final byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+    }
+}
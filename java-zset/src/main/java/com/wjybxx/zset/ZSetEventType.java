@@ -0,0 +1,45 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset;
+
+/**
+ * zset的修改事件类型，用于批量投递的事件
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public enum ZSetEventType {
+
+    /**
+     * 新增成员
+     */
+    ADDED,
+    /**
+     * 删除单个成员(包括zrem、zremByRank、迭代器删除和有界模式下的淘汰)
+     */
+    REMOVED,
+    /**
+     * 成员的分数发生了改变
+     */
+    SCORE_CHANGED,
+    /**
+     * 删除了一个排名区间的成员(zremrangeByScore、zremrangeByRank、zlimit、zrevlimit)，整个区间只有一个事件
+     */
+    RANGE_REMOVED
+
+}
@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * zset快照的读取器，由各个zset的{@code loadSnapshot}方法使用，格式见{@link ZSetSnapshotWriter}。
+ * <p>
+ * 使用方式：通过{@link #count()}获取成员数量，对于每一个成员，调用{@link #nextMember()}获取定位到该成员的缓冲区并解码；
+ * 所有成员读完以后调用{@link #finish()}。每个数据块在读取时都会校验CRC32，读取器不会关闭channel。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public final class ZSetSnapshotReader {
+
+    /**
+     * 数据块的最大长度，超过则认为快照已损坏
+     */
+    private static final int MAX_BLOCK_SIZE = 256 * 1024 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final int count;
+    private final CRC32 crc32 = new CRC32();
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(ZSetSnapshotWriter.BLOCK_HEADER_SIZE);
+    /**
+     * 读模式，当前数据块的数据
+     */
+    private ByteBuffer buffer = ByteBuffer.allocate(ZSetSnapshotWriter.BLOCK_SIZE);
+    private int blockRemainingCount = 0;
+    private int readCount = 0;
+
+    /**
+     * 创建读取器，并读取文件头
+     *
+     * @param channel 输入
+     * @param type    期望的zset类型
+     * @throws IOException 如果读取失败，或者文件头不合法
+     */
+    public ZSetSnapshotReader(ReadableByteChannel channel, byte type) throws IOException {
+        this.channel = channel;
+
+        final ByteBuffer header = ByteBuffer.allocate(ZSetSnapshotWriter.HEADER_SIZE);
+        readFully(header);
+        if (header.getInt() != ZSetSnapshotWriter.MAGIC) {
+            throw new IOException("invalid snapshot magic");
+        }
+        final byte version = header.get();
+        if (version != ZSetSnapshotWriter.VERSION) {
+            throw new IOException("unsupported snapshot version " + version);
+        }
+        final byte actualType = header.get();
+        if (actualType != type) {
+            throw new IOException("expected zset type " + type + ", but " + actualType);
+        }
+        count = header.getInt();
+        if (count < 0) {
+            throw new IOException("corrupted snapshot, count " + count);
+        }
+
+        buffer.limit(0);
+    }
+
+    /**
+     * @return 快照中的成员数量
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return 定位到下一个成员的缓冲区
+     * @throws IOException 如果读取失败，或者数据块已损坏
+     */
+    public ByteBuffer nextMember() throws IOException {
+        if (readCount >= count) {
+            throw new IOException("corrupted snapshot, too many members");
+        }
+        while (blockRemainingCount == 0) {
+            if (buffer.hasRemaining()) {
+                throw new IOException("corrupted snapshot, unexpected bytes at the end of block");
+            }
+            if (!readBlock()) {
+                throw new IOException("corrupted snapshot, expected " + count + " members, but " + readCount);
+            }
+        }
+        blockRemainingCount--;
+        readCount++;
+        return buffer;
+    }
+
+    /**
+     * 读取结束块，校验成员数量
+     *
+     * @throws IOException 如果读取失败，或者快照已损坏
+     */
+    public void finish() throws IOException {
+        if (readCount != count || blockRemainingCount != 0 || buffer.hasRemaining() || readBlock()) {
+            throw new IOException("corrupted snapshot, expected " + count + " members");
+        }
+    }
+
+    /**
+     * 读取下一个数据块
+     *
+     * @return 如果是结束块，则返回false
+     */
+    private boolean readBlock() throws IOException {
+        blockHeader.clear();
+        readFully(blockHeader);
+        final int payloadLength = blockHeader.getInt();
+        final int memberCount = blockHeader.getInt();
+        final int checksum = blockHeader.getInt();
+        if (payloadLength == 0 && memberCount == 0) {
+            return false;
+        }
+        if (payloadLength < 0 || payloadLength > MAX_BLOCK_SIZE || memberCount <= 0) {
+            throw new IOException("corrupted snapshot, block length " + payloadLength + ", member count " + memberCount);
+        }
+
+        if (buffer.capacity() < payloadLength) {
+            buffer = ByteBuffer.allocate(payloadLength);
+        }
+        buffer.clear();
+        buffer.limit(payloadLength);
+        readFully(buffer);
+
+        crc32.reset();
+        crc32.update(buffer.array(), buffer.arrayOffset(), payloadLength);
+        if ((int) crc32.getValue() != checksum) {
+            throw new IOException("corrupted snapshot, checksum mismatch");
+        }
+        blockRemainingCount = memberCount;
+        return true;
+    }
+
+    /**
+     * 读满buffer，然后切换为读模式
+     */
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("unexpected end of snapshot");
+            }
+        }
+        buffer.flip();
+    }
+}
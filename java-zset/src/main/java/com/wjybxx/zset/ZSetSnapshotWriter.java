@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * zset快照的写入器，由各个zset的{@code writeSnapshot}方法使用。
+ * <p>
+ * <b>快照格式</b>
+ * 1. 文件头：4字节魔数、1字节版本号、1字节zset类型、4字节成员数量。
+ * 2. 若干个数据块：4字节数据长度、4字节成员数量、4字节数据的CRC32、数据。成员按照排名顺序编码在数据块中，编码方式由各个zset决定。
+ * 3. 结束块：数据长度、成员数量和CRC32都为0。
+ * <p>
+ * 使用方式：对于每一个成员，先调用{@link #beginMember(int)}获取足够空间的缓冲区，写入成员以后调用{@link #endMember()}；
+ * 所有成员写完以后调用{@link #finish()}。写入器不会关闭channel。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public final class ZSetSnapshotWriter {
+
+    /**
+     * "ZSNP"
+     */
+    static final int MAGIC = 0x5A534E50;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 10;
+    static final int BLOCK_HEADER_SIZE = 12;
+    /**
+     * 数据块的数据达到该大小时写出
+     */
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    public static final byte TYPE_GENERIC = 1;
+    public static final byte TYPE_OBJECT2LONG = 2;
+    public static final byte TYPE_LONG2OBJECT = 3;
+
+    private final WritableByteChannel channel;
+    private final int count;
+    private final CRC32 crc32 = new CRC32();
+    /**
+     * 写模式，前{@link #BLOCK_HEADER_SIZE}个字节是数据块的头部，写出时再填充
+     */
+    private ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE + BLOCK_SIZE);
+    private int blockMemberCount = 0;
+    private int writtenCount = 0;
+
+    /**
+     * 创建写入器，并写入文件头
+     *
+     * @param channel 输出
+     * @param type    zset的类型
+     * @param count   成员数量
+     * @throws IOException 如果写入失败
+     */
+    public ZSetSnapshotWriter(WritableByteChannel channel, byte type, int count) throws IOException {
+        this.channel = channel;
+        this.count = count;
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.put(VERSION);
+        header.put(type);
+        header.putInt(count);
+        header.flip();
+        writeFully(header);
+
+        buffer.position(BLOCK_HEADER_SIZE);
+    }
+
+    /**
+     * 开始写入一个成员
+     *
+     * @param maxSize 成员编码后的最大字节数
+     * @return 剩余空间不小于maxSize的缓冲区
+     * @throws IOException 如果写入失败
+     */
+    public ByteBuffer beginMember(int maxSize) throws IOException {
+        if (buffer.remaining() < maxSize) {
+            if (blockMemberCount > 0) {
+                flushBlock();
+            }
+            if (buffer.remaining() < maxSize) {
+                // 单个成员比数据块还大
+                buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE + maxSize);
+                buffer.position(BLOCK_HEADER_SIZE);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * 一个成员写入完毕
+     *
+     * @throws IOException 如果写入失败
+     */
+    public void endMember() throws IOException {
+        blockMemberCount++;
+        writtenCount++;
+        if (buffer.position() - BLOCK_HEADER_SIZE >= BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * 写出最后一个数据块和结束块
+     *
+     * @throws IOException 如果写入失败，或者写入的成员数量与文件头中的不一致
+     */
+    public void finish() throws IOException {
+        if (writtenCount != count) {
+            throw new IOException("expected " + count + " members, but " + writtenCount);
+        }
+        if (blockMemberCount > 0) {
+            flushBlock();
+        }
+        // 结束块
+        flushBlock();
+    }
+
+    private void flushBlock() throws IOException {
+        final int payloadLength = buffer.position() - BLOCK_HEADER_SIZE;
+        crc32.reset();
+        crc32.update(buffer.array(), buffer.arrayOffset() + BLOCK_HEADER_SIZE, payloadLength);
+        buffer.putInt(0, payloadLength);
+        buffer.putInt(4, blockMemberCount);
+        buffer.putInt(8, payloadLength == 0 ? 0 : (int) crc32.getValue());
+        buffer.flip();
+        writeFully(buffer);
+
+        if (buffer.capacity() > BLOCK_HEADER_SIZE + BLOCK_SIZE) {
+            buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE + BLOCK_SIZE);
+        } else {
+            buffer.clear();
+        }
+        buffer.position(BLOCK_HEADER_SIZE);
+        blockMemberCount = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -108,6 +108,20 @@ public class ZSetUtils {
         return level;
     }
 
+    /**
+     * 检查double类型的score - 与redis保持一致，score不可以是NaN。
+     *
+     * @param score 要检查的分数
+     * @return score
+     * @throws IllegalArgumentException 如果score是NaN
+     */
+    public static double checkScore(double score) {
+        if (Double.isNaN(score)) {
+            throw new IllegalArgumentException("score is not a number (NaN)");
+        }
+        return score;
+    }
+
     /**
      * 释放update引用的对象
      */
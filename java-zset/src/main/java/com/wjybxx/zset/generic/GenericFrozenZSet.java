@@ -0,0 +1,446 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.generic;
+
+import com.wjybxx.zset.ZSetUtils;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 冻结后的只读zset，由{@link GenericZSet#freeze()}创建，适合赛季结束后只读不写的排行榜。
+ * <p>
+ * <b>存储结构</b>
+ * 1. 分数和成员按照排名顺序存储在两个连续的数组中，通过排名查询只需要一次数组访问。
+ * 由于score是对象，比较分数时仍需要访问score对象，如果score是long类型，请使用{@link com.wjybxx.zset.object2long.Object2LongFrozenZSet}。
+ * 2. 成员到排名的字典({@link Object2IntOpenHashMap})，zrank和zscore都是O(1)的，不需要遍历跳表。
+ * 3. 分数索引：每{@link #BLOCK_SIZE}个分数取块首的分数，按照Eytzinger(BFS)顺序存储在数组中。
+ * 二分查找时，前几层的分数集中在数组的头部，总是在缓存中；下一层的两个候选位置是相邻的，只需要一次缓存未命中。
+ * 在索引中定位到块以后，再在块内二分查找，块内的分数同样是连续的。
+ * <p>
+ * 与跳表相比，不存在任何节点对象，没有指针追踪，内存占用也远小于跳表(每个成员约为两个数组元素加一个字典项)。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. 冻结时会复制所有成员，之后对原zset的修改不会影响冻结的zset。
+ * 2. 成员字典使用键的equals和hashCode，与{@link GenericZSet}的字典一致。
+ * 3. 该对象是不可变的，可以被多个线程同时访问。
+ *
+ * @param <K> the type of key
+ * @param <S> the type of score
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@ThreadSafe
+public class GenericFrozenZSet<K, S> implements Iterable<Member<K, S>> {
+
+    /**
+     * 分数索引的块大小
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    private final ScoreHandler<S> scoreHandler;
+    /**
+     * 按照排名顺序存储的分数
+     */
+    private final S[] scores;
+    /**
+     * 按照排名顺序存储的成员
+     */
+    private final K[] members;
+    /**
+     * member -> rank
+     */
+    private final Object2IntMap<K> dict;
+    /**
+     * 块首分数的Eytzinger布局，下标从1开始，节点k的子节点为2k和2k+1
+     */
+    private final S[] index;
+    /**
+     * index中每个位置对应的块下标
+     */
+    private final int[] indexBlocks;
+    /**
+     * 块的数量
+     */
+    private final int blockCount;
+
+    GenericFrozenZSet(ScoreHandler<S> scoreHandler, S[] scores, K[] members) {
+        this.scoreHandler = scoreHandler;
+        this.scores = scores;
+        this.members = members;
+
+        this.dict = new Object2IntOpenHashMap<>(members.length);
+        this.dict.defaultReturnValue(-1);
+        for (int rank = 0; rank < members.length; rank++) {
+            dict.put(members[rank], rank);
+        }
+
+        this.blockCount = (scores.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        @SuppressWarnings("unchecked") final S[] index = (S[]) new Object[blockCount + 1];
+        this.index = index;
+        this.indexBlocks = new int[blockCount + 1];
+        buildIndex(0, 1);
+    }
+
+    /**
+     * 按照中序遍历的顺序填充Eytzinger数组，中序遍历的顺序就是块的顺序
+     *
+     * @param block 下一个要填充的块
+     * @param k     当前节点
+     * @return 下一个要填充的块
+     */
+    private int buildIndex(int block, int k) {
+        if (k <= blockCount) {
+            block = buildIndex(block, 2 * k);
+            index[k] = scores[block * BLOCK_SIZE];
+            indexBlocks[k] = block;
+            block = buildIndex(block + 1, 2 * k + 1);
+        }
+        return block;
+    }
+
+    // region 通过成员查询
+
+    /**
+     * @return zset中的成员数量
+     */
+    public int zcard() {
+        return scores.length;
+    }
+
+    /**
+     * 返回有序集中成员member的排名。
+     * <p>
+     * <b>Time complexity:</b> O(1)
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrank(@Nonnull K member) {
+        return dict.getInt(member);
+    }
+
+    /**
+     * 返回有序集中成员member的逆序排名。
+     * <p>
+     * <b>Time complexity:</b> O(1)
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrevrank(@Nonnull K member) {
+        final int rank = dict.getInt(member);
+        return rank < 0 ? -1 : scores.length - 1 - rank;
+    }
+
+    /**
+     * 返回有序集中，成员member的score值。
+     *
+     * @param member 成员id
+     * @return score，如果成员不存在，则返回null
+     */
+    @Nullable
+    public S zscore(@Nonnull K member) {
+        final int rank = dict.getInt(member);
+        return rank < 0 ? null : scores[rank];
+    }
+
+    /**
+     * 返回有序集中，成员member的score值，如果成员不存在，则返回默认值。
+     *
+     * @param member       成员id
+     * @param defaultValue 成员不存在时返回的默认值
+     * @return score
+     */
+    public S zscoreOrDefault(@Nonnull K member, S defaultValue) {
+        final int rank = dict.getInt(member);
+        return rank < 0 ? defaultValue : scores[rank];
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(@Nonnull K member) {
+        return dict.containsKey(member);
+    }
+    // endregion
+
+    // region 通过排名查询
+
+    /**
+     * 获取指定排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return member，如果不存在，则返回null
+     */
+    @Nullable
+    public Member<K, S> zmemberByRank(int rank) {
+        if (rank < 0 || rank >= scores.length) {
+            return null;
+        }
+        return new Member<>(members[rank], scores[rank]);
+    }
+
+    /**
+     * 获取指定逆序排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return member，如果不存在，则返回null
+     */
+    @Nullable
+    public Member<K, S> zrevmemberByRank(int rank) {
+        if (rank < 0 || rank >= scores.length) {
+            return null;
+        }
+        return zmemberByRank(scores.length - 1 - rank);
+    }
+
+    /**
+     * 查询指定排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Member<K, S>> zrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, false);
+    }
+
+    /**
+     * 查询指定逆序排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Member<K, S>> zrevrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, true);
+    }
+
+    private List<Member<K, S>> zrangeByRankInternal(int start, int end, boolean reverse) {
+        final int length = scores.length;
+        start = ZSetUtils.convertStartRank(start, length);
+        end = ZSetUtils.convertEndRank(end, length);
+        if (ZSetUtils.isRankRangeEmpty(start, end, length)) {
+            return new ArrayList<>();
+        }
+        if (reverse) {
+            return rangeOf(length - 1 - end, length - start, true);
+        } else {
+            return rangeOf(start, end + 1, false);
+        }
+    }
+    // endregion
+
+    // region 通过分数查询
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员）。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Member<K, S>> zrangeByScore(S start, S end) {
+        return zrangeByScore(new ScoreRangeSpec<>(start, end));
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Member<K, S>> zrangeByScore(ScoreRangeSpec<S> spec) {
+        final ZScoreRangeSpec<S> range = newRangeSpec(spec);
+        return rangeOf(firstRankGteMin(range), firstRankGtMax(range), false);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员），返回的成员按照逆序排列。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Member<K, S>> zrevrangeByScore(S start, S end) {
+        return zrevrangeByScore(new ScoreRangeSpec<>(start, end));
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员，返回的成员按照逆序排列。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Member<K, S>> zrevrangeByScore(ScoreRangeSpec<S> spec) {
+        final ZScoreRangeSpec<S> range = newRangeSpec(spec);
+        return rangeOf(firstRankGteMin(range), firstRankGtMax(range), true);
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间(包括score值等于start或end)的成员
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     *
+     * @param start 起始分数
+     * @param end   截止分数
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(S start, S end) {
+        return zcount(new ScoreRangeSpec<>(start, end));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     *
+     * @param spec 范围描述信息
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(ScoreRangeSpec<S> spec) {
+        final ZScoreRangeSpec<S> range = newRangeSpec(spec);
+        return Math.max(0, firstRankGtMax(range) - firstRankGteMin(range));
+    }
+    // endregion
+
+    // region 迭代
+
+    @Nonnull
+    @Override
+    public Iterator<Member<K, S>> iterator() {
+        return new FrozenZSetItr();
+    }
+    // endregion
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    /**
+     * 按照分数处理器的顺序，使min一定排在max之前，与{@link GenericZSet}一致
+     */
+    private ZScoreRangeSpec<S> newRangeSpec(ScoreRangeSpec<S> spec) {
+        if (scoreHandler.compare(spec.getStart(), spec.getEnd()) <= 0) {
+            return new ZScoreRangeSpec<S>(spec.getStart(), spec.isStartEx(), spec.getEnd(), spec.isEndEx());
+        } else {
+            return new ZScoreRangeSpec<S>(spec.getEnd(), spec.isEndEx(), spec.getStart(), spec.isStartEx());
+        }
+    }
+
+    /**
+     * @return 第一个大于等于下限的排名，不存在则返回zcard
+     */
+    private int firstRankGteMin(ZScoreRangeSpec<S> range) {
+        return search(range.min, range.minex);
+    }
+
+    /**
+     * @return 第一个大于上限的排名，不存在则返回zcard
+     */
+    private int firstRankGtMax(ZScoreRangeSpec<S> range) {
+        return search(range.max, !range.maxex);
+    }
+
+    /**
+     * 查找第一个不排在key之前的排名
+     *
+     * @param key         要查找的分数
+     * @param equalBefore 与key相等的分数是否视为排在key之前
+     * @return 排名，不存在则返回zcard
+     */
+    private int search(S key, boolean equalBefore) {
+        // 在索引中查找第一个不排在key之前的块首，走到叶子以后，右移(末尾的1的数量 + 1)位回到最后一次向左走的节点
+        int k = 1;
+        while (k <= blockCount) {
+            k = 2 * k + (before(index[k], key, equalBefore) ? 1 : 0);
+        }
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+        final int block = k == 0 ? blockCount : indexBlocks[k];
+        if (block == 0) {
+            return 0;
+        }
+
+        // 前一个块的块首排在key之前，结果位于(前一个块的块首, 当前块的块首]
+        int low = (block - 1) * BLOCK_SIZE + 1;
+        int high = Math.min(block * BLOCK_SIZE, scores.length);
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (before(scores[mid], key, equalBefore)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private boolean before(S score, S key, boolean equalBefore) {
+        final int r = scoreHandler.compare(score, key);
+        return r < 0 || (r == 0 && equalBefore);
+    }
+
+    /**
+     * @param start   起始排名 inclusive
+     * @param end     截止排名 exclusive
+     * @param reverse 是否逆序返回
+     */
+    private List<Member<K, S>> rangeOf(int start, int end, boolean reverse) {
+        if (start >= end) {
+            return new ArrayList<>();
+        }
+        final List<Member<K, S>> result = new ArrayList<>(end - start);
+        if (reverse) {
+            for (int rank = end - 1; rank >= start; rank--) {
+                result.add(new Member<>(members[rank], scores[rank]));
+            }
+        } else {
+            for (int rank = start; rank < end; rank++) {
+                result.add(new Member<>(members[rank], scores[rank]));
+            }
+        }
+        return result;
+    }
+
+    private class FrozenZSetItr implements Iterator<Member<K, S>> {
+
+        private int rank;
+
+        @Override
+        public boolean hasNext() {
+            return rank < scores.length;
+        }
+
+        @Override
+        public Member<K, S> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Member<K, S> member = new Member<>(members[rank], scores[rank]);
+            rank++;
+            return member;
+        }
+    }
+}
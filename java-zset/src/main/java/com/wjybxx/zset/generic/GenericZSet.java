@@ -17,11 +17,18 @@
 package com.wjybxx.zset.generic;
 
 
+import com.wjybxx.zset.ZSetCodec;
+import com.wjybxx.zset.ZSetSnapshotReader;
+import com.wjybxx.zset.ZSetSnapshotWriter;
 import com.wjybxx.zset.ZSetUtils;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
 import static com.wjybxx.zset.ZSetUtils.ZSKIPLIST_MAXLEVEL;
@@ -62,11 +69,22 @@ import static com.wjybxx.zset.ZSetUtils.ZSKIPLIST_MAXLEVEL;
 public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
 
     /**
-     * member -> score
+     * member -> node
+     * 直接映射到跳表节点，查询分数、删除成员、计算排名时不再需要通过(score, member)重新查找节点。
+     * 批量加载时会替换为预先分配好容量的字典，避免逐个插入导致的多次扩容。
      */
-    private final Map<K, S> dict = new HashMap<>(ZSetUtils.INIT_CAPACITY);
+    private Map<K, SkipListNode<K, S>> dict = new HashMap<>(ZSetUtils.INIT_CAPACITY);
     private final SkipList<K, S> zsl;
 
+    /**
+     * 修改监听器，为null表示没有注册
+     */
+    private ZSetListener<K, S> listener;
+    /**
+     * 监听器是否需要排名，注册时缓存，避免每次修改都调用监听器的方法
+     */
+    private boolean rankRequired;
+
     private GenericZSet(Comparator<K> objComparator, ScoreHandler<S> scoreHandler) {
         this.zsl = new SkipList<>(objComparator, scoreHandler);
     }
@@ -117,6 +135,17 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
     public static <K, S> GenericZSet<K, S> newGenericKeyZSet(Comparator<K> keyComparator, ScoreHandler<S> scoreHandler) {
         return new GenericZSet<>(keyComparator, scoreHandler);
     }
+
+    /**
+     * 注册修改监听器，一个zset只能有一个监听器，如果需要多个监听器，请自行组合。
+     *
+     * @param listener 监听器，null表示取消注册
+     */
+    public void setListener(@Nullable ZSetListener<K, S> listener) {
+        this.listener = listener;
+        this.rankRequired = listener != null && listener.isRankRequired();
+    }
+
     // -------------------------------------------------------- insert -----------------------------------------------
 
     /**
@@ -127,13 +156,12 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
      * @param member 成员id
      */
     public void zadd(final S score, @Nonnull final K member) {
-        final S oldScore = dict.put(member, score);
-        if (oldScore != null) {
-            // Q: 为何不再判断分数相等？
-            // A: 这里假定分数相等的情况很少出现，可减少大量无用的判断
-            zsl.zslDelete(oldScore, member);
+        final SkipListNode<K, S> oldNode = dict.get(member);
+        if (oldNode != null) {
+            updateScore(oldNode, score);
+        } else {
+            insert(score, member);
         }
-        zsl.zslInsert(score, member);
     }
 
     /**
@@ -144,12 +172,11 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
      * @return 添加成功则返回true，否则返回false。
      */
     public boolean zaddnx(final S score, @Nonnull final K member) {
-        final S oldScore = dict.putIfAbsent(member, score);
-        if (oldScore == null) {
-            zsl.zslInsert(score, member);
-            return true;
+        if (dict.containsKey(member)) {
+            return false;
         }
-        return false;
+        insert(score, member);
+        return true;
     }
 
     /**
@@ -161,9 +188,14 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
      * @return 更新后的值
      */
     public S zincrby(S increment, @Nonnull K member) {
-        final S oldScore = dict.get(member);
-        final S score = oldScore == null ? increment : zsl.sum(oldScore, increment);
-        zadd(score, member);
+        final SkipListNode<K, S> oldNode = dict.get(member);
+        if (oldNode == null) {
+            insert(increment, member);
+            return increment;
+        }
+
+        final S score = zsl.sum(oldNode.score, increment);
+        updateScore(oldNode, score);
         return score;
     }
 
@@ -176,16 +208,94 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
      * @return 更新后的值，如果更新失败，则返回null。
      */
     public S zincrbyxx(S increment, @Nonnull K member) {
-        final S oldScore = dict.get(member);
-        if (oldScore == null) {
+        final SkipListNode<K, S> oldNode = dict.get(member);
+        if (oldNode == null) {
             return null;
         }
 
-        final S score = zsl.sum(oldScore, increment);
-        zadd(score, member);
+        final S score = zsl.sum(oldNode.score, increment);
+        updateScore(oldNode, score);
         return score;
     }
 
+    /**
+     * 批量添加成员，等价于按顺序对每一个成员调用{@link #zadd(Object, Object)}，同一个成员出现多次时，以最后一次的分数为准。
+     * <p>
+     * 如果zset当前为空（例如：服务器启动时加载排行榜），则不会逐个插入，而是：
+     * 1. 一次性创建好容量足够的字典，并为每个成员创建节点。
+     * 2. 如果成员不是有序的，则先对节点排序（数据量大时并行排序），如果已经是有序的，则跳过排序。
+     * 3. 从前往后一次性链接所有节点，并直接计算出每一层的跨度，不需要从header开始查找插入位置。
+     * 因此排序以后的构建是O(N)的，按照排序规则有序的数据（比如通过{@link #zrangeByRank(int, int)}导出的数据）加载最快。
+     * <p>
+     * 如果zset不为空，或者注册了监听器，则逐个调用{@link #zadd(Object, Object)}。
+     *
+     * @param scores  成员的分数
+     * @param members 成员id，与scores一一对应
+     */
+    public void zaddAll(@Nonnull S[] scores, @Nonnull K[] members) {
+        if (scores.length != members.length) {
+            throw new IllegalArgumentException("scores.length: " + scores.length + ", members.length: " + members.length);
+        }
+
+        if (zsl.length() > 0 || listener != null) {
+            for (int index = 0; index < members.length; index++) {
+                zadd(scores[index], members[index]);
+            }
+            return;
+        }
+
+        final Map<K, SkipListNode<K, S>> dict = new HashMap<>(Math.max(ZSetUtils.INIT_CAPACITY, (int) (members.length / 0.75f) + 1));
+        @SuppressWarnings("unchecked") final SkipListNode<K, S>[] nodes = (SkipListNode<K, S>[]) new SkipListNode<?, ?>[members.length];
+        int nodeCount = 0;
+        for (int index = 0; index < members.length; index++) {
+            final SkipListNode<K, S> oldNode = dict.get(members[index]);
+            if (oldNode != null) {
+                // 重复的成员，节点尚未链接到跳表中，直接修改分数即可
+                oldNode.score = scores[index];
+            } else {
+                final SkipListNode<K, S> newNode = SkipList.zslCreateNode(ZSetUtils.zslRandomLevel(), scores[index], members[index]);
+                dict.put(members[index], newNode);
+                nodes[nodeCount++] = newNode;
+            }
+        }
+        this.dict = dict;
+        zsl.zslBuild(nodes, nodeCount);
+    }
+
+    /**
+     * 插入一个新成员，调用者需要保证成员不在zset中
+     */
+    private void insert(S score, K member) {
+        final SkipListNode<K, S> newNode = zsl.zslInsert(score, member);
+        dict.put(member, newNode);
+        if (listener != null) {
+            listener.onAdded(member, score, rankOf(newNode));
+        }
+    }
+
+    /**
+     * 更新已存在的成员的分数
+     */
+    private void updateScore(SkipListNode<K, S> node, S score) {
+        if (listener == null) {
+            zsl.zslUpdateScore(node, score);
+            return;
+        }
+        final S oldScore = node.score;
+        final int oldRank = rankOf(node);
+        zsl.zslUpdateScore(node, score);
+        if (!zsl.scoreEquals(oldScore, score)) {
+            listener.onScoreChanged(node.obj, oldScore, score, oldRank, rankOf(node));
+        }
+    }
+
+    /**
+     * @return 监听器需要排名时返回节点的排名(0-based)，否则返回-1
+     */
+    private int rankOf(SkipListNode<K, S> node) {
+        return rankRequired ? zsl.zslGetRank(node) - 1 : -1;
+    }
+
     // -------------------------------------------------------- remove -----------------------------------------------
 
     /**
@@ -195,13 +305,18 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
      * @return 如果成员存在，则返回对应的score，否则返回null。
      */
     public S zrem(@Nonnull K member) {
-        final S oldScore = dict.remove(member);
-        if (oldScore != null) {
-            zsl.zslDelete(oldScore, member);
-            return oldScore;
-        } else {
+        final SkipListNode<K, S> oldNode = dict.remove(member);
+        if (oldNode == null) {
             return null;
         }
+        if (listener == null) {
+            zsl.zslDelete(oldNode);
+            return oldNode.score;
+        }
+        final int rank = rankOf(oldNode);
+        zsl.zslDelete(oldNode);
+        listener.onRemoved(member, oldNode.score, rank);
+        return oldNode.score;
     }
 
     // region 通过score删除成员
@@ -234,7 +349,17 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
      * @return 删除的成员数目
      */
     private int zremrangeByScore(@Nonnull ZScoreRangeSpec<S> spec) {
-        return zsl.zslDeleteRangeByScore(spec, dict);
+        if (listener == null) {
+            return zsl.zslDeleteRangeByScore(spec, dict);
+        }
+        final List<Member<K, S>> removed = zrangeByScoreWithOptions(spec, 0, -1, false);
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        final int startRank = rankRequired ? zrank(removed.get(0).getMember()) : -1;
+        final int count = zsl.zslDeleteRangeByScore(spec, dict);
+        listener.onRangeRemoved(removed, startRank);
+        return count;
     }
     // endregion
 
@@ -275,6 +400,9 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
         }
         final SkipListNode<K, S> delete = zsl.zslDeleteByRank(rank + 1, dict);
         assert null != delete;
+        if (listener != null) {
+            listener.onRemoved(delete.obj, delete.score, rank);
+        }
         return new Member<>(delete.obj, delete.score);
     }
 
@@ -300,7 +428,22 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
             return 0;
         }
 
-        return zsl.zslDeleteRangeByRank(start + 1, end + 1, dict);
+        return zremrangeByRankInternal(start, end);
+    }
+
+    /**
+     * @param start 起始排名(0-based) inclusive，调用者需要保证区间有效
+     * @param end   截止排名(0-based) inclusive
+     * @return 删除的成员数目
+     */
+    private int zremrangeByRankInternal(int start, int end) {
+        if (listener == null) {
+            return zsl.zslDeleteRangeByRank(start + 1, end + 1, dict);
+        }
+        final List<Member<K, S>> removed = zrangeByRank(start, end);
+        final int count = zsl.zslDeleteRangeByRank(start + 1, end + 1, dict);
+        listener.onRangeRemoved(removed, start);
+        return count;
     }
 
     // endregion
@@ -318,7 +461,7 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
         if (zsl.length() <= count) {
             return 0;
         }
-        return zsl.zslDeleteRangeByRank(count + 1, zsl.length(), dict);
+        return zremrangeByRankInternal(count, zsl.length() - 1);
     }
 
     /**
@@ -332,7 +475,7 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
         if (zsl.length() <= count) {
             return 0;
         }
-        return zsl.zslDeleteRangeByRank(1, zsl.length() - count, dict);
+        return zremrangeByRankInternal(0, zsl.length() - count - 1);
     }
     // endregion
 
@@ -346,7 +489,8 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
      * @return score
      */
     public S zscore(@Nonnull K member) {
-        return dict.get(member);
+        final SkipListNode<K, S> node = dict.get(member);
+        return node == null ? null : node.score;
     }
 
     /**
@@ -360,12 +504,12 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
      * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
      */
     public int zrank(@Nonnull K member) {
-        final S score = dict.get(member);
-        if (score == null) {
+        final SkipListNode<K, S> node = dict.get(member);
+        if (node == null) {
             return -1;
         }
         // 0 < zslGetRank <= size
-        return zsl.zslGetRank(score, member) - 1;
+        return zsl.zslGetRank(node) - 1;
     }
 
     /**
@@ -379,12 +523,12 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
      * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
      */
     public int zrevrank(@Nonnull K member) {
-        final S score = dict.get(member);
-        if (score == null) {
+        final SkipListNode<K, S> node = dict.get(member);
+        if (node == null) {
             return -1;
         }
         // 0 < zslGetRank <= size
-        return zsl.length() - zsl.zslGetRank(score, member);
+        return zsl.length() - zsl.zslGetRank(node);
     }
 
     /**
@@ -507,7 +651,7 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
             if (reverse) {
                 listNode = listNode.backward;
             } else {
-                listNode = listNode.levelInfo[0].forward;
+                listNode = listNode.forward0;
             }
         }
 
@@ -532,7 +676,7 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
             if (reverse) {
                 listNode = listNode.backward;
             } else {
-                listNode = listNode.levelInfo[0].forward;
+                listNode = listNode.forward0;
             }
         }
         return result;
@@ -590,13 +734,13 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
         if (reverse) {
             listNode = start > 0 ? zsl.zslGetElementByRank(zslLength - start) : zsl.tail;
         } else {
-            listNode = start > 0 ? zsl.zslGetElementByRank(start + 1) : zsl.header.levelInfo[0].forward;
+            listNode = start > 0 ? zsl.zslGetElementByRank(start + 1) : zsl.header.forward0;
         }
 
         final List<Member<K, S>> result = new ArrayList<>(rangeLen);
         while (rangeLen-- > 0 && listNode != null) {
             result.add(new Member<>(listNode.obj, listNode.score));
-            listNode = reverse ? listNode.backward : listNode.levelInfo[0].forward;
+            listNode = reverse ? listNode.backward : listNode.forward0;
         }
         return result;
     }
@@ -634,12 +778,12 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
     private int zcountInternal(final ZScoreRangeSpec<S> range) {
         final SkipListNode<K, S> firstNodeInRange = zsl.zslFirstInRange(range);
         if (firstNodeInRange != null) {
-            final int firstNodeRank = zsl.zslGetRank(firstNodeInRange.score, firstNodeInRange.obj);
+            final int firstNodeRank = zsl.zslGetRank(firstNodeInRange);
 
             /* 如果firstNodeInRange不为null，那么lastNode也一定不为null(最坏的情况下firstNode就是lastNode) */
             final SkipListNode<K, S> lastNodeInRange = zsl.zslLastInRange(range);
             assert lastNodeInRange != null;
-            final int lastNodeRank = zsl.zslGetRank(lastNodeInRange.score, lastNodeInRange.obj);
+            final int lastNodeRank = zsl.zslGetRank(lastNodeInRange);
 
             return lastNodeRank - firstNodeRank + 1;
         }
@@ -693,6 +837,76 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
     }
     // endregion
 
+    // region 快照
+
+    /**
+     * 将所有成员按照排名顺序写入快照，格式见{@link ZSetSnapshotWriter}。
+     *
+     * @param channel    输出，方法返回时不会关闭
+     * @param keyCodec   成员的编解码器
+     * @param scoreCodec 分数的编解码器
+     * @throws IOException 如果写入失败
+     */
+    public void writeSnapshot(@Nonnull WritableByteChannel channel, @Nonnull ZSetCodec<K> keyCodec,
+                              @Nonnull ZSetCodec<S> scoreCodec) throws IOException {
+        final ZSetSnapshotWriter writer = new ZSetSnapshotWriter(channel, ZSetSnapshotWriter.TYPE_GENERIC, zsl.length());
+        for (SkipListNode<K, S> node = zsl.header.directForward(); node != null; node = node.directForward()) {
+            final ByteBuffer buffer = writer.beginMember(scoreCodec.maxEncodedSize(node.score) + keyCodec.maxEncodedSize(node.obj));
+            scoreCodec.encode(node.score, buffer);
+            keyCodec.encode(node.obj, buffer);
+            writer.endMember();
+        }
+        writer.finish();
+    }
+
+    /**
+     * 从快照中加载成员，等价于{@link #zaddAll(Object[], Object[])}。
+     * 快照中的成员是按照排名有序的，如果zset为空，且排序规则与写快照时相同，则跳过排序，O(N)构建跳表，加载速度主要取决于读取速度。
+     *
+     * @param channel    输入，方法返回时不会关闭
+     * @param keyCodec   成员的编解码器
+     * @param scoreCodec 分数的编解码器
+     * @throws IOException 如果读取失败，或者快照已损坏
+     */
+    public void loadSnapshot(@Nonnull ReadableByteChannel channel, @Nonnull ZSetCodec<K> keyCodec,
+                             @Nonnull ZSetCodec<S> scoreCodec) throws IOException {
+        final ZSetSnapshotReader reader = new ZSetSnapshotReader(channel, ZSetSnapshotWriter.TYPE_GENERIC);
+        @SuppressWarnings("unchecked") final S[] scores = (S[]) new Object[reader.count()];
+        @SuppressWarnings("unchecked") final K[] members = (K[]) new Object[reader.count()];
+        for (int index = 0; index < members.length; index++) {
+            final ByteBuffer buffer = reader.nextMember();
+            scores[index] = scoreCodec.decode(buffer);
+            members[index] = keyCodec.decode(buffer);
+        }
+        reader.finish();
+        zaddAll(scores, members);
+    }
+    // endregion
+
+    // region 冻结
+
+    /**
+     * 创建一个包含当前所有成员的只读zset，适合不再修改、只需要查询的排行榜(例如：赛季结束后的排行榜)。
+     * 冻结后的zset与当前zset相互独立，但score对象是共享的，因此score必须是不可变的。
+     * <p>
+     * <b>Time complexity:</b> O(N)
+     *
+     * @return 冻结后的zset，见{@link GenericFrozenZSet}
+     */
+    public GenericFrozenZSet<K, S> freeze() {
+        final int length = zsl.length();
+        @SuppressWarnings("unchecked") final S[] scores = (S[]) new Object[length];
+        @SuppressWarnings("unchecked") final K[] members = (K[]) new Object[length];
+        int rank = 0;
+        for (SkipListNode<K, S> node = zsl.header.directForward(); node != null; node = node.directForward()) {
+            scores[rank] = node.score;
+            members[rank] = node.obj;
+            rank++;
+        }
+        return new GenericFrozenZSet<>(zsl.scoreHandler, scores, members);
+    }
+    // endregion
+
     /**
      * @return zset中当前的成员信息，用于debug
      */
@@ -714,7 +928,7 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
          * 更新节点使用的缓存 - 避免频繁的申请空间
          */
         @SuppressWarnings("unchecked")
-        private final SkipListNode<K, S>[] updateCache = new SkipListNode[ZSKIPLIST_MAXLEVEL];
+        private final SkipListNode<K, S>[] updateCache = (SkipListNode<K, S>[]) new SkipListNode<?, ?>[ZSKIPLIST_MAXLEVEL];
         private final int[] rankCache = new int[ZSKIPLIST_MAXLEVEL];
 
         private final Comparator<K> objComparator;
@@ -777,9 +991,23 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
          * @param obj   obj 分数对应的成员id
          */
         @SuppressWarnings("UnusedReturnValue")
-        SkipListNode zslInsert(S score, K obj) {
+        SkipListNode<K, S> zslInsert(S score, K obj) {
+            final SkipListNode<K, S> newNode = zslCreateNode(ZSetUtils.zslRandomLevel(), score, obj);
+            zslInsertNode(newNode);
+            return newNode;
+        }
+
+        /**
+         * 将一个未链接的节点插入到跳表中，节点的层级由节点自身决定。
+         * 新插入的节点和{@link #zslUpdateScore(SkipListNode, Object)}中重新插入的节点都通过该方法链接。
+         *
+         * @param newNode 要插入的节点
+         */
+        private void zslInsertNode(final SkipListNode<K, S> newNode) {
+            final S score = newNode.score;
+            final K obj = newNode.obj;
             // 新节点的level
-            final int level = ZSetUtils.zslRandomLevel();
+            final int level = newNode.level();
 
             // update - 需要更新后继节点的Node，新节点各层的前驱节点
             // 1. 分数小的节点
@@ -804,11 +1032,11 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
                         rank[i] = rank[i + 1];
                     }
 
-                    while (preNode.levelInfo[i].forward != null &&
-                            compareScoreAndObj(preNode.levelInfo[i].forward, score, obj) < 0) {
+                    while (preNode.forward(i) != null &&
+                            compareScoreAndObj(preNode.forward(i), score, obj) < 0) {
                         // preNode的后继节点仍然小于要插入的节点，需要继续前进，同时累计排名
-                        rank[i] += preNode.levelInfo[i].span;
-                        preNode = preNode.levelInfo[i].forward;
+                        rank[i] += preNode.span(i);
+                        preNode = preNode.forward(i);
                     }
 
                     // 这是要插入节点的第i层的前驱节点，此时触发降级
@@ -820,7 +1048,7 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
                     for (int i = this.level; i < level; i++) {
                         rank[i] = 0;
                         update[i] = this.header;
-                        update[i].levelInfo[i].span = this.length;
+                        update[i].setSpan(i, this.length);
                     }
                     this.level = level;
                 }
@@ -831,47 +1059,117 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
                  * scores, and the re-insertion of score and redis object should never
                  * happen since the caller of zslInsert() should test in the hash table
                  * if the element is already inside or not.*/
-                final SkipListNode<K, S> newNode = zslCreateNode(level, score, obj);
 
                 /* 这些节点的高度小于等于新插入的节点的高度，需要更新指针。此外它们当前的跨度被拆分了两部分，需要重新计算。 */
                 for (int i = 0; i < level; i++) {
                     /* 链接新插入的节点 */
-                    newNode.levelInfo[i].forward = update[i].levelInfo[i].forward;
-                    update[i].levelInfo[i].forward = newNode;
+                    newNode.setForward(i, update[i].forward(i));
+                    update[i].setForward(i, newNode);
 
                     /* rank[0] 是新节点的直接前驱的排名，每一层都有一个前驱，可以通过彼此的排名计算跨度 */
                     /* 计算新插入节点的跨度 和 重新计算所有前驱节点的跨度，之前的跨度被拆分为了两份*/
                     /* update span covered by update[i] as newNode is inserted here */
-                    newNode.levelInfo[i].span = update[i].levelInfo[i].span - (rank[0] - rank[i]);
-                    update[i].levelInfo[i].span = (rank[0] - rank[i]) + 1;
+                    newNode.setSpan(i, update[i].span(i) - (rank[0] - rank[i]));
+                    update[i].setSpan(i, (rank[0] - rank[i]) + 1);
                 }
 
                 /*  这些节点高于新插入的节点，它们的跨度可以简单的+1 */
                 /* increment span for untouched levels */
                 for (int i = level; i < this.level; i++) {
-                    update[i].levelInfo[i].span++;
+                    update[i].setSpan(i, update[i].span(i) + 1);
                 }
 
                 /* 设置新节点的前向节点(回溯节点) - 这里不包含header，一定注意 */
                 newNode.backward = (update[0] == this.header) ? null : update[0];
 
                 /* 设置新节点的后向节点 */
-                if (newNode.levelInfo[0].forward != null) {
-                    newNode.levelInfo[0].forward.backward = newNode;
+                if (newNode.forward0 != null) {
+                    newNode.forward0.backward = newNode;
                 } else {
                     this.tail = newNode;
                 }
 
                 this.length++;
                 this.modCount++;
-
-                return newNode;
             } finally {
                 ZSetUtils.releaseUpdate(update, realLength);
                 ZSetUtils.releaseRank(rank, realLength);
             }
         }
 
+        /**
+         * 使用一组尚未链接的节点构建跳表，调用者需要保证跳表为空，且节点之间没有重复的成员。
+         * 节点的层级由节点自身决定。
+         * <p>
+         * 节点排好序以后，从前往后链接每一个节点：每一层只需要记录该层最后一个节点及其排名，
+         * 新节点链接到其各层的最后一个节点之后，跨度就是两者的排名之差，因此不需要任何查找。
+         *
+         * @param nodes     节点数组
+         * @param nodeCount 有效的节点数量
+         */
+        void zslBuild(final SkipListNode<K, S>[] nodes, final int nodeCount) {
+            assert this.length == 0;
+
+            if (!isSorted(nodes, nodeCount)) {
+                // 数组较小时parallelSort内部会使用单线程排序
+                Arrays.parallelSort(nodes, 0, nodeCount, (a, b) -> compareScoreAndObj(a, b.score, b.obj));
+            }
+
+            // last - 每一层当前的最后一个节点
+            // lastRank - 每一层当前的最后一个节点的排名
+            final SkipListNode<K, S>[] last = updateCache;
+            final int[] lastRank = rankCache;
+            int level = 1;
+            try {
+                for (int i = 0; i < ZSKIPLIST_MAXLEVEL; i++) {
+                    last[i] = header;
+                }
+
+                SkipListNode<K, S> preNode = null;
+                for (int index = 0; index < nodeCount; index++) {
+                    final SkipListNode<K, S> node = nodes[index];
+                    final int rank = index + 1;
+                    final int nodeLevel = node.level();
+                    for (int i = 0; i < nodeLevel; i++) {
+                        last[i].setForward(i, node);
+                        last[i].setSpan(i, rank - lastRank[i]);
+                        last[i] = node;
+                        lastRank[i] = rank;
+                    }
+                    level = Math.max(level, nodeLevel);
+
+                    node.backward = preNode;
+                    preNode = node;
+                }
+
+                /* 每一层的最后一个节点指向null，跨度延伸到跳表末尾 */
+                for (int i = 0; i < level; i++) {
+                    last[i].setForward(i, null);
+                    last[i].setSpan(i, nodeCount - lastRank[i]);
+                }
+
+                this.tail = preNode;
+                this.length = nodeCount;
+                this.level = level;
+                this.modCount++;
+            } finally {
+                ZSetUtils.releaseUpdate(last, ZSKIPLIST_MAXLEVEL);
+                ZSetUtils.releaseRank(lastRank, ZSKIPLIST_MAXLEVEL);
+            }
+        }
+
+        /**
+         * @return 如果节点已经按照排序规则有序，则返回true
+         */
+        private boolean isSorted(final SkipListNode<K, S>[] nodes, final int nodeCount) {
+            for (int index = 1; index < nodeCount; index++) {
+                if (compareScoreAndObj(nodes[index - 1], nodes[index].score, nodes[index].obj) > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         /**
          * Delete an element with matching score/object from the skiplist.
          *
@@ -888,10 +1186,10 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
             try {
                 SkipListNode<K, S> preNode = this.header;
                 for (int i = this.level - 1; i >= 0; i--) {
-                    while (preNode.levelInfo[i].forward != null &&
-                            compareScoreAndObj(preNode.levelInfo[i].forward, score, obj) < 0) {
+                    while (preNode.forward(i) != null &&
+                            compareScoreAndObj(preNode.forward(i), score, obj) < 0) {
                         // preNode的后继节点仍然小于要删除的节点，需要继续前进
-                        preNode = preNode.levelInfo[i].forward;
+                        preNode = preNode.forward(i);
                     }
                     // 这是目标节点第i层的可能前驱节点
                     update[i] = preNode;
@@ -900,7 +1198,7 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
                 /* 由于可能多个节点拥有相同的分数，因此必须同时比较score和object */
                 /* We may have multiple elements with the same score, what we need
                  * is to find the element with both the right score and object. */
-                final SkipListNode<K, S> targetNode = preNode.levelInfo[0].forward;
+                final SkipListNode<K, S> targetNode = preNode.forward0;
                 if (targetNode != null && scoreEquals(targetNode.score, score) && objEquals(targetNode.obj, obj)) {
                     zslDeleteNode(targetNode, update);
                     return true;
@@ -919,29 +1217,29 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
          * @param deleteNode 要删除的节点
          * @param update     可能要更新的节点们
          */
-        private void zslDeleteNode(final SkipListNode<K, S> deleteNode, final SkipListNode[] update) {
+        private void zslDeleteNode(final SkipListNode<K, S> deleteNode, final SkipListNode<K, S>[] update) {
             for (int i = 0; i < this.level; i++) {
-                if (update[i].levelInfo[i].forward == deleteNode) {
+                if (update[i].forward(i) == deleteNode) {
                     // 这些节点的高度小于等于要删除的节点，需要合并两个跨度
-                    update[i].levelInfo[i].span += deleteNode.levelInfo[i].span - 1;
-                    update[i].levelInfo[i].forward = deleteNode.levelInfo[i].forward;
+                    update[i].setSpan(i, update[i].span(i) + deleteNode.span(i) - 1);
+                    update[i].setForward(i, deleteNode.forward(i));
                 } else {
                     // 这些节点的高度高于要删除的节点，它们的跨度可以简单的 -1
-                    update[i].levelInfo[i].span--;
+                    update[i].setSpan(i, update[i].span(i) - 1);
                 }
             }
 
-            if (deleteNode.levelInfo[0].forward != null) {
+            if (deleteNode.forward0 != null) {
                 // 要删除的节点有后继节点
-                deleteNode.levelInfo[0].forward.backward = deleteNode.backward;
+                deleteNode.forward0.backward = deleteNode.backward;
             } else {
                 // 要删除的节点是tail节点
                 this.tail = deleteNode.backward;
             }
 
             // 如果删除的节点是最高等级的节点，则检查是否需要降级
-            if (deleteNode.levelInfo.length == this.level) {
-                while (this.level > 1 && this.header.levelInfo[this.level - 1].forward == null) {
+            if (deleteNode.level() == this.level) {
+                while (this.level > 1 && this.header.forward(this.level - 1) == null) {
                     // 如果最高层没有后继节点，则降级
                     this.level--;
                 }
@@ -979,7 +1277,7 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
                 return false;
             }
 
-            final SkipListNode<K, S> firstNode = this.header.levelInfo[0].forward;
+            final SkipListNode<K, S> firstNode = this.header.forward0;
             if (firstNode == null || !zslValueLteMax(firstNode.score, range)) {
                 // 列表有序，按照从score小到大，如果首部节点数据大于最大值，那么一定不在范围内
                 return false;
@@ -1019,16 +1317,16 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
             for (int i = this.level - 1; i >= 0; i--) {
                 /* 前进直到出现后继节点大于等于指定最小值的节点 */
                 /* Go forward while *OUT* of range. */
-                while (lastNodeLtMin.levelInfo[i].forward != null &&
-                        !zslValueGteMin(lastNodeLtMin.levelInfo[i].forward.score, range)) {
+                while (lastNodeLtMin.forward(i) != null &&
+                        !zslValueGteMin(lastNodeLtMin.forward(i).score, range)) {
                     // 如果当前节点的后继节点仍然小于指定范围的最小值，则继续前进
-                    lastNodeLtMin = lastNodeLtMin.levelInfo[i].forward;
+                    lastNodeLtMin = lastNodeLtMin.forward(i);
                 }
             }
 
             /* 这里的上下文表明了，一定存在一个节点的值大于等于指定范围的最小值，因此下一个节点一定不为null */
             /* This is an inner range, so the next node cannot be NULL. */
-            final SkipListNode<K, S> firstNodeGteMin = lastNodeLtMin.levelInfo[0].forward;
+            final SkipListNode<K, S> firstNodeGteMin = lastNodeLtMin.forward0;
             assert firstNodeGteMin != null;
 
             /* 如果该节点的数据大于max，则不存在再范围内的节点 */
@@ -1059,10 +1357,10 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
             SkipListNode<K, S> lastNodeLteMax = this.header;
             for (int i = this.level - 1; i >= 0; i--) {
                 /* Go forward while *IN* range. */
-                while (lastNodeLteMax.levelInfo[i].forward != null &&
-                        zslValueLteMax(lastNodeLteMax.levelInfo[i].forward.score, range)) {
+                while (lastNodeLteMax.forward(i) != null &&
+                        zslValueLteMax(lastNodeLteMax.forward(i).score, range)) {
                     // 如果当前节点的后继节点仍然小于最大值，则继续前进
-                    lastNodeLteMax = lastNodeLteMax.levelInfo[i].forward;
+                    lastNodeLteMax = lastNodeLteMax.forward(i);
                 }
             }
 
@@ -1087,10 +1385,10 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
          * sorted set, in order to remove the elements from the hash table too.
          *
          * @param range 范围描述符
-         * @param dict  对象id到score的映射
+         * @param dict  member -> node的字典
          * @return 删除的节点数量
          */
-        int zslDeleteRangeByScore(ZScoreRangeSpec<S> range, Map<K, S> dict) {
+        int zslDeleteRangeByScore(ZScoreRangeSpec<S> range, Map<K, SkipListNode<K, S>> dict) {
             final SkipListNode<K, S>[] update = updateCache;
             final int realLength = this.level;
             try {
@@ -1098,22 +1396,22 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
 
                 SkipListNode<K, S> lastNodeLtMin = this.header;
                 for (int i = this.level - 1; i >= 0; i--) {
-                    while (lastNodeLtMin.levelInfo[i].forward != null &&
-                            !zslValueGteMin(lastNodeLtMin.levelInfo[i].forward.score, range)) {
-                        lastNodeLtMin = lastNodeLtMin.levelInfo[i].forward;
+                    while (lastNodeLtMin.forward(i) != null &&
+                            !zslValueGteMin(lastNodeLtMin.forward(i).score, range)) {
+                        lastNodeLtMin = lastNodeLtMin.forward(i);
                     }
                     update[i] = lastNodeLtMin;
                 }
 
                 /* 当前节点是小于目标范围最小值的最后一个节点，它的下一个节点可能为null，或大于等于最小值 */
                 /* Current node is the last with score < or <= min. */
-                SkipListNode<K, S> firstNodeGteMin = lastNodeLtMin.levelInfo[0].forward;
+                SkipListNode<K, S> firstNodeGteMin = lastNodeLtMin.forward0;
 
                 /* 删除在范围内的节点(小于等于最大值的节点) */
                 /* Delete nodes while in range. */
                 while (firstNodeGteMin != null
                         && zslValueLteMax(firstNodeGteMin.score, range)) {
-                    final SkipListNode<K, S> next = firstNodeGteMin.levelInfo[0].forward;
+                    final SkipListNode<K, S> next = firstNodeGteMin.forward0;
                     zslDeleteNode(firstNodeGteMin, update);
                     dict.remove(firstNodeGteMin.obj);
                     removed++;
@@ -1134,10 +1432,10 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
          *
          * @param start 起始排名 inclusive
          * @param end   截止排名 inclusive
-         * @param dict  member -> score的字典
+         * @param dict  member -> node的字典
          * @return 删除的成员数量
          */
-        int zslDeleteRangeByRank(int start, int end, Map<K, S> dict) {
+        int zslDeleteRangeByRank(int start, int end, Map<K, SkipListNode<K, S>> dict) {
             final SkipListNode<K, S>[] update = updateCache;
             final int realLength = this.level;
             try {
@@ -1147,21 +1445,21 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
 
                 SkipListNode<K, S> lastNodeLtStart = this.header;
                 for (int i = this.level - 1; i >= 0; i--) {
-                    while (lastNodeLtStart.levelInfo[i].forward != null &&
-                            (traversed + lastNodeLtStart.levelInfo[i].span) < start) {
+                    while (lastNodeLtStart.forward(i) != null &&
+                            (traversed + lastNodeLtStart.span(i)) < start) {
                         // 下一个节点的排名还未到范围内，继续前进
-                        traversed += lastNodeLtStart.levelInfo[i].span;
-                        lastNodeLtStart = lastNodeLtStart.levelInfo[i].forward;
+                        traversed += lastNodeLtStart.span(i);
+                        lastNodeLtStart = lastNodeLtStart.forward(i);
                     }
                     update[i] = lastNodeLtStart;
                 }
 
                 traversed++;
 
-                /* levelInfo[0] 最下面一层就是要删除节点的直接前驱 */
-                SkipListNode<K, S> firstNodeGteStart = lastNodeLtStart.levelInfo[0].forward;
+                /* 第0层就是要删除节点的直接前驱 */
+                SkipListNode<K, S> firstNodeGteStart = lastNodeLtStart.forward0;
                 while (firstNodeGteStart != null && traversed <= end) {
-                    final SkipListNode<K, S> next = firstNodeGteStart.levelInfo[0].forward;
+                    final SkipListNode<K, S> next = firstNodeGteStart.forward0;
                     zslDeleteNode(firstNodeGteStart, update);
                     dict.remove(firstNodeGteStart.obj);
                     removed++;
@@ -1179,27 +1477,27 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
          * (该方法非原生方法)
          *
          * @param rank 排名 1-based
-         * @param dict member -> score的字典
+         * @param dict member -> node的字典
          * @return 删除的节点
          */
-        SkipListNode<K, S> zslDeleteByRank(int rank, Map<K, S> dict) {
+        SkipListNode<K, S> zslDeleteByRank(int rank, Map<K, SkipListNode<K, S>> dict) {
             final SkipListNode<K, S>[] update = updateCache;
             final int realLength = this.level;
             try {
                 int traversed = 0;
                 SkipListNode<K, S> lastNodeLtStart = this.header;
                 for (int i = this.level - 1; i >= 0; i--) {
-                    while (lastNodeLtStart.levelInfo[i].forward != null &&
-                            (traversed + lastNodeLtStart.levelInfo[i].span) < rank) {
+                    while (lastNodeLtStart.forward(i) != null &&
+                            (traversed + lastNodeLtStart.span(i)) < rank) {
                         // 下一个节点的排名还未到范围内，继续前进
-                        traversed += lastNodeLtStart.levelInfo[i].span;
-                        lastNodeLtStart = lastNodeLtStart.levelInfo[i].forward;
+                        traversed += lastNodeLtStart.span(i);
+                        lastNodeLtStart = lastNodeLtStart.forward(i);
                     }
                     update[i] = lastNodeLtStart;
                 }
 
-                /* levelInfo[0] 最下面一层就是要删除节点的直接前驱 */
-                final SkipListNode<K, S> targetRankNode = lastNodeLtStart.levelInfo[0].forward;
+                /* 第0层就是要删除节点的直接前驱 */
+                final SkipListNode<K, S> targetRankNode = lastNodeLtStart.forward0;
                 if (null != targetRankNode) {
                     zslDeleteNode(targetRankNode, update);
                     dict.remove(targetRankNode.obj);
@@ -1230,11 +1528,11 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
             int rank = 0;
             SkipListNode<K, S> firstNodeGteScore = this.header;
             for (int i = this.level - 1; i >= 0; i--) {
-                while (firstNodeGteScore.levelInfo[i].forward != null &&
-                        compareScoreAndObj(firstNodeGteScore.levelInfo[i].forward, score, obj) <= 0) {
+                while (firstNodeGteScore.forward(i) != null &&
+                        compareScoreAndObj(firstNodeGteScore.forward(i), score, obj) <= 0) {
                     // <= 也继续前进，也就是我们期望在目标节点停下来，这样rank也不必特殊处理
-                    rank += firstNodeGteScore.levelInfo[i].span;
-                    firstNodeGteScore = firstNodeGteScore.levelInfo[i].forward;
+                    rank += firstNodeGteScore.span(i);
+                    firstNodeGteScore = firstNodeGteScore.forward(i);
                 }
 
                 /* firstNodeGteScore might be equal to zsl->header, so test if firstNodeGteScore is header */
@@ -1246,6 +1544,86 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
             return 0;
         }
 
+        /**
+         * 查找指定节点的排名，不需要比较score和key。
+         * <b>Note</b>：排名从1开始
+         * <p>
+         * 每一层最后一个节点的跨度等于它与表尾的距离，因此任意节点在任意层都满足：span = rank(forward) - rank(node)，其中null的排名视为length。
+         * 从节点出发，一直沿着当前节点的最高层前进到表尾，累加经过的跨度，就得到了节点与表尾的距离。
+         * 前进过程中经过的节点高度不会降低，因此经过的节点数与查找路径相当，为O(log(N))。
+         *
+         * @param node 跳表中的节点
+         * @return 排名，从1开始
+         */
+        int zslGetRank(SkipListNode<K, S> node) {
+            int spanToTail = 0;
+            SkipListNode<K, S> curNode = node;
+            while (curNode != null) {
+                final int topLevel = curNode.level() - 1;
+                spanToTail += curNode.span(topLevel);
+                curNode = curNode.forward(topLevel);
+            }
+            return this.length - spanToTail;
+        }
+
+        /**
+         * 删除指定节点，不需要比较score和key。
+         * 先通过节点计算出排名，再按照排名查找每一层的前驱节点，与{@link #zslDeleteByRank(int, Map)}的查找方式一致。
+         *
+         * @param node 跳表中的节点
+         */
+        void zslDelete(SkipListNode<K, S> node) {
+            final int rank = zslGetRank(node);
+            final SkipListNode<K, S>[] update = updateCache;
+            final int realLength = this.level;
+            try {
+                int traversed = 0;
+                SkipListNode<K, S> lastNodeLtRank = this.header;
+                for (int i = this.level - 1; i >= 0; i--) {
+                    while (lastNodeLtRank.forward(i) != null &&
+                            (traversed + lastNodeLtRank.span(i)) < rank) {
+                        traversed += lastNodeLtRank.span(i);
+                        lastNodeLtRank = lastNodeLtRank.forward(i);
+                    }
+                    update[i] = lastNodeLtRank;
+                }
+
+                /* 第0层就是要删除节点的直接前驱 */
+                assert lastNodeLtRank.forward0 == node;
+                zslDeleteNode(node, update);
+            } finally {
+                ZSetUtils.releaseUpdate(update, realLength);
+            }
+        }
+
+        /**
+         * 更新节点的分数。
+         * 如果更新分数以后节点仍然位于前驱和后继之间，则直接原地修改分数，不需要调整节点的位置；
+         * 否则将节点从跳表中摘下，修改分数后重新插入，复用原来的节点和层级，不会创建新的节点。
+         * <p>
+         * 参考redis的zslUpdateScore，不过redis在节点需要移动时会创建新的节点。
+         *
+         * @param node     跳表中的节点
+         * @param newScore 新的分数
+         */
+        void zslUpdateScore(SkipListNode<K, S> node, S newScore) {
+            /* If the node, after the score update, would be still exactly
+             * at the same position, we can just update the score without
+             * actually removing and re-inserting the element in the skiplist. */
+            final SkipListNode<K, S> next = node.forward0;
+            if ((node.backward == null || compareScoreAndObj(node.backward, newScore, node.obj) < 0) &&
+                    (next == null || compareScoreAndObj(next, newScore, node.obj) > 0)) {
+                node.score = newScore;
+                this.modCount++;
+                return;
+            }
+
+            // 位置发生了变化，摘下节点后重新插入
+            zslDelete(node);
+            node.score = newScore;
+            zslInsertNode(node);
+        }
+
         /**
          * 查找指定排名的成员数据，如果不存在，则返回Null。
          * 注意：排名从1开始
@@ -1260,11 +1638,11 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
             int traversed = 0;
             SkipListNode<K, S> firstNodeGteRank = this.header;
             for (int i = this.level - 1; i >= 0; i--) {
-                while (firstNodeGteRank.levelInfo[i].forward != null &&
-                        (traversed + firstNodeGteRank.levelInfo[i].span) <= rank) {
+                while (firstNodeGteRank.forward(i) != null &&
+                        (traversed + firstNodeGteRank.span(i)) <= rank) {
                     // <= rank 表示我们期望在目标节点停下来
-                    traversed += firstNodeGteRank.levelInfo[i].span;
-                    firstNodeGteRank = firstNodeGteRank.levelInfo[i].forward;
+                    traversed += firstNodeGteRank.span(i);
+                    firstNodeGteRank = firstNodeGteRank.forward(i);
                 }
 
                 if (traversed == rank) {
@@ -1291,11 +1669,7 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
          * @return node
          */
         private static <K, S> SkipListNode<K, S> zslCreateNode(int level, S score, K obj) {
-            final SkipListNode<K, S> node = new SkipListNode<>(obj, score, new SkipListLevel[level]);
-            for (int index = 0; index < level; index++) {
-                node.levelInfo[index] = new SkipListLevel<>();
-            }
-            return node;
+            return new SkipListNode<>(obj, score, level);
         }
 
         /**
@@ -1453,12 +1827,19 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
         /**
          * 该节点数据对应的评分 - 如果要通用的话，这里将来将是一个泛型对象，需要实现{@link Comparable}。
          */
-        final S score;
+        S score;
         /**
-         * 该节点的层级信息
-         * level[]存放指向各层链表后一个节点的指针（后向指针）。
+         * 第0层的后继节点和跨度。
+         * 所有节点都有第0层，因此直接内联到节点中，高度为1的节点（约占3/4）不需要额外的数组。
          */
-        final SkipListLevel<K, S>[] levelInfo;
+        SkipListNode<K, S> forward0;
+        int span0;
+        /**
+         * 第1层及以上各层的后继节点和跨度，下标i对应第i+1层，高度为1的节点为null。
+         * 使用两个平行数组代替每层一个层级对象，减少对象数量和内存占用。
+         */
+        private final SkipListNode<K, S>[] forwards;
+        private final int[] spans;
         /**
          * 该节点的前向指针
          * <b>NOTE:</b>(不包含header)
@@ -1467,34 +1848,62 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
          */
         SkipListNode<K, S> backward;
 
-        private SkipListNode(K obj, S score, SkipListLevel[] levelInfo) {
+        @SuppressWarnings("unchecked")
+        private SkipListNode(K obj, S score, int level) {
             this.obj = obj;
             this.score = score;
-            // noinspection unchecked
-            this.levelInfo = levelInfo;
+            if (level > 1) {
+                this.forwards = (SkipListNode<K, S>[]) new SkipListNode<?, ?>[level - 1];
+                this.spans = new int[level - 1];
+            } else {
+                this.forwards = null;
+                this.spans = null;
+            }
         }
 
         /**
-         * @return 该节点的直接后继节点
+         * @return 节点的高度
          */
-        SkipListNode<K, S> directForward() {
-            return levelInfo[0].forward;
+        int level() {
+            return forwards == null ? 1 : forwards.length + 1;
+        }
+
+        /**
+         * @return 节点第i层的后继节点
+         */
+        SkipListNode<K, S> forward(int i) {
+            return i == 0 ? forward0 : forwards[i - 1];
+        }
+
+        void setForward(int i, SkipListNode<K, S> forward) {
+            if (i == 0) {
+                forward0 = forward;
+            } else {
+                forwards[i - 1] = forward;
+            }
         }
-    }
 
-    /**
-     * 跳表层级
-     */
-    private static class SkipListLevel<K, S> {
         /**
-         * 每层对应1个后向指针 (后继节点)
+         * @return 节点第i层到后继节点之间的跨度
          */
-        SkipListNode<K, S> forward;
+        int span(int i) {
+            return i == 0 ? span0 : spans[i - 1];
+        }
+
+        void setSpan(int i, int span) {
+            if (i == 0) {
+                span0 = span;
+            } else {
+                spans[i - 1] = span;
+            }
+        }
+
         /**
-         * 到后继节点之间的跨度
-         * 它表示当前的指针跨越了多少个节点。span用于计算成员排名(rank)，这是Redis对于SkipList做的一个扩展。
+         * @return 该节点的直接后继节点
          */
-        int span;
+        SkipListNode<K, S> directForward() {
+            return forward0;
+        }
     }
 
     // region 迭代
@@ -1538,9 +1947,8 @@ public class GenericZSet<K, S> implements Iterable<Member<K, S>> {
 
             checkForComodification();
 
-            // remove lastReturned
-            dict.remove(lastReturned.obj);
-            zsl.zslDelete(lastReturned.score, lastReturned.obj);
+            // remove lastReturned，与zrem走相同的路径，以便通知监听器
+            zrem(lastReturned.obj);
 
             // reset lastReturned
             lastReturned = null;
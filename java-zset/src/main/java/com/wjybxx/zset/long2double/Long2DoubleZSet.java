@@ -0,0 +1,1701 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.long2double;
+
+
+import com.wjybxx.zset.ZSetUtils;
+import com.wjybxx.zset.object2double.DoubleScoreHandler;
+import com.wjybxx.zset.object2double.DoubleScoreHandlers;
+import com.wjybxx.zset.object2double.DoubleScoreRangeSpec;
+import com.wjybxx.zset.object2double.ZDoubleScoreRangeSpec;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongComparator;
+import it.unimi.dsi.fastutil.longs.LongComparators;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.*;
+
+import static com.wjybxx.zset.ZSetUtils.ZSKIPLIST_MAXLEVEL;
+
+/**
+ * key为long类型，score为double类型的sorted set - 参考redis的zset实现
+ * key和score都是基础类型，字典和跳表节点中都不会出现装箱对象。
+ * <b>排序规则</b>
+ * 有序集合里面的成员是不能重复的，都是唯一的，但是，不同成员间有可能有相同的分数。
+ * 当多个成员有相同的分数时，它们将按照键排序。
+ * 即：分数作为第一排序条件，键作为第二排序条件，当分数相同时，比较键的大小。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. ZSET中的排名从0开始（提供给用户的接口，排名都从0开始）
+ * <p>
+ * 2. 我们允许zset中的成员是降序排列的-{@link DoubleScoreHandler}决定，可以更好的支持根据score降序的排行榜，
+ * 而不是强迫你总是调用反转系列接口{@code zrev...}，那样的设计不符合人的正常思维，就很容易出错。
+ * <p>
+ * 3. 我们修改了redis中根据min和max查找和删除成员的接口，修改为start和end，当根据score范围查找或删除元素时，并不要求start小于等于end，我们会处理它们的大小关系。<br>
+ * Q: 为什么要这么改动呢？<br>
+ * A: 举个栗子：假如ScoreHandler比较两个double类型的score是逆序的，现在要删除排行榜中 1-10000分的成员，如果方法告诉你要传入的的是min和max，
+ * 你会很自然的传入想到 (1,10000) 而不是 (10000,1)。因此，如果接口不做调整，这个接口就太反人类了，谁用都得错。
+ * <p>
+ * 4. score为double类型时，与redis的语义保持一致：score不可以是NaN，插入NaN或自增结果为NaN时将抛出{@link IllegalArgumentException}，
+ * 且不会修改zset；{@link Double#NEGATIVE_INFINITY}和{@link Double#POSITIVE_INFINITY}即redis中的-inf和+inf，可以作为score，也可以作为范围的边界；
+ * -0.0和0.0被视为相等的分数。
+ *
+ * <p>
+ * 这里只实现了redis zset中的几个常用的接口，扩展不是太麻烦，可以自己根据需要实现。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@NotThreadSafe
+public class Long2DoubleZSet implements Iterable<Long2DoubleMember> {
+
+    /**
+     * member -> node
+     * 直接映射到跳表节点，查询分数、删除成员、计算排名时不再需要通过(score, member)重新查找节点。
+     */
+    private final Long2ObjectMap<SkipListNode> dict = new Long2ObjectOpenHashMap<>(ZSetUtils.INIT_CAPACITY);
+    private final SkipList zsl;
+
+    private Long2DoubleZSet(LongComparator objComparator, DoubleScoreHandler scoreHandler) {
+        this.zsl = new SkipList(objComparator, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为long类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link DoubleScoreHandlers}
+     * @return zset
+     */
+    public static Long2DoubleZSet newZSet(DoubleScoreHandler scoreHandler) {
+        return new Long2DoubleZSet(LongComparators.NATURAL_COMPARATOR, scoreHandler);
+    }
+
+    /**
+     * 创建一个自定义键比较器的zset
+     *
+     * @param objComparator 键比较器，当score比较结果相等时，比较key。
+     * @param scoreHandler  score比较器，默认实现见{@link DoubleScoreHandlers}
+     * @return zset
+     */
+    public static Long2DoubleZSet newZSet(LongComparator objComparator, DoubleScoreHandler scoreHandler) {
+        return new Long2DoubleZSet(objComparator, scoreHandler);
+    }
+    // -------------------------------------------------------- insert -----------------------------------------------
+
+    /**
+     * 往有序集合中新增一个成员。
+     * 如果指定添加的成员已经是有序集合里面的成员，则会更新成员的分数（score）并更新到正确的排序位置。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     * @throws IllegalArgumentException 如果score是NaN
+     */
+    public void zadd(final double score, final long member) {
+        ZSetUtils.checkScore(score);
+        final SkipListNode oldNode = dict.get(member);
+        if (oldNode != null) {
+            zsl.zslUpdateScore(oldNode, score);
+        } else {
+            dict.put(member, zsl.zslInsert(score, member));
+        }
+    }
+
+    /**
+     * 往有序集合中新增一个成员。当且仅当该成员不在有序集合时才添加。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     * @return 添加成功则返回true，否则返回false。
+     * @throws IllegalArgumentException 如果score是NaN
+     */
+    public boolean zaddnx(final double score, final long member) {
+        ZSetUtils.checkScore(score);
+        if (dict.containsKey(member)) {
+            return false;
+        }
+        dict.put(member, zsl.zslInsert(score, member));
+        return true;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，就在有序集中添加一个member，score是increment（就好像它之前的score是0）
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值
+     * @throws IllegalArgumentException 如果更新后的score是NaN，此时不会修改zset
+     */
+    public double zincrby(double increment, long member) {
+        final SkipListNode oldNode = dict.get(member);
+        if (oldNode == null) {
+            ZSetUtils.checkScore(increment);
+            dict.put(member, zsl.zslInsert(increment, member));
+            return increment;
+        }
+
+        final double score = zsl.sum(oldNode.score, increment);
+        zsl.zslUpdateScore(oldNode, score);
+        return score;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，则放弃更新并返回0。
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值，如果更新失败，则返回0。
+     * @throws IllegalArgumentException 如果更新后的score是NaN，此时不会修改zset
+     */
+    public double zincrbyxx(double increment, long member) {
+        final SkipListNode oldNode = dict.get(member);
+        if (oldNode == null) {
+            return 0;
+        }
+
+        final double score = zsl.sum(oldNode.score, increment);
+        zsl.zslUpdateScore(oldNode, score);
+        return score;
+    }
+
+    // -------------------------------------------------------- remove -----------------------------------------------
+
+    /**
+     * 删除指定成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回对应的score，否则返回null。
+     */
+    public Double zrem(long member) {
+        final SkipListNode oldNode = dict.remove(member);
+        if (oldNode == null) {
+            return null;
+        }
+        zsl.zslDelete(oldNode);
+        return oldNode.score;
+    }
+
+    // region 通过score删除成员
+
+    /**
+     * 移除zset中所有score值介于start和end之间(包括等于start或end)的成员
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return 删除的成员数目
+     */
+    public int zremrangeByScore(double start, double end) {
+        return zremrangeByScore(zsl.newRangeSpec(start, end));
+    }
+
+    /**
+     * 移除zset中所有score值在范围区间的成员
+     *
+     * @param spec score范围区间
+     * @return 删除的成员数目
+     */
+    private int zremrangeByScore(@Nonnull DoubleScoreRangeSpec spec) {
+        return zremrangeByScore(zsl.newRangeSpec(spec));
+    }
+
+    /**
+     * 移除zset中所有score值在范围区间的成员
+     *
+     * @param spec score范围区间
+     * @return 删除的成员数目
+     */
+    private int zremrangeByScore(@Nonnull ZDoubleScoreRangeSpec spec) {
+        return zsl.zslDeleteRangeByScore(spec, dict);
+    }
+
+    // endregion
+
+    // region 通过排名删除成员
+
+    /**
+     * 删除并返回有序集合中的第一个成员。
+     * - 不使用min和max，是因为score的比较方式是用户自定义的。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Long2DoubleMember zpopFirst() {
+        return zremByRank(0);
+    }
+
+    /**
+     * 删除并返回有序集合中的最后一个成员。
+     * - 不使用min和max，是因为score的比较方式是用户自定义的。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Long2DoubleMember zpopLast() {
+        return zremByRank(zsl.length() - 1);
+    }
+
+    /**
+     * 删除指定排名的成员
+     *
+     * @param rank 排名 0-based
+     * @return 删除成功则返回该排名对应的数据，否则返回null
+     */
+    @Nullable
+    public Long2DoubleMember zremByRank(int rank) {
+        if (rank < 0 || rank >= zsl.length()) {
+            return null;
+        }
+        final SkipListNode delete = zsl.zslDeleteByRank(rank + 1, dict);
+        assert null != delete;
+        return new Long2DoubleMember(delete.obj, delete.score);
+    }
+
+    /**
+     * 删除指定排名范围的全部成员，start和end都是从0开始的。
+     * 排名0表示分数最小的成员。
+     * start和end都可以是负数，此时它们表示从最高排名成员开始的偏移量，eg: -1表示最高排名的成员， -2表示第二高分的成员，以此类推。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))+O(M) with N being the number of elements in the sorted set
+     * and M the number of elements removed by the operation
+     *
+     * @param start 起始排名
+     * @param end   截止排名
+     * @return 删除的成员数目
+     */
+    public int zremrangeByRank(int start, int end) {
+        final int zslLength = zsl.length();
+
+        start = ZSetUtils.convertStartRank(start, zslLength);
+        end = ZSetUtils.convertEndRank(end, zslLength);
+
+        if (ZSetUtils.isRankRangeEmpty(start, end, zslLength)) {
+            return 0;
+        }
+
+        return zsl.zslDeleteRangeByRank(start + 1, end + 1, dict);
+    }
+
+    // endregion
+
+    // region 限制成员数量
+
+    /**
+     * 删除zset中尾部多余的成员，将zset中的成员数量限制到count之内。
+     * 保留前面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zlimit(int count) {
+        if (zsl.length() <= count) {
+            return 0;
+        }
+        return zsl.zslDeleteRangeByRank(count + 1, zsl.length(), dict);
+    }
+
+    /**
+     * 删除zset中头部多余的成员，将zset中的成员数量限制到count之内。
+     * - 保留后面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zrevlimit(int count) {
+        if (zsl.length() <= count) {
+            return 0;
+        }
+        return zsl.zslDeleteRangeByRank(1, zsl.length() - count, dict);
+    }
+    // endregion
+
+    // -------------------------------------------------------- query -----------------------------------------------
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，返回null - 这里返回任意的基础值都是不合理的，因此必须返回null。
+     *
+     * @param member 成员id
+     * @return score
+     */
+    public Double zscore(long member) {
+        final SkipListNode node = dict.get(member);
+        return node == null ? null : node.score;
+    }
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，则返回给定的默认值 - 该方法不会产生装箱。
+     *
+     * @param member       成员id
+     * @param defaultValue 成员不存在时返回的值
+     * @return score
+     */
+    public double zscoreOrDefault(long member, double defaultValue) {
+        final SkipListNode node = dict.get(member);
+        return node == null ? defaultValue : node.score;
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(long member) {
+        return dict.containsKey(member);
+    }
+
+    /**
+     * 返回有序集中成员member的排名。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrank(long member) {
+        final SkipListNode node = dict.get(member);
+        if (node == null) {
+            return -1;
+        }
+        // 0 < zslGetRank <= size
+        return zsl.zslGetRank(node) - 1;
+    }
+
+    /**
+     * 返回有序集中成员member的逆序排名。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrevrank(long member) {
+        final SkipListNode node = dict.get(member);
+        if (node == null) {
+            return -1;
+        }
+        // 0 < zslGetRank <= size
+        return zsl.length() - zsl.zslGetRank(node);
+    }
+
+    /**
+     * 获取指定排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Long2DoubleMember zmemberByRank(int rank) {
+        if (rank < 0 || rank >= zsl.length()) {
+            return null;
+        }
+        final SkipListNode node = zsl.zslGetElementByRank(rank + 1);
+        assert null != node;
+        return new Long2DoubleMember(node.obj, node.score);
+    }
+
+    /**
+     * 获取指定逆序排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Long2DoubleMember zrevmemberByRank(int rank) {
+        if (rank < 0 || rank >= zsl.length()) {
+            return null;
+        }
+        final SkipListNode node = zsl.zslGetElementByRank(zsl.length() - rank);
+        assert null != node;
+        return new Long2DoubleMember(node.obj, node.score);
+    }
+
+    // region 通过分数查询
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员）。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Long2DoubleMember> zrangeByScore(double start, double end) {
+        return zrangeByScoreWithOptions(zsl.newRangeSpec(start, end), 0, -1, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Long2DoubleMember> zrangeByScore(DoubleScoreRangeSpec spec) {
+        return zrangeByScoreWithOptions(zsl.newRangeSpec(spec), 0, -1, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员），返回的成员按照逆序排列。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Long2DoubleMember> zrevrangeByScore(final double start, final double end) {
+        return zrangeByScoreWithOptions(zsl.newRangeSpec(start, end), 0, -1, true);
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围之间的所有成员，返回的成员按照逆序排列。
+     *
+     * @param rangeSpec score范围区间
+     * @return 删除的成员数目
+     */
+    public List<Long2DoubleMember> zrevrangeByScore(DoubleScoreRangeSpec rangeSpec) {
+        return zrangeByScoreWithOptions(zsl.newRangeSpec(rangeSpec), 0, -1, true);
+    }
+
+    /**
+     * 返回zset中指定分数区间内的成员，并按照指定顺序返回
+     *
+     * @param rangeSpec score范围描述信息
+     * @param offset    偏移量(用于分页)  大于等于0
+     * @param limit     返回的成员数量(用于分页) 小于0表示不限制
+     * @param reverse   是否逆序
+     * @return memberInfo
+     */
+    public List<Long2DoubleMember> zrangeByScoreWithOptions(final DoubleScoreRangeSpec rangeSpec, int offset, int limit, boolean reverse) {
+        return zrangeByScoreWithOptions(zsl.newRangeSpec(rangeSpec), offset, limit, reverse);
+    }
+
+    /**
+     * 返回zset中指定分数区间内的成员，并按照指定顺序返回
+     *
+     * @param range   score范围描述信息
+     * @param offset  偏移量(用于分页)  大于等于0
+     * @param limit   返回的成员数量(用于分页) 小于0表示不限制
+     * @param reverse 是否逆序
+     * @return memberInfo
+     */
+    private List<Long2DoubleMember> zrangeByScoreWithOptions(final ZDoubleScoreRangeSpec range, int offset, int limit, boolean reverse) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset" + ": " + offset + " (expected: >= 0)");
+        }
+
+        SkipListNode listNode;
+        /* If reversed, get the last node in range as starting point. */
+        if (reverse) {
+            listNode = zsl.zslLastInRange(range);
+        } else {
+            listNode = zsl.zslFirstInRange(range);
+        }
+
+        /* No "first" element in the specified interval. */
+        if (listNode == null) {
+            return new ArrayList<>();
+        }
+
+        /* If there is an offset, just traverse the number of elements without
+         * checking the score because that is done in the next loop. */
+        while (listNode != null && offset-- != 0) {
+            if (reverse) {
+                listNode = listNode.backward;
+            } else {
+                listNode = listNode.forward0;
+            }
+        }
+
+        final List<Long2DoubleMember> result = new ArrayList<>();
+
+        /* 这里使用 != 0 判断，当limit小于0时，表示不限制 */
+        while (listNode != null && limit-- != 0) {
+            /* Abort when the node is no longer in range. */
+            if (reverse) {
+                if (!zsl.zslValueGteMin(listNode.score, range)) {
+                    break;
+                }
+            } else {
+                if (!zsl.zslValueLteMax(listNode.score, range)) {
+                    break;
+                }
+            }
+
+            result.add(new Long2DoubleMember(listNode.obj, listNode.score));
+
+            /* Move to next node */
+            if (reverse) {
+                listNode = listNode.backward;
+            } else {
+                listNode = listNode.forward0;
+            }
+        }
+        return result;
+    }
+    // endregion
+
+    // region 通过排名查询
+
+    /**
+     * 查询指定排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Long2DoubleMember> zrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, false);
+    }
+
+    /**
+     * 查询指定逆序排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Long2DoubleMember> zrevrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, true);
+    }
+
+    /**
+     * 查询指定排名区间的成员id和分数，start和end都是从0开始的。
+     *
+     * @param start   起始排名(0-based) inclusive
+     * @param end     截止排名(0-based) inclusive
+     * @param reverse 是否逆序返回
+     * @return memberInfo
+     */
+    private List<Long2DoubleMember> zrangeByRankInternal(int start, int end, boolean reverse) {
+        final int zslLength = zsl.length();
+
+        start = ZSetUtils.convertStartRank(start, zslLength);
+        end = ZSetUtils.convertEndRank(end, zslLength);
+
+        if (ZSetUtils.isRankRangeEmpty(start, end, zslLength)) {
+            return new ArrayList<>();
+        }
+
+        int rangeLen = end - start + 1;
+        SkipListNode listNode;
+
+        /* start >= 0，大于0表示需要进行调整 */
+        /* Check if starting point is trivial, before doing log(N) lookup. */
+        if (reverse) {
+            listNode = start > 0 ? zsl.zslGetElementByRank(zslLength - start) : zsl.tail;
+        } else {
+            listNode = start > 0 ? zsl.zslGetElementByRank(start + 1) : zsl.header.forward0;
+        }
+
+        final List<Long2DoubleMember> result = new ArrayList<>(rangeLen);
+        while (rangeLen-- > 0 && listNode != null) {
+            result.add(new Long2DoubleMember(listNode.obj, listNode.score));
+            listNode = reverse ? listNode.backward : listNode.forward0;
+        }
+        return result;
+    }
+    // endregion
+
+    // region 统计分数人数
+
+    /**
+     * 返回有序集key中，score值在指定区间(包括score值等于start或end)的成员
+     *
+     * @param start 起始分数
+     * @param end   截止分数
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(double start, double end) {
+        return zcountInternal(zsl.newRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     *
+     * @param rangeSpec score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(DoubleScoreRangeSpec rangeSpec) {
+        return zcountInternal(zsl.newRangeSpec(rangeSpec));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     *
+     * @param range score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    private int zcountInternal(final ZDoubleScoreRangeSpec range) {
+        final SkipListNode firstNodeInRange = zsl.zslFirstInRange(range);
+        if (firstNodeInRange != null) {
+            final int firstNodeRank = zsl.zslGetRank(firstNodeInRange);
+
+            /* 如果firstNodeInRange不为null，那么lastNode也一定不为null(最坏的情况下firstNode就是lastNode) */
+            final SkipListNode lastNodeInRange = zsl.zslLastInRange(range);
+            assert lastNodeInRange != null;
+            final int lastNodeRank = zsl.zslGetRank(lastNodeInRange);
+
+            return lastNodeRank - firstNodeRank + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @return zset中的成员数量
+     */
+    public int zcard() {
+        return zsl.length();
+    }
+
+    // endregion
+
+    // region 迭代
+
+    /**
+     * 迭代有序集中的所有元素
+     *
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Long2DoubleMember> zscan() {
+        return zscan(0);
+    }
+
+    /**
+     * 从指定偏移量开始迭代有序集中的元素
+     *
+     * @param offset 偏移量，如果小于等于0，则等价于{@link #zscan()}
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Long2DoubleMember> zscan(int offset) {
+        if (offset <= 0) {
+            return new ZSetItr(zsl.header.directForward());
+        }
+
+        if (offset >= zsl.length()) {
+            return new ZSetItr(null);
+        }
+
+        return new ZSetItr(zsl.zslGetElementByRank(offset + 1));
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Long2DoubleMember> iterator() {
+        return zscan(0);
+    }
+    // endregion
+
+    /**
+     * @return zset中当前的成员信息，用于测试
+     */
+    public String dump() {
+        return zsl.dump();
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    /**
+     * 跳表
+     * 注意：跳表的排名是从1开始的。
+     *
+     * @author agent
+     * @version 1.0
+     * date - 2026/10/16
+     */
+    private static class SkipList {
+
+        /**
+         * 更新节点使用的缓存 - 避免频繁的申请空间
+         */
+        private final SkipListNode[] updateCache = new SkipListNode[ZSKIPLIST_MAXLEVEL];
+        private final int[] rankCache = new int[ZSKIPLIST_MAXLEVEL];
+
+        private final LongComparator objComparator;
+        private final DoubleScoreHandler scoreHandler;
+
+        /**
+         * 修改次数 - 防止错误的迭代
+         */
+        private int modCount = 0;
+
+        /**
+         * 跳表头结点 - 哨兵
+         * 1. 可以简化判定逻辑
+         * 2. 恰好可以使得rank从1开始
+         */
+        private final SkipListNode header;
+
+        /**
+         * 跳表尾节点
+         */
+        private SkipListNode tail;
+
+        /**
+         * 跳表成员个数
+         * 注意：head头指针不包含在length计数中。
+         */
+        private int length = 0;
+
+        /**
+         * level表示SkipList的总层数，即所有节点层数的最大值。
+         */
+        private int level = 1;
+
+        SkipList(LongComparator objComparator, DoubleScoreHandler scoreHandler) {
+            this.objComparator = objComparator;
+            this.scoreHandler = scoreHandler;
+            this.header = zslCreateNode(ZSKIPLIST_MAXLEVEL, 0, 0);
+        }
+
+        /**
+         * 插入一个新的节点到跳表。
+         * 这里假定成员已经不存在（直到调用方执行该方法）。
+         * <p>
+         * zslInsert a new node in the skiplist. Assumes the element does not already
+         * exist (up to the caller to enforce that).
+         * <pre>
+         *             header                    newNode
+         *               _                                                 _
+         * level - 1    |_| pre                                           |_|
+         *  |           |_| pre                    _                      |_|
+         *  |           |_| pre  _                |_|                     |_|
+         *  |           |_|  ↓  |_| pre  _        |_|      _              |_|
+         *  |           |_|     |_|  ↓  |_| pre   |_|     |_|             |_|
+         *  |           |_|     |_|     |_| pre   |_|     |_|      _      |_|
+         *  |           |_|     |_|     |_| pre   |_|     |_|     |_|     |_|
+         *  0           |0|     |1|     |2| pre   |_|     |3|     |4|     |5|
+         * </pre>
+         *
+         * @param score 分数
+         * @param obj   obj 分数对应的成员id
+         */
+        @SuppressWarnings("UnusedReturnValue")
+        SkipListNode zslInsert(double score, long obj) {
+            final SkipListNode newNode = zslCreateNode(ZSetUtils.zslRandomLevel(), score, obj);
+            zslInsertNode(newNode);
+            return newNode;
+        }
+
+        /**
+         * 将一个未链接的节点插入到跳表中，节点的层级由节点自身决定。
+         * 新插入的节点和{@link #zslUpdateScore(SkipListNode, double)}中重新插入的节点都通过该方法链接。
+         *
+         * @param newNode 要插入的节点
+         */
+        private void zslInsertNode(final SkipListNode newNode) {
+            final double score = newNode.score;
+            final long obj = newNode.obj;
+            // 新节点的level
+            final int level = newNode.level();
+
+            // update - 需要更新后继节点的Node，新节点各层的前驱节点
+            // 1. 分数小的节点
+            // 2. 分数相同但id小的节点（分数相同时根据数据排序）
+            // rank - 新节点各层前驱的当前排名
+            // 这里不必创建一个ZSKIPLIST_MAXLEVEL长度的数组，它取决于插入节点后的新高度，你在别处看见的代码会造成大量的空间浪费，增加GC压力。
+            // 如果创建的都是ZSKIPLIST_MAXLEVEL长度的数组，那么应该实现缓存
+
+            final SkipListNode[] update = updateCache;
+            final int[] rank = rankCache;
+            final int realLength = Math.max(level, this.level);
+            try {
+                // preNode - 新插入节点的前驱节点
+                SkipListNode preNode = header;
+                for (int i = this.level - 1; i >= 0; i--) {
+                    /* store rank that is crossed to reach the insert position */
+                    if (i == (this.level - 1)) {
+                        // 起始点，也就是head，它的排名就是0
+                        rank[i] = 0;
+                    } else {
+                        // 由于是回溯降级继续遍历，因此其初始排名是前一次遍历的排名
+                        rank[i] = rank[i + 1];
+                    }
+
+                    while (preNode.forward(i) != null &&
+                            compareScoreAndObj(preNode.forward(i), score, obj) < 0) {
+                        // preNode的后继节点仍然小于要插入的节点，需要继续前进，同时累计排名
+                        rank[i] += preNode.span(i);
+                        preNode = preNode.forward(i);
+                    }
+
+                    // 这是要插入节点的第i层的前驱节点，此时触发降级
+                    update[i] = preNode;
+                }
+
+                if (level > this.level) {
+                    /* 新节点的层级大于当前层级，那么高出来的层级导致需要更新head，且排名和跨度是固定的 */
+                    for (int i = this.level; i < level; i++) {
+                        rank[i] = 0;
+                        update[i] = this.header;
+                        update[i].setSpan(i, this.length);
+                    }
+                    this.level = level;
+                }
+
+                /* 由于我们允许的重复score，并且zslInsert(该方法)的调用者在插入前必须测试要插入的member是否已经在hash表中。
+                 * 因此我们假设key（obj）尚未被插入，并且重复插入score的情况永远不会发生。*/
+                /* we assume the key is not already inside, since we allow duplicated
+                 * scores, and the re-insertion of score and redis object should never
+                 * happen since the caller of zslInsert() should test in the hash table
+                 * if the element is already inside or not.*/
+
+                /* 这些节点的高度小于等于新插入的节点的高度，需要更新指针。此外它们当前的跨度被拆分了两部分，需要重新计算。 */
+                for (int i = 0; i < level; i++) {
+                    /* 链接新插入的节点 */
+                    newNode.setForward(i, update[i].forward(i));
+                    update[i].setForward(i, newNode);
+
+                    /* rank[0] 是新节点的直接前驱的排名，每一层都有一个前驱，可以通过彼此的排名计算跨度 */
+                    /* 计算新插入节点的跨度 和 重新计算所有前驱节点的跨度，之前的跨度被拆分为了两份*/
+                    /* update span covered by update[i] as newNode is inserted here */
+                    newNode.setSpan(i, update[i].span(i) - (rank[0] - rank[i]));
+                    update[i].setSpan(i, (rank[0] - rank[i]) + 1);
+                }
+
+                /*  这些节点高于新插入的节点，它们的跨度可以简单的+1 */
+                /* increment span for untouched levels */
+                for (int i = level; i < this.level; i++) {
+                    update[i].setSpan(i, update[i].span(i) + 1);
+                }
+
+                /* 设置新节点的前向节点(回溯节点) - 这里不包含header，一定注意 */
+                newNode.backward = (update[0] == this.header) ? null : update[0];
+
+                /* 设置新节点的后向节点 */
+                if (newNode.forward0 != null) {
+                    newNode.forward0.backward = newNode;
+                } else {
+                    this.tail = newNode;
+                }
+
+                this.length++;
+                this.modCount++;
+            } finally {
+                ZSetUtils.releaseUpdate(update, realLength);
+                ZSetUtils.releaseRank(rank, realLength);
+            }
+        }
+
+        /**
+         * Delete an element with matching score/object from the skiplist.
+         *
+         * @param score 分数用于快速定位节点
+         * @param obj   用于确定节点是否是对应的数据节点
+         */
+        @SuppressWarnings("UnusedReturnValue")
+        boolean zslDelete(double score, long obj) {
+            // update - 需要更新后继节点的Node
+            // 1. 分数小的节点
+            // 2. 分数相同但id小的节点（分数相同时根据数据排序）
+            final SkipListNode[] update = updateCache;
+            final int realLength = this.level;
+            try {
+                SkipListNode preNode = this.header;
+                for (int i = this.level - 1; i >= 0; i--) {
+                    while (preNode.forward(i) != null &&
+                            compareScoreAndObj(preNode.forward(i), score, obj) < 0) {
+                        // preNode的后继节点仍然小于要删除的节点，需要继续前进
+                        preNode = preNode.forward(i);
+                    }
+                    // 这是目标节点第i层的可能前驱节点
+                    update[i] = preNode;
+                }
+
+                /* 由于可能多个节点拥有相同的分数，因此必须同时比较score和object */
+                /* We may have multiple elements with the same score, what we need
+                 * is to find the element with both the right score and object. */
+                final SkipListNode targetNode = preNode.forward0;
+                if (targetNode != null && scoreEquals(targetNode.score, score) && objEquals(targetNode.obj, obj)) {
+                    zslDeleteNode(targetNode, update);
+                    return true;
+                }
+
+                /* not found */
+                return false;
+            } finally {
+                ZSetUtils.releaseUpdate(update, realLength);
+            }
+        }
+
+        /**
+         * Internal function used by zslDelete, zslDeleteByScore and zslDeleteByRank
+         *
+         * @param deleteNode 要删除的节点
+         * @param update     可能要更新的节点们
+         */
+        private void zslDeleteNode(final SkipListNode deleteNode, final SkipListNode[] update) {
+            for (int i = 0; i < this.level; i++) {
+                if (update[i].forward(i) == deleteNode) {
+                    // 这些节点的高度小于等于要删除的节点，需要合并两个跨度
+                    update[i].setSpan(i, update[i].span(i) + deleteNode.span(i) - 1);
+                    update[i].setForward(i, deleteNode.forward(i));
+                } else {
+                    // 这些节点的高度高于要删除的节点，它们的跨度可以简单的 -1
+                    update[i].setSpan(i, update[i].span(i) - 1);
+                }
+            }
+
+            if (deleteNode.forward0 != null) {
+                // 要删除的节点有后继节点
+                deleteNode.forward0.backward = deleteNode.backward;
+            } else {
+                // 要删除的节点是tail节点
+                this.tail = deleteNode.backward;
+            }
+
+            // 如果删除的节点是最高等级的节点，则检查是否需要降级
+            if (deleteNode.level() == this.level) {
+                while (this.level > 1 && this.header.forward(this.level - 1) == null) {
+                    // 如果最高层没有后继节点，则降级
+                    this.level--;
+                }
+            }
+
+            this.length--;
+            this.modCount++;
+        }
+
+        /**
+         * 判断zset中的数据所属的范围是否和指定range存在交集(intersection)。
+         * 它不代表zset存在指定范围内的数据。
+         * Returns if there is a part of the zset is in range.
+         * <pre>
+         *                         ZSet
+         *              min ____________________ max
+         *                 |____________________|
+         *   min ______________ max  min _____________
+         *      |______________|        |_____________|
+         *          Range                   Range
+         * </pre>
+         *
+         * @param range 范围描述信息
+         * @return true/false
+         */
+        @SuppressWarnings("BooleanMethodIsAlwaysInverted")
+        boolean zslIsInRange(ZDoubleScoreRangeSpec range) {
+            if (isScoreRangeEmpty(range)) {
+                // 传进来的范围为空
+                return false;
+            }
+
+            if (this.tail == null || !zslValueGteMin(this.tail.score, range)) {
+                // 列表有序，按照从score小到大，如果尾部节点数据小于最小值，那么一定不在区间范围内
+                return false;
+            }
+
+            final SkipListNode firstNode = this.header.forward0;
+            if (firstNode == null || !zslValueLteMax(firstNode.score, range)) {
+                // 列表有序，按照从score小到大，如果首部节点数据大于最大值，那么一定不在范围内
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * 测试score范围信息是否为空(无效)
+         *
+         * @param range 范围描述信息
+         * @return true/false
+         */
+        private boolean isScoreRangeEmpty(ZDoubleScoreRangeSpec range) {
+            // 这里和redis有所区别，这里min一定小于等于max
+            return scoreEquals(range.min, range.max) && (range.minex || range.maxex);
+        }
+
+        /**
+         * 找出第一个在指定范围内的节点。如果没有符合的节点，则返回null。
+         * <p>
+         * Find the first node that is contained in the specified range.
+         * Returns NULL when no element is contained in the range.
+         *
+         * @param range 范围描述符
+         * @return 不存在返回null
+         */
+        @Nullable
+        SkipListNode zslFirstInRange(ZDoubleScoreRangeSpec range) {
+            /* zset数据范围与指定范围没有交集，可提前返回，减少不必要的遍历 */
+            /* If everything is out of range, return early. */
+            if (!zslIsInRange(range)) {
+                return null;
+            }
+
+            SkipListNode lastNodeLtMin = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                /* 前进直到出现后继节点大于等于指定最小值的节点 */
+                /* Go forward while *OUT* of range. */
+                while (lastNodeLtMin.forward(i) != null &&
+                        !zslValueGteMin(lastNodeLtMin.forward(i).score, range)) {
+                    // 如果当前节点的后继节点仍然小于指定范围的最小值，则继续前进
+                    lastNodeLtMin = lastNodeLtMin.forward(i);
+                }
+            }
+
+            /* 这里的上下文表明了，一定存在一个节点的值大于等于指定范围的最小值，因此下一个节点一定不为null */
+            /* This is an inner range, so the next node cannot be NULL. */
+            final SkipListNode firstNodeGteMin = lastNodeLtMin.forward0;
+            assert firstNodeGteMin != null;
+
+            /* 如果该节点的数据大于max，则不存在再范围内的节点 */
+            /* Check if score <= max. */
+            if (!zslValueLteMax(firstNodeGteMin.score, range)) {
+                return null;
+            }
+            return firstNodeGteMin;
+        }
+
+        /**
+         * 找出最后一个在指定范围内的节点。如果没有符合的节点，则返回null。
+         * <p>
+         * Find the last node that is contained in the specified range.
+         * Returns NULL when no element is contained in the range.
+         *
+         * @param range 范围描述信息
+         * @return 不存在返回null
+         */
+        @Nullable
+        SkipListNode zslLastInRange(ZDoubleScoreRangeSpec range) {
+            /* zset数据范围与指定范围没有交集，可提前返回，减少不必要的遍历 */
+            /* If everything is out of range, return early. */
+            if (!zslIsInRange(range)) {
+                return null;
+            }
+
+            SkipListNode lastNodeLteMax = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                /* Go forward while *IN* range. */
+                while (lastNodeLteMax.forward(i) != null &&
+                        zslValueLteMax(lastNodeLteMax.forward(i).score, range)) {
+                    // 如果当前节点的后继节点仍然小于最大值，则继续前进
+                    lastNodeLteMax = lastNodeLteMax.forward(i);
+                }
+            }
+
+            /* 这里的上下文表明一定存在一个节点的值小于指定范围的最大值，因此当前节点一定不为null */
+            /* This is an inner range, so this node cannot be NULL. */
+            assert lastNodeLteMax != null;
+
+            /* Check if score >= min. */
+            if (!zslValueGteMin(lastNodeLteMax.score, range)) {
+                return null;
+            }
+            return lastNodeLteMax;
+        }
+
+        /**
+         * 删除指定分数区间的所有节点。
+         * <b>Note</b>: 该方法引用了ZSet的哈希表视图，以便从哈希表中删除成员。
+         * <p>
+         * Delete all the elements with score between min and max from the skiplist.
+         * Min and max are inclusive, so a score >= min || score <= max is deleted.
+         * Note that this function takes the reference to the hash table view of the
+         * sorted set, in order to remove the elements from the hash table too.
+         *
+         * @param range 范围描述符
+         * @param dict  member -> node的字典
+         * @return 删除的节点数量
+         */
+        int zslDeleteRangeByScore(ZDoubleScoreRangeSpec range, Long2ObjectMap<SkipListNode> dict) {
+            final SkipListNode[] update = updateCache;
+            final int realLength = this.level;
+            try {
+                int removed = 0;
+                SkipListNode lastNodeLtMin = this.header;
+                for (int i = this.level - 1; i >= 0; i--) {
+                    while (lastNodeLtMin.forward(i) != null &&
+                            !zslValueGteMin(lastNodeLtMin.forward(i).score, range)) {
+                        lastNodeLtMin = lastNodeLtMin.forward(i);
+                    }
+                    update[i] = lastNodeLtMin;
+                }
+
+                /* 当前节点是小于目标范围最小值的最后一个节点，它的下一个节点可能为null，或大于等于最小值 */
+                /* Current node is the last with score < or <= min. */
+                SkipListNode firstNodeGteMin = lastNodeLtMin.forward0;
+
+                /* 删除在范围内的节点(小于等于最大值的节点) */
+                /* Delete nodes while in range. */
+                while (firstNodeGteMin != null
+                        && zslValueLteMax(firstNodeGteMin.score, range)) {
+                    final SkipListNode next = firstNodeGteMin.forward0;
+                    zslDeleteNode(firstNodeGteMin, update);
+                    dict.remove(firstNodeGteMin.obj);
+                    removed++;
+                    firstNodeGteMin = next;
+                }
+                return removed;
+            } finally {
+                ZSetUtils.releaseUpdate(update, realLength);
+            }
+        }
+
+        /**
+         * 删除指定排名区间的所有成员。包括start和end。
+         * <b>Note</b>: start和end基于从1开始
+         * <p>
+         * Delete all the elements with rank between start and end from the skiplist.
+         * Start and end are inclusive. Note that start and end need to be 1-based
+         *
+         * @param start 起始排名 inclusive
+         * @param end   截止排名 inclusive
+         * @param dict  member -> node的字典
+         * @return 删除的成员数量
+         */
+        int zslDeleteRangeByRank(int start, int end, Long2ObjectMap<SkipListNode> dict) {
+            final SkipListNode[] update = updateCache;
+            final int realLength = this.level;
+            try {
+                /* 已遍历的真实成员数量，表示成员的真实排名 */
+                int traversed = 0;
+                int removed = 0;
+
+                SkipListNode lastNodeLtStart = this.header;
+                for (int i = this.level - 1; i >= 0; i--) {
+                    while (lastNodeLtStart.forward(i) != null &&
+                            (traversed + lastNodeLtStart.span(i)) < start) {
+                        // 下一个节点的排名还未到范围内，继续前进
+                        traversed += lastNodeLtStart.span(i);
+                        lastNodeLtStart = lastNodeLtStart.forward(i);
+                    }
+                    update[i] = lastNodeLtStart;
+                }
+
+                traversed++;
+
+                /* 第0层就是要删除节点的直接前驱 */
+                SkipListNode firstNodeGteStart = lastNodeLtStart.forward0;
+                while (firstNodeGteStart != null && traversed <= end) {
+                    final SkipListNode next = firstNodeGteStart.forward0;
+                    zslDeleteNode(firstNodeGteStart, update);
+                    dict.remove(firstNodeGteStart.obj);
+                    removed++;
+                    traversed++;
+                    firstNodeGteStart = next;
+                }
+                return removed;
+            } finally {
+                ZSetUtils.releaseUpdate(update, realLength);
+            }
+        }
+
+        /**
+         * 删除指定排名的成员 - 批量删除比单个删除更快捷
+         * (该方法非原生方法)
+         *
+         * @param rank 排名 1-based
+         * @param dict member -> node的字典
+         * @return 删除的节点
+         */
+        SkipListNode zslDeleteByRank(int rank, Long2ObjectMap<SkipListNode> dict) {
+            final SkipListNode[] update = updateCache;
+            final int realLength = this.level;
+            try {
+                int traversed = 0;
+
+                SkipListNode lastNodeLtStart = this.header;
+                for (int i = this.level - 1; i >= 0; i--) {
+                    while (lastNodeLtStart.forward(i) != null &&
+                            (traversed + lastNodeLtStart.span(i)) < rank) {
+                        // 下一个节点的排名还未到范围内，继续前进
+                        traversed += lastNodeLtStart.span(i);
+                        lastNodeLtStart = lastNodeLtStart.forward(i);
+                    }
+                    update[i] = lastNodeLtStart;
+                }
+
+                /* 第0层就是要删除节点的直接前驱 */
+                final SkipListNode targetRankNode = lastNodeLtStart.forward0;
+                if (null != targetRankNode) {
+                    zslDeleteNode(targetRankNode, update);
+                    dict.remove(targetRankNode.obj);
+                    return targetRankNode;
+                } else {
+                    return null;
+                }
+            } finally {
+                ZSetUtils.releaseUpdate(update, realLength);
+            }
+        }
+
+        /**
+         * 通过score和key查找成员所属的排名。
+         * 如果找不到对应的成员，则返回0。
+         * <b>Note</b>：排名从1开始
+         * <p>
+         * Find the rank for an element by both score and key.
+         * Returns 0 when the element cannot be found, rank otherwise.
+         * Note that the rank is 1-based due to the span of zsl->header to the
+         * first element.
+         *
+         * @param score 节点分数
+         * @param obj   节点对应的数据id
+         * @return 排名，从1开始
+         */
+        int zslGetRank(double score, long obj) {
+            int rank = 0;
+            SkipListNode firstNodeGteScore = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                while (firstNodeGteScore.forward(i) != null &&
+                        compareScoreAndObj(firstNodeGteScore.forward(i), score, obj) <= 0) {
+                    // <= 也继续前进，也就是我们期望在目标节点停下来，这样rank也不必特殊处理
+                    rank += firstNodeGteScore.span(i);
+                    firstNodeGteScore = firstNodeGteScore.forward(i);
+                }
+
+                /* firstNodeGteScore might be equal to zsl->header, so test if firstNodeGteScore is header */
+                if (firstNodeGteScore != this.header && objEquals(firstNodeGteScore.obj, obj)) {
+                    // 可能在任意层找到
+                    return rank;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * 查找指定节点的排名，不需要比较score和key。
+         * <b>Note</b>：排名从1开始
+         * <p>
+         * 每一层最后一个节点的跨度等于它与表尾的距离，因此任意节点在任意层都满足：span = rank(forward) - rank(node)，其中null的排名视为length。
+         * 从节点出发，一直沿着当前节点的最高层前进到表尾，累加经过的跨度，就得到了节点与表尾的距离。
+         * 前进过程中经过的节点高度不会降低，因此经过的节点数与查找路径相当，为O(log(N))。
+         *
+         * @param node 跳表中的节点
+         * @return 排名，从1开始
+         */
+        int zslGetRank(SkipListNode node) {
+            int spanToTail = 0;
+            SkipListNode curNode = node;
+            while (curNode != null) {
+                final int topLevel = curNode.level() - 1;
+                spanToTail += curNode.span(topLevel);
+                curNode = curNode.forward(topLevel);
+            }
+            return this.length - spanToTail;
+        }
+
+        /**
+         * 删除指定节点，不需要比较score和key。
+         * 先通过节点计算出排名，再按照排名查找每一层的前驱节点，与{@link #zslDeleteByRank(int, Long2ObjectMap)}的查找方式一致。
+         *
+         * @param node 跳表中的节点
+         */
+        void zslDelete(SkipListNode node) {
+            final int rank = zslGetRank(node);
+            final SkipListNode[] update = updateCache;
+            final int realLength = this.level;
+            try {
+                int traversed = 0;
+                SkipListNode lastNodeLtRank = this.header;
+                for (int i = this.level - 1; i >= 0; i--) {
+                    while (lastNodeLtRank.forward(i) != null &&
+                            (traversed + lastNodeLtRank.span(i)) < rank) {
+                        traversed += lastNodeLtRank.span(i);
+                        lastNodeLtRank = lastNodeLtRank.forward(i);
+                    }
+                    update[i] = lastNodeLtRank;
+                }
+
+                /* 第0层就是要删除节点的直接前驱 */
+                assert lastNodeLtRank.forward0 == node;
+                zslDeleteNode(node, update);
+            } finally {
+                ZSetUtils.releaseUpdate(update, realLength);
+            }
+        }
+
+        /**
+         * 更新节点的分数。
+         * 如果更新分数以后节点仍然位于前驱和后继之间，则直接原地修改分数，不需要调整节点的位置；
+         * 否则将节点从跳表中摘下，修改分数后重新插入，复用原来的节点和层级，不会创建新的节点。
+         * <p>
+         * 参考redis的zslUpdateScore，不过redis在节点需要移动时会创建新的节点。
+         *
+         * @param node     跳表中的节点
+         * @param newScore 新的分数
+         */
+        void zslUpdateScore(SkipListNode node, double newScore) {
+            /* If the node, after the score update, would be still exactly
+             * at the same position, we can just update the score without
+             * actually removing and re-inserting the element in the skiplist. */
+            final SkipListNode next = node.forward0;
+            if ((node.backward == null || compareScoreAndObj(node.backward, newScore, node.obj) < 0) &&
+                    (next == null || compareScoreAndObj(next, newScore, node.obj) > 0)) {
+                node.score = newScore;
+                this.modCount++;
+                return;
+            }
+
+            // 位置发生了变化，摘下节点后重新插入
+            zslDelete(node);
+            node.score = newScore;
+            zslInsertNode(node);
+        }
+
+        /**
+         * 查找指定排名的成员数据，如果不存在，则返回Null。
+         * 注意：排名从1开始
+         * <p>
+         * Finds an element by its rank. The rank argument needs to be 1-based.
+         *
+         * @param rank 排名，1开始
+         * @return element
+         */
+        @Nullable
+        SkipListNode zslGetElementByRank(int rank) {
+            int traversed = 0;
+            SkipListNode firstNodeGteRank = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                while (firstNodeGteRank.forward(i) != null &&
+                        (traversed + firstNodeGteRank.span(i)) <= rank) {
+                    // <= rank 表示我们期望在目标节点停下来
+                    traversed += firstNodeGteRank.span(i);
+                    firstNodeGteRank = firstNodeGteRank.forward(i);
+                }
+
+                if (traversed == rank) {
+                    // 可能在任意层找到该排名的数据
+                    return firstNodeGteRank;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return 跳表中的成员数量
+         */
+        private int length() {
+            return length;
+        }
+
+        /**
+         * 创建一个skipList的节点
+         *
+         * @param level 节点的高度
+         * @param score 成员分数
+         * @param obj   成员id
+         * @return node
+         */
+        private static SkipListNode zslCreateNode(int level, double score, long obj) {
+            return new SkipListNode(obj, score, level);
+        }
+
+        /**
+         * 计算两个score的和
+         *
+         * @throws IllegalArgumentException 如果结果是NaN - 例如 +inf 和 -inf 相加
+         */
+        private double sum(double score1, double score2) {
+            final double result = scoreHandler.sum(score1, score2);
+            if (Double.isNaN(result)) {
+                throw new IllegalArgumentException("resulting score is not a number (NaN)");
+            }
+            return result;
+        }
+
+        /**
+         * @param start 起始分数
+         * @param end   截止分数
+         * @return spec
+         */
+        private ZDoubleScoreRangeSpec newRangeSpec(double start, double end) {
+            return newRangeSpec(start, false, end, false);
+        }
+
+        /**
+         * @param rangeSpec 开放给用户的范围描述信息
+         * @return spec
+         */
+        private ZDoubleScoreRangeSpec newRangeSpec(DoubleScoreRangeSpec rangeSpec) {
+            return newRangeSpec(rangeSpec.getStart(), rangeSpec.isStartEx(), rangeSpec.getEnd(), rangeSpec.isEndEx());
+        }
+
+        /**
+         * @param start   起始分数
+         * @param startEx 是否去除起始分数
+         * @param end     截止分数
+         * @param endEx   是否去除截止分数
+         * @return spec
+         */
+        private ZDoubleScoreRangeSpec newRangeSpec(double start, boolean startEx, double end, boolean endEx) {
+            ZSetUtils.checkScore(start);
+            ZSetUtils.checkScore(end);
+            if (compareScore(start, end) <= 0) {
+                return new ZDoubleScoreRangeSpec(start, startEx, end, endEx);
+            } else {
+                return new ZDoubleScoreRangeSpec(end, endEx, start, startEx);
+            }
+        }
+
+        /**
+         * 值是否大于等于下限
+         *
+         * @param value 要比较的score
+         * @param spec  范围描述信息
+         * @return true/false
+         */
+        @SuppressWarnings("BooleanMethodIsAlwaysInverted")
+        boolean zslValueGteMin(double value, ZDoubleScoreRangeSpec spec) {
+            return spec.minex ? compareScore(value, spec.min) > 0 : compareScore(value, spec.min) >= 0;
+        }
+
+        /**
+         * 值是否小于等于上限
+         *
+         * @param value 要比较的score
+         * @param spec  范围描述信息
+         * @return true/false
+         */
+        boolean zslValueLteMax(double value, ZDoubleScoreRangeSpec spec) {
+            return spec.maxex ? compareScore(value, spec.max) < 0 : compareScore(value, spec.max) <= 0;
+        }
+
+        /**
+         * 比较score和key的大小，分数作为第一排序条件，然后，相同分数的成员按照字典规则相对排序
+         *
+         * @param forward 后继节点
+         * @param score   分数
+         * @param obj     成员的键
+         * @return 0 表示equals
+         */
+        private int compareScoreAndObj(SkipListNode forward, double score, long obj) {
+            final int scoreCompareR = compareScore(forward.score, score);
+            if (scoreCompareR != 0) {
+                return scoreCompareR;
+            }
+            return compareObj(forward.obj, obj);
+        }
+
+        /**
+         * 比较两个成员的key，<b>必须保证当且仅当两个键相等的时候返回0</b>
+         *
+         * @return 0表示相等
+         */
+        private int compareObj(long objA, long objB) {
+            return objComparator.compare(objA, objB);
+        }
+
+        /**
+         * 判断两个对象是否相等
+         *
+         * @return true/false
+         * @apiNote 使用compare == 0判断相等
+         */
+        private boolean objEquals(long objA, long objB) {
+            // 不使用equals，而是使用compare
+            return compareObj(objA, objB) == 0;
+        }
+
+        /**
+         * 比较两个分数的大小
+         *
+         * @return 0表示相等
+         */
+        private int compareScore(double score1, double score2) {
+            return scoreHandler.compare(score1, score2);
+        }
+
+        /**
+         * 判断第一个分数是否和第二个分数相等
+         *
+         * @return true/false
+         * @apiNote 使用compare == 0判断相等
+         */
+        private boolean scoreEquals(double score1, double score2) {
+            return compareScore(score1, score2) == 0;
+        }
+
+        /**
+         * 获取跳表的堆内存视图
+         *
+         * @return string
+         */
+        String dump() {
+            final StringBuilder sb = new StringBuilder("{level = 0, nodeArray:[\n");
+            SkipListNode curNode = this.header.directForward();
+            int rank = 0;
+            while (curNode != null) {
+                sb.append("{rank:").append(rank++)
+                        .append(",obj:").append(curNode.obj)
+                        .append(",score:").append(curNode.score);
+
+                curNode = curNode.directForward();
+
+                if (curNode != null) {
+                    sb.append("},\n");
+                } else {
+                    sb.append("}\n");
+                }
+            }
+            return sb.append("]}").toString();
+        }
+
+    }
+
+    /**
+     * 跳表节点
+     */
+    private static class SkipListNode {
+        /**
+         * 节点对应的数据id
+         */
+        final long obj;
+        /**
+         * 该节点数据对应的评分
+         */
+        double score;
+        /**
+         * 第0层的后继节点和跨度。
+         * 所有节点都有第0层，因此直接内联到节点中，高度为1的节点（约占3/4）不需要额外的数组。
+         */
+        SkipListNode forward0;
+        int span0;
+        /**
+         * 第1层及以上各层的后继节点和跨度，下标i对应第i+1层，高度为1的节点为null。
+         * 使用两个平行数组代替每层一个层级对象，减少对象数量和内存占用。
+         */
+        private final SkipListNode[] forwards;
+        private final int[] spans;
+        /**
+         * 该节点的前向指针
+         * <b>NOTE:</b>(不包含header)
+         * backward字段是指向链表前一个节点的指针（前向指针）。
+         * 节点只有1个前向指针，所以只有第1层链表是一个双向链表。
+         */
+        SkipListNode backward;
+
+        @SuppressWarnings("unchecked")
+        private SkipListNode(long obj, double score, int level) {
+            this.obj = obj;
+            this.score = score;
+            if (level > 1) {
+                this.forwards = new SkipListNode[level - 1];
+                this.spans = new int[level - 1];
+            } else {
+                this.forwards = null;
+                this.spans = null;
+            }
+        }
+
+        /**
+         * @return 节点的高度
+         */
+        int level() {
+            return forwards == null ? 1 : forwards.length + 1;
+        }
+
+        /**
+         * @return 节点第i层的后继节点
+         */
+        SkipListNode forward(int i) {
+            return i == 0 ? forward0 : forwards[i - 1];
+        }
+
+        void setForward(int i, SkipListNode forward) {
+            if (i == 0) {
+                forward0 = forward;
+            } else {
+                forwards[i - 1] = forward;
+            }
+        }
+
+        /**
+         * @return 节点第i层到后继节点之间的跨度
+         */
+        int span(int i) {
+            return i == 0 ? span0 : spans[i - 1];
+        }
+
+        void setSpan(int i, int span) {
+            if (i == 0) {
+                span0 = span;
+            } else {
+                spans[i - 1] = span;
+            }
+        }
+
+        /**
+         * @return 该节点的直接后继节点
+         */
+        SkipListNode directForward() {
+            return forward0;
+        }
+    }
+
+    // region 迭代
+
+    /**
+     * ZSet迭代器
+     * Q: 为什么不写在{@link SkipList}中？
+     * A: 因为删除数据需要访问{@link #dict}。
+     */
+    private class ZSetItr implements Iterator<Long2DoubleMember> {
+
+        private SkipListNode lastReturned;
+        private SkipListNode next;
+        int expectedModCount = zsl.modCount;
+
+        ZSetItr(SkipListNode next) {
+            this.next = next;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Long2DoubleMember next() {
+            checkForComodification();
+
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            lastReturned = next;
+            next = next.directForward();
+
+            return new Long2DoubleMember(lastReturned.obj, lastReturned.score);
+        }
+
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+
+            checkForComodification();
+
+            // remove lastReturned
+            dict.remove(lastReturned.obj);
+            zsl.zslDelete(lastReturned);
+
+            // reset lastReturned
+            lastReturned = null;
+            expectedModCount = zsl.modCount;
+        }
+
+        final void checkForComodification() {
+            if (zsl.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+    // endregion
+}
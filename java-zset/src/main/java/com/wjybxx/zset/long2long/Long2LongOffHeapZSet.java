@@ -0,0 +1,2035 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.long2long;
+
+
+import com.wjybxx.zset.ZSetUtils;
+import com.wjybxx.zset.object2long.LongScoreHandler;
+import com.wjybxx.zset.object2long.LongScoreHandlers;
+import com.wjybxx.zset.object2long.LongScoreRangeSpec;
+import com.wjybxx.zset.object2long.ZLongScoreRangeSpec;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.LongComparator;
+import it.unimi.dsi.fastutil.longs.LongComparators;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.*;
+
+import static com.wjybxx.zset.ZSetUtils.ZSKIPLIST_MAXLEVEL;
+
+/**
+ * key为long类型，score为long类型的sorted set - 参考redis的zset实现
+ * 与{@link Long2LongArenaZSet}的区别在于：跳表节点和字典都存储在堆外内存中，堆内只保留少量固定大小的对象，
+ * 堆内存的占用与成员数量无关，因此适合上亿成员的全服排行榜，可以避免大量的跳表对象进入老年代导致漫长的full gc。
+ * <p>
+ * <b>容量</b>
+ * 堆外内存是在创建时按照容量一次性分配的，不会扩容，当成员数量达到容量时，插入新成员将抛出{@link IllegalStateException}。
+ * 每个成员大约占用 32(节点) + 8 * 4/3(层级) + 8(字典) ≈ 51 字节的堆外内存，1亿成员大约需要 5G 堆外内存。
+ * 注意：堆外内存的大小受到{@code -XX:MaxDirectMemorySize}的限制。
+ * <p>
+ * <b>释放</b>
+ * 使用完毕后必须调用{@link #close()}立即释放堆外内存，否则只能等待gc回收zset对象后才会释放。
+ * 释放以后不可以再使用该zset（包括释放之前创建的迭代器），否则将抛出{@link IllegalStateException}。
+ * <p>
+ * <b>排序规则</b>
+ * 有序集合里面的成员是不能重复的，都是唯一的，但是，不同成员间有可能有相同的分数。
+ * 当多个成员有相同的分数时，它们将按照键排序。
+ * 即：分数作为第一排序条件，键作为第二排序条件，当分数相同时，比较键的大小。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. ZSET中的排名从0开始（提供给用户的接口，排名都从0开始）
+ * <p>
+ * 2. 我们允许zset中的成员是降序排列的-{@link LongScoreHandler}决定，可以更好的支持根据score降序的排行榜，
+ * 而不是强迫你总是调用反转系列接口{@code zrev...}，那样的设计不符合人的正常思维，就很容易出错。
+ * <p>
+ * 3. 我们修改了redis中根据min和max查找和删除成员的接口，修改为start和end，当根据score范围查找或删除元素时，并不要求start小于等于end，我们会处理它们的大小关系。<br>
+ * Q: 为什么要这么改动呢？<br>
+ * A: 举个栗子：假如ScoreHandler比较两个long类型的score是逆序的，现在要删除排行榜中 1-10000分的成员，如果方法告诉你要传入的的是min和max，
+ * 你会很自然的传入想到 (1,10000) 而不是 (10000,1)。因此，如果接口不做调整，这个接口就太反人类了，谁用都得错。
+ *
+ * <p>
+ * 这里只实现了redis zset中的几个常用的接口，扩展不是太麻烦，可以自己根据需要实现。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@NotThreadSafe
+public class Long2LongOffHeapZSet implements Iterable<Long2LongMember>, AutoCloseable {
+
+    /**
+     * 最大容量 - 层级数据的下标使用int表示
+     */
+    public static final int MAX_CAPACITY = (Integer.MAX_VALUE - ZSKIPLIST_MAXLEVEL) / 2 - 1;
+
+    /**
+     * member -> node
+     * 通过节点可以取得score，因此不必再单独存储score。
+     */
+    private final NodeDict dict;
+    private final SkipList zsl;
+    /**
+     * 是否已释放堆外内存
+     */
+    private boolean closed;
+
+    private Long2LongOffHeapZSet(LongComparator objComparator, LongScoreHandler scoreHandler, int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity: " + capacity + ", (expected: 1 - " + MAX_CAPACITY + ")");
+        }
+        this.zsl = new SkipList(objComparator, scoreHandler, capacity);
+        try {
+            this.dict = new NodeDict(zsl, capacity);
+        } catch (Throwable e) {
+            zsl.free();
+            throw e;
+        }
+    }
+
+    /**
+     * 创建一个键为long类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @param capacity     容量，即最大成员数量
+     * @return zset
+     */
+    public static Long2LongOffHeapZSet newZSet(LongScoreHandler scoreHandler, int capacity) {
+        return new Long2LongOffHeapZSet(LongComparators.NATURAL_COMPARATOR, scoreHandler, capacity);
+    }
+
+    /**
+     * 创建一个自定义键比较器的zset
+     *
+     * @param objComparator 键比较器，当score比较结果相等时，比较key。
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param capacity      容量，即最大成员数量
+     * @return zset
+     */
+    public static Long2LongOffHeapZSet newZSet(LongComparator objComparator, LongScoreHandler scoreHandler, int capacity) {
+        return new Long2LongOffHeapZSet(objComparator, scoreHandler, capacity);
+    }
+
+    /**
+     * 立即释放zset占用的堆外内存，释放以后不可以再使用该zset。
+     * 重复调用是安全的。
+     */
+    @Override
+    public void close() {
+        closed = true;
+        zsl.free();
+        dict.free();
+    }
+
+    /**
+     * 检查zset是否已释放，每个公开的接口都需要先调用该方法，避免访问已释放的堆外内存
+     *
+     * @throws IllegalStateException 如果已经调用了{@link #close()}
+     */
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("zset is closed");
+        }
+    }
+
+    /**
+     * @return zset的容量，即最大成员数量
+     */
+    public int capacity() {
+        ensureOpen();
+        return zsl.capacity();
+    }
+
+    // -------------------------------------------------------- insert -----------------------------------------------
+
+    /**
+     * 往有序集合中新增一个成员。
+     * 如果指定添加的成员已经是有序集合里面的成员，则会更新成员的分数（score）并更新到正确的排序位置。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     * @throws IllegalStateException 如果成员不存在且zset已满
+     */
+    public void zadd(final long score, final long member) {
+        ensureOpen();
+        final int oldNode = dict.get(member);
+        if (oldNode != SkipList.NIL) {
+            zsl.zslUpdateScore(oldNode, score);
+        } else {
+            dict.put(member, zsl.zslInsert(score, member));
+        }
+    }
+
+    /**
+     * 往有序集合中新增一个成员。当且仅当该成员不在有序集合时才添加。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     * @return 添加成功则返回true，否则返回false。
+     * @throws IllegalStateException 如果成员不存在且zset已满
+     */
+    public boolean zaddnx(final long score, final long member) {
+        ensureOpen();
+        if (dict.containsKey(member)) {
+            return false;
+        }
+        dict.put(member, zsl.zslInsert(score, member));
+        return true;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，就在有序集中添加一个member，score是increment（就好像它之前的score是0）
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值
+     * @throws IllegalStateException 如果成员不存在且zset已满
+     */
+    public long zincrby(long increment, long member) {
+        ensureOpen();
+        final int oldNode = dict.get(member);
+        if (oldNode == SkipList.NIL) {
+            dict.put(member, zsl.zslInsert(increment, member));
+            return increment;
+        }
+
+        final long score = zsl.sum(zsl.score(oldNode), increment);
+        zsl.zslUpdateScore(oldNode, score);
+        return score;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，则放弃更新并返回0。
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值，如果更新失败，则返回0。
+     */
+    public long zincrbyxx(long increment, long member) {
+        ensureOpen();
+        final int oldNode = dict.get(member);
+        if (oldNode == SkipList.NIL) {
+            return 0;
+        }
+
+        final long score = zsl.sum(zsl.score(oldNode), increment);
+        zsl.zslUpdateScore(oldNode, score);
+        return score;
+    }
+
+    // -------------------------------------------------------- remove -----------------------------------------------
+
+    /**
+     * 删除指定成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回对应的score，否则返回null。
+     */
+    public Long zrem(long member) {
+        ensureOpen();
+        final int oldNode = dict.remove(member);
+        if (oldNode == SkipList.NIL) {
+            return null;
+        }
+        final long oldScore = zsl.score(oldNode);
+        zsl.zslDelete(oldNode);
+        return oldScore;
+    }
+
+    // region 通过score删除成员
+
+    /**
+     * 移除zset中所有score值介于start和end之间(包括等于start或end)的成员
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return 删除的成员数目
+     */
+    public int zremrangeByScore(long start, long end) {
+        ensureOpen();
+        return zremrangeByScore(zsl.newRangeSpec(start, end));
+    }
+
+    /**
+     * 移除zset中所有score值在范围区间的成员
+     *
+     * @param spec score范围区间
+     * @return 删除的成员数目
+     */
+    private int zremrangeByScore(@Nonnull LongScoreRangeSpec spec) {
+        return zremrangeByScore(zsl.newRangeSpec(spec));
+    }
+
+    /**
+     * 移除zset中所有score值在范围区间的成员
+     *
+     * @param spec score范围区间
+     * @return 删除的成员数目
+     */
+    private int zremrangeByScore(@Nonnull ZLongScoreRangeSpec spec) {
+        return zsl.zslDeleteRangeByScore(spec, dict);
+    }
+
+    // endregion
+
+    // region 通过排名删除成员
+
+    /**
+     * 删除并返回有序集合中的第一个成员。
+     * - 不使用min和max，是因为score的比较方式是用户自定义的。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Long2LongMember zpopFirst() {
+        ensureOpen();
+        return zremByRank(0);
+    }
+
+    /**
+     * 删除并返回有序集合中的最后一个成员。
+     * - 不使用min和max，是因为score的比较方式是用户自定义的。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Long2LongMember zpopLast() {
+        ensureOpen();
+        return zremByRank(zsl.length() - 1);
+    }
+
+    /**
+     * 删除指定排名的成员
+     *
+     * @param rank 排名 0-based
+     * @return 删除成功则返回该排名对应的数据，否则返回null
+     */
+    @Nullable
+    public Long2LongMember zremByRank(int rank) {
+        ensureOpen();
+        if (rank < 0 || rank >= zsl.length()) {
+            return null;
+        }
+        final Long2LongMember delete = zsl.zslDeleteByRank(rank + 1, dict);
+        assert null != delete;
+        return delete;
+    }
+
+    /**
+     * 删除指定排名范围的全部成员，start和end都是从0开始的。
+     * 排名0表示分数最小的成员。
+     * start和end都可以是负数，此时它们表示从最高排名成员开始的偏移量，eg: -1表示最高排名的成员， -2表示第二高分的成员，以此类推。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))+O(M) with N being the number of elements in the sorted set
+     * and M the number of elements removed by the operation
+     *
+     * @param start 起始排名
+     * @param end   截止排名
+     * @return 删除的成员数目
+     */
+    public int zremrangeByRank(int start, int end) {
+        ensureOpen();
+        final int zslLength = zsl.length();
+
+        start = ZSetUtils.convertStartRank(start, zslLength);
+        end = ZSetUtils.convertEndRank(end, zslLength);
+
+        if (ZSetUtils.isRankRangeEmpty(start, end, zslLength)) {
+            return 0;
+        }
+
+        return zsl.zslDeleteRangeByRank(start + 1, end + 1, dict);
+    }
+
+    // endregion
+
+    // region 限制成员数量
+
+    /**
+     * 删除zset中尾部多余的成员，将zset中的成员数量限制到count之内。
+     * 保留前面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zlimit(int count) {
+        ensureOpen();
+        if (zsl.length() <= count) {
+            return 0;
+        }
+        return zsl.zslDeleteRangeByRank(count + 1, zsl.length(), dict);
+    }
+
+    /**
+     * 删除zset中头部多余的成员，将zset中的成员数量限制到count之内。
+     * - 保留后面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zrevlimit(int count) {
+        ensureOpen();
+        if (zsl.length() <= count) {
+            return 0;
+        }
+        return zsl.zslDeleteRangeByRank(1, zsl.length() - count, dict);
+    }
+    // endregion
+
+    // -------------------------------------------------------- query -----------------------------------------------
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，返回null - 这里返回任意的基础值都是不合理的，因此必须返回null。
+     *
+     * @param member 成员id
+     * @return score
+     */
+    public Long zscore(long member) {
+        ensureOpen();
+        final int node = dict.get(member);
+        if (node == SkipList.NIL) {
+            return null;
+        }
+        return zsl.score(node);
+    }
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，则返回给定的默认值 - 该方法不会产生装箱。
+     *
+     * @param member       成员id
+     * @param defaultValue 成员不存在时返回的值
+     * @return score
+     */
+    public long zscoreOrDefault(long member, long defaultValue) {
+        ensureOpen();
+        final int node = dict.get(member);
+        return node == SkipList.NIL ? defaultValue : zsl.score(node);
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(long member) {
+        ensureOpen();
+        return dict.containsKey(member);
+    }
+
+    /**
+     * 返回有序集中成员member的排名。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrank(long member) {
+        ensureOpen();
+        final int node = dict.get(member);
+        if (node == SkipList.NIL) {
+            return -1;
+        }
+        // 0 < zslGetRank <= size
+        return zsl.zslGetRank(node) - 1;
+    }
+
+    /**
+     * 返回有序集中成员member的逆序排名。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrevrank(long member) {
+        ensureOpen();
+        final int node = dict.get(member);
+        if (node == SkipList.NIL) {
+            return -1;
+        }
+        // 0 < zslGetRank <= size
+        return zsl.length() - zsl.zslGetRank(node);
+    }
+
+    /**
+     * 获取指定排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Long2LongMember zmemberByRank(int rank) {
+        ensureOpen();
+        if (rank < 0 || rank >= zsl.length()) {
+            return null;
+        }
+        final int node = zsl.zslGetElementByRank(rank + 1);
+        assert SkipList.NIL != node;
+        return new Long2LongMember(zsl.obj(node), zsl.score(node));
+    }
+
+    /**
+     * 获取指定逆序排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Long2LongMember zrevmemberByRank(int rank) {
+        ensureOpen();
+        if (rank < 0 || rank >= zsl.length()) {
+            return null;
+        }
+        final int node = zsl.zslGetElementByRank(zsl.length() - rank);
+        assert SkipList.NIL != node;
+        return new Long2LongMember(zsl.obj(node), zsl.score(node));
+    }
+
+    // region 通过分数查询
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员）。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Long2LongMember> zrangeByScore(long start, long end) {
+        ensureOpen();
+        return zrangeByScoreWithOptions(zsl.newRangeSpec(start, end), 0, -1, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Long2LongMember> zrangeByScore(LongScoreRangeSpec spec) {
+        ensureOpen();
+        return zrangeByScoreWithOptions(zsl.newRangeSpec(spec), 0, -1, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员），返回的成员按照逆序排列。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Long2LongMember> zrevrangeByScore(final long start, final long end) {
+        ensureOpen();
+        return zrangeByScoreWithOptions(zsl.newRangeSpec(start, end), 0, -1, true);
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围之间的所有成员，返回的成员按照逆序排列。
+     *
+     * @param rangeSpec score范围区间
+     * @return 删除的成员数目
+     */
+    public List<Long2LongMember> zrevrangeByScore(LongScoreRangeSpec rangeSpec) {
+        ensureOpen();
+        return zrangeByScoreWithOptions(zsl.newRangeSpec(rangeSpec), 0, -1, true);
+    }
+
+    /**
+     * 返回zset中指定分数区间内的成员，并按照指定顺序返回
+     *
+     * @param rangeSpec score范围描述信息
+     * @param offset    偏移量(用于分页)  大于等于0
+     * @param limit     返回的成员数量(用于分页) 小于0表示不限制
+     * @param reverse   是否逆序
+     * @return memberInfo
+     */
+    public List<Long2LongMember> zrangeByScoreWithOptions(final LongScoreRangeSpec rangeSpec, int offset, int limit, boolean reverse) {
+        ensureOpen();
+        return zrangeByScoreWithOptions(zsl.newRangeSpec(rangeSpec), offset, limit, reverse);
+    }
+
+    /**
+     * 返回zset中指定分数区间内的成员，并按照指定顺序返回
+     *
+     * @param range   score范围描述信息
+     * @param offset  偏移量(用于分页)  大于等于0
+     * @param limit   返回的成员数量(用于分页) 小于0表示不限制
+     * @param reverse 是否逆序
+     * @return memberInfo
+     */
+    private List<Long2LongMember> zrangeByScoreWithOptions(final ZLongScoreRangeSpec range, int offset, int limit, boolean reverse) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset" + ": " + offset + " (expected: >= 0)");
+        }
+
+        int listNode;
+        /* If reversed, get the last node in range as starting point. */
+        if (reverse) {
+            listNode = zsl.zslLastInRange(range);
+        } else {
+            listNode = zsl.zslFirstInRange(range);
+        }
+
+        /* No "first" element in the specified interval. */
+        if (listNode == SkipList.NIL) {
+            return new ArrayList<>();
+        }
+
+        /* If there is an offset, just traverse the number of elements without
+         * checking the score because that is done in the next loop. */
+        while (listNode != SkipList.NIL && offset-- != 0) {
+            if (reverse) {
+                listNode = zsl.backward(listNode);
+            } else {
+                listNode = zsl.directForward(listNode);
+            }
+        }
+
+        final List<Long2LongMember> result = new ArrayList<>();
+
+        /* 这里使用 != 0 判断，当limit小于0时，表示不限制 */
+        while (listNode != SkipList.NIL && limit-- != 0) {
+            /* Abort when the node is no longer in range. */
+            if (reverse) {
+                if (!zsl.zslValueGteMin(zsl.score(listNode), range)) {
+                    break;
+                }
+            } else {
+                if (!zsl.zslValueLteMax(zsl.score(listNode), range)) {
+                    break;
+                }
+            }
+
+            result.add(new Long2LongMember(zsl.obj(listNode), zsl.score(listNode)));
+
+            /* Move to next node */
+            if (reverse) {
+                listNode = zsl.backward(listNode);
+            } else {
+                listNode = zsl.directForward(listNode);
+            }
+        }
+        return result;
+    }
+    // endregion
+
+    // region 通过排名查询
+
+    /**
+     * 查询指定排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Long2LongMember> zrangeByRank(int start, int end) {
+        ensureOpen();
+        return zrangeByRankInternal(start, end, false);
+    }
+
+    /**
+     * 查询指定逆序排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Long2LongMember> zrevrangeByRank(int start, int end) {
+        ensureOpen();
+        return zrangeByRankInternal(start, end, true);
+    }
+
+    /**
+     * 查询指定排名区间的成员id和分数，start和end都是从0开始的。
+     *
+     * @param start   起始排名(0-based) inclusive
+     * @param end     截止排名(0-based) inclusive
+     * @param reverse 是否逆序返回
+     * @return memberInfo
+     */
+    private List<Long2LongMember> zrangeByRankInternal(int start, int end, boolean reverse) {
+        final int zslLength = zsl.length();
+
+        start = ZSetUtils.convertStartRank(start, zslLength);
+        end = ZSetUtils.convertEndRank(end, zslLength);
+
+        if (ZSetUtils.isRankRangeEmpty(start, end, zslLength)) {
+            return new ArrayList<>();
+        }
+
+        int rangeLen = end - start + 1;
+        int listNode;
+
+        /* start >= 0，大于0表示需要进行调整 */
+        /* Check if starting point is trivial, before doing log(N) lookup. */
+        if (reverse) {
+            listNode = start > 0 ? zsl.zslGetElementByRank(zslLength - start) : zsl.tail;
+        } else {
+            listNode = start > 0 ? zsl.zslGetElementByRank(start + 1) : zsl.directForward(zsl.header);
+        }
+
+        final List<Long2LongMember> result = new ArrayList<>(rangeLen);
+        while (rangeLen-- > 0 && listNode != SkipList.NIL) {
+            result.add(new Long2LongMember(zsl.obj(listNode), zsl.score(listNode)));
+            listNode = reverse ? zsl.backward(listNode) : zsl.directForward(listNode);
+        }
+        return result;
+    }
+    // endregion
+
+    // region 统计分数人数
+
+    /**
+     * 返回有序集key中，score值在指定区间(包括score值等于start或end)的成员
+     *
+     * @param start 起始分数
+     * @param end   截止分数
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(long start, long end) {
+        ensureOpen();
+        return zcountInternal(zsl.newRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     *
+     * @param rangeSpec score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(LongScoreRangeSpec rangeSpec) {
+        ensureOpen();
+        return zcountInternal(zsl.newRangeSpec(rangeSpec));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     *
+     * @param range score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    private int zcountInternal(final ZLongScoreRangeSpec range) {
+        final int firstNodeInRange = zsl.zslFirstInRange(range);
+        if (firstNodeInRange != SkipList.NIL) {
+            final int firstNodeRank = zsl.zslGetRank(firstNodeInRange);
+
+            /* 如果firstNodeInRange不为NIL，那么lastNode也一定不为NIL(最坏的情况下firstNode就是lastNode) */
+            final int lastNodeInRange = zsl.zslLastInRange(range);
+            assert lastNodeInRange != SkipList.NIL;
+            final int lastNodeRank = zsl.zslGetRank(lastNodeInRange);
+
+            return lastNodeRank - firstNodeRank + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @return zset中的成员数量
+     */
+    public int zcard() {
+        ensureOpen();
+        return zsl.length();
+    }
+
+    // endregion
+
+    // region 迭代
+
+    /**
+     * 迭代有序集中的所有元素
+     *
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Long2LongMember> zscan() {
+        ensureOpen();
+        return zscan(0);
+    }
+
+    /**
+     * 从指定偏移量开始迭代有序集中的元素
+     *
+     * @param offset 偏移量，如果小于等于0，则等价于{@link #zscan()}
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Long2LongMember> zscan(int offset) {
+        ensureOpen();
+        if (offset <= 0) {
+            return new ZSetItr(zsl.directForward(zsl.header));
+        }
+
+        if (offset >= zsl.length()) {
+            return new ZSetItr(SkipList.NIL);
+        }
+
+        return new ZSetItr(zsl.zslGetElementByRank(offset + 1));
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Long2LongMember> iterator() {
+        ensureOpen();
+        return zscan(0);
+    }
+    // endregion
+
+    /**
+     * @return zset中当前的成员信息，用于测试
+     */
+    public String dump() {
+        ensureOpen();
+        return zsl.dump();
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    /**
+     * 基于堆外内存的跳表
+     * 注意：跳表的排名是从1开始的。
+     * <p>
+     * 节点使用int表示，节点的数据存放在节点内存中，每个节点占用固定的{@link #NODE_SIZE}字节：
+     * <pre>
+     *   [0, 8)   obj       成员id
+     *   [8, 16)  score     成员分数
+     *   [16, 20) backward  前向节点
+     *   [20, 24) levelBase 节点的层级信息在层级内存中的起始下标
+     *   [24, 28) height    节点高度
+     *   [28, 32) slotHeight 节点的层级信息所在的空闲链表(可能借用了更高的层级空间)
+     * </pre>
+     * 节点的层级信息(后继节点和跨度)存放在层级内存中，每一层占用固定的{@link #LEVEL_SIZE}字节，同一个节点的各层是连续存储的，即：
+     * 节点node第i层的后继节点为{@code forwardAt(levelBase(node) + i)}，跨度为{@code spanAt(levelBase(node) + i)}。
+     * <p>
+     * 删除的节点会放入空闲链表，层级信息按照高度放入对应的空闲链表，以便下次分配时复用。
+     *
+     * @author agent
+     * @version 1.0
+     * date - 2026/10/16
+     */
+    private static class SkipList {
+
+        /**
+         * 空节点，等同于对象实现中的null
+         */
+        static final int NIL = -1;
+
+        /**
+         * 节点占用的字节数 - 2的整数次幂，保证节点不会跨越内存块的边界
+         */
+        private static final int NODE_SHIFT = 5;
+        private static final int NODE_SIZE = 1 << NODE_SHIFT;
+
+        private static final int OBJ_OFFSET = 0;
+        private static final int SCORE_OFFSET = 8;
+        private static final int BACKWARD_OFFSET = 16;
+        private static final int LEVEL_BASE_OFFSET = 20;
+        private static final int HEIGHT_OFFSET = 24;
+        private static final int SLOT_HEIGHT_OFFSET = 28;
+
+        /**
+         * 每一层占用的字节数 - forward和span
+         */
+        private static final int LEVEL_SHIFT = 3;
+        private static final int LEVEL_SIZE = 1 << LEVEL_SHIFT;
+
+        private static final int FORWARD_OFFSET = 0;
+        private static final int SPAN_OFFSET = 4;
+
+        /**
+         * 更新节点使用的缓存 - 避免频繁的申请空间
+         */
+        private final int[] updateCache = new int[ZSKIPLIST_MAXLEVEL];
+        private final int[] rankCache = new int[ZSKIPLIST_MAXLEVEL];
+
+        private final LongComparator objComparator;
+        private final LongScoreHandler scoreHandler;
+
+        /**
+         * 修改次数 - 防止错误的迭代
+         */
+        private int modCount = 0;
+
+        // region 节点数据
+
+        private final OffHeapMemory nodeMemory;
+        /**
+         * 节点的最大数量(包含header)
+         */
+        private final int nodeCapacity;
+        /**
+         * 已分配过的节点数量(高水位)，大于等于该值的下标都是未使用过的
+         */
+        private int nodeCount = 0;
+        /**
+         * 空闲节点链表的头部，空闲节点之间通过backward链接
+         */
+        private int freeNode = NIL;
+
+        // endregion
+
+        // region 层级数据
+
+        private final OffHeapMemory levelMemory;
+        /**
+         * 层级的最大数量
+         */
+        private final int levelCapacity;
+        /**
+         * 已分配过的层级数量(高水位)
+         */
+        private int levelCount = 0;
+        /**
+         * 按高度分类的空闲层级链表的头部，空闲层级之间通过第0层的forward链接。
+         * freeLevels[h] 存储的是高度为h的节点释放的层级信息。
+         */
+        private final int[] freeLevels = new int[ZSKIPLIST_MAXLEVEL + 1];
+
+        // endregion
+
+        /**
+         * 跳表头结点 - 哨兵
+         * 1. 可以简化判定逻辑
+         * 2. 恰好可以使得rank从1开始
+         */
+        private final int header;
+
+        /**
+         * 跳表尾节点
+         */
+        private int tail = NIL;
+
+        /**
+         * 跳表成员个数
+         * 注意：head头指针不包含在length计数中。
+         */
+        private int length = 0;
+
+        /**
+         * level表示SkipList的总层数，即所有节点层数的最大值。
+         */
+        private int level = 1;
+
+        SkipList(LongComparator objComparator, LongScoreHandler scoreHandler, int capacity) {
+            this.objComparator = objComparator;
+            this.scoreHandler = scoreHandler;
+
+            // 加1是因为header也占用一个节点
+            this.nodeCapacity = capacity + 1;
+            // 节点的平均高度为 1/(1-p) = 4/3，由于空闲层级是按照高度复用的，这里预留两倍的空间，再加上header的层级
+            this.levelCapacity = nodeCapacity * 2 + ZSKIPLIST_MAXLEVEL;
+
+            this.nodeMemory = new OffHeapMemory((long) nodeCapacity << NODE_SHIFT);
+            try {
+                this.levelMemory = new OffHeapMemory((long) levelCapacity << LEVEL_SHIFT);
+            } catch (Throwable e) {
+                nodeMemory.free();
+                throw e;
+            }
+            Arrays.fill(freeLevels, NIL);
+
+            this.header = zslCreateNode(ZSKIPLIST_MAXLEVEL, 0, 0);
+        }
+
+        /**
+         * @return 跳表的容量(不包含header)
+         */
+        int capacity() {
+            return nodeCapacity - 1;
+        }
+
+        /**
+         * 释放堆外内存
+         */
+        void free() {
+            nodeMemory.free();
+            levelMemory.free();
+        }
+
+        /**
+         * 插入一个新的节点到跳表。
+         * 这里假定成员已经不存在（直到调用方执行该方法）。
+         * <p>
+         * zslInsert a new node in the skiplist. Assumes the element does not already
+         * exist (up to the caller to enforce that).
+         *
+         * @param score 分数
+         * @param obj   obj 分数对应的成员id
+         * @return 新插入的节点
+         */
+        int zslInsert(long score, long obj) {
+            // 先分配节点，如果空间不足，则在修改跳表之前抛出异常
+            final int newNode = zslCreateNode(ZSetUtils.zslRandomLevel(), score, obj);
+            zslInsertNode(newNode);
+            return newNode;
+        }
+
+        /**
+         * 将一个未链接的节点插入到跳表中，节点的层级由节点自身决定。
+         * 新插入的节点和{@link #zslUpdateScore(int, long)}中重新插入的节点都通过该方法链接。
+         *
+         * @param newNode 要插入的节点
+         */
+        private void zslInsertNode(final int newNode) {
+            final long score = score(newNode);
+            final long obj = obj(newNode);
+            final int newNodeBase = levelBase(newNode);
+            // 新节点的level - 空间不足时可能低于随机出的高度
+            final int level = height(newNode);
+
+            // update - 新节点各层的前驱节点
+            // rank - 新节点各层前驱的当前排名
+            // 由于都是基础类型，不存在引用，因此不需要在使用后清理
+            final int[] update = updateCache;
+            final int[] rank = rankCache;
+
+            // preNode - 新插入节点的前驱节点
+            int preNode = header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                /* store rank that is crossed to reach the insert position */
+                rank[i] = i == (this.level - 1) ? 0 : rank[i + 1];
+
+                int next;
+                while ((next = forward(preNode, i)) != NIL &&
+                        compareScoreAndObj(next, score, obj) < 0) {
+                    // preNode的后继节点仍然小于要插入的节点，需要继续前进，同时累计排名
+                    rank[i] += span(preNode, i);
+                    preNode = next;
+                }
+
+                // 这是要插入节点的第i层的前驱节点，此时触发降级
+                update[i] = preNode;
+            }
+
+            if (level > this.level) {
+                /* 新节点的层级大于当前层级，那么高出来的层级导致需要更新head，且排名和跨度是固定的 */
+                for (int i = this.level; i < level; i++) {
+                    rank[i] = 0;
+                    update[i] = this.header;
+                    setSpan(this.header, i, this.length);
+                }
+                this.level = level;
+            }
+
+            /* 这些节点的高度小于等于新插入的节点的高度，需要更新指针。此外它们当前的跨度被拆分了两部分，需要重新计算。 */
+            for (int i = 0; i < level; i++) {
+                final int updateIndex = levelBase(update[i]) + i;
+                /* 链接新插入的节点 */
+                setForwardAt(newNodeBase + i, forwardAt(updateIndex));
+                setForwardAt(updateIndex, newNode);
+
+                /* update span covered by update[i] as newNode is inserted here */
+                setSpanAt(newNodeBase + i, spanAt(updateIndex) - (rank[0] - rank[i]));
+                setSpanAt(updateIndex, (rank[0] - rank[i]) + 1);
+            }
+
+            /*  这些节点高于新插入的节点，它们的跨度可以简单的+1 */
+            /* increment span for untouched levels */
+            for (int i = level; i < this.level; i++) {
+                setSpan(update[i], i, span(update[i], i) + 1);
+            }
+
+            /* 设置新节点的前向节点(回溯节点) - 这里不包含header，一定注意 */
+            setBackward(newNode, (update[0] == this.header) ? NIL : update[0]);
+
+            /* 设置新节点的后向节点 */
+            final int next = forwardAt(newNodeBase);
+            if (next != NIL) {
+                setBackward(next, newNode);
+            } else {
+                this.tail = newNode;
+            }
+
+            this.length++;
+            this.modCount++;
+        }
+
+        /**
+         * Delete an element with matching score/object from the skiplist.
+         * 删除的节点将被回收。
+         *
+         * @param score 分数用于快速定位节点
+         * @param obj   用于确定节点是否是对应的数据节点
+         */
+        @SuppressWarnings("UnusedReturnValue")
+        boolean zslDelete(long score, long obj) {
+            final int[] update = updateCache;
+            int preNode = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                int next;
+                while ((next = forward(preNode, i)) != NIL &&
+                        compareScoreAndObj(next, score, obj) < 0) {
+                    // preNode的后继节点仍然小于要删除的节点，需要继续前进
+                    preNode = next;
+                }
+                // 这是目标节点第i层的可能前驱节点
+                update[i] = preNode;
+            }
+
+            /* We may have multiple elements with the same score, what we need
+             * is to find the element with both the right score and object. */
+            final int targetNode = forward(preNode, 0);
+            if (targetNode != NIL && scoreEquals(score(targetNode), score) && objEquals(obj(targetNode), obj)) {
+                zslDeleteNode(targetNode, update);
+                zslFreeNode(targetNode);
+                return true;
+            }
+
+            /* not found */
+            return false;
+        }
+
+        /**
+         * Internal function used by zslDelete, zslDeleteByScore and zslDeleteByRank
+         * 注意：该方法不会回收节点，调用者在读取完节点数据后需要调用{@link #zslFreeNode(int)}。
+         *
+         * @param deleteNode 要删除的节点
+         * @param update     可能要更新的节点们
+         */
+        private void zslDeleteNode(final int deleteNode, final int[] update) {
+            final int deleteNodeBase = levelBase(deleteNode);
+            for (int i = 0; i < this.level; i++) {
+                final int updateIndex = levelBase(update[i]) + i;
+                if (forwardAt(updateIndex) == deleteNode) {
+                    // 这些节点的高度小于等于要删除的节点，需要合并两个跨度
+                    setSpanAt(updateIndex, spanAt(updateIndex) + spanAt(deleteNodeBase + i) - 1);
+                    setForwardAt(updateIndex, forwardAt(deleteNodeBase + i));
+                } else {
+                    // 这些节点的高度高于要删除的节点，它们的跨度可以简单的 -1
+                    setSpanAt(updateIndex, spanAt(updateIndex) - 1);
+                }
+            }
+
+            final int next = forwardAt(deleteNodeBase);
+            if (next != NIL) {
+                // 要删除的节点有后继节点
+                setBackward(next, backward(deleteNode));
+            } else {
+                // 要删除的节点是tail节点
+                this.tail = backward(deleteNode);
+            }
+
+            // 如果删除的节点是最高等级的节点，则检查是否需要降级
+            if (height(deleteNode) == this.level) {
+                while (this.level > 1 && forward(this.header, this.level - 1) == NIL) {
+                    // 如果最高层没有后继节点，则降级
+                    this.level--;
+                }
+            }
+
+            this.length--;
+            this.modCount++;
+        }
+
+        /**
+         * 判断zset中的数据所属的范围是否和指定range存在交集(intersection)。
+         * 它不代表zset存在指定范围内的数据。
+         * Returns if there is a part of the zset is in range.
+         *
+         * @param range 范围描述信息
+         * @return true/false
+         */
+        @SuppressWarnings("BooleanMethodIsAlwaysInverted")
+        boolean zslIsInRange(ZLongScoreRangeSpec range) {
+            if (isScoreRangeEmpty(range)) {
+                // 传进来的范围为空
+                return false;
+            }
+
+            if (this.tail == NIL || !zslValueGteMin(score(this.tail), range)) {
+                // 列表有序，按照从score小到大，如果尾部节点数据小于最小值，那么一定不在区间范围内
+                return false;
+            }
+
+            final int firstNode = directForward(this.header);
+            if (firstNode == NIL || !zslValueLteMax(score(firstNode), range)) {
+                // 列表有序，按照从score小到大，如果首部节点数据大于最大值，那么一定不在范围内
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * 测试score范围信息是否为空(无效)
+         *
+         * @param range 范围描述信息
+         * @return true/false
+         */
+        private boolean isScoreRangeEmpty(ZLongScoreRangeSpec range) {
+            // 这里和redis有所区别，这里min一定小于等于max
+            return scoreEquals(range.min, range.max) && (range.minex || range.maxex);
+        }
+
+        /**
+         * 找出第一个在指定范围内的节点。如果没有符合的节点，则返回NIL。
+         * <p>
+         * Find the first node that is contained in the specified range.
+         * Returns NULL when no element is contained in the range.
+         *
+         * @param range 范围描述符
+         * @return 不存在返回NIL
+         */
+        int zslFirstInRange(ZLongScoreRangeSpec range) {
+            /* If everything is out of range, return early. */
+            if (!zslIsInRange(range)) {
+                return NIL;
+            }
+
+            int lastNodeLtMin = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                /* Go forward while *OUT* of range. */
+                int next;
+                while ((next = forward(lastNodeLtMin, i)) != NIL &&
+                        !zslValueGteMin(score(next), range)) {
+                    // 如果当前节点的后继节点仍然小于指定范围的最小值，则继续前进
+                    lastNodeLtMin = next;
+                }
+            }
+
+            /* This is an inner range, so the next node cannot be NULL. */
+            final int firstNodeGteMin = directForward(lastNodeLtMin);
+            assert firstNodeGteMin != NIL;
+
+            /* Check if score <= max. */
+            if (!zslValueLteMax(score(firstNodeGteMin), range)) {
+                return NIL;
+            }
+            return firstNodeGteMin;
+        }
+
+        /**
+         * 找出最后一个在指定范围内的节点。如果没有符合的节点，则返回NIL。
+         * <p>
+         * Find the last node that is contained in the specified range.
+         * Returns NULL when no element is contained in the range.
+         *
+         * @param range 范围描述信息
+         * @return 不存在返回NIL
+         */
+        int zslLastInRange(ZLongScoreRangeSpec range) {
+            /* If everything is out of range, return early. */
+            if (!zslIsInRange(range)) {
+                return NIL;
+            }
+
+            int lastNodeLteMax = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                /* Go forward while *IN* range. */
+                int next;
+                while ((next = forward(lastNodeLteMax, i)) != NIL &&
+                        zslValueLteMax(score(next), range)) {
+                    // 如果当前节点的后继节点仍然小于最大值，则继续前进
+                    lastNodeLteMax = next;
+                }
+            }
+
+            /* This is an inner range, so this node cannot be NULL. */
+            assert lastNodeLteMax != this.header;
+
+            /* Check if score >= min. */
+            if (!zslValueGteMin(score(lastNodeLteMax), range)) {
+                return NIL;
+            }
+            return lastNodeLteMax;
+        }
+
+        /**
+         * 删除指定分数区间的所有节点。
+         * <b>Note</b>: 该方法引用了ZSet的哈希表视图，以便从哈希表中删除成员。
+         *
+         * @param range 范围描述符
+         * @param dict  对象id到节点的映射
+         * @return 删除的节点数量
+         */
+        int zslDeleteRangeByScore(ZLongScoreRangeSpec range, NodeDict dict) {
+            final int[] update = updateCache;
+            int removed = 0;
+            int lastNodeLtMin = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                int next;
+                while ((next = forward(lastNodeLtMin, i)) != NIL &&
+                        !zslValueGteMin(score(next), range)) {
+                    lastNodeLtMin = next;
+                }
+                update[i] = lastNodeLtMin;
+            }
+
+            /* Current node is the last with score < or <= min. */
+            int firstNodeGteMin = directForward(lastNodeLtMin);
+
+            /* Delete nodes while in range. */
+            while (firstNodeGteMin != NIL
+                    && zslValueLteMax(score(firstNodeGteMin), range)) {
+                final int next = directForward(firstNodeGteMin);
+                zslDeleteNode(firstNodeGteMin, update);
+                dict.remove(obj(firstNodeGteMin));
+                zslFreeNode(firstNodeGteMin);
+                removed++;
+                firstNodeGteMin = next;
+            }
+            return removed;
+        }
+
+        /**
+         * 删除指定排名区间的所有成员。包括start和end。
+         * <b>Note</b>: start和end基于从1开始
+         *
+         * @param start 起始排名 inclusive
+         * @param end   截止排名 inclusive
+         * @param dict  member -> node的字典
+         * @return 删除的成员数量
+         */
+        int zslDeleteRangeByRank(int start, int end, NodeDict dict) {
+            final int[] update = updateCache;
+            /* 已遍历的真实成员数量，表示成员的真实排名 */
+            int traversed = 0;
+            int removed = 0;
+
+            int lastNodeLtStart = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                while (forward(lastNodeLtStart, i) != NIL &&
+                        (traversed + span(lastNodeLtStart, i)) < start) {
+                    // 下一个节点的排名还未到范围内，继续前进
+                    traversed += span(lastNodeLtStart, i);
+                    lastNodeLtStart = forward(lastNodeLtStart, i);
+                }
+                update[i] = lastNodeLtStart;
+            }
+
+            traversed++;
+
+            /* 第0层就是要删除节点的直接前驱 */
+            int firstNodeGteStart = directForward(lastNodeLtStart);
+            while (firstNodeGteStart != NIL && traversed <= end) {
+                final int next = directForward(firstNodeGteStart);
+                zslDeleteNode(firstNodeGteStart, update);
+                dict.remove(obj(firstNodeGteStart));
+                zslFreeNode(firstNodeGteStart);
+                removed++;
+                traversed++;
+                firstNodeGteStart = next;
+            }
+            return removed;
+        }
+
+        /**
+         * 删除指定排名的成员 - 批量删除比单个删除更快捷
+         * (该方法非原生方法)
+         *
+         * @param rank 排名 1-based
+         * @param dict member -> node的字典
+         * @return 删除的成员数据
+         */
+        @Nullable
+        Long2LongMember zslDeleteByRank(int rank, NodeDict dict) {
+            final int[] update = updateCache;
+            int traversed = 0;
+
+            int lastNodeLtStart = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                while (forward(lastNodeLtStart, i) != NIL &&
+                        (traversed + span(lastNodeLtStart, i)) < rank) {
+                    // 下一个节点的排名还未到范围内，继续前进
+                    traversed += span(lastNodeLtStart, i);
+                    lastNodeLtStart = forward(lastNodeLtStart, i);
+                }
+                update[i] = lastNodeLtStart;
+            }
+
+            /* 第0层就是要删除节点的直接前驱 */
+            final int targetRankNode = directForward(lastNodeLtStart);
+            if (NIL != targetRankNode) {
+                final Long2LongMember member = new Long2LongMember(obj(targetRankNode), score(targetRankNode));
+                zslDeleteNode(targetRankNode, update);
+                dict.remove(obj(targetRankNode));
+                zslFreeNode(targetRankNode);
+                return member;
+            } else {
+                return null;
+            }
+        }
+
+        /**
+         * 通过score和key查找成员所属的排名。
+         * 如果找不到对应的成员，则返回0。
+         * <b>Note</b>：排名从1开始
+         *
+         * @param score 节点分数
+         * @param obj   节点对应的数据id
+         * @return 排名，从1开始
+         */
+        int zslGetRank(long score, long obj) {
+            int rank = 0;
+            int firstNodeGteScore = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                int next;
+                while ((next = forward(firstNodeGteScore, i)) != NIL &&
+                        compareScoreAndObj(next, score, obj) <= 0) {
+                    // <= 也继续前进，也就是我们期望在目标节点停下来，这样rank也不必特殊处理
+                    rank += span(firstNodeGteScore, i);
+                    firstNodeGteScore = next;
+                }
+
+                /* firstNodeGteScore might be equal to zsl->header, so test if firstNodeGteScore is header */
+                if (firstNodeGteScore != this.header && objEquals(obj(firstNodeGteScore), obj)) {
+                    // 可能在任意层找到
+                    return rank;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * 查找指定节点的排名，不需要比较score和key。
+         * <b>Note</b>：排名从1开始
+         * <p>
+         * 每一层最后一个节点的跨度等于它与表尾的距离，因此任意节点在任意层都满足：span = rank(forward) - rank(node)，其中NIL的排名视为length。
+         * 从节点出发，一直沿着当前节点的最高层前进到表尾，累加经过的跨度，就得到了节点与表尾的距离。
+         * 前进过程中经过的节点高度不会降低，因此经过的节点数与查找路径相当，为O(log(N))。
+         *
+         * @param node 跳表中的节点
+         * @return 排名，从1开始
+         */
+        int zslGetRank(int node) {
+            int spanToTail = 0;
+            int curNode = node;
+            while (curNode != NIL) {
+                final int topLevel = height(curNode) - 1;
+                spanToTail += span(curNode, topLevel);
+                curNode = forward(curNode, topLevel);
+            }
+            return this.length - spanToTail;
+        }
+
+        /**
+         * 删除指定节点，不需要比较score和key。
+         * 先通过节点计算出排名，再按照排名查找每一层的前驱节点，与{@link #zslDeleteByRank(int, NodeDict)}的查找方式一致。
+         * 删除的节点将被回收。
+         *
+         * @param node 跳表中的节点
+         */
+        void zslDelete(int node) {
+            zslUnlinkNode(node);
+            zslFreeNode(node);
+        }
+
+        /**
+         * 将节点从跳表中摘下，但不回收节点。
+         *
+         * @param node 跳表中的节点
+         */
+        private void zslUnlinkNode(int node) {
+            final int rank = zslGetRank(node);
+            final int[] update = updateCache;
+            int traversed = 0;
+            int lastNodeLtRank = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                while (forward(lastNodeLtRank, i) != NIL &&
+                        (traversed + span(lastNodeLtRank, i)) < rank) {
+                    traversed += span(lastNodeLtRank, i);
+                    lastNodeLtRank = forward(lastNodeLtRank, i);
+                }
+                update[i] = lastNodeLtRank;
+            }
+
+            /* 第0层就是要删除节点的直接前驱 */
+            assert forward(lastNodeLtRank, 0) == node;
+            zslDeleteNode(node, update);
+        }
+
+        /**
+         * 更新节点的分数。
+         * 如果更新分数以后节点仍然位于前驱和后继之间，则直接原地修改分数，不需要调整节点的位置；
+         * 否则将节点从跳表中摘下，修改分数后重新插入，复用原来的节点和层级，不会分配新的节点。
+         *
+         * @param node     跳表中的节点
+         * @param newScore 新的分数
+         */
+        void zslUpdateScore(int node, long newScore) {
+            final long obj = obj(node);
+            final int prev = backward(node);
+            final int next = directForward(node);
+            if ((prev == NIL || compareScoreAndObj(prev, newScore, obj) < 0) &&
+                    (next == NIL || compareScoreAndObj(next, newScore, obj) > 0)) {
+                setScore(node, newScore);
+                this.modCount++;
+                return;
+            }
+
+            // 位置发生了变化，摘下节点后重新插入
+            zslUnlinkNode(node);
+            setScore(node, newScore);
+            zslInsertNode(node);
+        }
+
+        /**
+         * 查找指定排名的成员数据，如果不存在，则返回NIL。
+         * 注意：排名从1开始
+         *
+         * @param rank 排名，1开始
+         * @return element
+         */
+        int zslGetElementByRank(int rank) {
+            int traversed = 0;
+            int firstNodeGteRank = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                while (forward(firstNodeGteRank, i) != NIL &&
+                        (traversed + span(firstNodeGteRank, i)) <= rank) {
+                    // <= rank 表示我们期望在目标节点停下来
+                    traversed += span(firstNodeGteRank, i);
+                    firstNodeGteRank = forward(firstNodeGteRank, i);
+                }
+
+                if (traversed == rank) {
+                    // 可能在任意层找到该排名的数据
+                    return firstNodeGteRank;
+                }
+            }
+            return NIL;
+        }
+
+        /**
+         * @return 跳表中的成员数量
+         */
+        private int length() {
+            return length;
+        }
+
+        // region 节点分配与回收
+
+        /**
+         * 分配一个skipList的节点，优先复用空闲节点
+         * <b>Note</b>：节点的实际高度可能低于期望的高度，调用者需要通过{@link #height(int)}获取节点的实际高度。
+         *
+         * @param level 节点期望的高度
+         * @param score 成员分数
+         * @param obj   成员id
+         * @return node
+         * @throws IllegalStateException 如果空间不足
+         */
+        private int zslCreateNode(int level, long score, long obj) {
+            if (freeNode == NIL && nodeCount == nodeCapacity) {
+                throw new IllegalStateException("zset is full, capacity: " + capacity());
+            }
+
+            // 查找可用的层级空间，slotHeight表示层级空间所属的空闲链表
+            // 1. 优先复用相同高度的空闲层级，其次使用未分配过的层级空间。
+            // 2. 然后借用更高的空闲层级。
+            // 3. 最后降低节点的高度 - 节点的高度只影响查询效率，不影响正确性，这可以避免空间碎片导致插入失败。
+            int slotHeight = NIL;
+            if (freeLevels[level] != NIL || levelCount + level <= levelCapacity) {
+                slotHeight = level;
+            } else {
+                for (int height = level + 1; height <= ZSKIPLIST_MAXLEVEL; height++) {
+                    if (freeLevels[height] != NIL) {
+                        slotHeight = height;
+                        break;
+                    }
+                }
+                for (int height = level - 1; slotHeight == NIL && height > 0; height--) {
+                    if (freeLevels[height] != NIL || levelCount + height <= levelCapacity) {
+                        slotHeight = level = height;
+                    }
+                }
+                if (slotHeight == NIL) {
+                    throw new IllegalStateException("level memory is full, capacity: " + levelCapacity);
+                }
+            }
+
+            final int node;
+            if (freeNode != NIL) {
+                node = freeNode;
+                freeNode = backward(node);
+            } else {
+                node = nodeCount++;
+            }
+
+            int levelBase = freeLevels[slotHeight];
+            if (levelBase != NIL) {
+                freeLevels[slotHeight] = forwardAt(levelBase);
+            } else {
+                levelBase = levelCount;
+                levelCount += slotHeight;
+            }
+
+            setObj(node, obj);
+            setScore(node, score);
+            setBackward(node, NIL);
+            setHeight(node, level);
+            setSlotHeight(node, slotHeight);
+            setLevelBase(node, levelBase);
+            for (int i = 0; i < level; i++) {
+                setForwardAt(levelBase + i, NIL);
+                setSpanAt(levelBase + i, 0);
+            }
+            return node;
+        }
+
+        /**
+         * 回收一个已从跳表中删除的节点
+         *
+         * @param node 节点
+         */
+        private void zslFreeNode(int node) {
+            final int levelBase = levelBase(node);
+            final int slotHeight = slotHeight(node);
+            setForwardAt(levelBase, freeLevels[slotHeight]);
+            freeLevels[slotHeight] = levelBase;
+
+            setBackward(node, freeNode);
+            freeNode = node;
+        }
+
+        // endregion
+
+        // region 节点访问
+
+        private static long nodeAddress(int node) {
+            return (long) node << NODE_SHIFT;
+        }
+
+        private static long levelAddress(int levelIndex) {
+            return (long) levelIndex << LEVEL_SHIFT;
+        }
+
+        long obj(int node) {
+            return nodeMemory.getLong(nodeAddress(node) + OBJ_OFFSET);
+        }
+
+        private void setObj(int node, long obj) {
+            nodeMemory.putLong(nodeAddress(node) + OBJ_OFFSET, obj);
+        }
+
+        long score(int node) {
+            return nodeMemory.getLong(nodeAddress(node) + SCORE_OFFSET);
+        }
+
+        private void setScore(int node, long score) {
+            nodeMemory.putLong(nodeAddress(node) + SCORE_OFFSET, score);
+        }
+
+        int backward(int node) {
+            return nodeMemory.getInt(nodeAddress(node) + BACKWARD_OFFSET);
+        }
+
+        private void setBackward(int node, int backward) {
+            nodeMemory.putInt(nodeAddress(node) + BACKWARD_OFFSET, backward);
+        }
+
+        private int levelBase(int node) {
+            return nodeMemory.getInt(nodeAddress(node) + LEVEL_BASE_OFFSET);
+        }
+
+        private void setLevelBase(int node, int levelBase) {
+            nodeMemory.putInt(nodeAddress(node) + LEVEL_BASE_OFFSET, levelBase);
+        }
+
+        private int height(int node) {
+            return nodeMemory.getInt(nodeAddress(node) + HEIGHT_OFFSET);
+        }
+
+        private void setHeight(int node, int height) {
+            nodeMemory.putInt(nodeAddress(node) + HEIGHT_OFFSET, height);
+        }
+
+        private int slotHeight(int node) {
+            return nodeMemory.getInt(nodeAddress(node) + SLOT_HEIGHT_OFFSET);
+        }
+
+        private void setSlotHeight(int node, int slotHeight) {
+            nodeMemory.putInt(nodeAddress(node) + SLOT_HEIGHT_OFFSET, slotHeight);
+        }
+
+        private int forwardAt(int levelIndex) {
+            return levelMemory.getInt(levelAddress(levelIndex) + FORWARD_OFFSET);
+        }
+
+        private void setForwardAt(int levelIndex, int forward) {
+            levelMemory.putInt(levelAddress(levelIndex) + FORWARD_OFFSET, forward);
+        }
+
+        private int spanAt(int levelIndex) {
+            return levelMemory.getInt(levelAddress(levelIndex) + SPAN_OFFSET);
+        }
+
+        private void setSpanAt(int levelIndex, int span) {
+            levelMemory.putInt(levelAddress(levelIndex) + SPAN_OFFSET, span);
+        }
+
+        /**
+         * @return 该节点的直接后继节点
+         */
+        int directForward(int node) {
+            return forwardAt(levelBase(node));
+        }
+
+        /**
+         * @return 节点第i层的后继节点
+         */
+        private int forward(int node, int i) {
+            return forwardAt(levelBase(node) + i);
+        }
+
+        /**
+         * @return 节点第i层到后继节点之间的跨度
+         */
+        private int span(int node, int i) {
+            return spanAt(levelBase(node) + i);
+        }
+
+        private void setSpan(int node, int i, int span) {
+            setSpanAt(levelBase(node) + i, span);
+        }
+
+        // endregion
+
+        /**
+         * 计算两个score的和
+         */
+        private long sum(long score1, long score2) {
+            return scoreHandler.sum(score1, score2);
+        }
+
+        /**
+         * @param start 起始分数
+         * @param end   截止分数
+         * @return spec
+         */
+        private ZLongScoreRangeSpec newRangeSpec(long start, long end) {
+            return newRangeSpec(start, false, end, false);
+        }
+
+        /**
+         * @param rangeSpec 开放给用户的范围描述信息
+         * @return spec
+         */
+        private ZLongScoreRangeSpec newRangeSpec(LongScoreRangeSpec rangeSpec) {
+            return newRangeSpec(rangeSpec.getStart(), rangeSpec.isStartEx(), rangeSpec.getEnd(), rangeSpec.isEndEx());
+        }
+
+        /**
+         * @param start   起始分数
+         * @param startEx 是否去除起始分数
+         * @param end     截止分数
+         * @param endEx   是否去除截止分数
+         * @return spec
+         */
+        private ZLongScoreRangeSpec newRangeSpec(long start, boolean startEx, long end, boolean endEx) {
+            if (compareScore(start, end) <= 0) {
+                return new ZLongScoreRangeSpec(start, startEx, end, endEx);
+            } else {
+                return new ZLongScoreRangeSpec(end, endEx, start, startEx);
+            }
+        }
+
+        /**
+         * 值是否大于等于下限
+         *
+         * @param value 要比较的score
+         * @param spec  范围描述信息
+         * @return true/false
+         */
+        @SuppressWarnings("BooleanMethodIsAlwaysInverted")
+        boolean zslValueGteMin(long value, ZLongScoreRangeSpec spec) {
+            return spec.minex ? compareScore(value, spec.min) > 0 : compareScore(value, spec.min) >= 0;
+        }
+
+        /**
+         * 值是否小于等于上限
+         *
+         * @param value 要比较的score
+         * @param spec  范围描述信息
+         * @return true/false
+         */
+        boolean zslValueLteMax(long value, ZLongScoreRangeSpec spec) {
+            return spec.maxex ? compareScore(value, spec.max) < 0 : compareScore(value, spec.max) <= 0;
+        }
+
+        /**
+         * 比较score和key的大小，分数作为第一排序条件，然后，相同分数的成员按照字典规则相对排序
+         *
+         * @param forward 后继节点
+         * @param score   分数
+         * @param obj     成员的键
+         * @return 0 表示equals
+         */
+        private int compareScoreAndObj(int forward, long score, long obj) {
+            final int scoreCompareR = compareScore(score(forward), score);
+            if (scoreCompareR != 0) {
+                return scoreCompareR;
+            }
+            return compareObj(obj(forward), obj);
+        }
+
+        /**
+         * 比较两个成员的key，<b>必须保证当且仅当两个键相等的时候返回0</b>
+         *
+         * @return 0表示相等
+         */
+        private int compareObj(long objA, long objB) {
+            return objComparator.compare(objA, objB);
+        }
+
+        /**
+         * 判断两个对象是否相等
+         *
+         * @return true/false
+         * @apiNote 使用compare == 0判断相等
+         */
+        private boolean objEquals(long objA, long objB) {
+            // 不使用equals，而是使用compare
+            return compareObj(objA, objB) == 0;
+        }
+
+        /**
+         * 比较两个分数的大小
+         *
+         * @return 0表示相等
+         */
+        private int compareScore(long score1, long score2) {
+            return scoreHandler.compare(score1, score2);
+        }
+
+        /**
+         * 判断第一个分数是否和第二个分数相等
+         *
+         * @return true/false
+         * @apiNote 使用compare == 0判断相等
+         */
+        private boolean scoreEquals(long score1, long score2) {
+            return compareScore(score1, score2) == 0;
+        }
+
+        /**
+         * 获取跳表的堆内存视图
+         *
+         * @return string
+         */
+        String dump() {
+            final StringBuilder sb = new StringBuilder("{level = 0, nodeArray:[\n");
+            int curNode = directForward(this.header);
+            int rank = 0;
+            while (curNode != NIL) {
+                sb.append("{rank:").append(rank++)
+                        .append(",obj:").append(obj(curNode))
+                        .append(",score:").append(score(curNode));
+
+                curNode = directForward(curNode);
+
+                if (curNode != NIL) {
+                    sb.append("},\n");
+                } else {
+                    sb.append("}\n");
+                }
+            }
+            return sb.append("]}").toString();
+        }
+
+    }
+
+    /**
+     * 基于堆外内存的字典 member -> node
+     * 使用开放寻址法(线性探测)，槽位中只存储节点，成员id从节点中读取，因此每个槽位只占用4个字节。
+     * 删除时将后续冲突的槽位前移，因此不需要墓碑标记。
+     * (实现参考了fastutil的OpenHashMap)
+     */
+    private static class NodeDict {
+
+        private static final int SLOT_SHIFT = 2;
+        private static final float LOAD_FACTOR = 0.75f;
+
+        private final SkipList zsl;
+        private final OffHeapMemory slotMemory;
+        private final int mask;
+
+        NodeDict(SkipList zsl, int capacity) {
+            this.zsl = zsl;
+            final int slotCount = HashCommon.arraySize(capacity, LOAD_FACTOR);
+            this.mask = slotCount - 1;
+            this.slotMemory = new OffHeapMemory((long) slotCount << SLOT_SHIFT);
+            for (int pos = 0; pos < slotCount; pos++) {
+                setSlot(pos, SkipList.NIL);
+            }
+        }
+
+        /**
+         * @param member 成员id
+         * @return 成员对应的节点，如果不存在，则返回{@link SkipList#NIL}
+         */
+        int get(long member) {
+            int pos = hash(member);
+            int node;
+            while ((node = slot(pos)) != SkipList.NIL) {
+                if (zsl.obj(node) == member) {
+                    return node;
+                }
+                pos = (pos + 1) & mask;
+            }
+            return SkipList.NIL;
+        }
+
+        boolean containsKey(long member) {
+            return get(member) != SkipList.NIL;
+        }
+
+        /**
+         * 插入或覆盖成员对应的节点
+         *
+         * @param member 成员id
+         * @param node   成员所在的节点
+         */
+        void put(long member, int node) {
+            int pos = hash(member);
+            int curNode;
+            while ((curNode = slot(pos)) != SkipList.NIL) {
+                if (zsl.obj(curNode) == member) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            setSlot(pos, node);
+        }
+
+        /**
+         * 删除成员
+         * <b>Note</b>：必须在回收节点之前调用。
+         *
+         * @param member 成员id
+         * @return 成员对应的节点，如果不存在，则返回{@link SkipList#NIL}
+         */
+        int remove(long member) {
+            int pos = hash(member);
+            int node;
+            while ((node = slot(pos)) != SkipList.NIL) {
+                if (zsl.obj(node) == member) {
+                    shiftKeys(pos);
+                    return node;
+                }
+                pos = (pos + 1) & mask;
+            }
+            return SkipList.NIL;
+        }
+
+        /**
+         * 删除指定槽位的数据，并将后续冲突的数据前移
+         *
+         * @param pos 要删除的槽位
+         */
+        private void shiftKeys(int pos) {
+            int last;
+            int node;
+            for (; ; ) {
+                pos = ((last = pos) + 1) & mask;
+                for (; ; ) {
+                    if ((node = slot(pos)) == SkipList.NIL) {
+                        setSlot(last, SkipList.NIL);
+                        return;
+                    }
+                    final int slot = hash(zsl.obj(node));
+                    if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                        break;
+                    }
+                    pos = (pos + 1) & mask;
+                }
+                setSlot(last, node);
+            }
+        }
+
+        private int hash(long member) {
+            return (int) HashCommon.mix(member) & mask;
+        }
+
+        private int slot(int pos) {
+            return slotMemory.getInt((long) pos << SLOT_SHIFT);
+        }
+
+        private void setSlot(int pos, int node) {
+            slotMemory.putInt((long) pos << SLOT_SHIFT, node);
+        }
+
+        void free() {
+            slotMemory.free();
+        }
+    }
+
+    // region 迭代
+
+    /**
+     * ZSet迭代器
+     * Q: 为什么不写在{@link SkipList}中？
+     * A: 因为删除数据需要访问{@link #dict}。
+     */
+    private class ZSetItr implements Iterator<Long2LongMember> {
+
+        private int lastReturned = SkipList.NIL;
+        private int next;
+        int expectedModCount = zsl.modCount;
+
+        ZSetItr(int next) {
+            this.next = next;
+        }
+
+        public boolean hasNext() {
+            return next != SkipList.NIL;
+        }
+
+        public Long2LongMember next() {
+            ensureOpen();
+            checkForComodification();
+
+            if (next == SkipList.NIL) {
+                throw new NoSuchElementException();
+            }
+
+            lastReturned = next;
+            next = zsl.directForward(next);
+
+            return new Long2LongMember(zsl.obj(lastReturned), zsl.score(lastReturned));
+        }
+
+        public void remove() {
+            if (lastReturned == SkipList.NIL) {
+                throw new IllegalStateException();
+            }
+
+            ensureOpen();
+            checkForComodification();
+
+            // remove lastReturned
+            final long obj = zsl.obj(lastReturned);
+            dict.remove(obj);
+            zsl.zslDelete(lastReturned);
+
+            // reset lastReturned
+            lastReturned = SkipList.NIL;
+            expectedModCount = zsl.modCount;
+        }
+
+        final void checkForComodification() {
+            if (zsl.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+    // endregion
+}
@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.long2long;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 一块固定大小的堆外内存 - 由多个{@link ByteBuffer#allocateDirect(int)}分配的块拼接而成，使用long类型的偏移量寻址。
+ * <p>
+ * 单个ByteBuffer最多只能寻址2G，因此这里将内存拆分为多个1G大小的块，偏移量的高位表示块的下标，低位表示块内的偏移量。
+ * <b>Note</b>：调用者需要保证读写不会跨越块的边界，只要数据按照自身的大小对齐（例如：long按8字节对齐），就不会跨越边界。
+ * <p>
+ * 堆外内存的大小受到{@code -XX:MaxDirectMemorySize}的限制。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+final class OffHeapMemory {
+
+    /**
+     * 每一块的大小为 1G
+     */
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private static final BufferCleaner CLEANER = newBufferCleaner();
+
+    /**
+     * 释放以后为null，避免访问已释放的内存导致jvm崩溃
+     */
+    private ByteBuffer[] chunks;
+
+    OffHeapMemory(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity: " + capacity + ", (expected: > 0)");
+        }
+        final int chunkNum = (int) ((capacity + CHUNK_MASK) >>> CHUNK_SHIFT);
+        this.chunks = new ByteBuffer[chunkNum];
+
+        long remain = capacity;
+        for (int index = 0; index < chunkNum; index++) {
+            final int chunkSize = (int) Math.min(remain, 1L << CHUNK_SHIFT);
+            chunks[index] = ByteBuffer.allocateDirect(chunkSize).order(ByteOrder.nativeOrder());
+            remain -= chunkSize;
+        }
+    }
+
+    long getLong(long offset) {
+        return chunks[(int) (offset >>> CHUNK_SHIFT)].getLong((int) (offset & CHUNK_MASK));
+    }
+
+    void putLong(long offset, long value) {
+        chunks[(int) (offset >>> CHUNK_SHIFT)].putLong((int) (offset & CHUNK_MASK), value);
+    }
+
+    int getInt(long offset) {
+        return chunks[(int) (offset >>> CHUNK_SHIFT)].getInt((int) (offset & CHUNK_MASK));
+    }
+
+    void putInt(long offset, int value) {
+        chunks[(int) (offset >>> CHUNK_SHIFT)].putInt((int) (offset & CHUNK_MASK), value);
+    }
+
+    /**
+     * 立即释放堆外内存。
+     * 释放以后再访问该对象将抛出{@link NullPointerException}，因此使用者需要在释放以后拒绝访问，见{@link Long2LongOffHeapZSet#close()}。
+     */
+    void free() {
+        final ByteBuffer[] chunks = this.chunks;
+        if (chunks == null) {
+            return;
+        }
+        // 先断开引用，再释放内存
+        this.chunks = null;
+        for (ByteBuffer chunk : chunks) {
+            CLEANER.clean(chunk);
+        }
+    }
+
+    // ------------------------------------------------------- 释放DirectByteBuffer -----------------------------------
+
+    /**
+     * java9以后释放DirectByteBuffer的方式有所变化，因此通过反射适配不同的版本。
+     * 如果都不支持，则只能等待gc回收。
+     */
+    private interface BufferCleaner {
+
+        void clean(ByteBuffer buffer);
+    }
+
+    private static BufferCleaner newBufferCleaner() {
+        // java9+ : Unsafe.invokeCleaner(ByteBuffer)
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            final Object unsafe = theUnsafe.get(null);
+            return buffer -> {
+                try {
+                    invokeCleaner.invoke(unsafe, buffer);
+                } catch (Exception ignore) {
+                    // 等待gc回收
+                }
+            };
+        } catch (Exception ignore) {
+            // java8
+        }
+
+        // java8 : ((DirectBuffer) buffer).cleaner().clean()
+        try {
+            final Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            final Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                try {
+                    final Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleanMethod.invoke(cleaner);
+                    }
+                } catch (Exception ignore) {
+                    // 等待gc回收
+                }
+            };
+        } catch (Exception ignore) {
+            // 不支持
+        }
+
+        return buffer -> {
+            // 等待gc回收
+        };
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.long2object;
+
+import com.wjybxx.zset.AbstractZSetEventBuffer;
+import com.wjybxx.zset.ZSetEventType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link Long2ObjectZSet}的缓冲事件并批量投递的监听器，批量投递的逻辑见{@link AbstractZSetEventBuffer}。
+ * 区间删除只缓冲一个{@link ZSetEventType#RANGE_REMOVED}事件，不会展开为逐个成员的事件。
+ *
+ * @param <S> the type of score
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@NotThreadSafe
+public class Long2ObjectZSetEventBuffer<S> extends AbstractZSetEventBuffer<Long2ObjectZSetEventBuffer.Event<S>> implements Long2ObjectZSetListener<S> {
+
+    /**
+     * @param consumer     事件的消费者
+     * @param batchSize    事件数量达到该值时自动投递
+     * @param rankRequired 是否需要事件中的排名，见{@link Long2ObjectZSetListener#isRankRequired()}
+     */
+    public Long2ObjectZSetEventBuffer(@Nonnull Consumer<List<Event<S>>> consumer, int batchSize, boolean rankRequired) {
+        super(consumer, batchSize, rankRequired);
+    }
+
+    @Override
+    public void onAdded(long member, S score, int rank) {
+        add(new Event<>(ZSetEventType.ADDED, member, null, score, -1, rank, null));
+    }
+
+    @Override
+    public void onRemoved(long member, S score, int rank) {
+        add(new Event<>(ZSetEventType.REMOVED, member, score, null, rank, -1, null));
+    }
+
+    @Override
+    public void onScoreChanged(long member, S oldScore, S newScore, int oldRank, int newRank) {
+        add(new Event<>(ZSetEventType.SCORE_CHANGED, member, oldScore, newScore, oldRank, newRank, null));
+    }
+
+    @Override
+    public void onRangeRemoved(List<Long2ObjectMember<S>> members, int startRank) {
+        add(new Event<>(ZSetEventType.RANGE_REMOVED, 0, null, null, startRank, -1, members));
+    }
+
+    /**
+     * 修改事件，不存在的分数为null，不存在或未计算的排名为-1。
+     * {@link ZSetEventType#RANGE_REMOVED}事件的member为0，删除的成员见{@link #members}，oldRank为第一个成员删除之前的排名。
+     */
+    public static final class Event<S> {
+
+        public final ZSetEventType type;
+        public final long member;
+        public final S oldScore;
+        public final S newScore;
+        public final int oldRank;
+        public final int newRank;
+        /**
+         * 区间删除的成员，按照排名顺序；其它事件为null
+         */
+        public final List<Long2ObjectMember<S>> members;
+
+        Event(ZSetEventType type, long member, S oldScore, S newScore, int oldRank, int newRank, List<Long2ObjectMember<S>> members) {
+            this.type = type;
+            this.member = member;
+            this.oldScore = oldScore;
+            this.newScore = newScore;
+            this.oldRank = oldRank;
+            this.newRank = newRank;
+            this.members = members;
+        }
+
+        @Override
+        public String toString() {
+            return "{" +
+                    "type=" + type +
+                    ", member=" + member +
+                    ", oldScore=" + oldScore +
+                    ", newScore=" + newScore +
+                    ", oldRank=" + oldRank +
+                    ", newRank=" + newRank +
+                    ", members=" + members +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.wjybxx.zset.object2double;
+
+/**
+ * double类型的score处理器
+ * <b>Note:</b> 比较方法不会收到NaN - zset会在入口处拒绝NaN。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public interface DoubleScoreHandler {
+
+    /**
+     * 比较两个分数的大小
+     * Q: 为什么需要这个方法？
+     * A: 想实现实现逆序 或 当你的score是由多个部分组合而成的时候，那么你就需要它。
+     */
+    int compare(double score1, double score2);
+
+    /**
+     * 计算两个score的和
+     * Q: 为什么需要这个方法？
+     * A: 当你的score是由多个部分组合而成的时候，那么你就需要它。
+     *
+     * @param oldScore  当前分数
+     * @param increment 自定义增量
+     * @return sum，如果结果是NaN，zset将拒绝本次更新
+     */
+    double sum(double oldScore, double increment);
+}
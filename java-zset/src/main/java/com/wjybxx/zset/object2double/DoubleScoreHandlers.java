@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.wjybxx.zset.object2double;
+
+/**
+ * 基础分数比较器
+ * 比较方式与redis一致：使用数值比较，而不是{@link Double#compare(double, double)}，因此-0.0和0.0是相等的。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class DoubleScoreHandlers {
+
+    private DoubleScoreHandlers() {
+
+    }
+
+    /**
+     * @return Double类型的score处理器
+     */
+    public static DoubleScoreHandler scoreHandler() {
+        return scoreHandler(false);
+    }
+
+
+    /**
+     * 获取一个分数比较器
+     *
+     * @param desc 是否降序
+     * @return 分数比较器
+     */
+    public static DoubleScoreHandler scoreHandler(boolean desc) {
+        return desc ? DescScoreHandler.INSTANCE : AscScoreHandler.INSTANCE;
+    }
+
+    /**
+     * 数值比较，NaN已被zset拒绝，因此这里不必处理
+     */
+    private static int compareValue(double score1, double score2) {
+        if (score1 < score2) {
+            return -1;
+        }
+        if (score1 > score2) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * 升序比较器
+     */
+    private static class AscScoreHandler implements DoubleScoreHandler {
+
+        private static AscScoreHandler INSTANCE = new AscScoreHandler();
+
+        @Override
+        public int compare(double score1, double score2) {
+            return compareValue(score1, score2);
+        }
+
+        @Override
+        public double sum(double oldScore, double increment) {
+            return oldScore + increment;
+        }
+    }
+
+    /**
+     * 降序比较器
+     */
+    private static class DescScoreHandler implements DoubleScoreHandler {
+
+        private static DescScoreHandler INSTANCE = new DescScoreHandler();
+
+        @Override
+        public int compare(double score1, double score2) {
+            return compareValue(score2, score1);
+        }
+
+        @Override
+        public double sum(double oldScore, double increment) {
+            return oldScore + increment;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2double;
+
+/**
+ * Score范围区间
+ * 可以使用{@link Double#NEGATIVE_INFINITY}和{@link Double#POSITIVE_INFINITY}表示redis中的-inf和+inf，
+ * 例如：{@code new DoubleScoreRangeSpec(Double.NEGATIVE_INFINITY, true, 100, false)} 等价于redis中的 (-inf 100]。
+ * 边界不可以是NaN，zset在使用该区间时会进行检查。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class DoubleScoreRangeSpec {
+
+    /**
+     * 起始分数 - 最高分或最低分
+     */
+    private final double start;
+    /**
+     * 是否去除起始分数
+     * exclusive
+     */
+    private final boolean startEx;
+    /**
+     * 截止分数 - 最高分或最低分
+     */
+    private final double end;
+    /**
+     * 是否去除最高分
+     * exclusive
+     */
+    private final boolean endEx;
+
+    public DoubleScoreRangeSpec(double start, double end) {
+        this(start, false, end, false);
+    }
+
+    public DoubleScoreRangeSpec(double start, boolean startEx, double end, boolean endEx) {
+        this.start = start;
+        this.startEx = startEx;
+        this.end = end;
+        this.endEx = endEx;
+    }
+
+
+    public double getStart() {
+        return start;
+    }
+
+    public boolean isStartEx() {
+        return startEx;
+    }
+
+    public double getEnd() {
+        return end;
+    }
+
+    public boolean isEndEx() {
+        return endEx;
+    }
+}
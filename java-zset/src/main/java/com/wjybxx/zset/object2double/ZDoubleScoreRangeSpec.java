@@ -0,0 +1,32 @@
+package com.wjybxx.zset.object2double;
+
+/**
+ * {@link Object2DoubleZSet}中“score”范围描述信息 - specification模式
+ */
+public final class ZDoubleScoreRangeSpec {
+    /**
+     * 最低分数
+     */
+    public final double min;
+    /**
+     * 是否去除下限
+     * exclusive
+     */
+    public final boolean minex;
+    /**
+     * 最高分数
+     */
+    public final double max;
+    /**
+     * 是否去除上限
+     * exclusive
+     */
+    public final boolean maxex;
+
+    public ZDoubleScoreRangeSpec(double min, boolean minex, double max, boolean maxex) {
+        this.min = min;
+        this.max = max;
+        this.minex = minex;
+        this.maxex = maxex;
+    }
+}
@@ -0,0 +1,754 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+import com.wjybxx.zset.ZSetUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程安全的，key为泛型，score为long类型的sorted set：读操作无锁，写操作按成员串行，排名查询的时间复杂度为O(rank)。
+ * 接口与{@link Object2LongZSet}基本一致，适合多个线程同时更新同一个排行榜的分数、但很少按排名查询的场景（例如：多个线程累计积分，
+ * 只查询自己的分数和前几名），用于代替对{@link Object2LongZSet}加全局锁。
+ * <p>
+ * <b>并发特性</b>
+ * 1. 读操作（zscore、containsMember、范围查询、遍历）不加锁。
+ * 2. 写操作不是无锁的：同一个成员的修改在{@link ConcurrentHashMap}的compute系列方法中执行，持有该成员所在桶的锁，
+ * 锁的粒度是一个桶而不是整个zset，不同成员的修改可以并行，只有落在同一个桶中时才会互相等待。
+ * 跳表本身的插入和删除是无锁的(CAS)。
+ * 3. 没有可以并发维护的排名索引，排名相关的查询需要遍历跳表，时间复杂度为O(rank)，见一致性保证的第4点。
+ * <p>
+ * <b>实现</b>
+ * 1. 排序结构使用{@link ConcurrentSkipListSet}（无锁跳表），元素是不可变的(score, member)条目，更新分数时删除旧的条目并插入新的条目。
+ * 2. 字典使用{@link ConcurrentHashMap}，member -> 当前的条目，查询分数不需要加锁。
+ * 3. 同一个成员的修改（zadd、zincrby、zrem等）都在字典的compute系列方法中执行，因此同一个成员的修改是串行的，
+ * 不同成员的修改只有落在字典的同一个桶中时才会竞争，不存在全局锁。
+ * <p>
+ * <b>一致性保证</b>
+ * 1. 单个成员的操作（zadd、zaddnx、zincrby、zincrbyxx、zrem、zscore）是原子的（线性一致）。
+ * 2. 修改一个成员的分数时，跳表中的旧条目删除和新条目插入不是一个原子操作，并发的遍历可能短暂的看不见该成员，或者同时看见新旧两个条目，
+ * 但{@link #zscore(Object)}总是返回最新的分数。
+ * 3. 遍历、范围查询都是弱一致性的（weakly consistent）：不会抛出{@link ConcurrentModificationException}，
+ * 遍历期间完成的修改可能可见，也可能不可见。
+ * 4. 无锁跳表中没有维护跨度(span)，因此排名相关的查询（zrank、zrevrank、zmemberByRank、zrevmemberByRank、zrangeByRank、zrevrangeByRank）
+ * 需要从头（或尾）遍历，时间复杂度为O(rank)，而不是{@link Object2LongZSet}的O(log(N))。
+ * 例如：一百万成员的排行榜中，查询排名在中间的成员需要遍历五十万个条目，查询前100名则只需要遍历100个条目。
+ * 没有并发修改时，结果是精确的；有并发修改时，结果是一个近似值：误差不超过查询期间并发修改的成员数量。
+ * 5. {@link #zcard()}由计数器维护，没有并发修改时是精确的，有并发修改时是一个近似值。
+ * <p>
+ * 如果排名查询是主要的负载，而写入并不频繁，那么对{@link Object2LongZSet}加锁（或使用读写锁）可能是更好的选择。
+ * <p>
+ * <b>排序规则</b>
+ * 有序集合里面的成员是不能重复的，都是唯一的，但是，不同成员间有可能有相同的分数。
+ * 当多个成员有相同的分数时，它们将按照键排序。
+ * 即：分数作为第一排序条件，键作为第二排序条件，当分数相同时，比较键的大小。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. ZSET中的排名从0开始（提供给用户的接口，排名都从0开始）
+ * 2. ZSET使用键的<b>compare</b>结果判断两个键是否相等，而不是equals方法，因此必须保证键不同时compare结果一定不为0。
+ * 3. 又由于key需要存放于{@link ConcurrentHashMap}中，因此“相同”的key必须有相同的hashCode，且equals方法返回true。
+ * <b>手动加粗:key的关键属性最好是number或string且是final的</b>
+ * 4. {@link LongScoreHandler}和键比较器会被多个线程同时调用，必须是无状态的。
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@ThreadSafe
+public class ConcurrentObject2LongZSet<K> implements Iterable<Object2LongMember<K>> {
+
+    /**
+     * member -> 当前的条目
+     */
+    private final ConcurrentHashMap<K, Entry<K>> dict = new ConcurrentHashMap<>(ZSetUtils.INIT_CAPACITY);
+    /**
+     * 按照排序规则排列的条目
+     */
+    private final ConcurrentSkipListSet<Entry<K>> zsl;
+    /**
+     * 跳表中的条目数量
+     */
+    private final LongAdder length = new LongAdder();
+
+    private final Comparator<K> objComparator;
+    private final LongScoreHandler scoreHandler;
+
+    private ConcurrentObject2LongZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler) {
+        this.objComparator = keyComparator;
+        this.scoreHandler = scoreHandler;
+        this.zsl = new ConcurrentSkipListSet<>(this::compareEntry);
+    }
+
+    /**
+     * 创建一个键为string类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static ConcurrentObject2LongZSet<String> newStringKeyZSet(LongScoreHandler scoreHandler) {
+        return new ConcurrentObject2LongZSet<>(String::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为long类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static ConcurrentObject2LongZSet<Long> newLongKeyZSet(LongScoreHandler scoreHandler) {
+        return new ConcurrentObject2LongZSet<>(Long::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为int类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static ConcurrentObject2LongZSet<Integer> newIntKeyZSet(LongScoreHandler scoreHandler) {
+        return new ConcurrentObject2LongZSet<>(Integer::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个自定义键类型的zset
+     *
+     * @param keyComparator 键比较器，当score比较结果相等时，比较key - 注意：比较结果必须与key对象的状态改变无关。
+     *                      <b>请仔细阅读类文档中的注意事项</b>。
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param <K>           键的类型
+     * @return zset
+     */
+    public static <K> ConcurrentObject2LongZSet<K> newGenericKeyZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler) {
+        return new ConcurrentObject2LongZSet<>(keyComparator, scoreHandler);
+    }
+
+    // -------------------------------------------------------- insert -----------------------------------------------
+
+    /**
+     * 往有序集合中新增一个成员。
+     * 如果指定添加的成员已经是有序集合里面的成员，则会更新成员的分数（score）并更新到正确的排序位置。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     */
+    public void zadd(final long score, @Nonnull final K member) {
+        dict.compute(member, (k, oldEntry) -> replaceEntry(oldEntry, new Entry<>(score, k)));
+    }
+
+    /**
+     * 往有序集合中新增一个成员。当且仅当该成员不在有序集合时才添加。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     * @return 添加成功则返回true，否则返回false。
+     */
+    public boolean zaddnx(final long score, @Nonnull final K member) {
+        final Entry<K> newEntry = new Entry<>(score, member);
+        return dict.computeIfAbsent(member, k -> replaceEntry(null, newEntry)) == newEntry;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，就在有序集中添加一个member，score是increment（就好像它之前的score是0）
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值
+     */
+    public long zincrby(long increment, @Nonnull K member) {
+        return dict.compute(member, (k, oldEntry) -> {
+            final long score = oldEntry == null ? increment : sum(oldEntry.score, increment);
+            return replaceEntry(oldEntry, new Entry<>(score, k));
+        }).score;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，则放弃更新并返回0。
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值，如果更新失败，则返回0。
+     */
+    public long zincrbyxx(long increment, @Nonnull K member) {
+        final Entry<K> newEntry = dict.computeIfPresent(member, (k, oldEntry) ->
+                replaceEntry(oldEntry, new Entry<>(sum(oldEntry.score, increment), k)));
+        return newEntry == null ? 0 : newEntry.score;
+    }
+
+    /**
+     * 使用新的条目替换成员的旧条目，必须在字典的compute系列方法中调用，以保证同一个成员的修改是串行的。
+     *
+     * @param oldEntry 旧的条目，可能为null
+     * @param newEntry 新的条目
+     * @return newEntry
+     */
+    private Entry<K> replaceEntry(@Nullable Entry<K> oldEntry, Entry<K> newEntry) {
+        // 旧的条目可能已经被zpopFirst等方法并发的删除了，此时跳表中的条目数量需要+1
+        if (oldEntry == null || !zsl.remove(oldEntry)) {
+            length.increment();
+        }
+        zsl.add(newEntry);
+        return newEntry;
+    }
+
+    // -------------------------------------------------------- remove -----------------------------------------------
+
+    /**
+     * 删除指定成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回对应的score，否则返回null。
+     */
+    public Long zrem(@Nonnull K member) {
+        final Object[] removed = new Object[1];
+        dict.computeIfPresent(member, (k, oldEntry) -> {
+            if (zsl.remove(oldEntry)) {
+                length.decrement();
+            }
+            removed[0] = oldEntry;
+            return null;
+        });
+        @SuppressWarnings("unchecked") final Entry<K> oldEntry = (Entry<K>) removed[0];
+        return oldEntry == null ? null : oldEntry.score;
+    }
+
+    /**
+     * 删除跳表中的条目，如果字典中该成员仍然是该条目，则一并从字典中删除。
+     * 用于先从跳表中找到条目，再删除的情况。
+     *
+     * @param entry 跳表中的条目
+     * @return 如果由当前线程删除了该条目，则返回true
+     */
+    private boolean removeEntry(Entry<K> entry) {
+        if (!zsl.remove(entry)) {
+            // 已经被其它线程删除或更新
+            return false;
+        }
+        length.decrement();
+        dict.computeIfPresent(entry.obj, (k, curEntry) -> curEntry == entry ? null : curEntry);
+        return true;
+    }
+
+    /**
+     * 移除zset中所有score值介于start和end之间(包括等于start或end)的成员
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return 删除的成员数目
+     */
+    public int zremrangeByScore(long start, long end) {
+        final ZLongScoreRangeSpec range = newRangeSpec(start, false, end, false);
+        int removed = 0;
+        for (Entry<K> entry : zsl.tailSet(new Entry<>(range.min, null))) {
+            if (!zslValueLteMax(entry.score, range)) {
+                break;
+            }
+            if (removeEntry(entry)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 删除并返回有序集合中的第一个成员。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopFirst() {
+        Entry<K> entry;
+        while ((entry = zsl.pollFirst()) != null) {
+            if (popEntry(entry)) {
+                return new Object2LongMember<>(entry.obj, entry.score);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 删除并返回有序集合中的最后一个成员。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopLast() {
+        Entry<K> entry;
+        while ((entry = zsl.pollLast()) != null) {
+            if (popEntry(entry)) {
+                return new Object2LongMember<>(entry.obj, entry.score);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从字典中删除已经从跳表中取出的条目。
+     *
+     * @param entry 从跳表中取出的条目
+     * @return 如果该条目仍然是成员当前的条目，则返回true；如果成员已经被并发的更新，则返回false（此时成员以新的分数保留在zset中）
+     */
+    private boolean popEntry(Entry<K> entry) {
+        length.decrement();
+        final boolean[] popped = new boolean[1];
+        dict.computeIfPresent(entry.obj, (k, curEntry) -> {
+            if (curEntry == entry) {
+                popped[0] = true;
+                return null;
+            }
+            return curEntry;
+        });
+        return popped[0];
+    }
+
+    /**
+     * 删除zset中尾部多余的成员，将zset中的成员数量限制到count之内。
+     * 保留前面的count个数成员。
+     * 有并发的插入时，返回后的成员数量可能仍然大于count。
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zlimit(int count) {
+        int removed = 0;
+        while (length.sum() > count) {
+            final Entry<K> entry = zsl.pollLast();
+            if (entry == null) {
+                break;
+            }
+            if (popEntry(entry)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // -------------------------------------------------------- query -----------------------------------------------
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，返回null - 这里返回任意的基础值都是不合理的，因此必须返回null。
+     *
+     * @param member 成员id
+     * @return score
+     */
+    public Long zscore(@Nonnull K member) {
+        final Entry<K> entry = dict.get(member);
+        return entry == null ? null : entry.score;
+    }
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，则返回给定的默认值 - 该方法不会产生装箱。
+     *
+     * @param member       成员id
+     * @param defaultValue 成员不存在时返回的值
+     * @return score
+     */
+    public long zscoreOrDefault(@Nonnull K member, long defaultValue) {
+        final Entry<K> entry = dict.get(member);
+        return entry == null ? defaultValue : entry.score;
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(@Nonnull K member) {
+        return dict.containsKey(member);
+    }
+
+    /**
+     * 返回有序集中成员member的排名。
+     * 时间复杂度为O(rank)，有并发修改时返回的是近似值，见类文档。
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrank(@Nonnull K member) {
+        final Entry<K> entry = dict.get(member);
+        if (entry == null) {
+            return -1;
+        }
+        return count(zsl.headSet(entry, false).iterator());
+    }
+
+    /**
+     * 返回有序集中成员member的逆序排名。
+     * 时间复杂度为O(rank)，有并发修改时返回的是近似值，见类文档。
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrevrank(@Nonnull K member) {
+        final Entry<K> entry = dict.get(member);
+        if (entry == null) {
+            return -1;
+        }
+        return count(zsl.tailSet(entry, false).iterator());
+    }
+
+    /**
+     * 获取指定排名的成员数据。
+     * 时间复杂度为O(rank)，有并发修改时返回的是近似值，见类文档。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Object2LongMember<K> zmemberByRank(int rank) {
+        if (rank < 0 || rank >= zcard()) {
+            return null;
+        }
+        final List<Object2LongMember<K>> result = rangeByRank(zsl.iterator(), rank, 1);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * 获取指定逆序排名的成员数据。
+     * 时间复杂度为O(rank)，有并发修改时返回的是近似值，见类文档。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Object2LongMember<K> zrevmemberByRank(int rank) {
+        if (rank < 0 || rank >= zcard()) {
+            return null;
+        }
+        final List<Object2LongMember<K>> result = rangeByRank(zsl.descendingIterator(), rank, 1);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员）。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(long start, long end) {
+        return zrangeByScore(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(LongScoreRangeSpec spec) {
+        final ZLongScoreRangeSpec range = newRangeSpec(spec.getStart(), spec.isStartEx(), spec.getEnd(), spec.isEndEx());
+        final List<Object2LongMember<K>> result = new ArrayList<>();
+        for (Entry<K> entry : zsl.tailSet(new Entry<>(range.min, null))) {
+            if (!zslValueLteMax(entry.score, range)) {
+                break;
+            }
+            if (zslValueGteMin(entry.score, range)) {
+                result.add(new Object2LongMember<>(entry.obj, entry.score));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员），返回的成员按照逆序排列。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(final long start, final long end) {
+        final List<Object2LongMember<K>> result = zrangeByScore(start, end);
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * 查询指定排名区间的成员信息
+     * 时间复杂度为O(end)，有并发修改时返回的是近似值，见类文档。
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, false);
+    }
+
+    /**
+     * 查询指定逆序排名区间的成员信息
+     * 时间复杂度为O(end)，有并发修改时返回的是近似值，见类文档。
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, true);
+    }
+
+    private List<Object2LongMember<K>> zrangeByRankInternal(int start, int end, boolean reverse) {
+        // 负数排名需要知道成员数量，有并发修改时，这里也是一个近似值
+        final int zslLength = zcard();
+
+        start = ZSetUtils.convertStartRank(start, zslLength);
+        end = ZSetUtils.convertEndRank(end, zslLength);
+
+        if (ZSetUtils.isRankRangeEmpty(start, end, zslLength)) {
+            return new ArrayList<>();
+        }
+
+        final Iterator<Entry<K>> itr = reverse ? zsl.descendingIterator() : zsl.iterator();
+        return rangeByRank(itr, start, end - start + 1);
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间(包括score值等于start或end)的成员
+     * 时间复杂度为O(count)。
+     *
+     * @param start 起始分数
+     * @param end   截止分数
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(long start, long end) {
+        return zcount(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     * 时间复杂度为O(count)。
+     *
+     * @param rangeSpec score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(LongScoreRangeSpec rangeSpec) {
+        final ZLongScoreRangeSpec range = newRangeSpec(rangeSpec.getStart(), rangeSpec.isStartEx(), rangeSpec.getEnd(), rangeSpec.isEndEx());
+        int count = 0;
+        for (Entry<K> entry : zsl.tailSet(new Entry<>(range.min, null))) {
+            if (!zslValueLteMax(entry.score, range)) {
+                break;
+            }
+            if (zslValueGteMin(entry.score, range)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return zset中的成员数量，有并发修改时是一个近似值
+     */
+    public int zcard() {
+        return (int) Math.max(0, length.sum());
+    }
+
+    /**
+     * 迭代有序集中的所有元素
+     * 迭代器是弱一致性的，不会抛出{@link ConcurrentModificationException}。
+     *
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Object2LongMember<K>> zscan() {
+        return new ZSetItr(zsl.iterator());
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Object2LongMember<K>> iterator() {
+        return zscan();
+    }
+
+    /**
+     * 获取zset的内存视图，格式与{@link Object2LongZSet#dump()}一致，用于测试
+     *
+     * @return string
+     */
+    public String dump() {
+        final StringBuilder sb = new StringBuilder("{level = 0, nodeArray:[\n");
+        int rank = 0;
+        for (Iterator<Entry<K>> itr = zsl.iterator(); itr.hasNext(); ) {
+            final Entry<K> entry = itr.next();
+            sb.append("{rank:").append(rank++)
+                    .append(",obj:").append(entry.obj)
+                    .append(",score:").append(entry.score);
+
+            if (itr.hasNext()) {
+                sb.append("},\n");
+            } else {
+                sb.append("}\n");
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    private static int count(Iterator<?> itr) {
+        int count = 0;
+        while (itr.hasNext()) {
+            itr.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 跳过rank个条目以后，读取count个条目
+     *
+     * @param rank 排名(0-based)，调用者需要保证大于等于0
+     */
+    private List<Object2LongMember<K>> rangeByRank(Iterator<Entry<K>> itr, int rank, int count) {
+        assert rank >= 0;
+        for (int index = 0; index < rank && itr.hasNext(); index++) {
+            itr.next();
+        }
+        final List<Object2LongMember<K>> result = new ArrayList<>(Math.min(count, 64));
+        while (result.size() < count && itr.hasNext()) {
+            final Entry<K> entry = itr.next();
+            result.add(new Object2LongMember<>(entry.obj, entry.score));
+        }
+        return result;
+    }
+
+    /**
+     * 计算两个score的和
+     */
+    private long sum(long score1, long score2) {
+        return scoreHandler.sum(score1, score2);
+    }
+
+    /**
+     * @param start   起始分数
+     * @param startEx 是否去除起始分数
+     * @param end     截止分数
+     * @param endEx   是否去除截止分数
+     * @return spec
+     */
+    private ZLongScoreRangeSpec newRangeSpec(long start, boolean startEx, long end, boolean endEx) {
+        if (compareScore(start, end) <= 0) {
+            return new ZLongScoreRangeSpec(start, startEx, end, endEx);
+        } else {
+            return new ZLongScoreRangeSpec(end, endEx, start, startEx);
+        }
+    }
+
+    /**
+     * 值是否大于等于下限
+     */
+    private boolean zslValueGteMin(long value, ZLongScoreRangeSpec spec) {
+        return spec.minex ? compareScore(value, spec.min) > 0 : compareScore(value, spec.min) >= 0;
+    }
+
+    /**
+     * 值是否小于等于上限
+     */
+    private boolean zslValueLteMax(long value, ZLongScoreRangeSpec spec) {
+        return spec.maxex ? compareScore(value, spec.max) < 0 : compareScore(value, spec.max) <= 0;
+    }
+
+    /**
+     * 比较两个条目，分数作为第一排序条件，然后，相同分数的成员按照键排序。
+     * obj为null的条目只用于查找，它排在相同分数的所有成员之前。
+     */
+    private int compareEntry(Entry<K> a, Entry<K> b) {
+        final int scoreCompareR = compareScore(a.score, b.score);
+        if (scoreCompareR != 0) {
+            return scoreCompareR;
+        }
+        if (a.obj == null) {
+            return b.obj == null ? 0 : -1;
+        }
+        if (b.obj == null) {
+            return 1;
+        }
+        return objComparator.compare(a.obj, b.obj);
+    }
+
+    /**
+     * 比较两个分数的大小
+     *
+     * @return 0表示相等
+     */
+    private int compareScore(long score1, long score2) {
+        return scoreHandler.compare(score1, score2);
+    }
+
+    /**
+     * 跳表中的条目 - 不可变对象，修改分数时使用新的条目替换
+     */
+    private static final class Entry<K> {
+
+        final long score;
+        /**
+         * 为null时表示查找用的边界
+         */
+        final K obj;
+
+        Entry(long score, K obj) {
+            this.score = score;
+            this.obj = obj;
+        }
+    }
+
+    /**
+     * ZSet迭代器 - 弱一致性
+     */
+    private class ZSetItr implements Iterator<Object2LongMember<K>> {
+
+        private final Iterator<Entry<K>> itr;
+        private Entry<K> lastReturned;
+
+        ZSetItr(Iterator<Entry<K>> itr) {
+            this.itr = itr;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return itr.hasNext();
+        }
+
+        @Override
+        public Object2LongMember<K> next() {
+            lastReturned = itr.next();
+            return new Object2LongMember<>(lastReturned.obj, lastReturned.score);
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            // 如果成员已经被其它线程更新，则不删除
+            removeEntry(lastReturned);
+            lastReturned = null;
+        }
+    }
+}
@@ -0,0 +1,1593 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+
+import com.wjybxx.zset.ZSetUtils;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.*;
+
+/**
+ * key为泛型，score为long类型的sorted set - 参考redis的zset实现
+ * 与{@link Object2LongZSet}的区别在于排序引擎：这里使用带计数的B+树(order statistic B+tree)代替跳表，接口和语义完全一致，可以按实例选择。
+ * <p>
+ * 跳表的高度是随机的，查找路径的长度不稳定，且每前进一步都是一次依赖上一次结果的内存访问(指针追逐)。
+ * B+树的高度稳定为 log(N)/log(B)，节点内的数据连续存储，非叶子节点记录了每个子树的成员数量，因此：
+ * 1. {@link #zrank(Object)}/{@link #zrevrank(Object)}只需要从根节点下降一次，累加左侧子树的数量。
+ * 2. {@link #zrangeByRank(int, int)}等接口下降一次定位到叶子节点后，顺着叶子链表顺序读取。
+ * 适合插入频繁、或者对排名区间查询(分页)延迟敏感的排行榜。
+ * 注意：{@link #zrank(Object)}并不比跳表快，跳表通过字典直接找到成员的节点，而这里需要在每一层的节点内二分查找并累加子树的数量，
+ * 粗略的测试中(100万成员)，B+树的zrank比跳表慢10%~20%，见Object2LongBTreeZSetTest。
+ * <p>
+ * <b>排序规则</b>
+ * 有序集合里面的成员是不能重复的，都是唯一的，但是，不同成员间有可能有相同的分数。
+ * 当多个成员有相同的分数时，它们将按照键排序。
+ * 即：分数作为第一排序条件，键作为第二排序条件，当分数相同时，比较键的大小。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. ZSET中的排名从0开始（提供给用户的接口，排名都从0开始）
+ * 2. ZSET使用键的<b>compare</b>结果判断两个键是否相等，而不是equals方法，因此必须保证键不同时compare结果一定不为0。
+ * 3. 又由于key需要存放于{@link Object2LongOpenHashMap}中，因此“相同”的key必须有相同的hashCode，且equals方法返回true。
+ * <b>手动加粗:key的关键属性最好是number或string且是final的</b>
+ * <p>
+ * 4. 我们允许zset中的成员是降序排列的-{@link LongScoreHandler}决定，可以更好的支持根据score降序的排行榜，
+ * 而不是强迫你总是调用反转系列接口{@code zrev...}，那样的设计不符合人的正常思维，就很容易出错。
+ * <p>
+ * 5. 我们修改了redis中根据min和max查找和删除成员的接口，修改为start和end，当根据score范围查找或删除元素时，并不要求start小于等于end，我们会处理它们的大小关系。<br>
+ * Q: 为什么要这么改动呢？<br>
+ * A: 举个栗子：假如ScoreHandler比较两个long类型的score是逆序的，现在要删除排行榜中 1-10000分的成员，如果方法告诉你要传入的的是min和max，
+ * 你会很自然的传入想到 (1,10000) 而不是 (10000,1)。因此，如果接口不做调整，这个接口就太反人类了，谁用都得错。
+ *
+ * <p>
+ * 这里只实现了redis zset中的几个常用的接口，扩展不是太麻烦，可以自己根据需要实现。
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@NotThreadSafe
+public class Object2LongBTreeZSet<K> implements Iterable<Object2LongMember<K>> {
+
+    /**
+     * member -> score
+     * 使用基础类型值的开放寻址map，避免每次写入都创建一个Long对象。
+     */
+    private final Object2LongMap<K> dict = new Object2LongOpenHashMap<>(ZSetUtils.INIT_CAPACITY);
+    private final BTree<K> tree;
+
+    private Object2LongBTreeZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler) {
+        this.tree = new BTree<>(keyComparator, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为string类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongBTreeZSet<String> newStringKeyZSet(LongScoreHandler scoreHandler) {
+        return new Object2LongBTreeZSet<>(String::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为long类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongBTreeZSet<Long> newLongKeyZSet(LongScoreHandler scoreHandler) {
+        return new Object2LongBTreeZSet<>(Long::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为int类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongBTreeZSet<Integer> newIntKeyZSet(LongScoreHandler scoreHandler) {
+        return new Object2LongBTreeZSet<>(Integer::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个自定义键类型的zset
+     *
+     * @param keyComparator 键比较器，当score比较结果相等时，比较key - 注意：比较结果必须与key对象的状态改变无关。
+     *                      <b>请仔细阅读类文档中的注意事项</b>。
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param <K>           键的类型
+     * @return zset
+     */
+    public static <K> Object2LongBTreeZSet<K> newGenericKeyZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler) {
+        return new Object2LongBTreeZSet<>(keyComparator, scoreHandler);
+    }
+    // -------------------------------------------------------- insert -----------------------------------------------
+
+    /**
+     * 往有序集合中新增一个成员。
+     * 如果指定添加的成员已经是有序集合里面的成员，则会更新成员的分数（score）并更新到正确的排序位置。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     */
+    public void zadd(final long score, @Nonnull final K member) {
+        // 基础类型的map无法通过返回值区分成员是否存在，因此需要先判断，但可以避免装箱
+        if (dict.containsKey(member)) {
+            final long oldScore = dict.put(member, score);
+            // Q: 为何不再判断分数相等？
+            // A: 这里假定分数相等的情况很少出现，可减少大量无用的判断
+            tree.delete(oldScore, member);
+        } else {
+            dict.put(member, score);
+        }
+        tree.insert(score, member);
+    }
+
+    /**
+     * 往有序集合中新增一个成员。当且仅当该成员不在有序集合时才添加。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     * @return 添加成功则返回true，否则返回false。
+     */
+    public boolean zaddnx(final long score, @Nonnull final K member) {
+        if (dict.containsKey(member)) {
+            return false;
+        }
+        dict.put(member, score);
+        tree.insert(score, member);
+        return true;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，就在有序集中添加一个member，score是increment（就好像它之前的score是0）
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值
+     */
+    public long zincrby(long increment, @Nonnull K member) {
+        final long score = dict.containsKey(member) ? tree.sum(dict.getLong(member), increment) : increment;
+        zadd(score, member);
+        return score;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，则放弃更新并返回0。
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值，如果更新失败，则返回0。
+     */
+    public long zincrbyxx(long increment, @Nonnull K member) {
+        if (!dict.containsKey(member)) {
+            return 0;
+        }
+
+        final long score = tree.sum(dict.getLong(member), increment);
+        zadd(score, member);
+        return score;
+    }
+
+    // -------------------------------------------------------- remove -----------------------------------------------
+
+    /**
+     * 删除指定成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回对应的score，否则返回null。
+     */
+    public Long zrem(@Nonnull K member) {
+        if (!dict.containsKey(member)) {
+            return null;
+        }
+        final long oldScore = dict.removeLong(member);
+        tree.delete(oldScore, member);
+        return oldScore;
+    }
+
+    // region 通过score删除成员
+
+    /**
+     * 移除zset中所有score值介于start和end之间(包括等于start或end)的成员
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return 删除的成员数目
+     */
+    public int zremrangeByScore(long start, long end) {
+        return zremrangeByScore(tree.newRangeSpec(start, end));
+    }
+
+    /**
+     * 移除zset中所有score值在范围区间的成员
+     *
+     * @param spec score范围区间
+     * @return 删除的成员数目
+     */
+    private int zremrangeByScore(@Nonnull LongScoreRangeSpec spec) {
+        return zremrangeByScore(tree.newRangeSpec(spec));
+    }
+
+    /**
+     * 移除zset中所有score值在范围区间的成员
+     *
+     * @param spec score范围区间
+     * @return 删除的成员数目
+     */
+    private int zremrangeByScore(@Nonnull ZLongScoreRangeSpec spec) {
+        return tree.deleteRangeByScore(spec, dict);
+    }
+
+    // endregion
+
+    // region 通过排名删除成员
+
+    /**
+     * 删除并返回有序集合中的第一个成员。
+     * - 不使用min和max，是因为score的比较方式是用户自定义的。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopFirst() {
+        return zremByRank(0);
+    }
+
+    /**
+     * 删除并返回有序集合中的最后一个成员。
+     * - 不使用min和max，是因为score的比较方式是用户自定义的。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopLast() {
+        return zremByRank(tree.length() - 1);
+    }
+
+    /**
+     * 删除指定排名的成员
+     *
+     * @param rank 排名 0-based
+     * @return 删除成功则返回该排名对应的数据，否则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zremByRank(int rank) {
+        if (rank < 0 || rank >= tree.length()) {
+            return null;
+        }
+        return tree.deleteByRank(rank, dict);
+    }
+
+    /**
+     * 删除指定排名范围的全部成员，start和end都是从0开始的。
+     * 排名0表示分数最小的成员。
+     * start和end都可以是负数，此时它们表示从最高排名成员开始的偏移量，eg: -1表示最高排名的成员， -2表示第二高分的成员，以此类推。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))+O(M) with N being the number of elements in the sorted set
+     * and M the number of elements removed by the operation
+     *
+     * @param start 起始排名
+     * @param end   截止排名
+     * @return 删除的成员数目
+     */
+    public int zremrangeByRank(int start, int end) {
+        final int length = tree.length();
+
+        start = ZSetUtils.convertStartRank(start, length);
+        end = ZSetUtils.convertEndRank(end, length);
+
+        if (ZSetUtils.isRankRangeEmpty(start, end, length)) {
+            return 0;
+        }
+
+        return tree.deleteRangeByRank(start, end, dict);
+    }
+
+    // endregion
+
+    // region 限制成员数量
+
+    /**
+     * 删除zset中尾部多余的成员，将zset中的成员数量限制到count之内。
+     * 保留前面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zlimit(int count) {
+        if (tree.length() <= count) {
+            return 0;
+        }
+        return tree.deleteRangeByRank(count, tree.length() - 1, dict);
+    }
+
+    /**
+     * 删除zset中头部多余的成员，将zset中的成员数量限制到count之内。
+     * - 保留后面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zrevlimit(int count) {
+        if (tree.length() <= count) {
+            return 0;
+        }
+        return tree.deleteRangeByRank(0, tree.length() - count - 1, dict);
+    }
+    // endregion
+
+    // -------------------------------------------------------- query -----------------------------------------------
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，返回null - 这里返回任意的基础值都是不合理的，因此必须返回null。
+     *
+     * @param member 成员id
+     * @return score
+     */
+    public Long zscore(@Nonnull K member) {
+        if (!dict.containsKey(member)) {
+            return null;
+        }
+        return dict.getLong(member);
+    }
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，则返回给定的默认值 - 该方法不会产生装箱。
+     *
+     * @param member       成员id
+     * @param defaultValue 成员不存在时返回的值
+     * @return score
+     */
+    public long zscoreOrDefault(@Nonnull K member, long defaultValue) {
+        return dict.getOrDefault(member, defaultValue);
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(@Nonnull K member) {
+        return dict.containsKey(member);
+    }
+
+    /**
+     * 返回有序集中成员member的排名。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrank(@Nonnull K member) {
+        if (!dict.containsKey(member)) {
+            return -1;
+        }
+        final long score = dict.getLong(member);
+        return tree.getRank(score, member);
+    }
+
+    /**
+     * 返回有序集中成员member的逆序排名。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrevrank(@Nonnull K member) {
+        if (!dict.containsKey(member)) {
+            return -1;
+        }
+        final long score = dict.getLong(member);
+        return tree.length() - 1 - tree.getRank(score, member);
+    }
+
+    /**
+     * 获取指定排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Object2LongMember<K> zmemberByRank(int rank) {
+        if (rank < 0 || rank >= tree.length()) {
+            return null;
+        }
+        return tree.getMemberByRank(rank);
+    }
+
+    /**
+     * 获取指定逆序排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Object2LongMember<K> zrevmemberByRank(int rank) {
+        if (rank < 0 || rank >= tree.length()) {
+            return null;
+        }
+        return tree.getMemberByRank(tree.length() - 1 - rank);
+    }
+
+    // region 通过分数查询
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员）。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(long start, long end) {
+        return zrangeByScoreWithOptions(tree.newRangeSpec(start, end), 0, -1, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(LongScoreRangeSpec spec) {
+        return zrangeByScoreWithOptions(tree.newRangeSpec(spec), 0, -1, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员），返回的成员按照逆序排列。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(final long start, final long end) {
+        return zrangeByScoreWithOptions(tree.newRangeSpec(start, end), 0, -1, true);
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围之间的所有成员，返回的成员按照逆序排列。
+     *
+     * @param rangeSpec score范围区间
+     * @return 删除的成员数目
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(LongScoreRangeSpec rangeSpec) {
+        return zrangeByScoreWithOptions(tree.newRangeSpec(rangeSpec), 0, -1, true);
+    }
+
+    /**
+     * 返回zset中指定分数区间内的成员，并按照指定顺序返回
+     *
+     * @param rangeSpec score范围描述信息
+     * @param offset    偏移量(用于分页)  大于等于0
+     * @param limit     返回的成员数量(用于分页) 小于0表示不限制
+     * @param reverse   是否逆序
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScoreWithOptions(final LongScoreRangeSpec rangeSpec, int offset, int limit, boolean reverse) {
+        return zrangeByScoreWithOptions(tree.newRangeSpec(rangeSpec), offset, limit, reverse);
+    }
+
+    /**
+     * 返回zset中指定分数区间内的成员，并按照指定顺序返回
+     *
+     * @param range   score范围描述信息
+     * @param offset  偏移量(用于分页)  大于等于0
+     * @param limit   返回的成员数量(用于分页) 小于0表示不限制
+     * @param reverse 是否逆序
+     * @return memberInfo
+     */
+    private List<Object2LongMember<K>> zrangeByScoreWithOptions(final ZLongScoreRangeSpec range, int offset, int limit, boolean reverse) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset" + ": " + offset + " (expected: >= 0)");
+        }
+
+        // 分数在范围内的成员的排名区间 [firstRank, lastRank]
+        final int firstRank = tree.countLtMin(range);
+        final int lastRank = tree.countLteMax(range) - 1;
+
+        /* No "first" element in the specified interval. */
+        if (firstRank > lastRank || offset > lastRank - firstRank) {
+            return new ArrayList<>();
+        }
+
+        /* 这里将offset和limit转换为排名区间，limit小于0时，表示不限制 */
+        int rangeLen = lastRank - firstRank + 1 - offset;
+        if (limit >= 0 && limit < rangeLen) {
+            rangeLen = limit;
+        }
+
+        if (reverse) {
+            return tree.rangeByRank(lastRank - offset, rangeLen, true);
+        } else {
+            return tree.rangeByRank(firstRank + offset, rangeLen, false);
+        }
+    }
+    // endregion
+
+    // region 通过排名查询
+
+    /**
+     * 查询指定排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, false);
+    }
+
+    /**
+     * 查询指定逆序排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, true);
+    }
+
+    /**
+     * 查询指定排名区间的成员id和分数，start和end都是从0开始的。
+     *
+     * @param start   起始排名(0-based) inclusive
+     * @param end     截止排名(0-based) inclusive
+     * @param reverse 是否逆序返回
+     * @return memberInfo
+     */
+    private List<Object2LongMember<K>> zrangeByRankInternal(int start, int end, boolean reverse) {
+        final int length = tree.length();
+
+        start = ZSetUtils.convertStartRank(start, length);
+        end = ZSetUtils.convertEndRank(end, length);
+
+        if (ZSetUtils.isRankRangeEmpty(start, end, length)) {
+            return new ArrayList<>();
+        }
+
+        final int rangeLen = end - start + 1;
+        if (reverse) {
+            return tree.rangeByRank(length - 1 - start, rangeLen, true);
+        } else {
+            return tree.rangeByRank(start, rangeLen, false);
+        }
+    }
+    // endregion
+
+    // region 统计分数人数
+
+    /**
+     * 返回有序集key中，score值在指定区间(包括score值等于start或end)的成员
+     *
+     * @param start 起始分数
+     * @param end   截止分数
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(long start, long end) {
+        return zcountInternal(tree.newRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     *
+     * @param rangeSpec score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(LongScoreRangeSpec rangeSpec) {
+        return zcountInternal(tree.newRangeSpec(rangeSpec));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     *
+     * @param range score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    private int zcountInternal(final ZLongScoreRangeSpec range) {
+        // 分数在范围内的成员是连续的，因此 数量 = 小于等于上限的成员数 - 小于下限的成员数
+        final int count = tree.countLteMax(range) - tree.countLtMin(range);
+        return Math.max(count, 0);
+    }
+
+    /**
+     * @return zset中的成员数量
+     */
+    public int zcard() {
+        return tree.length();
+    }
+
+    // endregion
+
+    // region 迭代
+
+    /**
+     * 迭代有序集中的所有元素
+     *
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Object2LongMember<K>> zscan() {
+        return zscan(0);
+    }
+
+    /**
+     * 从指定偏移量开始迭代有序集中的元素
+     *
+     * @param offset 偏移量，如果小于等于0，则等价于{@link #zscan()}
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Object2LongMember<K>> zscan(int offset) {
+        if (offset <= 0) {
+            return new ZSetItr(0);
+        }
+
+        if (offset >= tree.length()) {
+            return new ZSetItr(tree.length());
+        }
+
+        return new ZSetItr(offset);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Object2LongMember<K>> iterator() {
+        return zscan(0);
+    }
+    // endregion
+
+    /**
+     * @return zset中当前的成员信息，用于测试
+     */
+    public String dump() {
+        return tree.dump();
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    /**
+     * 带计数的B+树
+     * 1. 所有成员都存储在叶子节点中，叶子节点之间通过双向链表链接，用于范围查询。
+     * 2. 非叶子节点存储子节点，以及每个子节点所在子树的成员数量，用于计算排名。
+     * 3. 非叶子节点的第i个分隔键(i >= 1)满足：第i个子树左边的成员都小于它，第i个子树及其右边的成员都大于等于它。
+     * 删除成员时不必更新分隔键，分隔键仍然满足上面的条件。
+     * <p>
+     * 注意：与跳表不同，这里的排名是从0开始的。
+     *
+     * @author agent
+     * @version 1.0
+     * date - 2026/10/16
+     */
+    private static class BTree<K> {
+
+        /**
+         * 节点的最大容量 - 叶子节点的成员数量，非叶子节点的子节点数量
+         * 节点达到最大容量时分裂为两个节点。
+         */
+        private static final int MAX_SIZE = 64;
+        /**
+         * 节点的最小容量，节点小于最小容量时，从兄弟节点借用或与兄弟节点合并。
+         * 这里小于{@code MAX_SIZE / 2}，可以避免在边界附近交替的插入删除导致频繁的分裂与合并。
+         */
+        private static final int MIN_SIZE = MAX_SIZE / 4;
+
+        private final Comparator<K> objComparator;
+        private final LongScoreHandler scoreHandler;
+
+        /**
+         * 修改次数 - 防止错误的迭代
+         */
+        private int modCount = 0;
+
+        /**
+         * 根节点，成员较少时，根节点就是叶子节点
+         */
+        private Node root;
+        /**
+         * 第一个叶子节点
+         */
+        private LeafNode<K> head;
+        /**
+         * 最后一个叶子节点
+         */
+        private LeafNode<K> tail;
+
+        /**
+         * 成员数量
+         */
+        private int length = 0;
+
+        /**
+         * 节点分裂时，新节点的分隔键 - 避免创建额外的对象返回多个值
+         */
+        private long splitScore;
+        private K splitObj;
+
+        /**
+         * {@link #locate(int)}找到的成员在叶子节点中的下标 - 避免创建额外的对象返回多个值
+         */
+        private int locateIndex;
+
+        BTree(Comparator<K> objComparator, LongScoreHandler scoreHandler) {
+            this.objComparator = objComparator;
+            this.scoreHandler = scoreHandler;
+            final LeafNode<K> leafNode = new LeafNode<>();
+            this.root = leafNode;
+            this.head = leafNode;
+            this.tail = leafNode;
+        }
+
+        // region 插入
+
+        /**
+         * 插入一个新的成员
+         * 这里假定成员已经不存在（直到调用方执行该方法）。
+         *
+         * @param score 分数
+         * @param obj   成员
+         */
+        void insert(long score, K obj) {
+            final Node right = insert(root, score, obj);
+            length++;
+            modCount++;
+
+            if (right != null) {
+                // 根节点分裂，树的高度增加
+                final InnerNode newRoot = new InnerNode();
+                newRoot.children[0] = root;
+                newRoot.counts[0] = length - countOf(right);
+                newRoot.children[1] = right;
+                newRoot.counts[1] = countOf(right);
+                newRoot.sepScores[1] = splitScore;
+                newRoot.sepObjs[1] = splitObj;
+                newRoot.size = 2;
+                root = newRoot;
+                splitObj = null;
+            }
+        }
+
+        /**
+         * 插入成员到指定子树
+         *
+         * @return 如果节点分裂，则返回分裂出的右侧节点，分隔键存储在{@link #splitScore}和{@link #splitObj}中。
+         */
+        @SuppressWarnings("unchecked")
+        private Node insert(Node node, long score, K obj) {
+            if (node instanceof LeafNode) {
+                final LeafNode<K> leafNode = (LeafNode<K>) node;
+                final int index = leafNode.lowerBound(this, score, obj);
+                leafNode.insert(index, score, obj);
+                return leafNode.size == MAX_SIZE ? splitLeaf(leafNode) : null;
+            }
+
+            final InnerNode innerNode = (InnerNode) node;
+            final int childIndex = innerNode.childIndex(this, score, obj);
+            innerNode.counts[childIndex]++;
+
+            final Node right = insert(innerNode.children[childIndex], score, obj);
+            if (right == null) {
+                return null;
+            }
+
+            // 子节点分裂，将新节点插入到子节点的右侧
+            final int rightCount = countOf(right);
+            innerNode.counts[childIndex] -= rightCount;
+            innerNode.insert(childIndex + 1, right, rightCount, splitScore, splitObj);
+            return innerNode.size == MAX_SIZE ? splitInner(innerNode) : null;
+        }
+
+        /**
+         * 将叶子节点的后一半成员移动到新的节点
+         *
+         * @return 新节点
+         */
+        private LeafNode<K> splitLeaf(LeafNode<K> leafNode) {
+            final LeafNode<K> right = new LeafNode<>();
+            final int moved = leafNode.size - leafNode.size / 2;
+            final int from = leafNode.size - moved;
+            System.arraycopy(leafNode.scores, from, right.scores, 0, moved);
+            System.arraycopy(leafNode.objs, from, right.objs, 0, moved);
+            Arrays.fill(leafNode.objs, from, leafNode.size, null);
+            leafNode.size = from;
+            right.size = moved;
+
+            // 链接叶子节点
+            right.prev = leafNode;
+            right.next = leafNode.next;
+            if (leafNode.next != null) {
+                leafNode.next.prev = right;
+            } else {
+                tail = right;
+            }
+            leafNode.next = right;
+
+            // 右侧节点的第一个成员就是分隔键
+            splitScore = right.scores[0];
+            splitObj = right.obj(0);
+            return right;
+        }
+
+        /**
+         * 将非叶子节点的后一半子节点移动到新的节点
+         *
+         * @return 新节点
+         */
+        @SuppressWarnings("unchecked")
+        private InnerNode splitInner(InnerNode innerNode) {
+            final InnerNode right = new InnerNode();
+            final int moved = innerNode.size - innerNode.size / 2;
+            final int from = innerNode.size - moved;
+            System.arraycopy(innerNode.children, from, right.children, 0, moved);
+            System.arraycopy(innerNode.counts, from, right.counts, 0, moved);
+            System.arraycopy(innerNode.sepScores, from, right.sepScores, 0, moved);
+            System.arraycopy(innerNode.sepObjs, from, right.sepObjs, 0, moved);
+
+            // 新节点的第一个分隔键上升到父节点
+            splitScore = right.sepScores[0];
+            splitObj = (K) right.sepObjs[0];
+            right.sepObjs[0] = null;
+
+            Arrays.fill(innerNode.children, from, innerNode.size, null);
+            Arrays.fill(innerNode.sepObjs, from, innerNode.size, null);
+            innerNode.size = from;
+            right.size = moved;
+            return right;
+        }
+
+        // endregion
+
+        // region 删除
+
+        /**
+         * 删除指定成员
+         * 这里假定成员一定存在（直到调用方执行该方法）。
+         *
+         * @param score 分数
+         * @param obj   成员
+         */
+        void delete(long score, K obj) {
+            delete(root, score, obj);
+            afterDelete();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void delete(Node node, long score, K obj) {
+            if (node instanceof LeafNode) {
+                final LeafNode<K> leafNode = (LeafNode<K>) node;
+                final int index = leafNode.lowerBound(this, score, obj);
+                assert index < leafNode.size && objEquals(leafNode.obj(index), obj);
+                leafNode.remove(index);
+                return;
+            }
+
+            final InnerNode innerNode = (InnerNode) node;
+            final int childIndex = innerNode.childIndex(this, score, obj);
+            innerNode.counts[childIndex]--;
+
+            final Node child = innerNode.children[childIndex];
+            delete(child, score, obj);
+            if (child.size < MIN_SIZE) {
+                rebalance(innerNode, childIndex);
+            }
+        }
+
+        /**
+         * 删除指定排名的成员
+         *
+         * @param rank 排名 0-based
+         * @param dict member -> score的字典
+         * @return 删除的成员
+         */
+        Object2LongMember<K> deleteByRank(int rank, Object2LongMap<K> dict) {
+            final Object2LongMember<K> member = getMemberByRank(rank);
+            dict.removeLong(member.getMember());
+            deleteByRank(root, rank);
+            afterDelete();
+            return member;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deleteByRank(Node node, int rank) {
+            if (node instanceof LeafNode) {
+                ((LeafNode<K>) node).remove(rank);
+                return;
+            }
+
+            final InnerNode innerNode = (InnerNode) node;
+            int childIndex = 0;
+            while (rank >= innerNode.counts[childIndex]) {
+                rank -= innerNode.counts[childIndex];
+                childIndex++;
+            }
+            innerNode.counts[childIndex]--;
+
+            final Node child = innerNode.children[childIndex];
+            deleteByRank(child, rank);
+            if (child.size < MIN_SIZE) {
+                rebalance(innerNode, childIndex);
+            }
+        }
+
+        /**
+         * 删除指定排名区间的所有成员。包括start和end。
+         *
+         * @param start 起始排名 inclusive 0-based
+         * @param end   截止排名 inclusive 0-based
+         * @param dict  member -> score的字典
+         * @return 删除的成员数量
+         */
+        int deleteRangeByRank(int start, int end, Object2LongMap<K> dict) {
+            // 删除一个成员之后，后面的成员排名前移，因此总是删除start处的成员
+            final int removed = end - start + 1;
+            for (int count = 0; count < removed; count++) {
+                deleteByRank(start, dict);
+            }
+            return removed;
+        }
+
+        /**
+         * 删除指定分数区间的所有成员。
+         *
+         * @param range 范围描述信息
+         * @param dict  member -> score的字典
+         * @return 删除的成员数量
+         */
+        int deleteRangeByScore(ZLongScoreRangeSpec range, Object2LongMap<K> dict) {
+            final int start = countLtMin(range);
+            final int end = countLteMax(range) - 1;
+            if (start > end) {
+                return 0;
+            }
+            return deleteRangeByRank(start, end, dict);
+        }
+
+        /**
+         * 删除成员后，如果根节点只剩下一个子节点，则降低树的高度
+         */
+        private void afterDelete() {
+            while (root instanceof InnerNode && root.size == 1) {
+                root = ((InnerNode) root).children[0];
+            }
+            length--;
+            modCount++;
+        }
+
+        /**
+         * 子节点的数量小于最小容量，从兄弟节点借用一个成员(子节点)，或者与兄弟节点合并。
+         *
+         * @param parent     父节点
+         * @param childIndex 数量不足的子节点的下标
+         */
+        @SuppressWarnings("unchecked")
+        private void rebalance(InnerNode parent, int childIndex) {
+            if (parent.size < 2) {
+                // 只有根节点可能出现，由afterDelete处理
+                return;
+            }
+            // 总是处理 leftIndex 和 leftIndex + 1 两个相邻的子节点
+            final int leftIndex = childIndex + 1 < parent.size ? childIndex : childIndex - 1;
+            final int rightIndex = leftIndex + 1;
+            final Node left = parent.children[leftIndex];
+            final Node right = parent.children[rightIndex];
+
+            if (left.size + right.size < MAX_SIZE) {
+                // 合并到左侧节点
+                if (left instanceof LeafNode) {
+                    mergeLeaf((LeafNode<K>) left, (LeafNode<K>) right);
+                } else {
+                    mergeInner((InnerNode) left, (InnerNode) right, parent.sepScores[rightIndex], parent.sepObjs[rightIndex]);
+                }
+                parent.counts[leftIndex] += parent.counts[rightIndex];
+                parent.remove(rightIndex);
+                return;
+            }
+
+            // 从兄弟节点借用一个
+            final int moved;
+            if (left instanceof LeafNode) {
+                final LeafNode<K> leftLeaf = (LeafNode<K>) left;
+                final LeafNode<K> rightLeaf = (LeafNode<K>) right;
+                if (childIndex == leftIndex) {
+                    // 右侧节点的第一个成员移动到左侧节点的尾部
+                    leftLeaf.insert(leftLeaf.size, rightLeaf.scores[0], rightLeaf.obj(0));
+                    rightLeaf.remove(0);
+                    moved = 1;
+                } else {
+                    // 左侧节点的最后一个成员移动到右侧节点的头部
+                    final int lastIndex = leftLeaf.size - 1;
+                    rightLeaf.insert(0, leftLeaf.scores[lastIndex], leftLeaf.obj(lastIndex));
+                    leftLeaf.remove(lastIndex);
+                    moved = -1;
+                }
+                parent.sepScores[rightIndex] = rightLeaf.scores[0];
+                parent.sepObjs[rightIndex] = rightLeaf.objs[0];
+            } else {
+                final InnerNode leftInner = (InnerNode) left;
+                final InnerNode rightInner = (InnerNode) right;
+                if (childIndex == leftIndex) {
+                    // 右侧节点的第一个子节点移动到左侧节点的尾部，父节点的分隔键下降，右侧节点的分隔键上升
+                    moved = rightInner.counts[0];
+                    leftInner.insert(leftInner.size, rightInner.children[0], moved, parent.sepScores[rightIndex], parent.sepObjs[rightIndex]);
+                    parent.sepScores[rightIndex] = rightInner.sepScores[1];
+                    parent.sepObjs[rightIndex] = rightInner.sepObjs[1];
+                    rightInner.remove(0);
+                } else {
+                    // 左侧节点的最后一个子节点移动到右侧节点的头部，父节点的分隔键下降，左侧节点的分隔键上升
+                    final int lastIndex = leftInner.size - 1;
+                    moved = -leftInner.counts[lastIndex];
+                    rightInner.insertFirst(leftInner.children[lastIndex], leftInner.counts[lastIndex], parent.sepScores[rightIndex], parent.sepObjs[rightIndex]);
+                    parent.sepScores[rightIndex] = leftInner.sepScores[lastIndex];
+                    parent.sepObjs[rightIndex] = leftInner.sepObjs[lastIndex];
+                    leftInner.remove(lastIndex);
+                }
+            }
+            parent.counts[leftIndex] += moved;
+            parent.counts[rightIndex] -= moved;
+        }
+
+        private void mergeLeaf(LeafNode<K> left, LeafNode<K> right) {
+            System.arraycopy(right.scores, 0, left.scores, left.size, right.size);
+            System.arraycopy(right.objs, 0, left.objs, left.size, right.size);
+            left.size += right.size;
+
+            left.next = right.next;
+            if (right.next != null) {
+                right.next.prev = left;
+            } else {
+                tail = left;
+            }
+        }
+
+        private void mergeInner(InnerNode left, InnerNode right, long sepScore, Object sepObj) {
+            // 父节点的分隔键下降为右侧节点第一个子节点的分隔键
+            right.sepScores[0] = sepScore;
+            right.sepObjs[0] = sepObj;
+            System.arraycopy(right.children, 0, left.children, left.size, right.size);
+            System.arraycopy(right.counts, 0, left.counts, left.size, right.size);
+            System.arraycopy(right.sepScores, 0, left.sepScores, left.size, right.size);
+            System.arraycopy(right.sepObjs, 0, left.sepObjs, left.size, right.size);
+            left.size += right.size;
+        }
+
+        // endregion
+
+        // region 查询
+
+        /**
+         * 查询成员的排名
+         * 这里假定成员一定存在（直到调用方执行该方法）。
+         *
+         * @param score 分数
+         * @param obj   成员
+         * @return 排名 0-based
+         */
+        @SuppressWarnings("unchecked")
+        int getRank(long score, K obj) {
+            int rank = 0;
+            Node node = root;
+            while (node instanceof InnerNode) {
+                final InnerNode innerNode = (InnerNode) node;
+                final int childIndex = innerNode.childIndex(this, score, obj);
+                rank += innerNode.countBefore(childIndex);
+                node = innerNode.children[childIndex];
+            }
+            return rank + ((LeafNode<K>) node).lowerBound(this, score, obj);
+        }
+
+        /**
+         * 查找指定排名的成员所在的叶子节点，成员在叶子节点中的下标存储在{@link #locateIndex}中。
+         *
+         * @param rank 排名 0-based，必须小于length
+         * @return 叶子节点
+         */
+        @SuppressWarnings("unchecked")
+        private LeafNode<K> locate(int rank) {
+            Node node = root;
+            while (node instanceof InnerNode) {
+                final InnerNode innerNode = (InnerNode) node;
+                int childIndex = 0;
+                while (rank >= innerNode.counts[childIndex]) {
+                    rank -= innerNode.counts[childIndex];
+                    childIndex++;
+                }
+                node = innerNode.children[childIndex];
+            }
+            locateIndex = rank;
+            return (LeafNode<K>) node;
+        }
+
+        /**
+         * 查询指定排名的成员
+         *
+         * @param rank 排名 0-based，必须小于length
+         * @return member
+         */
+        Object2LongMember<K> getMemberByRank(int rank) {
+            final LeafNode<K> leafNode = locate(rank);
+            return new Object2LongMember<>(leafNode.obj(locateIndex), leafNode.scores[locateIndex]);
+        }
+
+        /**
+         * 从指定排名开始，顺序(或逆序)读取指定数量的成员
+         *
+         * @param rank    起始排名 0-based，必须小于length
+         * @param count   读取的数量
+         * @param reverse 是否逆序
+         * @return members
+         */
+        List<Object2LongMember<K>> rangeByRank(int rank, int count, boolean reverse) {
+            final List<Object2LongMember<K>> result = new ArrayList<>(count);
+            LeafNode<K> leafNode = locate(rank);
+            int index = locateIndex;
+            while (count-- > 0 && leafNode != null) {
+                result.add(new Object2LongMember<>(leafNode.obj(index), leafNode.scores[index]));
+                if (reverse) {
+                    if (--index < 0) {
+                        leafNode = leafNode.prev;
+                        index = leafNode == null ? 0 : leafNode.size - 1;
+                    }
+                } else {
+                    if (++index == leafNode.size) {
+                        leafNode = leafNode.next;
+                        index = 0;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 统计分数小于范围下限的成员数量，也就是第一个分数在范围内的成员的排名。
+         *
+         * @param range 范围描述信息
+         * @return 成员数量
+         */
+        @SuppressWarnings("unchecked")
+        int countLtMin(ZLongScoreRangeSpec range) {
+            int count = 0;
+            Node node = root;
+            while (node instanceof InnerNode) {
+                final InnerNode innerNode = (InnerNode) node;
+                // 最后一个分隔键小于下限的子树，它右边的子树都大于等于下限，左边的子树都小于下限
+                int childIndex = innerNode.size - 1;
+                while (childIndex > 0 && zslValueGteMin(innerNode.sepScores[childIndex], range)) {
+                    childIndex--;
+                }
+                count += innerNode.countBefore(childIndex);
+                node = innerNode.children[childIndex];
+            }
+
+            final LeafNode<K> leafNode = (LeafNode<K>) node;
+            int low = 0;
+            int high = leafNode.size;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (zslValueGteMin(leafNode.scores[mid], range)) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return count + low;
+        }
+
+        /**
+         * 统计分数小于等于范围上限的成员数量
+         *
+         * @param range 范围描述信息
+         * @return 成员数量
+         */
+        @SuppressWarnings("unchecked")
+        int countLteMax(ZLongScoreRangeSpec range) {
+            int count = 0;
+            Node node = root;
+            while (node instanceof InnerNode) {
+                final InnerNode innerNode = (InnerNode) node;
+                // 最后一个分隔键小于等于上限的子树，它右边的子树都大于上限，左边的子树都小于等于上限
+                int childIndex = innerNode.size - 1;
+                while (childIndex > 0 && !zslValueLteMax(innerNode.sepScores[childIndex], range)) {
+                    childIndex--;
+                }
+                count += innerNode.countBefore(childIndex);
+                node = innerNode.children[childIndex];
+            }
+
+            final LeafNode<K> leafNode = (LeafNode<K>) node;
+            int low = 0;
+            int high = leafNode.size;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (zslValueLteMax(leafNode.scores[mid], range)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return count + low;
+        }
+
+        /**
+         * @return 树中的成员数量
+         */
+        private int length() {
+            return length;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int countOf(Node node) {
+            if (node instanceof LeafNode) {
+                return node.size;
+            }
+            return ((InnerNode) node).countBefore(node.size);
+        }
+
+        // endregion
+
+        /**
+         * 计算两个score的和
+         */
+        private long sum(long score1, long score2) {
+            return scoreHandler.sum(score1, score2);
+        }
+
+        /**
+         * @param start 起始分数
+         * @param end   截止分数
+         * @return spec
+         */
+        private ZLongScoreRangeSpec newRangeSpec(long start, long end) {
+            return newRangeSpec(start, false, end, false);
+        }
+
+        /**
+         * @param rangeSpec 开放给用户的范围描述信息
+         * @return spec
+         */
+        private ZLongScoreRangeSpec newRangeSpec(LongScoreRangeSpec rangeSpec) {
+            return newRangeSpec(rangeSpec.getStart(), rangeSpec.isStartEx(), rangeSpec.getEnd(), rangeSpec.isEndEx());
+        }
+
+        /**
+         * @param start   起始分数
+         * @param startEx 是否去除起始分数
+         * @param end     截止分数
+         * @param endEx   是否去除截止分数
+         * @return spec
+         */
+        private ZLongScoreRangeSpec newRangeSpec(long start, boolean startEx, long end, boolean endEx) {
+            if (compareScore(start, end) <= 0) {
+                return new ZLongScoreRangeSpec(start, startEx, end, endEx);
+            } else {
+                return new ZLongScoreRangeSpec(end, endEx, start, startEx);
+            }
+        }
+
+        /**
+         * 值是否大于等于下限
+         *
+         * @param value 要比较的score
+         * @param spec  范围描述信息
+         * @return true/false
+         */
+        boolean zslValueGteMin(long value, ZLongScoreRangeSpec spec) {
+            return spec.minex ? compareScore(value, spec.min) > 0 : compareScore(value, spec.min) >= 0;
+        }
+
+        /**
+         * 值是否小于等于上限
+         *
+         * @param value 要比较的score
+         * @param spec  范围描述信息
+         * @return true/false
+         */
+        boolean zslValueLteMax(long value, ZLongScoreRangeSpec spec) {
+            return spec.maxex ? compareScore(value, spec.max) < 0 : compareScore(value, spec.max) <= 0;
+        }
+
+        /**
+         * 比较score和key的大小，分数作为第一排序条件，然后，相同分数的成员按照字典规则相对排序
+         *
+         * @return 0 表示equals
+         */
+        private int compareScoreAndObj(long scoreA, K objA, long scoreB, K objB) {
+            final int scoreCompareR = compareScore(scoreA, scoreB);
+            if (scoreCompareR != 0) {
+                return scoreCompareR;
+            }
+            return compareObj(objA, objB);
+        }
+
+        /**
+         * 比较两个成员的key，<b>必须保证当且仅当两个键相等的时候返回0</b>
+         * 字符串带有这样的特性。
+         */
+        private int compareObj(@Nonnull K objA, @Nonnull K objB) {
+            return objComparator.compare(objA, objB);
+        }
+
+        /**
+         * 判断两个对象是否相等，<b>必须保证当且仅当两个键相等的时候返回0</b>
+         *
+         * @return true/false
+         * @apiNote 使用compare == 0判断相等
+         */
+        private boolean objEquals(K objA, K objB) {
+            // 不使用equals，而是使用compare
+            return compareObj(objA, objB) == 0;
+        }
+
+        /**
+         * 比较两个分数的大小
+         *
+         * @return 0表示相等
+         */
+        private int compareScore(long score1, long score2) {
+            return scoreHandler.compare(score1, score2);
+        }
+
+        /**
+         * 获取B+树的堆内存视图
+         *
+         * @return string
+         */
+        String dump() {
+            final StringBuilder sb = new StringBuilder("{level = 0, nodeArray:[\n");
+            int rank = 0;
+            for (LeafNode<K> leafNode = head; leafNode != null; leafNode = leafNode.next) {
+                for (int index = 0; index < leafNode.size; index++) {
+                    sb.append("{rank:").append(rank++)
+                            .append(",obj:").append(leafNode.objs[index])
+                            .append(",score:").append(leafNode.scores[index]);
+
+                    if (rank < length) {
+                        sb.append("},\n");
+                    } else {
+                        sb.append("}\n");
+                    }
+                }
+            }
+            return sb.append("]}").toString();
+        }
+    }
+
+    /**
+     * B+树节点
+     */
+    private abstract static class Node {
+
+        /**
+         * 叶子节点表示成员数量，非叶子节点表示子节点数量
+         */
+        int size;
+    }
+
+    /**
+     * 叶子节点 - 存储成员
+     */
+    private static class LeafNode<K> extends Node {
+
+        final long[] scores = new long[BTree.MAX_SIZE];
+        final Object[] objs = new Object[BTree.MAX_SIZE];
+
+        LeafNode<K> prev;
+        LeafNode<K> next;
+
+        @SuppressWarnings("unchecked")
+        K obj(int index) {
+            return (K) objs[index];
+        }
+
+        /**
+         * 查找第一个大于等于给定成员的下标
+         */
+        int lowerBound(BTree<K> tree, long score, K obj) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (tree.compareScoreAndObj(scores[mid], obj(mid), score, obj) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        void insert(int index, long score, K obj) {
+            System.arraycopy(scores, index, scores, index + 1, size - index);
+            System.arraycopy(objs, index, objs, index + 1, size - index);
+            scores[index] = score;
+            objs[index] = obj;
+            size++;
+        }
+
+        void remove(int index) {
+            System.arraycopy(scores, index + 1, scores, index, size - index - 1);
+            System.arraycopy(objs, index + 1, objs, index, size - index - 1);
+            objs[--size] = null;
+        }
+    }
+
+    /**
+     * 非叶子节点 - 存储子节点，每个子树的成员数量，以及分隔键(第0个分隔键不使用)
+     */
+    private static class InnerNode extends Node {
+
+        final Node[] children = new Node[BTree.MAX_SIZE];
+        final int[] counts = new int[BTree.MAX_SIZE];
+        final long[] sepScores = new long[BTree.MAX_SIZE];
+        final Object[] sepObjs = new Object[BTree.MAX_SIZE];
+
+        /**
+         * 查找成员所在的子树：最后一个分隔键小于等于给定成员的子树
+         */
+        @SuppressWarnings("unchecked")
+        <K> int childIndex(BTree<K> tree, long score, K obj) {
+            int low = 1;
+            int high = size;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (tree.compareScoreAndObj(sepScores[mid], (K) sepObjs[mid], score, obj) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low - 1;
+        }
+
+        /**
+         * @return 前n个子树的成员数量
+         */
+        int countBefore(int n) {
+            int count = 0;
+            for (int index = 0; index < n; index++) {
+                count += counts[index];
+            }
+            return count;
+        }
+
+        void insert(int index, Node child, int count, long sepScore, Object sepObj) {
+            System.arraycopy(children, index, children, index + 1, size - index);
+            System.arraycopy(counts, index, counts, index + 1, size - index);
+            System.arraycopy(sepScores, index, sepScores, index + 1, size - index);
+            System.arraycopy(sepObjs, index, sepObjs, index + 1, size - index);
+            children[index] = child;
+            counts[index] = count;
+            sepScores[index] = sepScore;
+            sepObjs[index] = sepObj;
+            size++;
+        }
+
+        /**
+         * 插入子节点到头部，原来的第一个子节点使用给定的分隔键
+         */
+        void insertFirst(Node child, int count, long sepScore, Object sepObj) {
+            insert(0, child, count, 0, null);
+            sepScores[1] = sepScore;
+            sepObjs[1] = sepObj;
+        }
+
+        void remove(int index) {
+            System.arraycopy(children, index + 1, children, index, size - index - 1);
+            System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+            System.arraycopy(sepScores, index + 1, sepScores, index, size - index - 1);
+            System.arraycopy(sepObjs, index + 1, sepObjs, index, size - index - 1);
+            size--;
+            children[size] = null;
+            sepObjs[size] = null;
+            // 第0个分隔键不使用
+            sepObjs[0] = null;
+        }
+    }
+
+    // region 迭代
+
+    /**
+     * ZSet迭代器
+     * Q: 为什么不写在{@link BTree}中？
+     * A: 因为删除数据需要访问{@link #dict}。
+     */
+    private class ZSetItr implements Iterator<Object2LongMember<K>> {
+
+        /**
+         * 下一个成员的排名，删除成员后，通过排名重新定位
+         */
+        private int nextRank;
+        private int lastReturnedRank = -1;
+
+        private LeafNode<K> leafNode;
+        private int index;
+
+        int expectedModCount = tree.modCount;
+
+        ZSetItr(int nextRank) {
+            this.nextRank = nextRank;
+            relocate();
+        }
+
+        private void relocate() {
+            if (nextRank < tree.length()) {
+                leafNode = tree.locate(nextRank);
+                index = tree.locateIndex;
+            } else {
+                leafNode = null;
+                index = 0;
+            }
+        }
+
+        public boolean hasNext() {
+            return leafNode != null;
+        }
+
+        public Object2LongMember<K> next() {
+            checkForComodification();
+
+            if (leafNode == null) {
+                throw new NoSuchElementException();
+            }
+
+            final Object2LongMember<K> member = new Object2LongMember<>(leafNode.obj(index), leafNode.scores[index]);
+            lastReturnedRank = nextRank++;
+            if (++index == leafNode.size) {
+                leafNode = leafNode.next;
+                index = 0;
+            }
+            return member;
+        }
+
+        public void remove() {
+            if (lastReturnedRank < 0) {
+                throw new IllegalStateException();
+            }
+
+            checkForComodification();
+
+            // remove lastReturned
+            tree.deleteByRank(lastReturnedRank, dict);
+
+            // 后面的成员排名前移
+            nextRank = lastReturnedRank;
+            lastReturnedRank = -1;
+            expectedModCount = tree.modCount;
+            relocate();
+        }
+
+        final void checkForComodification() {
+            if (tree.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+    // endregion
+}
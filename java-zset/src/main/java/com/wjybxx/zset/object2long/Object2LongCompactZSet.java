@@ -0,0 +1,1293 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+
+import com.wjybxx.zset.ZSetUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.*;
+
+/**
+ * key为泛型，score为long类型的sorted set - 参考redis的zset实现
+ * 与{@link Object2LongZSet}的区别在于编码：成员较少时使用紧凑编码(参考redis的ziplist/listpack)，成员数量超过阈值时自动转换为跳表编码，
+ * 跳表编码的成员数量减少到阈值的一半及以下时，再转换回紧凑编码。接口和语义完全一致，编码的转换对调用者是透明的。
+ * <p>
+ * 一个空的{@link Object2LongZSet}就需要一个32层的头节点、两个32长度的缓存数组以及一个初始容量为{@link ZSetUtils#INIT_CAPACITY}的字典，
+ * 对于成员数量通常只有几十个的小集合(公会排行、战斗内排行、好友排行)，这些固定开销远大于成员本身。
+ * 紧凑编码只使用两个按照排序规则排列的平行数组存储成员和分数：
+ * 1. 通过成员查找时线性扫描，通过分数查找时二分查找，成员数量很少时，连续内存上的扫描并不比哈希和跳表慢。
+ * 2. 成员在数组中的下标就是成员的排名，排名相关的查询都可以直接定位。
+ * 3. 插入和删除需要移动数组元素，由于成员数量受阈值限制，移动的代价是可控的。
+ * <p>
+ * <b>排序规则</b>
+ * 有序集合里面的成员是不能重复的，都是唯一的，但是，不同成员间有可能有相同的分数。
+ * 当多个成员有相同的分数时，它们将按照键排序。
+ * 即：分数作为第一排序条件，键作为第二排序条件，当分数相同时，比较键的大小。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. ZSET中的排名从0开始（提供给用户的接口，排名都从0开始）
+ * 2. ZSET使用键的<b>compare</b>结果判断两个键是否相等，而不是equals方法，因此必须保证键不同时compare结果一定不为0。
+ * 3. 跳表编码下key需要存放于hash表中，因此“相同”的key必须有相同的hashCode，且equals方法返回true。
+ * <b>手动加粗:key的关键属性最好是number或string且是final的</b>
+ * <p>
+ * 4. 我们允许zset中的成员是降序排列的-{@link LongScoreHandler}决定，可以更好的支持根据score降序的排行榜，
+ * 而不是强迫你总是调用反转系列接口{@code zrev...}，那样的设计不符合人的正常思维，就很容易出错。
+ * <p>
+ * 5. 我们修改了redis中根据min和max查找和删除成员的接口，修改为start和end，当根据score范围查找或删除元素时，并不要求start小于等于end，我们会处理它们的大小关系。
+ * <p>
+ * 6. 编码转换以后，转换前创建的迭代器将失效，继续使用将抛出{@link ConcurrentModificationException}。
+ * 通过迭代器删除成员不会触发编码的转换，下一次通过zset删除成员时再检查。
+ *
+ * <p>
+ * 这里只实现了redis zset中的几个常用的接口，扩展不是太麻烦，可以自己根据需要实现。
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@NotThreadSafe
+public class Object2LongCompactZSet<K> implements Iterable<Object2LongMember<K>> {
+
+    /**
+     * 紧凑编码默认的最大成员数量
+     */
+    public static final int DEFAULT_MAX_COMPACT_SIZE = 64;
+
+    /**
+     * 紧凑编码的最大成员数量，超过该数量时转换为跳表编码。
+     * 跳表编码的成员数量小于等于该值的一半时，转换回紧凑编码 - 避免在阈值附近交替的插入删除导致频繁的转换。
+     */
+    private final int maxCompactSize;
+    /**
+     * 紧凑编码 - 使用跳表编码时，它是空的，但仍然保留比较器等信息，用于在两种编码之间转换。
+     */
+    private final ListPack<K> listPack;
+    /**
+     * 跳表编码 - 使用紧凑编码时为null
+     */
+    private Object2LongZSet<K> zset;
+
+    private Object2LongCompactZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler, int maxCompactSize) {
+        if (maxCompactSize <= 0) {
+            throw new IllegalArgumentException("maxCompactSize: " + maxCompactSize + " (expected: > 0)");
+        }
+        this.maxCompactSize = maxCompactSize;
+        this.listPack = new ListPack<>(keyComparator, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为string类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongCompactZSet<String> newStringKeyZSet(LongScoreHandler scoreHandler) {
+        return newStringKeyZSet(scoreHandler, DEFAULT_MAX_COMPACT_SIZE);
+    }
+
+    /**
+     * 创建一个键为string类型的zset
+     *
+     * @param scoreHandler   score比较器，默认实现见{@link LongScoreHandlers}
+     * @param maxCompactSize 紧凑编码的最大成员数量
+     * @return zset
+     */
+    public static Object2LongCompactZSet<String> newStringKeyZSet(LongScoreHandler scoreHandler, int maxCompactSize) {
+        return new Object2LongCompactZSet<>(String::compareTo, scoreHandler, maxCompactSize);
+    }
+
+    /**
+     * 创建一个键为long类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongCompactZSet<Long> newLongKeyZSet(LongScoreHandler scoreHandler) {
+        return newLongKeyZSet(scoreHandler, DEFAULT_MAX_COMPACT_SIZE);
+    }
+
+    /**
+     * 创建一个键为long类型的zset
+     *
+     * @param scoreHandler   score比较器，默认实现见{@link LongScoreHandlers}
+     * @param maxCompactSize 紧凑编码的最大成员数量
+     * @return zset
+     */
+    public static Object2LongCompactZSet<Long> newLongKeyZSet(LongScoreHandler scoreHandler, int maxCompactSize) {
+        return new Object2LongCompactZSet<>(Long::compareTo, scoreHandler, maxCompactSize);
+    }
+
+    /**
+     * 创建一个键为int类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongCompactZSet<Integer> newIntKeyZSet(LongScoreHandler scoreHandler) {
+        return newIntKeyZSet(scoreHandler, DEFAULT_MAX_COMPACT_SIZE);
+    }
+
+    /**
+     * 创建一个键为int类型的zset
+     *
+     * @param scoreHandler   score比较器，默认实现见{@link LongScoreHandlers}
+     * @param maxCompactSize 紧凑编码的最大成员数量
+     * @return zset
+     */
+    public static Object2LongCompactZSet<Integer> newIntKeyZSet(LongScoreHandler scoreHandler, int maxCompactSize) {
+        return new Object2LongCompactZSet<>(Integer::compareTo, scoreHandler, maxCompactSize);
+    }
+
+    /**
+     * 创建一个自定义键类型的zset
+     *
+     * @param keyComparator 键比较器，当score比较结果相等时，比较key - 注意：比较结果必须与key对象的状态改变无关。
+     *                      <b>请仔细阅读类文档中的注意事项</b>。
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param <K>           键的类型
+     * @return zset
+     */
+    public static <K> Object2LongCompactZSet<K> newGenericKeyZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler) {
+        return newGenericKeyZSet(keyComparator, scoreHandler, DEFAULT_MAX_COMPACT_SIZE);
+    }
+
+    /**
+     * 创建一个自定义键类型的zset
+     *
+     * @param keyComparator  键比较器，当score比较结果相等时，比较key - 注意：比较结果必须与key对象的状态改变无关。
+     *                       <b>请仔细阅读类文档中的注意事项</b>。
+     * @param scoreHandler   score比较器，默认实现见{@link LongScoreHandlers}
+     * @param maxCompactSize 紧凑编码的最大成员数量
+     * @param <K>            键的类型
+     * @return zset
+     */
+    public static <K> Object2LongCompactZSet<K> newGenericKeyZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler, int maxCompactSize) {
+        return new Object2LongCompactZSet<>(keyComparator, scoreHandler, maxCompactSize);
+    }
+
+    // -------------------------------------------------------- insert -----------------------------------------------
+
+    /**
+     * 往有序集合中新增一个成员。
+     * 如果指定添加的成员已经是有序集合里面的成员，则会更新成员的分数（score）并更新到正确的排序位置。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     */
+    public void zadd(final long score, @Nonnull final K member) {
+        if (zset == null) {
+            final int index = listPack.indexOf(member);
+            if (index >= 0) {
+                listPack.updateScore(index, score);
+                return;
+            }
+            if (listPack.length() < maxCompactSize) {
+                listPack.insert(score, member);
+                return;
+            }
+            convertToSkipList();
+        }
+        zset.zadd(score, member);
+    }
+
+    /**
+     * 往有序集合中新增一个成员。当且仅当该成员不在有序集合时才添加。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     * @return 添加成功则返回true，否则返回false。
+     */
+    public boolean zaddnx(final long score, @Nonnull final K member) {
+        if (zset == null) {
+            if (listPack.indexOf(member) >= 0) {
+                return false;
+            }
+            if (listPack.length() < maxCompactSize) {
+                listPack.insert(score, member);
+                return true;
+            }
+            convertToSkipList();
+        }
+        return zset.zaddnx(score, member);
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，就在有序集中添加一个member，score是increment（就好像它之前的score是0）
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值
+     */
+    public long zincrby(long increment, @Nonnull K member) {
+        if (zset == null) {
+            final int index = listPack.indexOf(member);
+            if (index >= 0) {
+                final long score = listPack.sum(listPack.score(index), increment);
+                listPack.updateScore(index, score);
+                return score;
+            }
+            if (listPack.length() < maxCompactSize) {
+                listPack.insert(increment, member);
+                return increment;
+            }
+            convertToSkipList();
+        }
+        return zset.zincrby(increment, member);
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，则放弃更新并返回0。
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值，如果更新失败，则返回0。
+     */
+    public long zincrbyxx(long increment, @Nonnull K member) {
+        if (zset != null) {
+            return zset.zincrbyxx(increment, member);
+        }
+
+        final int index = listPack.indexOf(member);
+        if (index < 0) {
+            return 0;
+        }
+
+        final long score = listPack.sum(listPack.score(index), increment);
+        listPack.updateScore(index, score);
+        return score;
+    }
+
+    // -------------------------------------------------------- remove -----------------------------------------------
+
+    /**
+     * 删除指定成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回对应的score，否则返回null。
+     */
+    public Long zrem(@Nonnull K member) {
+        if (zset != null) {
+            final Long oldScore = zset.zrem(member);
+            checkConvertToListPack();
+            return oldScore;
+        }
+
+        final int index = listPack.indexOf(member);
+        if (index < 0) {
+            return null;
+        }
+        final long oldScore = listPack.score(index);
+        listPack.deleteRange(index, index);
+        return oldScore;
+    }
+
+    // region 通过score删除成员
+
+    /**
+     * 移除zset中所有score值介于start和end之间(包括等于start或end)的成员
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return 删除的成员数目
+     */
+    public int zremrangeByScore(long start, long end) {
+        if (zset != null) {
+            final int removed = zset.zremrangeByScore(start, end);
+            checkConvertToListPack();
+            return removed;
+        }
+
+        final ZLongScoreRangeSpec range = listPack.newRangeSpec(start, end);
+        final int firstRank = listPack.countLtMin(range);
+        final int lastRank = listPack.countLteMax(range) - 1;
+        if (firstRank > lastRank) {
+            return 0;
+        }
+        listPack.deleteRange(firstRank, lastRank);
+        return lastRank - firstRank + 1;
+    }
+
+    // endregion
+
+    // region 通过排名删除成员
+
+    /**
+     * 删除并返回有序集合中的第一个成员。
+     * - 不使用min和max，是因为score的比较方式是用户自定义的。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopFirst() {
+        return zremByRank(0);
+    }
+
+    /**
+     * 删除并返回有序集合中的最后一个成员。
+     * - 不使用min和max，是因为score的比较方式是用户自定义的。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopLast() {
+        return zremByRank(zcard() - 1);
+    }
+
+    /**
+     * 删除指定排名的成员
+     *
+     * @param rank 排名 0-based
+     * @return 删除成功则返回该排名对应的数据，否则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zremByRank(int rank) {
+        if (zset != null) {
+            final Object2LongMember<K> member = zset.zremByRank(rank);
+            checkConvertToListPack();
+            return member;
+        }
+
+        if (rank < 0 || rank >= listPack.length()) {
+            return null;
+        }
+        final Object2LongMember<K> member = listPack.memberAt(rank);
+        listPack.deleteRange(rank, rank);
+        return member;
+    }
+
+    /**
+     * 删除指定排名范围的全部成员，start和end都是从0开始的。
+     * 排名0表示分数最小的成员。
+     * start和end都可以是负数，此时它们表示从最高排名成员开始的偏移量，eg: -1表示最高排名的成员， -2表示第二高分的成员，以此类推。
+     *
+     * @param start 起始排名
+     * @param end   截止排名
+     * @return 删除的成员数目
+     */
+    public int zremrangeByRank(int start, int end) {
+        if (zset != null) {
+            final int removed = zset.zremrangeByRank(start, end);
+            checkConvertToListPack();
+            return removed;
+        }
+
+        final int length = listPack.length();
+
+        start = ZSetUtils.convertStartRank(start, length);
+        end = ZSetUtils.convertEndRank(end, length);
+
+        if (ZSetUtils.isRankRangeEmpty(start, end, length)) {
+            return 0;
+        }
+
+        listPack.deleteRange(start, end);
+        return end - start + 1;
+    }
+
+    // endregion
+
+    // region 限制成员数量
+
+    /**
+     * 删除zset中尾部多余的成员，将zset中的成员数量限制到count之内。
+     * 保留前面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zlimit(int count) {
+        if (zset != null) {
+            final int removed = zset.zlimit(count);
+            checkConvertToListPack();
+            return removed;
+        }
+
+        final int length = listPack.length();
+        if (length <= count) {
+            return 0;
+        }
+        listPack.deleteRange(count, length - 1);
+        return length - count;
+    }
+
+    /**
+     * 删除zset中头部多余的成员，将zset中的成员数量限制到count之内。
+     * - 保留后面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zrevlimit(int count) {
+        if (zset != null) {
+            final int removed = zset.zrevlimit(count);
+            checkConvertToListPack();
+            return removed;
+        }
+
+        final int length = listPack.length();
+        if (length <= count) {
+            return 0;
+        }
+        listPack.deleteRange(0, length - count - 1);
+        return length - count;
+    }
+    // endregion
+
+    // -------------------------------------------------------- query -----------------------------------------------
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，返回null - 这里返回任意的基础值都是不合理的，因此必须返回null。
+     *
+     * @param member 成员id
+     * @return score
+     */
+    public Long zscore(@Nonnull K member) {
+        if (zset != null) {
+            return zset.zscore(member);
+        }
+        final int index = listPack.indexOf(member);
+        return index < 0 ? null : listPack.score(index);
+    }
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，则返回给定的默认值 - 该方法不会产生装箱。
+     *
+     * @param member       成员id
+     * @param defaultValue 成员不存在时返回的值
+     * @return score
+     */
+    public long zscoreOrDefault(@Nonnull K member, long defaultValue) {
+        if (zset != null) {
+            return zset.zscoreOrDefault(member, defaultValue);
+        }
+        final int index = listPack.indexOf(member);
+        return index < 0 ? defaultValue : listPack.score(index);
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(@Nonnull K member) {
+        if (zset != null) {
+            return zset.containsMember(member);
+        }
+        return listPack.indexOf(member) >= 0;
+    }
+
+    /**
+     * 返回有序集中成员member的排名。
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrank(@Nonnull K member) {
+        if (zset != null) {
+            return zset.zrank(member);
+        }
+        // 紧凑编码下，成员的下标就是排名
+        return listPack.indexOf(member);
+    }
+
+    /**
+     * 返回有序集中成员member的逆序排名。
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrevrank(@Nonnull K member) {
+        if (zset != null) {
+            return zset.zrevrank(member);
+        }
+        final int index = listPack.indexOf(member);
+        return index < 0 ? -1 : listPack.length() - 1 - index;
+    }
+
+    /**
+     * 获取指定排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Object2LongMember<K> zmemberByRank(int rank) {
+        if (zset != null) {
+            return zset.zmemberByRank(rank);
+        }
+        if (rank < 0 || rank >= listPack.length()) {
+            return null;
+        }
+        return listPack.memberAt(rank);
+    }
+
+    /**
+     * 获取指定逆序排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Object2LongMember<K> zrevmemberByRank(int rank) {
+        if (zset != null) {
+            return zset.zrevmemberByRank(rank);
+        }
+        if (rank < 0 || rank >= listPack.length()) {
+            return null;
+        }
+        return listPack.memberAt(listPack.length() - 1 - rank);
+    }
+
+    // region 通过分数查询
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员）。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(long start, long end) {
+        if (zset != null) {
+            return zset.zrangeByScore(start, end);
+        }
+        return zrangeByScoreWithOptions(listPack.newRangeSpec(start, end), 0, -1, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(LongScoreRangeSpec spec) {
+        if (zset != null) {
+            return zset.zrangeByScore(spec);
+        }
+        return zrangeByScoreWithOptions(listPack.newRangeSpec(spec), 0, -1, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员），返回的成员按照逆序排列。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(final long start, final long end) {
+        if (zset != null) {
+            return zset.zrevrangeByScore(start, end);
+        }
+        return zrangeByScoreWithOptions(listPack.newRangeSpec(start, end), 0, -1, true);
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围之间的所有成员，返回的成员按照逆序排列。
+     *
+     * @param rangeSpec score范围区间
+     * @return 删除的成员数目
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(LongScoreRangeSpec rangeSpec) {
+        if (zset != null) {
+            return zset.zrevrangeByScore(rangeSpec);
+        }
+        return zrangeByScoreWithOptions(listPack.newRangeSpec(rangeSpec), 0, -1, true);
+    }
+
+    /**
+     * 返回zset中指定分数区间内的成员，并按照指定顺序返回
+     *
+     * @param rangeSpec score范围描述信息
+     * @param offset    偏移量(用于分页)  大于等于0
+     * @param limit     返回的成员数量(用于分页) 小于0表示不限制
+     * @param reverse   是否逆序
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScoreWithOptions(final LongScoreRangeSpec rangeSpec, int offset, int limit, boolean reverse) {
+        if (zset != null) {
+            return zset.zrangeByScoreWithOptions(rangeSpec, offset, limit, reverse);
+        }
+        return zrangeByScoreWithOptions(listPack.newRangeSpec(rangeSpec), offset, limit, reverse);
+    }
+
+    /**
+     * 紧凑编码下，返回zset中指定分数区间内的成员，并按照指定顺序返回
+     *
+     * @param range   score范围描述信息
+     * @param offset  偏移量(用于分页)  大于等于0
+     * @param limit   返回的成员数量(用于分页) 小于0表示不限制
+     * @param reverse 是否逆序
+     * @return memberInfo
+     */
+    private List<Object2LongMember<K>> zrangeByScoreWithOptions(final ZLongScoreRangeSpec range, int offset, int limit, boolean reverse) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset" + ": " + offset + " (expected: >= 0)");
+        }
+
+        // 分数在范围内的成员的排名区间 [firstRank, lastRank]
+        final int firstRank = listPack.countLtMin(range);
+        final int lastRank = listPack.countLteMax(range) - 1;
+
+        /* No "first" element in the specified interval. */
+        if (firstRank > lastRank || offset > lastRank - firstRank) {
+            return new ArrayList<>();
+        }
+
+        /* 这里将offset和limit转换为排名区间，limit小于0时，表示不限制 */
+        int rangeLen = lastRank - firstRank + 1 - offset;
+        if (limit >= 0 && limit < rangeLen) {
+            rangeLen = limit;
+        }
+
+        if (reverse) {
+            return listPack.rangeByRank(lastRank - offset, rangeLen, true);
+        } else {
+            return listPack.rangeByRank(firstRank + offset, rangeLen, false);
+        }
+    }
+    // endregion
+
+    // region 通过排名查询
+
+    /**
+     * 查询指定排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByRank(int start, int end) {
+        if (zset != null) {
+            return zset.zrangeByRank(start, end);
+        }
+        return zrangeByRankInternal(start, end, false);
+    }
+
+    /**
+     * 查询指定逆序排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByRank(int start, int end) {
+        if (zset != null) {
+            return zset.zrevrangeByRank(start, end);
+        }
+        return zrangeByRankInternal(start, end, true);
+    }
+
+    /**
+     * 紧凑编码下，查询指定排名区间的成员id和分数，start和end都是从0开始的。
+     *
+     * @param start   起始排名(0-based) inclusive
+     * @param end     截止排名(0-based) inclusive
+     * @param reverse 是否逆序返回
+     * @return memberInfo
+     */
+    private List<Object2LongMember<K>> zrangeByRankInternal(int start, int end, boolean reverse) {
+        final int length = listPack.length();
+
+        start = ZSetUtils.convertStartRank(start, length);
+        end = ZSetUtils.convertEndRank(end, length);
+
+        if (ZSetUtils.isRankRangeEmpty(start, end, length)) {
+            return new ArrayList<>();
+        }
+
+        final int rangeLen = end - start + 1;
+        if (reverse) {
+            return listPack.rangeByRank(length - 1 - start, rangeLen, true);
+        } else {
+            return listPack.rangeByRank(start, rangeLen, false);
+        }
+    }
+    // endregion
+
+    // region 统计分数人数
+
+    /**
+     * 返回有序集key中，score值在指定区间(包括score值等于start或end)的成员
+     *
+     * @param start 起始分数
+     * @param end   截止分数
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(long start, long end) {
+        if (zset != null) {
+            return zset.zcount(start, end);
+        }
+        return zcountInternal(listPack.newRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     *
+     * @param rangeSpec score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(LongScoreRangeSpec rangeSpec) {
+        if (zset != null) {
+            return zset.zcount(rangeSpec);
+        }
+        return zcountInternal(listPack.newRangeSpec(rangeSpec));
+    }
+
+    /**
+     * 紧凑编码下，返回有序集key中，score值在指定区间的成员
+     *
+     * @param range score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    private int zcountInternal(final ZLongScoreRangeSpec range) {
+        // 分数在范围内的成员是连续的，因此 数量 = 小于等于上限的成员数 - 小于下限的成员数
+        final int count = listPack.countLteMax(range) - listPack.countLtMin(range);
+        return Math.max(count, 0);
+    }
+
+    /**
+     * @return zset中的成员数量
+     */
+    public int zcard() {
+        if (zset != null) {
+            return zset.zcard();
+        }
+        return listPack.length();
+    }
+
+    // endregion
+
+    // region 迭代
+
+    /**
+     * 迭代有序集中的所有元素
+     *
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Object2LongMember<K>> zscan() {
+        return zscan(0);
+    }
+
+    /**
+     * 从指定偏移量开始迭代有序集中的元素
+     *
+     * @param offset 偏移量，如果小于等于0，则等价于{@link #zscan()}
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Object2LongMember<K>> zscan(int offset) {
+        if (zset != null) {
+            return zset.zscan(offset);
+        }
+        return new ZSetItr(Math.min(Math.max(offset, 0), listPack.length()));
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Object2LongMember<K>> iterator() {
+        return zscan(0);
+    }
+    // endregion
+
+    /**
+     * @return zset中当前的成员信息，用于测试
+     */
+    public String dump() {
+        if (zset != null) {
+            return zset.dump();
+        }
+        return listPack.dump();
+    }
+
+    /**
+     * @return 如果当前使用的是紧凑编码，则返回true，用于测试
+     */
+    public boolean isCompact() {
+        return zset == null;
+    }
+
+    // ------------------------------------------------------- 编码转换 ----------------------------------------
+
+    /**
+     * 将紧凑编码转换为跳表编码
+     */
+    private void convertToSkipList() {
+        final ListPack<K> listPack = this.listPack;
+        final Object2LongZSet<K> zset = Object2LongZSet.newGenericKeyZSet(listPack.objComparator, listPack.scoreHandler);
+        for (int index = 0, length = listPack.length(); index < length; index++) {
+            zset.zadd(listPack.score(index), listPack.obj(index));
+        }
+        // 清空紧凑编码，同时使转换前创建的迭代器失效
+        listPack.clear();
+        this.zset = zset;
+    }
+
+    /**
+     * 删除成员后调用，如果跳表编码的成员数量已经足够少，则转换回紧凑编码
+     */
+    private void checkConvertToListPack() {
+        final Object2LongZSet<K> zset = this.zset;
+        if (zset.zcard() > maxCompactSize / 2) {
+            return;
+        }
+        // 跳表是有序的，顺序追加即可
+        for (Object2LongMember<K> member : zset) {
+            listPack.append(member.getScore(), member.getMember());
+        }
+        // 清空跳表，使转换前创建的迭代器失效
+        zset.zremrangeByRank(0, -1);
+        this.zset = null;
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    /**
+     * 紧凑编码 - 两个平行数组，按照排序规则存储成员和分数
+     * 注意：与跳表不同，这里的排名是从0开始的，也就是成员在数组中的下标。
+     *
+     * @author agent
+     * @version 1.0
+     * date - 2026/10/16
+     */
+    private static class ListPack<K> {
+
+        private static final Object[] EMPTY_OBJS = {};
+        private static final long[] EMPTY_SCORES = {};
+        /**
+         * 第一次插入成员时的默认容量
+         */
+        private static final int DEFAULT_CAPACITY = 4;
+
+        private final Comparator<K> objComparator;
+        private final LongScoreHandler scoreHandler;
+
+        /**
+         * 修改次数 - 防止错误的迭代
+         */
+        private int modCount = 0;
+
+        private Object[] objs = EMPTY_OBJS;
+        private long[] scores = EMPTY_SCORES;
+
+        /**
+         * 成员数量
+         */
+        private int length = 0;
+
+        ListPack(Comparator<K> objComparator, LongScoreHandler scoreHandler) {
+            this.objComparator = objComparator;
+            this.scoreHandler = scoreHandler;
+        }
+
+        /**
+         * 查找成员的下标 - 线性扫描
+         *
+         * @param obj 成员
+         * @return 如果成员存在，则返回成员的下标，否则返回-1
+         */
+        int indexOf(K obj) {
+            for (int index = 0; index < length; index++) {
+                if (objEquals(obj(index), obj)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 插入一个新的成员
+         * 这里假定成员已经不存在（直到调用方执行该方法）。
+         *
+         * @param score 分数
+         * @param obj   成员
+         */
+        void insert(long score, K obj) {
+            final int index = lowerBound(0, length, score, obj);
+            ensureCapacity(length + 1);
+            System.arraycopy(objs, index, objs, index + 1, length - index);
+            System.arraycopy(scores, index, scores, index + 1, length - index);
+            objs[index] = obj;
+            scores[index] = score;
+            length++;
+            modCount++;
+        }
+
+        /**
+         * 在末尾追加一个成员，调用者需要保证成员大于当前所有成员
+         *
+         * @param score 分数
+         * @param obj   成员
+         */
+        void append(long score, K obj) {
+            assert length == 0 || compareScoreAndObj(scores[length - 1], obj(length - 1), score, obj) < 0;
+            ensureCapacity(length + 1);
+            objs[length] = obj;
+            scores[length] = score;
+            length++;
+            modCount++;
+        }
+
+        /**
+         * 更新指定下标成员的分数。
+         * 如果更新分数以后成员仍然位于前驱和后继之间，则直接原地修改分数；
+         * 否则只平移新旧位置之间的成员，而不是删除以后再插入。
+         *
+         * @param index    成员下标
+         * @param newScore 新的分数
+         */
+        void updateScore(int index, long newScore) {
+            final K obj = obj(index);
+            final int newIndex;
+            if (index > 0 && compareScoreAndObj(scores[index - 1], obj(index - 1), newScore, obj) > 0) {
+                // 需要前移，[newIndex, index) 之间的成员后移一位
+                newIndex = lowerBound(0, index, newScore, obj);
+                System.arraycopy(objs, newIndex, objs, newIndex + 1, index - newIndex);
+                System.arraycopy(scores, newIndex, scores, newIndex + 1, index - newIndex);
+            } else if (index < length - 1 && compareScoreAndObj(scores[index + 1], obj(index + 1), newScore, obj) < 0) {
+                // 需要后移，(index, newIndex] 之间的成员前移一位
+                newIndex = lowerBound(index + 1, length, newScore, obj) - 1;
+                System.arraycopy(objs, index + 1, objs, index, newIndex - index);
+                System.arraycopy(scores, index + 1, scores, index, newIndex - index);
+            } else {
+                newIndex = index;
+            }
+            objs[newIndex] = obj;
+            scores[newIndex] = newScore;
+            modCount++;
+        }
+
+        /**
+         * 删除指定排名区间的成员
+         *
+         * @param start 起始排名 inclusive 0-based
+         * @param end   截止排名 inclusive 0-based
+         */
+        void deleteRange(int start, int end) {
+            final int removed = end - start + 1;
+            System.arraycopy(objs, end + 1, objs, start, length - end - 1);
+            System.arraycopy(scores, end + 1, scores, start, length - end - 1);
+            // help gc
+            Arrays.fill(objs, length - removed, length, null);
+            length -= removed;
+            modCount++;
+        }
+
+        /**
+         * 删除所有成员，并释放数组
+         */
+        void clear() {
+            objs = EMPTY_OBJS;
+            scores = EMPTY_SCORES;
+            length = 0;
+            modCount++;
+        }
+
+        private void ensureCapacity(int minCapacity) {
+            if (minCapacity <= objs.length) {
+                return;
+            }
+            final int newCapacity = Math.max(minCapacity, objs.length == 0 ? DEFAULT_CAPACITY : objs.length + (objs.length >> 1));
+            objs = Arrays.copyOf(objs, newCapacity);
+            scores = Arrays.copyOf(scores, newCapacity);
+        }
+
+        /**
+         * 在[from, to)区间内查找第一个大于等于给定成员的下标
+         */
+        private int lowerBound(int from, int to, long score, K obj) {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (compareScoreAndObj(scores[mid], obj(mid), score, obj) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 统计分数小于范围下限的成员数量，也就是第一个分数在范围内的成员的排名。
+         *
+         * @param range 范围描述信息
+         * @return 成员数量
+         */
+        int countLtMin(ZLongScoreRangeSpec range) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (zslValueGteMin(scores[mid], range)) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 统计分数小于等于范围上限的成员数量
+         *
+         * @param range 范围描述信息
+         * @return 成员数量
+         */
+        int countLteMax(ZLongScoreRangeSpec range) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (zslValueLteMax(scores[mid], range)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 从指定排名开始，按照指定方向读取count个成员
+         *
+         * @param rank    起始排名 0-based
+         * @param count   成员数量，调用者保证范围有效
+         * @param reverse 是否逆序读取
+         * @return memberInfo
+         */
+        List<Object2LongMember<K>> rangeByRank(int rank, int count, boolean reverse) {
+            final List<Object2LongMember<K>> result = new ArrayList<>(count);
+            final int step = reverse ? -1 : 1;
+            for (int index = rank; result.size() < count; index += step) {
+                result.add(memberAt(index));
+            }
+            return result;
+        }
+
+        Object2LongMember<K> memberAt(int index) {
+            return new Object2LongMember<>(obj(index), scores[index]);
+        }
+
+        @SuppressWarnings("unchecked")
+        K obj(int index) {
+            return (K) objs[index];
+        }
+
+        long score(int index) {
+            return scores[index];
+        }
+
+        int length() {
+            return length;
+        }
+
+        /**
+         * 计算两个score的和
+         */
+        private long sum(long score1, long score2) {
+            return scoreHandler.sum(score1, score2);
+        }
+
+        /**
+         * @param start 起始分数
+         * @param end   截止分数
+         * @return spec
+         */
+        private ZLongScoreRangeSpec newRangeSpec(long start, long end) {
+            return newRangeSpec(start, false, end, false);
+        }
+
+        /**
+         * @param rangeSpec 开放给用户的范围描述信息
+         * @return spec
+         */
+        private ZLongScoreRangeSpec newRangeSpec(LongScoreRangeSpec rangeSpec) {
+            return newRangeSpec(rangeSpec.getStart(), rangeSpec.isStartEx(), rangeSpec.getEnd(), rangeSpec.isEndEx());
+        }
+
+        /**
+         * @param start   起始分数
+         * @param startEx 是否去除起始分数
+         * @param end     截止分数
+         * @param endEx   是否去除截止分数
+         * @return spec
+         */
+        private ZLongScoreRangeSpec newRangeSpec(long start, boolean startEx, long end, boolean endEx) {
+            if (compareScore(start, end) <= 0) {
+                return new ZLongScoreRangeSpec(start, startEx, end, endEx);
+            } else {
+                return new ZLongScoreRangeSpec(end, endEx, start, startEx);
+            }
+        }
+
+        /**
+         * 值是否大于等于下限
+         *
+         * @param value 要比较的score
+         * @param spec  范围描述信息
+         * @return true/false
+         */
+        boolean zslValueGteMin(long value, ZLongScoreRangeSpec spec) {
+            return spec.minex ? compareScore(value, spec.min) > 0 : compareScore(value, spec.min) >= 0;
+        }
+
+        /**
+         * 值是否小于等于上限
+         *
+         * @param value 要比较的score
+         * @param spec  范围描述信息
+         * @return true/false
+         */
+        boolean zslValueLteMax(long value, ZLongScoreRangeSpec spec) {
+            return spec.maxex ? compareScore(value, spec.max) < 0 : compareScore(value, spec.max) <= 0;
+        }
+
+        /**
+         * 比较score和key的大小，分数作为第一排序条件，然后，相同分数的成员按照字典规则相对排序
+         *
+         * @return 0 表示equals
+         */
+        private int compareScoreAndObj(long scoreA, K objA, long scoreB, K objB) {
+            final int scoreCompareR = compareScore(scoreA, scoreB);
+            if (scoreCompareR != 0) {
+                return scoreCompareR;
+            }
+            return compareObj(objA, objB);
+        }
+
+        /**
+         * 比较两个成员的key，<b>必须保证当且仅当两个键相等的时候返回0</b>
+         * 字符串带有这样的特性。
+         */
+        private int compareObj(@Nonnull K objA, @Nonnull K objB) {
+            return objComparator.compare(objA, objB);
+        }
+
+        /**
+         * 判断两个对象是否相等，<b>必须保证当且仅当两个键相等的时候返回0</b>
+         *
+         * @return true/false
+         * @apiNote 使用compare == 0判断相等
+         */
+        private boolean objEquals(K objA, K objB) {
+            // 不使用equals，而是使用compare
+            return compareObj(objA, objB) == 0;
+        }
+
+        /**
+         * 比较两个分数的大小
+         *
+         * @return 0表示相等
+         */
+        private int compareScore(long score1, long score2) {
+            return scoreHandler.compare(score1, score2);
+        }
+
+        /**
+         * 获取紧凑编码的内存视图
+         *
+         * @return string
+         */
+        String dump() {
+            final StringBuilder sb = new StringBuilder("{level = 0, nodeArray:[\n");
+            for (int index = 0; index < length; index++) {
+                sb.append("{rank:").append(index)
+                        .append(",obj:").append(objs[index])
+                        .append(",score:").append(scores[index]);
+
+                if (index + 1 < length) {
+                    sb.append("},\n");
+                } else {
+                    sb.append("}\n");
+                }
+            }
+            return sb.append("]}").toString();
+        }
+    }
+
+    // region 迭代
+
+    /**
+     * 紧凑编码的迭代器
+     * Q: 为什么不写在{@link ListPack}中？
+     * A: 为了和其它zset的结构保持一致，删除数据统一通过zset进行。
+     */
+    private class ZSetItr implements Iterator<Object2LongMember<K>> {
+
+        /**
+         * 下一个成员的排名，删除成员后，后面的成员排名前移
+         */
+        private int nextRank;
+        private int lastReturnedRank = -1;
+
+        int expectedModCount = listPack.modCount;
+
+        ZSetItr(int nextRank) {
+            this.nextRank = nextRank;
+        }
+
+        public boolean hasNext() {
+            return nextRank < listPack.length();
+        }
+
+        public Object2LongMember<K> next() {
+            checkForComodification();
+
+            if (nextRank >= listPack.length()) {
+                throw new NoSuchElementException();
+            }
+
+            lastReturnedRank = nextRank++;
+            return listPack.memberAt(lastReturnedRank);
+        }
+
+        public void remove() {
+            if (lastReturnedRank < 0) {
+                throw new IllegalStateException();
+            }
+
+            checkForComodification();
+
+            // remove lastReturned
+            listPack.deleteRange(lastReturnedRank, lastReturnedRank);
+
+            // 后面的成员排名前移
+            nextRank = lastReturnedRank;
+            lastReturnedRank = -1;
+            expectedModCount = listPack.modCount;
+        }
+
+        final void checkForComodification() {
+            if (listPack.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+    // endregion
+}
@@ -0,0 +1,1134 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+import com.wjybxx.zset.ZSetUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 支持O(1)快照的sorted set，key为泛型，score为long类型。接口与{@link Object2LongZSet}基本一致。
+ * 适合写线程不停的更新排行榜，同时又需要一个一致的视图给其它线程读取（例如：排行榜页面、结算奖励）的场景。
+ * <p>
+ * <b>实现</b>
+ * 跳表中的一个节点会被多个节点引用，无法只复制修改路径上的节点，因此这里使用两棵带计数(size)的treap代替跳表和字典：
+ * 1. 排序树：按照(score, member)排序，每个节点记录子树大小，用于排名相关的查询。
+ * 2. 字典树：按照member排序，用于查询成员的分数 - 快照也需要查询分数，因此不能使用普通的HashMap。
+ * 两棵树的查询、插入、删除的期望时间复杂度都是O(log(N))。
+ * <p>
+ * <b>快照</b>
+ * 1. {@link #snapshot()}只是记录两棵树的根节点，并将zset的纪元(epoch)加1，时间复杂度为O(1)，不复制任何节点。
+ * 2. 每个节点记录了创建它的纪元，纪元等于zset当前纪元的节点只属于zset，修改时直接原地修改；
+ * 纪元小于当前纪元的节点可能被快照引用，修改时复制该节点（写时复制），因此快照中的节点永远不会被修改。
+ * 3. 创建快照以后，每次修改只复制它经过的路径上的O(log(N))个节点，且每个节点最多被复制一次，之后就属于zset了，
+ * 因此即使每秒创建一次快照，额外的开销也只和这一秒内修改过的路径成正比。
+ * 4. 快照不需要释放，不再被引用以后，只被快照引用的节点会被gc回收。
+ * <p>
+ * <b>线程安全</b>
+ * zset本身不是线程安全的，只能由一个线程修改；快照是不可变的，可以安全的被多个线程同时读取，
+ * 但快照需要通过安全的方式发布给其它线程（例如：volatile字段、并发队列）。
+ * <p>
+ * <b>与{@link Object2LongZSet}的区别</b>
+ * 1. 查询分数(zscore)需要查找字典树，时间复杂度为O(log(N))，而不是O(1)。
+ * 2. 每个成员有两个节点，内存占用更高。
+ * 3. {@link #zscan()}总是遍历一个快照，因此遍历期间可以修改zset，遍历不到遍历开始以后的修改。
+ * 4. 删除区间内的成员(zremrangeByRank、zremrangeByScore、zlimit、zrevlimit)时，排序树按排名拆分，只复制O(log(N))个节点，
+ * 但字典树按照成员排序，需要逐个删除，时间复杂度为O(M * log(N))，M为删除的成员数量。
+ * <p>
+ * <b>排序规则</b>
+ * 有序集合里面的成员是不能重复的，都是唯一的，但是，不同成员间有可能有相同的分数。
+ * 当多个成员有相同的分数时，它们将按照键排序。
+ * 即：分数作为第一排序条件，键作为第二排序条件，当分数相同时，比较键的大小。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. ZSET中的排名从0开始（提供给用户的接口，排名都从0开始）
+ * 2. ZSET使用键的<b>compare</b>结果判断两个键是否相等，而不是equals方法，因此必须保证键不同时compare结果一定不为0。
+ * <b>手动加粗:key的关键属性最好是number或string且是final的</b>
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@NotThreadSafe
+public class Object2LongCowZSet<K> implements Iterable<Object2LongMember<K>> {
+
+    private final Comparator<K> objComparator;
+    private final LongScoreHandler scoreHandler;
+
+    /**
+     * 是否是只读的快照
+     */
+    private final boolean readOnly;
+
+    /**
+     * 排序树的根节点，按照(score, member)排序
+     */
+    private TreapNode<K> rankRoot;
+    /**
+     * 字典树的根节点，按照member排序
+     */
+    private TreapNode<K> dictRoot;
+    /**
+     * 当前纪元，纪元等于当前纪元的节点可以原地修改
+     */
+    private int epoch;
+
+    /**
+     * split的结果，避免创建额外的对象
+     */
+    private TreapNode<K> splitLeft;
+    private TreapNode<K> splitRight;
+
+    private Object2LongCowZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler) {
+        this.objComparator = keyComparator;
+        this.scoreHandler = scoreHandler;
+        this.readOnly = false;
+    }
+
+    private Object2LongCowZSet(Object2LongCowZSet<K> zset) {
+        this.objComparator = zset.objComparator;
+        this.scoreHandler = zset.scoreHandler;
+        this.readOnly = true;
+        this.rankRoot = zset.rankRoot;
+        this.dictRoot = zset.dictRoot;
+        this.epoch = zset.epoch;
+    }
+
+    /**
+     * 创建一个键为string类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongCowZSet<String> newStringKeyZSet(LongScoreHandler scoreHandler) {
+        return new Object2LongCowZSet<>(String::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为long类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongCowZSet<Long> newLongKeyZSet(LongScoreHandler scoreHandler) {
+        return new Object2LongCowZSet<>(Long::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为int类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongCowZSet<Integer> newIntKeyZSet(LongScoreHandler scoreHandler) {
+        return new Object2LongCowZSet<>(Integer::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个自定义键类型的zset
+     *
+     * @param keyComparator 键比较器，当score比较结果相等时，比较key - 注意：比较结果必须与key对象的状态改变无关。
+     *                      <b>请仔细阅读类文档中的注意事项</b>。
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param <K>           键的类型
+     * @return zset
+     */
+    public static <K> Object2LongCowZSet<K> newGenericKeyZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler) {
+        return new Object2LongCowZSet<>(keyComparator, scoreHandler);
+    }
+
+    // -------------------------------------------------------- snapshot -----------------------------------------------
+
+    /**
+     * 创建当前zset的只读快照。
+     * 快照与zset共享所有节点，之后zset的修改不会影响快照。
+     * 在快照上调用修改操作将抛出{@link UnsupportedOperationException}。
+     * <p>
+     * <b>Time complexity:</b> O(1)
+     *
+     * @return 只读快照，如果当前对象已经是快照，则返回自身。
+     */
+    public Object2LongCowZSet<K> snapshot() {
+        if (readOnly) {
+            return this;
+        }
+        final Object2LongCowZSet<K> snapshot = new Object2LongCowZSet<>(this);
+        // 之后修改快照可见的节点时都需要复制
+        epoch++;
+        return snapshot;
+    }
+
+    /**
+     * @return 如果是只读的快照，则返回true
+     */
+    public boolean isSnapshot() {
+        return readOnly;
+    }
+
+    // -------------------------------------------------------- insert -----------------------------------------------
+
+    /**
+     * 往有序集合中新增一个成员。
+     * 如果指定添加的成员已经是有序集合里面的成员，则会更新成员的分数（score）并更新到正确的排序位置。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     */
+    public void zadd(final long score, @Nonnull final K member) {
+        ensureWritable();
+        final TreapNode<K> dictNode = findDictNode(member);
+        if (dictNode != null) {
+            updateScore(dictNode.score, member, score);
+        } else {
+            insertMember(score, member);
+        }
+    }
+
+    /**
+     * 往有序集合中新增一个成员。当且仅当该成员不在有序集合时才添加。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     * @return 添加成功则返回true，否则返回false。
+     */
+    public boolean zaddnx(final long score, @Nonnull final K member) {
+        ensureWritable();
+        if (findDictNode(member) != null) {
+            return false;
+        }
+        insertMember(score, member);
+        return true;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，就在有序集中添加一个member，score是increment（就好像它之前的score是0）
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值
+     */
+    public long zincrby(long increment, @Nonnull K member) {
+        ensureWritable();
+        final TreapNode<K> dictNode = findDictNode(member);
+        if (dictNode != null) {
+            final long score = scoreHandler.sum(dictNode.score, increment);
+            updateScore(dictNode.score, member, score);
+            return score;
+        } else {
+            insertMember(increment, member);
+            return increment;
+        }
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，则放弃更新并返回0。
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值，如果更新失败，则返回0。
+     */
+    public long zincrbyxx(long increment, @Nonnull K member) {
+        ensureWritable();
+        final TreapNode<K> dictNode = findDictNode(member);
+        if (dictNode == null) {
+            return 0;
+        }
+        final long score = scoreHandler.sum(dictNode.score, increment);
+        updateScore(dictNode.score, member, score);
+        return score;
+    }
+
+    // -------------------------------------------------------- remove -----------------------------------------------
+
+    /**
+     * 删除指定成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回对应的score，否则返回null。
+     */
+    public Long zrem(@Nonnull K member) {
+        ensureWritable();
+        final TreapNode<K> dictNode = findDictNode(member);
+        if (dictNode == null) {
+            return null;
+        }
+        final long score = dictNode.score;
+        removeMember(score, member);
+        return score;
+    }
+
+    /**
+     * 移除zset中所有score值介于start和end之间(包括等于start或end)的成员
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return 删除的成员数目
+     */
+    public int zremrangeByScore(long start, long end) {
+        ensureWritable();
+        final ZLongScoreRangeSpec range = newRangeSpec(new LongScoreRangeSpec(start, end));
+        return removeRankRange(firstRankInRange(range), lastRankInRange(range));
+    }
+
+    /**
+     * 删除指定排名范围的全部成员，start和end都是从0开始的。
+     * start和end都可以是负数，此时它们表示从最高排名成员开始的偏移量，eg: -1表示最高排名的成员， -2表示第二高分的成员，以此类推。
+     * <p>
+     * <b>Time complexity:</b> O(log(N) + M * log(N))，排序树按排名拆分只复制O(log(N))个节点，
+     * 字典树按照成员排序，被删除的M个成员分散在整棵树中，只能逐个删除。
+     *
+     * @param start 起始排名
+     * @param end   截止排名
+     * @return 删除的成员数目
+     */
+    public int zremrangeByRank(int start, int end) {
+        ensureWritable();
+        final int zslLength = zcard();
+        start = ZSetUtils.convertStartRank(start, zslLength);
+        end = ZSetUtils.convertEndRank(end, zslLength);
+        if (ZSetUtils.isRankRangeEmpty(start, end, zslLength)) {
+            return 0;
+        }
+        return removeRankRange(start, end + 1);
+    }
+
+    /**
+     * 删除并返回有序集合中的第一个成员。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopFirst() {
+        return zremByRank(0);
+    }
+
+    /**
+     * 删除并返回有序集合中的最后一个成员。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopLast() {
+        return zremByRank(zcard() - 1);
+    }
+
+    /**
+     * 删除指定排名的成员
+     *
+     * @param rank 排名 0-based
+     * @return 删除成功则返回该排名对应的数据，否则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zremByRank(int rank) {
+        ensureWritable();
+        if (rank < 0 || rank >= zcard()) {
+            return null;
+        }
+        final TreapNode<K> node = selectNode(rank);
+        removeMember(node.score, node.obj);
+        return new Object2LongMember<>(node.obj, node.score);
+    }
+
+    /**
+     * 删除zset中尾部多余的成员，将zset中的成员数量限制到count之内。
+     * 保留前面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zlimit(int count) {
+        ensureWritable();
+        if (zcard() <= count) {
+            return 0;
+        }
+        return removeRankRange(Math.max(0, count), zcard());
+    }
+
+    /**
+     * 删除zset中头部多余的成员，将zset中的成员数量限制到count之内。
+     * - 保留后面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zrevlimit(int count) {
+        ensureWritable();
+        if (zcard() <= count) {
+            return 0;
+        }
+        return removeRankRange(0, zcard() - Math.max(0, count));
+    }
+
+    // -------------------------------------------------------- query -----------------------------------------------
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，返回null - 这里返回任意的基础值都是不合理的，因此必须返回null。
+     *
+     * @param member 成员id
+     * @return score
+     */
+    public Long zscore(@Nonnull K member) {
+        final TreapNode<K> dictNode = findDictNode(member);
+        return dictNode == null ? null : dictNode.score;
+    }
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，则返回给定的默认值 - 该方法不会产生装箱。
+     *
+     * @param member       成员id
+     * @param defaultValue 成员不存在时返回的值
+     * @return score
+     */
+    public long zscoreOrDefault(@Nonnull K member, long defaultValue) {
+        final TreapNode<K> dictNode = findDictNode(member);
+        return dictNode == null ? defaultValue : dictNode.score;
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(@Nonnull K member) {
+        return findDictNode(member) != null;
+    }
+
+    /**
+     * 返回有序集中成员member的排名。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrank(@Nonnull K member) {
+        final TreapNode<K> dictNode = findDictNode(member);
+        if (dictNode == null) {
+            return -1;
+        }
+        return countBefore(dictNode.score, member);
+    }
+
+    /**
+     * 返回有序集中成员member的逆序排名。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrevrank(@Nonnull K member) {
+        final int rank = zrank(member);
+        return rank < 0 ? -1 : zcard() - 1 - rank;
+    }
+
+    /**
+     * 获取指定排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Object2LongMember<K> zmemberByRank(int rank) {
+        if (rank < 0 || rank >= zcard()) {
+            return null;
+        }
+        final TreapNode<K> node = selectNode(rank);
+        return new Object2LongMember<>(node.obj, node.score);
+    }
+
+    /**
+     * 获取指定逆序排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Object2LongMember<K> zrevmemberByRank(int rank) {
+        if (rank < 0 || rank >= zcard()) {
+            return null;
+        }
+        final TreapNode<K> node = selectNode(zcard() - 1 - rank);
+        return new Object2LongMember<>(node.obj, node.score);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员）。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(long start, long end) {
+        return zrangeByScore(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(LongScoreRangeSpec spec) {
+        return zrangeByScoreWithOptions(spec, 0, -1, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员），返回的成员按照逆序排列。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(final long start, final long end) {
+        return zrevrangeByScore(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围之间的所有成员，返回的成员按照逆序排列。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(LongScoreRangeSpec spec) {
+        return zrangeByScoreWithOptions(spec, 0, -1, true);
+    }
+
+    /**
+     * 返回zset中指定分数区间内的成员，并按照指定顺序返回。
+     * 分数区间先转换为排名区间，偏移量直接加到排名上，不需要逐个跳过。
+     * <p>
+     * <b>Time complexity:</b> O(log(N) + M)，M为返回的成员数量
+     *
+     * @param rangeSpec score范围描述信息
+     * @param offset    偏移量(用于分页)  大于等于0
+     * @param limit     返回的成员数量(用于分页) 小于0表示不限制
+     * @param reverse   是否逆序
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScoreWithOptions(final LongScoreRangeSpec rangeSpec, int offset, int limit, boolean reverse) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset" + ": " + offset + " (expected: >= 0)");
+        }
+        final ZLongScoreRangeSpec range = newRangeSpec(rangeSpec);
+        // 区间内的成员排名为[firstRank, lastRank)
+        final int firstRank = firstRankInRange(range);
+        final int lastRank = lastRankInRange(range);
+        if (offset >= lastRank - firstRank) {
+            return new ArrayList<>();
+        }
+        final int count = limit < 0 ? lastRank - firstRank - offset : Math.min(limit, lastRank - firstRank - offset);
+        if (reverse) {
+            return rangeByRank(lastRank - 1 - offset, count, true);
+        } else {
+            return rangeByRank(firstRank + offset, count, false);
+        }
+    }
+
+    /**
+     * 查询指定排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByRank(int start, int end) {
+        final int zslLength = zcard();
+        start = ZSetUtils.convertStartRank(start, zslLength);
+        end = ZSetUtils.convertEndRank(end, zslLength);
+        if (ZSetUtils.isRankRangeEmpty(start, end, zslLength)) {
+            return new ArrayList<>();
+        }
+        return rangeByRank(start, end - start + 1, false);
+    }
+
+    /**
+     * 查询指定逆序排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByRank(int start, int end) {
+        final int zslLength = zcard();
+        start = ZSetUtils.convertStartRank(start, zslLength);
+        end = ZSetUtils.convertEndRank(end, zslLength);
+        if (ZSetUtils.isRankRangeEmpty(start, end, zslLength)) {
+            return new ArrayList<>();
+        }
+        return rangeByRank(zslLength - 1 - start, end - start + 1, true);
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间(包括score值等于start或end)的成员
+     *
+     * @param start 起始分数
+     * @param end   截止分数
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(long start, long end) {
+        return zcount(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     *
+     * @param rangeSpec score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(LongScoreRangeSpec rangeSpec) {
+        final ZLongScoreRangeSpec range = newRangeSpec(rangeSpec);
+        return Math.max(0, lastRankInRange(range) - firstRankInRange(range));
+    }
+
+    /**
+     * @return zset中的成员数量
+     */
+    public int zcard() {
+        return size(rankRoot);
+    }
+
+    /**
+     * 迭代有序集中的所有元素 - 迭代的是调用时的快照，迭代期间可以修改zset
+     *
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Object2LongMember<K>> zscan() {
+        return zscan(0);
+    }
+
+    /**
+     * 从指定偏移量开始迭代有序集中的元素 - 迭代的是调用时的快照，迭代期间可以修改zset
+     * <p>
+     * <b>Time complexity:</b> O(log(N))定位起始成员，之后每个成员均摊O(1)
+     *
+     * @param offset 偏移量，如果小于等于0，则等价于{@link #zscan()}
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Object2LongMember<K>> zscan(int offset) {
+        final Object2LongCowZSet<K> snapshot = snapshot();
+        final int start = Math.max(0, offset);
+        return new TreapItr<>(snapshot.rankRoot, start, Math.max(0, snapshot.zcard() - start), false);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Object2LongMember<K>> iterator() {
+        return zscan();
+    }
+
+    /**
+     * 获取zset的视图，用于测试
+     *
+     * @return string
+     */
+    public String dump() {
+        final StringBuilder sb = new StringBuilder("{epoch = " + epoch + ", nodeArray:[\n");
+        int rank = 0;
+        for (Iterator<Object2LongMember<K>> itr = new TreapItr<>(rankRoot, 0, zcard(), false); itr.hasNext(); ) {
+            final Object2LongMember<K> member = itr.next();
+            sb.append("{rank:").append(rank++)
+                    .append(",obj:").append(member.getMember())
+                    .append(",score:").append(member.getScore());
+
+            if (itr.hasNext()) {
+                sb.append("},\n");
+            } else {
+                sb.append("}\n");
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    private void ensureWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("snapshot is read-only");
+        }
+    }
+
+    private void insertMember(long score, K member) {
+        final int priority = ThreadLocalRandom.current().nextInt();
+        rankRoot = insert(rankRoot, new TreapNode<>(score, member, priority, epoch), false);
+        dictRoot = insert(dictRoot, new TreapNode<>(score, member, priority, epoch), true);
+    }
+
+    private void removeMember(long score, K member) {
+        rankRoot = remove(rankRoot, score, member, false);
+        dictRoot = remove(dictRoot, score, member, true);
+    }
+
+    private void updateScore(long oldScore, K member, long newScore) {
+        if (compareScore(oldScore, newScore) == 0) {
+            // 排序位置不变，只更新分数
+            rankRoot = updateRankScore(rankRoot, oldScore, member, newScore);
+        } else {
+            rankRoot = remove(rankRoot, oldScore, member, false);
+            rankRoot = insert(rankRoot, new TreapNode<>(newScore, member, ThreadLocalRandom.current().nextInt(), epoch), false);
+        }
+        dictRoot = updateDictScore(dictRoot, member, newScore);
+    }
+
+    /**
+     * 删除排名在[start, end)之间的成员。
+     * 排序树按排名拆分为三段再合并，只复制拆分路径上的O(log(N))个节点；字典树中的成员逐个删除。
+     *
+     * @return 删除的成员数量
+     */
+    private int removeRankRange(int start, int end) {
+        if (start >= end) {
+            return 0;
+        }
+        splitByRank(rankRoot, end);
+        final TreapNode<K> right = splitRight;
+        splitByRank(splitLeft, start);
+        final TreapNode<K> left = splitLeft;
+        removeAllFromDict(splitRight);
+        rankRoot = merge(left, right);
+        return end - start;
+    }
+
+    /**
+     * 将排序树拆分为排名小于rank的部分和其余部分，结果存储在{@link #splitLeft}和{@link #splitRight}中。
+     */
+    private void splitByRank(TreapNode<K> root, int rank) {
+        if (root == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        final TreapNode<K> node = own(root);
+        final int leftSize = size(node.left);
+        if (rank > leftSize) {
+            splitByRank(node.right, rank - leftSize - 1);
+            node.right = splitLeft;
+            node.updateSize();
+            splitLeft = node;
+        } else {
+            splitByRank(node.left, rank);
+            node.left = splitRight;
+            node.updateSize();
+            splitRight = node;
+        }
+    }
+
+    /**
+     * 从字典树中删除排序树子树中的所有成员
+     */
+    private void removeAllFromDict(TreapNode<K> node) {
+        while (node != null) {
+            removeAllFromDict(node.left);
+            dictRoot = remove(dictRoot, node.score, node.obj, true);
+            node = node.right;
+        }
+    }
+
+    /**
+     * 获取一个可以原地修改的节点：如果节点可能被快照引用，则复制该节点。
+     */
+    private TreapNode<K> own(TreapNode<K> node) {
+        if (node.epoch == epoch) {
+            return node;
+        }
+        final TreapNode<K> copy = new TreapNode<>(node.score, node.obj, node.priority, epoch);
+        copy.left = node.left;
+        copy.right = node.right;
+        copy.size = node.size;
+        return copy;
+    }
+
+    /**
+     * 插入一个不存在的节点
+     *
+     * @param dict 是否是字典树
+     * @return 新的根节点
+     */
+    private TreapNode<K> insert(TreapNode<K> root, TreapNode<K> newNode, boolean dict) {
+        if (root == null) {
+            return newNode;
+        }
+        if (newNode.priority > root.priority) {
+            // 新节点成为子树的根
+            split(root, newNode.score, newNode.obj, dict);
+            newNode.left = splitLeft;
+            newNode.right = splitRight;
+            newNode.updateSize();
+            return newNode;
+        }
+        final TreapNode<K> node = own(root);
+        if (compare(newNode.score, newNode.obj, node, dict) < 0) {
+            node.left = insert(node.left, newNode, dict);
+        } else {
+            node.right = insert(node.right, newNode, dict);
+        }
+        node.updateSize();
+        return node;
+    }
+
+    /**
+     * 将子树拆分为小于key的部分和大于key的部分，结果存储在{@link #splitLeft}和{@link #splitRight}中。
+     */
+    private void split(TreapNode<K> root, long score, K obj, boolean dict) {
+        if (root == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        final TreapNode<K> node = own(root);
+        if (compare(score, obj, node, dict) > 0) {
+            split(node.right, score, obj, dict);
+            node.right = splitLeft;
+            node.updateSize();
+            splitLeft = node;
+        } else {
+            split(node.left, score, obj, dict);
+            node.left = splitRight;
+            node.updateSize();
+            splitRight = node;
+        }
+    }
+
+    /**
+     * 删除一个存在的节点
+     *
+     * @param dict 是否是字典树
+     * @return 新的根节点
+     */
+    private TreapNode<K> remove(TreapNode<K> root, long score, K obj, boolean dict) {
+        final int compareR = compare(score, obj, root, dict);
+        if (compareR == 0) {
+            return merge(root.left, root.right);
+        }
+        final TreapNode<K> node = own(root);
+        if (compareR < 0) {
+            node.left = remove(node.left, score, obj, dict);
+        } else {
+            node.right = remove(node.right, score, obj, dict);
+        }
+        node.updateSize();
+        return node;
+    }
+
+    /**
+     * 合并两棵子树，left中的所有节点都小于right中的节点
+     */
+    private TreapNode<K> merge(TreapNode<K> left, TreapNode<K> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            final TreapNode<K> node = own(left);
+            node.right = merge(node.right, right);
+            node.updateSize();
+            return node;
+        } else {
+            final TreapNode<K> node = own(right);
+            node.left = merge(left, node.left);
+            node.updateSize();
+            return node;
+        }
+    }
+
+    /**
+     * 更新排序树中节点的分数，新分数与旧分数比较相等（排序位置不变）
+     */
+    private TreapNode<K> updateRankScore(TreapNode<K> root, long oldScore, K obj, long newScore) {
+        final TreapNode<K> node = own(root);
+        final int compareR = compare(oldScore, obj, node, false);
+        if (compareR == 0) {
+            node.score = newScore;
+        } else if (compareR < 0) {
+            node.left = updateRankScore(node.left, oldScore, obj, newScore);
+        } else {
+            node.right = updateRankScore(node.right, oldScore, obj, newScore);
+        }
+        return node;
+    }
+
+    /**
+     * 更新字典树中成员的分数，字典树按照成员排序，因此结构不变
+     */
+    private TreapNode<K> updateDictScore(TreapNode<K> root, K obj, long newScore) {
+        final TreapNode<K> node = own(root);
+        final int compareR = compareObj(obj, node.obj);
+        if (compareR == 0) {
+            node.score = newScore;
+        } else if (compareR < 0) {
+            node.left = updateDictScore(node.left, obj, newScore);
+        } else {
+            node.right = updateDictScore(node.right, obj, newScore);
+        }
+        return node;
+    }
+
+    @Nullable
+    private TreapNode<K> findDictNode(K obj) {
+        TreapNode<K> node = dictRoot;
+        while (node != null) {
+            final int compareR = compareObj(obj, node.obj);
+            if (compareR == 0) {
+                return node;
+            }
+            node = compareR < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * 计算排在(score, obj)之前的成员数量
+     */
+    private int countBefore(long score, K obj) {
+        int rank = 0;
+        TreapNode<K> node = rankRoot;
+        while (node != null) {
+            if (compare(score, obj, node, false) > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * 计算分数小于（或小于等于）score的成员数量
+     *
+     * @param inclusive 是否包含分数等于score的成员
+     */
+    private int countScoreBefore(long score, boolean inclusive) {
+        int rank = 0;
+        TreapNode<K> node = rankRoot;
+        while (node != null) {
+            final int compareR = compareScore(node.score, score);
+            if (compareR < 0 || (inclusive && compareR == 0)) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * @return 区间内第一个成员的排名
+     */
+    private int firstRankInRange(ZLongScoreRangeSpec range) {
+        return countScoreBefore(range.min, range.minex);
+    }
+
+    /**
+     * @return 区间内最后一个成员的排名 + 1
+     */
+    private int lastRankInRange(ZLongScoreRangeSpec range) {
+        return countScoreBefore(range.max, !range.maxex);
+    }
+
+    /**
+     * 查找指定排名的节点
+     *
+     * @param rank 排名 0-based，调用者保证有效
+     */
+    private TreapNode<K> selectNode(int rank) {
+        TreapNode<K> node = rankRoot;
+        while (true) {
+            final int leftSize = size(node.left);
+            if (rank < leftSize) {
+                node = node.left;
+            } else if (rank == leftSize) {
+                return node;
+            } else {
+                rank -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * 从指定排名开始，读取count个成员
+     *
+     * @param rank    起始排名 0-based
+     * @param count   数量
+     * @param reverse 是否逆序读取
+     */
+    private List<Object2LongMember<K>> rangeByRank(int rank, int count, boolean reverse) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+        final List<Object2LongMember<K>> result = new ArrayList<>(count);
+        for (Iterator<Object2LongMember<K>> itr = new TreapItr<>(rankRoot, rank, count, reverse); itr.hasNext(); ) {
+            result.add(itr.next());
+        }
+        return result;
+    }
+
+    private ZLongScoreRangeSpec newRangeSpec(LongScoreRangeSpec spec) {
+        final long start = spec.getStart();
+        final long end = spec.getEnd();
+        if (compareScore(start, end) <= 0) {
+            return new ZLongScoreRangeSpec(start, spec.isStartEx(), end, spec.isEndEx());
+        } else {
+            return new ZLongScoreRangeSpec(end, spec.isEndEx(), start, spec.isStartEx());
+        }
+    }
+
+    /**
+     * 比较key与节点的大小
+     *
+     * @param dict 是否是字典树，字典树只比较obj
+     */
+    private int compare(long score, K obj, TreapNode<K> node, boolean dict) {
+        if (!dict) {
+            final int scoreCompareR = compareScore(score, node.score);
+            if (scoreCompareR != 0) {
+                return scoreCompareR;
+            }
+        }
+        return compareObj(obj, node.obj);
+    }
+
+    private int compareObj(@Nonnull K objA, @Nonnull K objB) {
+        return objComparator.compare(objA, objB);
+    }
+
+    private int compareScore(long score1, long score2) {
+        return scoreHandler.compare(score1, score2);
+    }
+
+    private static int size(TreapNode<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * treap的节点 - 纪元小于zset当前纪元的节点可能被快照引用，不可以再修改
+     */
+    private static final class TreapNode<K> {
+
+        /**
+         * 排序树中，只有在排序位置不变时才可以修改
+         */
+        long score;
+        final K obj;
+        /**
+         * 堆的优先级，同一个成员在两棵树中的优先级相同
+         */
+        final int priority;
+        /**
+         * 创建该节点的纪元
+         */
+        final int epoch;
+
+        /**
+         * 子树的节点数量
+         */
+        int size = 1;
+        TreapNode<K> left;
+        TreapNode<K> right;
+
+        TreapNode(long score, K obj, int priority, int epoch) {
+            this.score = score;
+            this.obj = obj;
+            this.priority = priority;
+            this.epoch = epoch;
+        }
+
+        void updateSize() {
+            size = size(left) + size(right) + 1;
+        }
+    }
+
+    /**
+     * 从指定排名开始的中序遍历迭代器
+     */
+    private static class TreapItr<K> implements Iterator<Object2LongMember<K>> {
+
+        /**
+         * 待访问的祖先节点
+         */
+        private final ArrayDeque<TreapNode<K>> stack = new ArrayDeque<>();
+        private final boolean reverse;
+        private int remain;
+
+        TreapItr(TreapNode<K> root, int rank, int count, boolean reverse) {
+            this.reverse = reverse;
+            this.remain = count;
+
+            // 找到起始节点，记录路径上之后需要访问的祖先节点
+            TreapNode<K> node = root;
+            while (node != null) {
+                final int leftSize = size(node.left);
+                if (rank < leftSize) {
+                    if (!reverse) {
+                        stack.push(node);
+                    }
+                    node = node.left;
+                } else if (rank == leftSize) {
+                    stack.push(node);
+                    break;
+                } else {
+                    if (reverse) {
+                        stack.push(node);
+                    }
+                    rank -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remain > 0 && !stack.isEmpty();
+        }
+
+        @Override
+        public Object2LongMember<K> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final TreapNode<K> node = stack.pop();
+            // 下一个节点是另一侧子树的最左（最右）节点
+            TreapNode<K> next = reverse ? node.left : node.right;
+            while (next != null) {
+                stack.push(next);
+                next = reverse ? next.right : next.left;
+            }
+            remain--;
+            return new Object2LongMember<>(node.obj, node.score);
+        }
+    }
+}
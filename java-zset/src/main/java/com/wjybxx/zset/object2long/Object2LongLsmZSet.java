@@ -0,0 +1,1045 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+import com.wjybxx.zset.ZSetUtils;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 基础层 + 增量层的zset（类似LSM树），适合成员数量巨大、但每分钟只有少量成员变化的排行榜(例如：总榜)。
+ * <p>
+ * <b>存储结构</b>
+ * 1. 基础层：{@link Object2LongFrozenZSet}，成员和分数存储在连续的数组中，内存占用远小于跳表，不可修改。
+ * 2. 增量层：一个小的{@link Object2LongZSet}，存储基础层之后新增或修改了分数的成员。
+ * 3. 墓碑：基础层中已删除或已被增量层覆盖的成员，使用位图 + 按块计数的树状数组记录，每个成员约占用1.5bit。
+ * <p>
+ * 写操作只修改增量层和墓碑，代价与小型跳表相同；排名和范围查询合并两层的结果，时间复杂度为O(log(N) * log(M))，M为增量层的成员数量。
+ * 增量层的修改数量达到{@link #setAutoCompactMinSize(int) autoCompactMinSize}时，会在后台线程将两层合并为新的基础层，
+ * 合并期间的修改仍然写入当前的增量层，合并完成后，合并期间修改过的成员会重新写入新的增量层。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. 排序规则与{@link Object2LongZSet}一致，分数相同时按照键排序。
+ * 2. 后台合并只读取不可变的数据，合并结果由调用线程在下一次写操作(或{@link #awaitCompaction()})时切换，因此该类不需要加锁，但它不是线程安全的。
+ * 3. 合并期间新旧两个基础层同时存在，需要预留相应的内存。
+ * 4. 删除范围内的成员(zremrangeByScore、zremrangeByRank、zlimit)需要逐个写入墓碑，时间复杂度为O(M * log(N))。
+ * 5. 接口与{@link Object2LongZSet}一致（不包括批量添加、有界模式和事件监听），按排名删除(zremByRank、zpopFirst、zpopLast)先合并两层查找成员再删除；
+ * zscan返回的迭代器不支持remove，迭代期间不能修改zset。
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@NotThreadSafe
+public class Object2LongLsmZSet<K> implements Iterable<Object2LongMember<K>> {
+
+    /**
+     * 默认的自动合并阈值
+     */
+    private static final int DEFAULT_AUTO_COMPACT_MIN_SIZE = 64 * 1024;
+
+    private final Comparator<K> objComparator;
+    private final LongScoreHandler scoreHandler;
+
+    private Object2LongFrozenZSet<K> base;
+    private Tombstones tombstones;
+    private Object2LongZSet<K> delta;
+
+    private int autoCompactMinSize = DEFAULT_AUTO_COMPACT_MIN_SIZE;
+    /**
+     * 正在进行的合并，为null表示没有在合并
+     */
+    private CompletableFuture<Object2LongFrozenZSet<K>> compactFuture;
+    /**
+     * 合并开始以后修改过的成员
+     */
+    private ObjectSet<K> compactTouched;
+
+    private Object2LongLsmZSet(Object2LongFrozenZSet<K> base) {
+        this.objComparator = base.keyComparator();
+        this.scoreHandler = base.scoreHandler();
+        this.base = base;
+        this.tombstones = new Tombstones(base.zcard());
+        this.delta = Object2LongZSet.newGenericKeyZSet(objComparator, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为string类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongLsmZSet<String> newStringKeyZSet(LongScoreHandler scoreHandler) {
+        return newGenericKeyZSet(String::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为long类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongLsmZSet<Long> newLongKeyZSet(LongScoreHandler scoreHandler) {
+        return newGenericKeyZSet(Long::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个键为int类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @return zset
+     */
+    public static Object2LongLsmZSet<Integer> newIntKeyZSet(LongScoreHandler scoreHandler) {
+        return newGenericKeyZSet(Integer::compareTo, scoreHandler);
+    }
+
+    /**
+     * 创建一个自定义键类型的zset
+     *
+     * @param keyComparator 键比较器，当score比较结果相等时，比较key，见{@link Object2LongZSet}的类文档
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param <K>           键的类型
+     * @return zset
+     */
+    @SuppressWarnings("unchecked")
+    public static <K> Object2LongLsmZSet<K> newGenericKeyZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler) {
+        return new Object2LongLsmZSet<>(new Object2LongFrozenZSet<>(scoreHandler, keyComparator, new long[0], (K[]) new Object[0]));
+    }
+
+    /**
+     * 以冻结的zset作为基础层创建zset，排序规则与冻结的zset一致。
+     * 大型排行榜可以先加载到{@link Object2LongZSet}中，再通过{@link Object2LongZSet#freeze()}创建基础层。
+     *
+     * @param base 基础层，不会被修改，可以与其它对象共享
+     * @param <K>  键的类型
+     * @return zset
+     */
+    public static <K> Object2LongLsmZSet<K> newZSet(@Nonnull Object2LongFrozenZSet<K> base) {
+        return new Object2LongLsmZSet<>(base);
+    }
+
+    /**
+     * 设置自动合并的阈值，增量层的成员数量与墓碑数量之和达到该值时，自动开始后台合并。
+     *
+     * @param autoCompactMinSize 小于等于0表示不自动合并
+     */
+    public void setAutoCompactMinSize(int autoCompactMinSize) {
+        this.autoCompactMinSize = autoCompactMinSize;
+    }
+
+    // -------------------------------------------------------- insert -----------------------------------------------
+
+    /**
+     * 往有序集合中新增一个成员。
+     * 如果指定添加的成员已经是有序集合里面的成员，则会更新成员的分数（score）并更新到正确的排序位置。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     */
+    public void zadd(final long score, @Nonnull final K member) {
+        beforeWrite(member);
+        if (!delta.containsMember(member)) {
+            final int baseRank = liveBaseRank(member);
+            if (baseRank >= 0) {
+                if (base.scoreAt(baseRank) == score) {
+                    return;
+                }
+                // 基础层中的旧数据被增量层覆盖
+                tombstones.mark(baseRank);
+            }
+        }
+        delta.zadd(score, member);
+        afterWrite();
+    }
+
+    /**
+     * 往有序集合中新增一个成员。当且仅当该成员不在有序集合时才添加。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     * @return 添加成功则返回true，否则返回false。
+     */
+    public boolean zaddnx(final long score, @Nonnull final K member) {
+        if (containsMember(member)) {
+            return false;
+        }
+        zadd(score, member);
+        return true;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，就在有序集中添加一个member，score是increment（就好像它之前的score是0）
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值
+     */
+    public long zincrby(long increment, @Nonnull K member) {
+        final Long oldScore = zscore(member);
+        final long score = oldScore == null ? increment : scoreHandler.sum(oldScore, increment);
+        zadd(score, member);
+        return score;
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，则放弃更新并返回0。
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值，如果更新失败，则返回0。
+     */
+    public long zincrbyxx(long increment, @Nonnull K member) {
+        final Long oldScore = zscore(member);
+        if (oldScore == null) {
+            return 0;
+        }
+        final long score = scoreHandler.sum(oldScore, increment);
+        zadd(score, member);
+        return score;
+    }
+
+    // -------------------------------------------------------- remove -----------------------------------------------
+
+    /**
+     * 删除指定成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回对应的score，否则返回null。
+     */
+    public Long zrem(@Nonnull K member) {
+        beforeWrite(member);
+        // 如果成员在增量层中，基础层中的旧数据已经是墓碑
+        final Long score = delta.zrem(member);
+        if (score != null) {
+            return score;
+        }
+        final int baseRank = liveBaseRank(member);
+        if (baseRank < 0) {
+            return null;
+        }
+        tombstones.mark(baseRank);
+        afterWrite();
+        return base.scoreAt(baseRank);
+    }
+
+    /**
+     * 删除并返回有序集合中的第一个成员。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopFirst() {
+        return zremByRank(0);
+    }
+
+    /**
+     * 删除并返回有序集合中的最后一个成员。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopLast() {
+        return zremByRank(zcard() - 1);
+    }
+
+    /**
+     * 删除指定排名的成员
+     * <p>
+     * <b>Time complexity:</b> O(log(N) * log(M))
+     *
+     * @param rank 排名 0-based
+     * @return 删除成功则返回该排名对应的数据，否则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zremByRank(int rank) {
+        final Object2LongMember<K> member = zmemberByRank(rank);
+        if (member != null) {
+            zrem(member.getMember());
+        }
+        return member;
+    }
+
+    /**
+     * 移除zset中所有score值介于start和end之间(包括等于start或end)的成员
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return 删除的成员数目
+     */
+    public int zremrangeByScore(long start, long end) {
+        return zremAll(zrangeByScore(start, end));
+    }
+
+    /**
+     * 删除指定排名范围的全部成员，start和end都是从0开始的。
+     * start和end都可以是负数，此时它们表示从最高排名成员开始的偏移量，eg: -1表示最高排名的成员， -2表示第二高分的成员，以此类推。
+     *
+     * @param start 起始排名
+     * @param end   截止排名
+     * @return 删除的成员数目
+     */
+    public int zremrangeByRank(int start, int end) {
+        return zremAll(zrangeByRank(start, end));
+    }
+
+    /**
+     * 删除zset中尾部多余的成员，将zset中的成员数量限制到count之内。
+     * 保留前面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zlimit(int count) {
+        if (zcard() <= count) {
+            return 0;
+        }
+        return zremrangeByRank(count, -1);
+    }
+
+    /**
+     * 删除zset中头部多余的成员，将zset中的成员数量限制到count之内。
+     * - 保留后面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zrevlimit(int count) {
+        final int length = zcard();
+        if (length <= count) {
+            return 0;
+        }
+        return zremrangeByRank(0, length - count - 1);
+    }
+
+    private int zremAll(List<Object2LongMember<K>> members) {
+        for (Object2LongMember<K> member : members) {
+            zrem(member.getMember());
+        }
+        return members.size();
+    }
+
+    // -------------------------------------------------------- query -----------------------------------------------
+
+    /**
+     * 返回有序集成员member的score值。
+     *
+     * @param member 成员id
+     * @return score，如果成员不存在，则返回null
+     */
+    @Nullable
+    public Long zscore(@Nonnull K member) {
+        final Long score = delta.zscore(member);
+        if (score != null) {
+            return score;
+        }
+        final int baseRank = liveBaseRank(member);
+        return baseRank < 0 ? null : base.scoreAt(baseRank);
+    }
+
+    /**
+     * 返回有序集成员member的score值，如果成员不存在，则返回默认值。
+     *
+     * @param member       成员id
+     * @param defaultValue 成员不存在时返回的默认值
+     * @return score
+     */
+    public long zscoreOrDefault(@Nonnull K member, long defaultValue) {
+        final Long score = zscore(member);
+        return score == null ? defaultValue : score;
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(@Nonnull K member) {
+        return delta.containsMember(member) || liveBaseRank(member) >= 0;
+    }
+
+    /**
+     * 返回有序集中成员member的排名。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrank(@Nonnull K member) {
+        final Long score = delta.zscore(member);
+        if (score != null) {
+            return delta.zrank(member) + liveBaseCountBefore(score, member);
+        }
+        final int baseRank = liveBaseRank(member);
+        if (baseRank < 0) {
+            return -1;
+        }
+        return baseRank - tombstones.countBefore(baseRank) + delta.zcountBefore(base.scoreAt(baseRank), member);
+    }
+
+    /**
+     * 返回有序集中成员member的逆序排名。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrevrank(@Nonnull K member) {
+        final int rank = zrank(member);
+        return rank < 0 ? -1 : zcard() - 1 - rank;
+    }
+
+    /**
+     * 返回有序集中排在(score, member)之前的成员数量，即(score, member)插入到有序集中时的排名。
+     *
+     * @param score  分数
+     * @param member 成员id
+     * @return 排在它前面的成员数量
+     */
+    public int zcountBefore(long score, @Nonnull K member) {
+        return delta.zcountBefore(score, member) + liveBaseCountBefore(score, member);
+    }
+
+    /**
+     * 获取指定排名的成员数据。
+     * <p>
+     * <b>Time complexity:</b> O(log(N) * log(M))
+     *
+     * @param rank 排名 0-based
+     * @return member，如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zmemberByRank(int rank) {
+        if (rank < 0 || rank >= zcard()) {
+            return null;
+        }
+        final List<Object2LongMember<K>> result = rangeOf(rank, rank + 1);
+        return result.get(0);
+    }
+
+    /**
+     * 获取指定逆序排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return member，如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zrevmemberByRank(int rank) {
+        return zmemberByRank(zcard() - 1 - rank);
+    }
+
+    // region 通过分数查询
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员）。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(long start, long end) {
+        return zrangeByScore(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(LongScoreRangeSpec spec) {
+        return zrangeByScoreWithOptions(spec, 0, -1, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员），返回的成员按照逆序排列。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(long start, long end) {
+        return zrevrangeByScore(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员，返回的成员按照逆序排列。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(LongScoreRangeSpec spec) {
+        return zrangeByScoreWithOptions(spec, 0, -1, true);
+    }
+
+    /**
+     * 返回zset中指定分数区间内的成员，并按照指定顺序返回。
+     * 分数区间先转换为排名区间，再按照偏移量截取，因此偏移量不需要逐个跳过。
+     *
+     * @param rangeSpec score范围描述信息
+     * @param offset    偏移量(用于分页)  大于等于0
+     * @param limit     返回的成员数量(用于分页) 小于0表示不限制
+     * @param reverse   是否逆序
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScoreWithOptions(final LongScoreRangeSpec rangeSpec, int offset, int limit, boolean reverse) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset" + ": " + offset + " (expected: >= 0)");
+        }
+        final ZLongScoreRangeSpec range = newRangeSpec(rangeSpec);
+        // 区间内的成员排名为[first, last)
+        final int first = countBefore(range.min, range.minex);
+        final int last = countBefore(range.max, !range.maxex);
+        if (offset >= last - first || limit == 0) {
+            return new ArrayList<>();
+        }
+        final int count = limit < 0 ? last - first - offset : Math.min(limit, last - first - offset);
+        if (reverse) {
+            final List<Object2LongMember<K>> result = rangeOf(last - offset - count, last - offset);
+            Collections.reverse(result);
+            return result;
+        } else {
+            return rangeOf(first + offset, first + offset + count);
+        }
+    }
+    // endregion
+
+    // region 通过排名查询
+
+    /**
+     * 查询指定排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByRank(int start, int end) {
+        final int length = zcard();
+        start = ZSetUtils.convertStartRank(start, length);
+        end = ZSetUtils.convertEndRank(end, length);
+        if (ZSetUtils.isRankRangeEmpty(start, end, length)) {
+            return new ArrayList<>();
+        }
+        return rangeOf(start, end + 1);
+    }
+
+    /**
+     * 查询指定逆序排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByRank(int start, int end) {
+        final int length = zcard();
+        start = ZSetUtils.convertStartRank(start, length);
+        end = ZSetUtils.convertEndRank(end, length);
+        if (ZSetUtils.isRankRangeEmpty(start, end, length)) {
+            return new ArrayList<>();
+        }
+        final List<Object2LongMember<K>> result = rangeOf(length - 1 - end, length - start);
+        Collections.reverse(result);
+        return result;
+    }
+    // endregion
+
+    // region 统计分数人数
+
+    /**
+     * 返回有序集key中，score值在指定区间(包括score值等于start或end)的成员
+     *
+     * @param start 起始分数
+     * @param end   截止分数
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(long start, long end) {
+        return zcount(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     *
+     * @param spec 范围描述信息
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(LongScoreRangeSpec spec) {
+        final ZLongScoreRangeSpec range = newRangeSpec(spec);
+        return Math.max(0, countBefore(range.max, !range.maxex) - countBefore(range.min, range.minex));
+    }
+
+    /**
+     * @return zset中的成员数量
+     */
+    public int zcard() {
+        return base.zcard() - tombstones.count() + delta.zcard();
+    }
+    // endregion
+
+    // region 迭代
+
+    /**
+     * 迭代有序集中的所有元素，迭代期间不能修改zset
+     *
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Object2LongMember<K>> zscan() {
+        return zscan(0);
+    }
+
+    /**
+     * 从指定偏移量开始迭代有序集中的元素，迭代期间不能修改zset
+     *
+     * @param offset 偏移量，如果小于等于0，则等价于{@link #zscan()}
+     * @return iterator
+     */
+    @Nonnull
+    public Iterator<Object2LongMember<K>> zscan(int offset) {
+        return new MergeItr(Math.max(0, Math.min(offset, zcard())));
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Object2LongMember<K>> iterator() {
+        return zscan(0);
+    }
+    // endregion
+
+    // region 合并
+
+    /**
+     * 开始在后台将增量层和墓碑合并到新的基础层
+     *
+     * @return 如果已经在合并，则返回false
+     */
+    public boolean compactAsync() {
+        completeCompactionIfDone();
+        if (compactFuture != null) {
+            return false;
+        }
+        // 基础层是不可变的，墓碑和增量层复制一份，之后的修改记录在compactTouched中
+        final Object2LongFrozenZSet<K> base = this.base;
+        final long[] deadBits = tombstones.bits.clone();
+        final int deadCount = tombstones.count();
+        final List<Object2LongMember<K>> deltaMembers = delta.zrangeByRank(0, -1);
+        final CompletableFuture<Object2LongFrozenZSet<K>> future = new CompletableFuture<>();
+        compactTouched = new ObjectOpenHashSet<>();
+        compactFuture = future;
+
+        final Thread thread = new Thread(() -> {
+            try {
+                future.complete(merge(base, deadBits, deadCount, deltaMembers));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, "zset-lsm-compact");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * @return 是否正在合并
+     */
+    public boolean isCompacting() {
+        completeCompactionIfDone();
+        return compactFuture != null;
+    }
+
+    /**
+     * 等待正在进行的合并完成，并切换到新的基础层
+     */
+    public void awaitCompaction() {
+        if (compactFuture != null) {
+            completeCompaction();
+        }
+    }
+
+    /**
+     * @return 基础层的成员数量(包括墓碑)
+     */
+    public int baseSize() {
+        return base.zcard();
+    }
+
+    /**
+     * @return 增量层的成员数量
+     */
+    public int deltaSize() {
+        return delta.zcard();
+    }
+    // endregion
+
+    /**
+     * 获取zset的视图，用于测试
+     *
+     * @return string
+     */
+    public String dump() {
+        final StringBuilder sb = new StringBuilder("{baseSize = " + baseSize() + ", deltaSize = " + deltaSize() + ", nodeArray:[\n");
+        int rank = 0;
+        for (Iterator<Object2LongMember<K>> itr = new MergeItr(0); itr.hasNext(); ) {
+            final Object2LongMember<K> member = itr.next();
+            sb.append("{rank:").append(rank++)
+                    .append(",obj:").append(member.getMember())
+                    .append(",score:").append(member.getScore());
+
+            if (itr.hasNext()) {
+                sb.append("},\n");
+            } else {
+                sb.append("}\n");
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    private void beforeWrite(K member) {
+        completeCompactionIfDone();
+        if (compactTouched != null) {
+            compactTouched.add(member);
+        }
+    }
+
+    private void afterWrite() {
+        if (compactFuture == null && autoCompactMinSize > 0
+                && delta.zcard() + tombstones.count() >= autoCompactMinSize) {
+            compactAsync();
+        }
+    }
+
+    private void completeCompactionIfDone() {
+        if (compactFuture != null && compactFuture.isDone()) {
+            completeCompaction();
+        }
+    }
+
+    /**
+     * 切换到新的基础层，合并期间修改过的成员以当前的状态重新写入新的增量层和墓碑
+     */
+    private void completeCompaction() {
+        final CompletableFuture<Object2LongFrozenZSet<K>> future = compactFuture;
+        final ObjectSet<K> touched = compactTouched;
+        compactFuture = null;
+        compactTouched = null;
+
+        final Object2LongFrozenZSet<K> newBase;
+        try {
+            newBase = future.join();
+        } catch (CompletionException e) {
+            // 合并失败不影响当前的数据
+            throw new IllegalStateException("compact failed", e.getCause());
+        }
+        final Tombstones newTombstones = new Tombstones(newBase.zcard());
+        final Object2LongZSet<K> newDelta = Object2LongZSet.newGenericKeyZSet(objComparator, scoreHandler);
+        for (K member : touched) {
+            final Long score = zscore(member);
+            final int newBaseRank = newBase.zrank(member);
+            if (newBaseRank >= 0) {
+                if (score != null && newBase.scoreAt(newBaseRank) == score) {
+                    continue;
+                }
+                newTombstones.mark(newBaseRank);
+            }
+            if (score != null) {
+                newDelta.zadd(score, member);
+            }
+        }
+        base = newBase;
+        tombstones = newTombstones;
+        delta = newDelta;
+    }
+
+    private Object2LongFrozenZSet<K> merge(Object2LongFrozenZSet<K> base, long[] deadBits, int deadCount,
+                                           List<Object2LongMember<K>> deltaMembers) {
+        final int baseLength = base.zcard();
+        final int length = baseLength - deadCount + deltaMembers.size();
+        final long[] scores = new long[length];
+        @SuppressWarnings("unchecked") final K[] members = (K[]) new Object[length];
+
+        int baseRank = 0;
+        int deltaIndex = 0;
+        for (int rank = 0; rank < length; rank++) {
+            while (baseRank < baseLength && Tombstones.isDead(deadBits, baseRank)) {
+                baseRank++;
+            }
+            final boolean takeBase;
+            if (baseRank >= baseLength) {
+                takeBase = false;
+            } else if (deltaIndex >= deltaMembers.size()) {
+                takeBase = true;
+            } else {
+                final Object2LongMember<K> deltaMember = deltaMembers.get(deltaIndex);
+                takeBase = compare(base.scoreAt(baseRank), base.memberAt(baseRank), deltaMember.getScore(), deltaMember.getMember()) < 0;
+            }
+            if (takeBase) {
+                scores[rank] = base.scoreAt(baseRank);
+                members[rank] = base.memberAt(baseRank);
+                baseRank++;
+            } else {
+                final Object2LongMember<K> deltaMember = deltaMembers.get(deltaIndex++);
+                scores[rank] = deltaMember.getScore();
+                members[rank] = deltaMember.getMember();
+            }
+        }
+        return new Object2LongFrozenZSet<>(scoreHandler, objComparator, scores, members);
+    }
+
+    /**
+     * @return 成员在基础层中的排名，如果不存在或者已经是墓碑，则返回-1
+     */
+    private int liveBaseRank(K member) {
+        final int baseRank = base.zrank(member);
+        return baseRank < 0 || tombstones.isDead(baseRank) ? -1 : baseRank;
+    }
+
+    /**
+     * @return 基础层中排在(score, member)之前的有效成员数量
+     */
+    private int liveBaseCountBefore(long score, K member) {
+        final int baseRank = base.zcountBefore(score, member);
+        return baseRank - tombstones.countBefore(baseRank);
+    }
+
+    /**
+     * 查找排在key之前的成员数量
+     *
+     * @param key         分数
+     * @param equalBefore 与key相等的分数是否视为排在key之前
+     * @return 成员数量
+     */
+    private int countBefore(long key, boolean equalBefore) {
+        final int baseRank = base.search(key, equalBefore);
+        final int liveBaseCount = baseRank - tombstones.countBefore(baseRank);
+        if (delta.zcard() == 0) {
+            return liveBaseCount;
+        }
+        // 增量层中分数在[第一个成员的分数, key]之间的成员数量
+        final long firstScore = delta.zmemberByRank(0).getScore();
+        final int r = scoreHandler.compare(key, firstScore);
+        if (r < 0 || (r == 0 && !equalBefore)) {
+            return liveBaseCount;
+        }
+        return liveBaseCount + delta.zcount(new LongScoreRangeSpec(firstScore, false, key, !equalBefore));
+    }
+
+    /**
+     * 合并两层，返回排名在[start, end)之间的成员
+     */
+    private List<Object2LongMember<K>> rangeOf(int start, int end) {
+        if (start >= end) {
+            return new ArrayList<>();
+        }
+        final MergeItr itr = new MergeItr(start);
+        final List<Object2LongMember<K>> result = new ArrayList<>(end - start);
+        for (int rank = start; rank < end; rank++) {
+            result.add(itr.next());
+        }
+        return result;
+    }
+
+    /**
+     * 增量层中第index个成员的排名是 index + 基础层中排在它前面的有效成员数量，随index单调递增，因此可以二分查找。
+     *
+     * @return 增量层中排名小于rank的成员数量
+     */
+    private int deltaCountBeforeRank(int rank) {
+        int low = 0;
+        int high = delta.zcard();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final Object2LongMember<K> member = delta.zmemberByRank(mid);
+            if (mid + liveBaseCountBefore(member.getScore(), member.getMember()) < rank) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compare(long scoreA, K memberA, long scoreB, K memberB) {
+        final int r = scoreHandler.compare(scoreA, scoreB);
+        return r != 0 ? r : objComparator.compare(memberA, memberB);
+    }
+
+    /**
+     * 按照分数处理器的顺序，使min一定排在max之前，与{@link Object2LongZSet}一致
+     */
+    private ZLongScoreRangeSpec newRangeSpec(LongScoreRangeSpec spec) {
+        if (scoreHandler.compare(spec.getStart(), spec.getEnd()) <= 0) {
+            return new ZLongScoreRangeSpec(spec.getStart(), spec.isStartEx(), spec.getEnd(), spec.isEndEx());
+        } else {
+            return new ZLongScoreRangeSpec(spec.getEnd(), spec.isEndEx(), spec.getStart(), spec.isStartEx());
+        }
+    }
+
+    /**
+     * 按照排名顺序合并两层的迭代器，创建以后不能再修改zset
+     */
+    private class MergeItr implements Iterator<Object2LongMember<K>> {
+
+        private final Iterator<Object2LongMember<K>> deltaItr;
+        private Object2LongMember<K> deltaMember;
+        private int baseRank;
+        private int remaining;
+
+        MergeItr(int start) {
+            // 增量层中排在start之前的成员数量，其余的都来自基础层
+            final int deltaStart = deltaCountBeforeRank(start);
+            this.deltaItr = delta.zscan(deltaStart);
+            this.deltaMember = deltaItr.hasNext() ? deltaItr.next() : null;
+            this.baseRank = tombstones.selectLive(start - deltaStart);
+            this.remaining = zcard() - start;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Object2LongMember<K> next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            final int baseLength = base.zcard();
+            while (baseRank < baseLength && tombstones.isDead(baseRank)) {
+                baseRank++;
+            }
+            if (baseRank < baseLength && (deltaMember == null
+                    || compare(base.scoreAt(baseRank), base.memberAt(baseRank), deltaMember.getScore(), deltaMember.getMember()) < 0)) {
+                final Object2LongMember<K> member = new Object2LongMember<>(base.memberAt(baseRank), base.scoreAt(baseRank));
+                baseRank++;
+                return member;
+            }
+            final Object2LongMember<K> member = deltaMember;
+            deltaMember = deltaItr.hasNext() ? deltaItr.next() : null;
+            return member;
+        }
+    }
+
+    /**
+     * 基础层的墓碑
+     * 位图记录每个排名是否已删除，树状数组记录每64个排名(一个long)中删除的数量，
+     * 因此可以O(log(N))计算某个排名之前删除的数量，以及查找第k个有效的排名。
+     */
+    private static final class Tombstones {
+
+        private final int length;
+        private final long[] bits;
+        /**
+         * 下标从1开始，超出length的位在创建时标记为已删除，使每个块的容量都是64
+         */
+        private final int[] tree;
+        private int count;
+
+        Tombstones(int length) {
+            this.length = length;
+            this.bits = new long[(length + 63) >>> 6];
+            this.tree = new int[bits.length + 1];
+            final int padding = (bits.length << 6) - length;
+            if (padding > 0) {
+                bits[bits.length - 1] = -1L << (64 - padding);
+                add(bits.length - 1, padding);
+            }
+        }
+
+        int count() {
+            return count;
+        }
+
+        boolean isDead(int rank) {
+            return isDead(bits, rank);
+        }
+
+        static boolean isDead(long[] bits, int rank) {
+            return (bits[rank >>> 6] & (1L << rank)) != 0;
+        }
+
+        void mark(int rank) {
+            final int block = rank >>> 6;
+            final long mask = 1L << rank;
+            if ((bits[block] & mask) == 0) {
+                bits[block] |= mask;
+                add(block, 1);
+                count++;
+            }
+        }
+
+        /**
+         * @return 排名在[0, rank)之间的墓碑数量
+         */
+        int countBefore(int rank) {
+            final int block = rank >>> 6;
+            int result = 0;
+            for (int index = block; index > 0; index -= index & -index) {
+                result += tree[index];
+            }
+            if (block < bits.length) {
+                result += Long.bitCount(bits[block] & ((1L << rank) - 1));
+            }
+            return result;
+        }
+
+        /**
+         * @param k 有效成员的下标(0-based)
+         * @return 第k个有效成员的排名，如果不存在，则返回length
+         */
+        int selectLive(int k) {
+            if (k >= length - count) {
+                return length;
+            }
+            // 在树状数组上查找有效成员数量不超过k的最长前缀块
+            int block = 0;
+            for (int step = Integer.highestOneBit(bits.length); step > 0; step >>>= 1) {
+                final int next = block + step;
+                if (next <= bits.length) {
+                    final int live = (step << 6) - tree[next];
+                    if (live <= k) {
+                        block = next;
+                        k -= live;
+                    }
+                }
+            }
+            // 在块内查找第k个为0的位
+            long live = ~bits[block];
+            for (int index = 0; index < k; index++) {
+                live &= live - 1;
+            }
+            return (block << 6) + Long.numberOfTrailingZeros(live);
+        }
+
+        private void add(int block, int delta) {
+            for (int index = block + 1; index < tree.length; index += index & -index) {
+                tree[index] += delta;
+            }
+        }
+    }
+}
@@ -0,0 +1,560 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+import com.wjybxx.zset.ZSetCodec;
+import com.wjybxx.zset.ZSetUtils;
+import it.unimi.dsi.fastutil.HashCommon;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 直接在内存映射文件上查询的只读zset，适合大量只读不写的排行榜（例如：往期赛季的排行榜）。
+ * 查询时不会在堆上创建跳表和字典，数据由操作系统按需加载到页缓存中，因此即使同时打开上百个排行榜，堆内存的占用也几乎为0。
+ * <p>
+ * <b>文件格式</b>（由{@link #write(Object2LongZSet, Path, ZSetCodec)}生成）
+ * 1. 文件头：魔数、版本号、成员数量、排名区和索引区的偏移量、文件长度。
+ * 2. 成员区：按照排名顺序存储{@link ZSetCodec}编码后的成员。
+ * 3. 排名区：按照排名顺序存储定长的(分数，成员偏移量)，因此可以O(1)定位任意排名，并按照分数二分查找。
+ * 4. 索引区：定长的(成员hash，排名)，按照hash排序，用于通过成员二分查找排名。
+ * <p>
+ * <b>时间复杂度</b>
+ * 1. 打开文件是O(1)的：只映射文件和校验文件头，不读取成员。
+ * 2. zrank、zscore：O(log(N))，对成员编码以后，在索引区二分查找hash，再比较编码后的字节。
+ * 3. zmemberByRank：O(1)；zrangeByRank：O(M)；zrangeByScore、zcount：O(log(N) + M)。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. 打开时需要指定与写入时相同的{@link LongScoreHandler}，否则按分数查询的结果是错误的。
+ * 2. {@link ZSetCodec}对相同的成员必须产生相同的字节。
+ * 3. 文件大小不能超过2GB（单个{@link MappedByteBuffer}的限制）。
+ * 4. 打开时不会校验整个文件，如果需要校验数据的完整性，请使用快照（带有校验和）归档，打开前再转换。
+ * 5. 该对象是不可变的，可以被多个线程同时访问。
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@ThreadSafe
+public class Object2LongMappedZSet<K> {
+
+    /**
+     * "ZMAP"
+     */
+    private static final int MAGIC = 0x5A4D4150;
+    private static final byte VERSION = 1;
+    /**
+     * 魔数、版本号(含填充)、成员数量、排名区偏移量、索引区偏移量、文件长度
+     */
+    private static final int HEADER_SIZE = 24;
+    /**
+     * 分数 + 成员偏移量
+     */
+    private static final int RANK_ENTRY_SIZE = 12;
+    /**
+     * hash + 排名
+     */
+    private static final int INDEX_ENTRY_SIZE = 8;
+    private static final int WRITE_BUFFER_CAPACITY = 1024 * 1024;
+
+    private final ByteBuffer buffer;
+    private final LongScoreHandler scoreHandler;
+    private final ZSetCodec<K> codec;
+    private final int count;
+    private final int rankOffset;
+    private final int indexOffset;
+
+    private Object2LongMappedZSet(ByteBuffer buffer, LongScoreHandler scoreHandler, ZSetCodec<K> codec,
+                                  int count, int rankOffset, int indexOffset) {
+        this.buffer = buffer;
+        this.scoreHandler = scoreHandler;
+        this.codec = codec;
+        this.count = count;
+        this.rankOffset = rankOffset;
+        this.indexOffset = indexOffset;
+    }
+
+    /**
+     * 将zset写入文件，之后可以通过{@link #open(Path, LongScoreHandler, ZSetCodec)}打开
+     *
+     * @param zset  要归档的zset
+     * @param path  文件路径，如果文件已存在，则覆盖
+     * @param codec 成员的编解码器
+     * @param <K>   键的类型
+     * @throws IOException 如果写入失败，或者文件超过2GB
+     */
+    public static <K> void write(@Nonnull Object2LongZSet<K> zset, @Nonnull Path path, @Nonnull ZSetCodec<K> codec) throws IOException {
+        final int count = zset.zcard();
+        final long[] scores = new long[count];
+        final int[] memberOffsets = new int[count];
+        // 高32位为hash，低32位为排名
+        final long[] indexEntries = new long[count];
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_CAPACITY);
+            long position = HEADER_SIZE;
+            channel.position(HEADER_SIZE);
+
+            // 成员区
+            int rank = 0;
+            for (Object2LongMember<K> member : zset) {
+                final int maxSize = codec.maxEncodedSize(member.getMember());
+                if (writeBuffer.remaining() < maxSize) {
+                    writeFully(channel, writeBuffer);
+                    if (writeBuffer.capacity() < maxSize) {
+                        throw new IOException("member too large, size: " + maxSize);
+                    }
+                }
+                final int start = writeBuffer.position();
+                codec.encode(member.getMember(), writeBuffer);
+                final int hash = hash(writeBuffer, start, writeBuffer.position());
+
+                checkFileSize(position);
+                scores[rank] = member.getScore();
+                memberOffsets[rank] = (int) position;
+                indexEntries[rank] = ((long) hash << 32) | rank;
+                position += writeBuffer.position() - start;
+                rank++;
+            }
+            if (rank != count) {
+                throw new IllegalStateException("expected " + count + " members, but " + rank);
+            }
+
+            // 排名区
+            final long rankOffset = position;
+            for (int index = 0; index < count; index++) {
+                if (writeBuffer.remaining() < RANK_ENTRY_SIZE) {
+                    writeFully(channel, writeBuffer);
+                }
+                writeBuffer.putLong(scores[index]);
+                writeBuffer.putInt(memberOffsets[index]);
+            }
+            position += (long) RANK_ENTRY_SIZE * count;
+
+            // 索引区，按照hash排序，相同hash按照排名排序
+            final long indexOffset = position;
+            Arrays.parallelSort(indexEntries);
+            for (long entry : indexEntries) {
+                if (writeBuffer.remaining() < INDEX_ENTRY_SIZE) {
+                    writeFully(channel, writeBuffer);
+                }
+                writeBuffer.putInt((int) (entry >>> 32));
+                writeBuffer.putInt((int) entry);
+            }
+            position += (long) INDEX_ENTRY_SIZE * count;
+            checkFileSize(position);
+            writeFully(channel, writeBuffer);
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.put(VERSION);
+            header.position(8);
+            header.putInt(count);
+            header.putInt((int) rankOffset);
+            header.putInt((int) indexOffset);
+            header.putInt((int) position);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * 打开文件，只映射文件和校验文件头，时间复杂度O(1)。
+     * 映射建立以后文件就可以关闭了，映射会在该对象被回收以后释放。
+     *
+     * @param path         文件路径
+     * @param scoreHandler 写入时zset使用的分数处理器
+     * @param codec        成员的编解码器
+     * @param <K>          键的类型
+     * @return zset
+     * @throws IOException 如果读取失败，或者文件格式错误
+     */
+    public static <K> Object2LongMappedZSet<K> open(@Nonnull Path path, @Nonnull LongScoreHandler scoreHandler,
+                                                    @Nonnull ZSetCodec<K> codec) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("invalid file size " + size);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("invalid magic");
+        }
+        if (buffer.get(4) != VERSION) {
+            throw new IOException("unsupported version " + buffer.get(4));
+        }
+        final int count = buffer.getInt(8);
+        final int rankOffset = buffer.getInt(12);
+        final int indexOffset = buffer.getInt(16);
+        final int fileSize = buffer.getInt(20);
+        if (count < 0 || rankOffset < HEADER_SIZE
+                || indexOffset != rankOffset + (long) RANK_ENTRY_SIZE * count
+                || fileSize != indexOffset + (long) INDEX_ENTRY_SIZE * count
+                || fileSize != buffer.capacity()) {
+            throw new IOException("corrupted file, count: " + count + ", rankOffset: " + rankOffset
+                    + ", indexOffset: " + indexOffset + ", fileSize: " + fileSize);
+        }
+        return new Object2LongMappedZSet<>(buffer, scoreHandler, codec, count, rankOffset, indexOffset);
+    }
+
+    // region 通过成员查询
+
+    /**
+     * @return zset中的成员数量
+     */
+    public int zcard() {
+        return count;
+    }
+
+    /**
+     * 返回有序集中成员member的排名。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrank(@Nonnull K member) {
+        final ByteBuffer encoded = ByteBuffer.allocate(codec.maxEncodedSize(member));
+        codec.encode(member, encoded);
+        final int length = encoded.position();
+        final int hash = hash(encoded, 0, length);
+
+        // 找到第一个hash大于等于目标hash的索引项
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (indexHash(mid) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int index = low; index < count && indexHash(index) == hash; index++) {
+            final int rank = indexRank(index);
+            if (memberEquals(rank, encoded, length)) {
+                return rank;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 返回有序集中成员member的逆序排名。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrevrank(@Nonnull K member) {
+        final int rank = zrank(member);
+        return rank < 0 ? -1 : count - 1 - rank;
+    }
+
+    /**
+     * 返回有序集中，成员member的score值。
+     *
+     * @param member 成员id
+     * @return score，如果成员不存在，则返回null
+     */
+    @Nullable
+    public Long zscore(@Nonnull K member) {
+        final int rank = zrank(member);
+        return rank < 0 ? null : score(rank);
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(@Nonnull K member) {
+        return zrank(member) >= 0;
+    }
+    // endregion
+
+    // region 通过排名查询
+
+    /**
+     * 获取指定排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return member，如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zmemberByRank(int rank) {
+        if (rank < 0 || rank >= count) {
+            return null;
+        }
+        return member(rank);
+    }
+
+    /**
+     * 获取指定逆序排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return member，如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zrevmemberByRank(int rank) {
+        if (rank < 0 || rank >= count) {
+            return null;
+        }
+        return member(count - 1 - rank);
+    }
+
+    /**
+     * 查询指定排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, false);
+    }
+
+    /**
+     * 查询指定逆序排名区间的成员信息
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, true);
+    }
+
+    private List<Object2LongMember<K>> zrangeByRankInternal(int start, int end, boolean reverse) {
+        start = ZSetUtils.convertStartRank(start, count);
+        end = ZSetUtils.convertEndRank(end, count);
+        if (ZSetUtils.isRankRangeEmpty(start, end, count)) {
+            return new ArrayList<>();
+        }
+
+        final List<Object2LongMember<K>> result = new ArrayList<>(end - start + 1);
+        for (int rank = start; rank <= end; rank++) {
+            result.add(member(reverse ? count - 1 - rank : rank));
+        }
+        return result;
+    }
+    // endregion
+
+    // region 通过分数查询
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员）。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(long start, long end) {
+        return zrangeByScore(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(LongScoreRangeSpec spec) {
+        return zrangeByScoreInternal(spec, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员），返回的成员按照逆序排列。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(long start, long end) {
+        return zrangeByScoreInternal(new LongScoreRangeSpec(start, end), true);
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间(包括score值等于start或end)的成员
+     *
+     * @param start 起始分数
+     * @param end   截止分数
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(long start, long end) {
+        final ZLongScoreRangeSpec range = newRangeSpec(new LongScoreRangeSpec(start, end));
+        return Math.max(0, lastRankLteMax(range) - firstRankGteMin(range));
+    }
+
+    private List<Object2LongMember<K>> zrangeByScoreInternal(LongScoreRangeSpec spec, boolean reverse) {
+        final ZLongScoreRangeSpec range = newRangeSpec(spec);
+        final int first = firstRankGteMin(range);
+        final int last = lastRankLteMax(range);
+        if (first >= last) {
+            return new ArrayList<>();
+        }
+
+        final List<Object2LongMember<K>> result = new ArrayList<>(last - first);
+        if (reverse) {
+            for (int rank = last - 1; rank >= first; rank--) {
+                result.add(member(rank));
+            }
+        } else {
+            for (int rank = first; rank < last; rank++) {
+                result.add(member(rank));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按照分数处理器的顺序，使min一定排在max之前，与{@link Object2LongZSet}一致
+     */
+    private ZLongScoreRangeSpec newRangeSpec(LongScoreRangeSpec spec) {
+        if (scoreHandler.compare(spec.getStart(), spec.getEnd()) <= 0) {
+            return new ZLongScoreRangeSpec(spec.getStart(), spec.isStartEx(), spec.getEnd(), spec.isEndEx());
+        } else {
+            return new ZLongScoreRangeSpec(spec.getEnd(), spec.isEndEx(), spec.getStart(), spec.isStartEx());
+        }
+    }
+
+    /**
+     * @return 第一个大于等于下限的排名，不存在则返回count
+     */
+    private int firstRankGteMin(ZLongScoreRangeSpec range) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int r = scoreHandler.compare(score(mid), range.min);
+            if (r < 0 || (r == 0 && range.minex)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return 第一个大于上限的排名，即最后一个小于等于上限的排名 + 1
+     */
+    private int lastRankLteMax(ZLongScoreRangeSpec range) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int r = scoreHandler.compare(score(mid), range.max);
+            if (r < 0 || (r == 0 && !range.maxex)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    // endregion
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    private long score(int rank) {
+        return buffer.getLong(rankOffset + rank * RANK_ENTRY_SIZE);
+    }
+
+    private int memberOffset(int rank) {
+        return buffer.getInt(rankOffset + rank * RANK_ENTRY_SIZE + 8);
+    }
+
+    /**
+     * 成员是按照排名顺序连续存储的，下一个成员的起始位置就是该成员的结束位置
+     */
+    private int memberEnd(int rank) {
+        return rank + 1 < count ? memberOffset(rank + 1) : rankOffset;
+    }
+
+    private int indexHash(int index) {
+        return buffer.getInt(indexOffset + index * INDEX_ENTRY_SIZE);
+    }
+
+    private int indexRank(int index) {
+        return buffer.getInt(indexOffset + index * INDEX_ENTRY_SIZE + 4);
+    }
+
+    private Object2LongMember<K> member(int rank) {
+        // 使用副本，不修改共享缓冲区的position
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(memberOffset(rank));
+        return new Object2LongMember<>(codec.decode(duplicate), score(rank));
+    }
+
+    private boolean memberEquals(int rank, ByteBuffer encoded, int length) {
+        final int start = memberOffset(rank);
+        if (memberEnd(rank) - start != length) {
+            return false;
+        }
+        for (int index = 0; index < length; index++) {
+            if (buffer.get(start + index) != encoded.get(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 编码后的成员的hash，写入和查询时必须一致，不能依赖对象的hashCode（可能与运行环境有关）
+     */
+    private static int hash(ByteBuffer buffer, int start, int end) {
+        int hash = 1;
+        for (int index = start; index < end; index++) {
+            hash = 31 * hash + buffer.get(index);
+        }
+        return HashCommon.mix(hash);
+    }
+
+    private static void checkFileSize(long position) throws IOException {
+        if (position > Integer.MAX_VALUE) {
+            throw new IOException("file too large, size: " + position);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -24,7 +24,11 @@ public class Object2LongMember<K> {
     private final K member;
     private final long score;
 
-    Object2LongMember(K member, long score) {
+    /**
+     * @param member 成员id
+     * @param score  分数
+     */
+    public Object2LongMember(K member, long score) {
         this.member = member;
         this.score = score;
     }
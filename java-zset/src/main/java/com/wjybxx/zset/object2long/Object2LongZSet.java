@@ -17,11 +17,22 @@
 package com.wjybxx.zset.object2long;
 
 
+import com.wjybxx.zset.ZSetCodec;
+import com.wjybxx.zset.ZSetCodecs;
+import com.wjybxx.zset.ZSetSnapshotReader;
+import com.wjybxx.zset.ZSetSnapshotWriter;
 import com.wjybxx.zset.ZSetUtils;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
 import static com.wjybxx.zset.ZSetUtils.ZSKIPLIST_MAXLEVEL;
@@ -36,7 +47,7 @@ import static com.wjybxx.zset.ZSetUtils.ZSKIPLIST_MAXLEVEL;
  * <b>NOTE</b>：
  * 1. ZSET中的排名从0开始（提供给用户的接口，排名都从0开始）
  * 2. ZSET使用键的<b>compare</b>结果判断两个键是否相等，而不是equals方法，因此必须保证键不同时compare结果一定不为0。
- * 3. 又由于key需要存放于{@link HashMap}中，因此“相同”的key必须有相同的hashCode，且equals方法返回true。
+ * 3. 又由于key需要作为{@link Object2ObjectOpenHashMap}的键(member -> 跳表节点)，因此“相同”的key必须有相同的hashCode，且equals方法返回true。
  * <b>手动加粗:key的关键属性最好是number或string且是final的</b>
  * <p>
  * 4. 我们允许zset中的成员是降序排列的-{@link LongScoreHandler}决定，可以更好的支持根据score降序的排行榜，
@@ -48,6 +59,13 @@ import static com.wjybxx.zset.ZSetUtils.ZSKIPLIST_MAXLEVEL;
  * 你会很自然的传入想到 (1,10000) 而不是 (10000,1)。因此，如果接口不做调整，这个接口就太反人类了，谁用都得错。
  *
  * <p>
+ * <b>有界模式</b>
+ * 创建zset时可以指定容量capacity，此时zset只保留排名在前capacity的成员，等价于每次插入以后调用{@code zlimit(capacity)}，但更高效：
+ * 1. zset已满时，新成员先和末尾的成员比较，不能进入前capacity名的成员不会创建节点，也不会修改跳表。
+ * 2. 新成员插入以后，只需要淘汰末尾的一个成员。
+ * 3. 已经在zset中的成员更新分数后不会被淘汰（与zlimit的语义一致）。
+ * 调用者还可以通过{@code wouldQualify}在准备数据之前就判断新成员是否可能进入前capacity名。
+ * <p>
  * 这里只实现了redis zset中的几个常用的接口，扩展不是太麻烦，可以自己根据需要实现。
  *
  * @param <K> the type of key
@@ -59,13 +77,54 @@ import static com.wjybxx.zset.ZSetUtils.ZSKIPLIST_MAXLEVEL;
 public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
 
     /**
-     * member -> score
+     * 不限制成员数量
+     */
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * 批量更新的成员数量达到zset成员数量的 1/BATCH_REBUILD_RATIO 时，合并后重新构建跳表，而不是逐个插入
      */
-    private final Map<K, Long> dict = new HashMap<>(ZSetUtils.INIT_CAPACITY);
+    private static final int BATCH_REBUILD_RATIO = 4;
+
+    /**
+     * 乐观读放弃时返回的排名，见{@link #zrankOptimistic(Object, boolean)}
+     */
+    static final int OPTIMISTIC_FAILED = Integer.MIN_VALUE;
+    /**
+     * 乐观读最多前进的节点数，正常的查找路径远小于该值，超过时说明读到了修改了一半的跳表
+     */
+    private static final int OPTIMISTIC_MAX_STEPS = 64 * ZSKIPLIST_MAXLEVEL;
+    /**
+     * 乐观读最多返回的成员数量，更大的排名区间需要加锁读取
+     */
+    static final int OPTIMISTIC_MAX_RANGE = 64;
+
+    /**
+     * member -> node
+     * 直接映射到跳表节点，查询分数、删除成员、计算排名时不再需要通过(score, member)重新查找节点。
+     * 批量加载时会替换为预先分配好容量的字典，避免逐个插入导致的多次扩容。
+     */
+    private Object2ObjectMap<K, SkipListNode<K>> dict = new Object2ObjectOpenHashMap<>(ZSetUtils.INIT_CAPACITY);
     private final SkipList<K> zsl;
+    /**
+     * zset的最大成员数量，{@link #UNBOUNDED}表示不限制
+     */
+    private final int capacity;
+    /**
+     * 修改监听器，为null表示没有注册
+     */
+    private Object2LongZSetListener<K> listener;
+    /**
+     * 监听器是否需要排名，注册时缓存，避免每次修改都调用监听器的方法
+     */
+    private boolean rankRequired;
 
-    private Object2LongZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler) {
+    private Object2LongZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity: " + capacity + " (expected: > 0)");
+        }
         this.zsl = new SkipList<>(keyComparator, scoreHandler);
+        this.capacity = capacity;
     }
 
     /**
@@ -75,7 +134,18 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return zset
      */
     public static Object2LongZSet<String> newStringKeyZSet(LongScoreHandler scoreHandler) {
-        return new Object2LongZSet<>(String::compareTo, scoreHandler);
+        return new Object2LongZSet<>(String::compareTo, scoreHandler, UNBOUNDED);
+    }
+
+    /**
+     * 创建一个键为string类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @param capacity     最大成员数量，只保留排名在前capacity的成员，见类文档中的有界模式
+     * @return zset
+     */
+    public static Object2LongZSet<String> newStringKeyZSet(LongScoreHandler scoreHandler, int capacity) {
+        return new Object2LongZSet<>(String::compareTo, scoreHandler, capacity);
     }
 
     /**
@@ -85,7 +155,18 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return zset
      */
     public static Object2LongZSet<Long> newLongKeyZSet(LongScoreHandler scoreHandler) {
-        return new Object2LongZSet<>(Long::compareTo, scoreHandler);
+        return new Object2LongZSet<>(Long::compareTo, scoreHandler, UNBOUNDED);
+    }
+
+    /**
+     * 创建一个键为long类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @param capacity     最大成员数量，只保留排名在前capacity的成员，见类文档中的有界模式
+     * @return zset
+     */
+    public static Object2LongZSet<Long> newLongKeyZSet(LongScoreHandler scoreHandler, int capacity) {
+        return new Object2LongZSet<>(Long::compareTo, scoreHandler, capacity);
     }
 
     /**
@@ -95,7 +176,18 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return zset
      */
     public static Object2LongZSet<Integer> newIntKeyZSet(LongScoreHandler scoreHandler) {
-        return new Object2LongZSet<>(Integer::compareTo, scoreHandler);
+        return new Object2LongZSet<>(Integer::compareTo, scoreHandler, UNBOUNDED);
+    }
+
+    /**
+     * 创建一个键为int类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @param capacity     最大成员数量，只保留排名在前capacity的成员，见类文档中的有界模式
+     * @return zset
+     */
+    public static Object2LongZSet<Integer> newIntKeyZSet(LongScoreHandler scoreHandler, int capacity) {
+        return new Object2LongZSet<>(Integer::compareTo, scoreHandler, capacity);
     }
 
     /**
@@ -108,8 +200,33 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return zset
      */
     public static <K> Object2LongZSet<K> newGenericKeyZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler) {
-        return new Object2LongZSet<>(keyComparator, scoreHandler);
+        return new Object2LongZSet<>(keyComparator, scoreHandler, UNBOUNDED);
+    }
+
+    /**
+     * 创建一个自定义键类型的zset
+     *
+     * @param keyComparator 键比较器，当score比较结果相等时，比较key - 注意：比较结果必须与key对象的状态改变无关。
+     *                      <b>请仔细阅读类文档中的注意事项</b>。
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param capacity      最大成员数量，只保留排名在前capacity的成员，见类文档中的有界模式
+     * @param <K>           键的类型
+     * @return zset
+     */
+    public static <K> Object2LongZSet<K> newGenericKeyZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler, int capacity) {
+        return new Object2LongZSet<>(keyComparator, scoreHandler, capacity);
+    }
+
+    /**
+     * 注册修改监听器，一个zset只能有一个监听器，如果需要多个监听器，请自行组合。
+     *
+     * @param listener 监听器，null表示取消注册
+     */
+    public void setListener(@Nullable Object2LongZSetListener<K> listener) {
+        this.listener = listener;
+        this.rankRequired = listener != null && listener.isRankRequired();
     }
+
     // -------------------------------------------------------- insert -----------------------------------------------
 
     /**
@@ -120,13 +237,21 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @param member 成员id
      */
     public void zadd(final long score, @Nonnull final K member) {
-        final Long oldScore = dict.put(member, score);
-        if (oldScore != null) {
-            // Q: 为何不再判断分数相等？
-            // A: 这里假定分数相等的情况很少出现，可减少大量无用的判断
-            zsl.zslDelete(oldScore, member);
+        if (isRejected(score, member)) {
+            // 不能进入前capacity名的新成员直接丢弃，但已经在zset中的成员仍然需要更新分数
+            final SkipListNode<K> oldNode = dict.get(member);
+            if (oldNode != null) {
+                updateScore(oldNode, score);
+            }
+            return;
+        }
+
+        final SkipListNode<K> oldNode = dict.get(member);
+        if (oldNode != null) {
+            updateScore(oldNode, score);
+        } else {
+            insert(score, member);
         }
-        zsl.zslInsert(score, member);
     }
 
     /**
@@ -134,15 +259,14 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      *
      * @param score  数据的评分
      * @param member 成员id
-     * @return 添加成功则返回true，否则返回false。
+     * @return 添加成功则返回true，否则返回false。有界模式下，如果新成员不能进入前capacity名，也返回false。
      */
     public boolean zaddnx(final long score, @Nonnull final K member) {
-        final Long oldScore = dict.putIfAbsent(member, score);
-        if (oldScore == null) {
-            zsl.zslInsert(score, member);
-            return true;
+        if (isRejected(score, member) || dict.containsKey(member)) {
+            return false;
         }
-        return false;
+        insert(score, member);
+        return true;
     }
 
     /**
@@ -154,9 +278,16 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return 更新后的值
      */
     public long zincrby(long increment, @Nonnull K member) {
-        final Long oldScore = dict.get(member);
-        final long score = oldScore == null ? increment : zsl.sum(oldScore, increment);
-        zadd(score, member);
+        final SkipListNode<K> oldNode = dict.get(member);
+        if (oldNode == null) {
+            if (!isRejected(increment, member)) {
+                insert(increment, member);
+            }
+            return increment;
+        }
+
+        final long score = zsl.sum(oldNode.score, increment);
+        updateScore(oldNode, score);
         return score;
     }
 
@@ -169,16 +300,262 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return 更新后的值，如果更新失败，则返回0。
      */
     public long zincrbyxx(long increment, @Nonnull K member) {
-        final Long oldScore = dict.get(member);
-        if (oldScore == null) {
+        final SkipListNode<K> oldNode = dict.get(member);
+        if (oldNode == null) {
             return 0;
         }
 
-        final long score = zsl.sum(oldScore, increment);
-        zadd(score, member);
+        final long score = zsl.sum(oldNode.score, increment);
+        updateScore(oldNode, score);
         return score;
     }
 
+    /**
+     * 判断一个新成员以指定的分数加入zset时，是否能进入前capacity名（zset的成员数量未达到capacity时总是返回true）。
+     * 可以在准备数据之前调用，提前过滤掉不可能上榜的数据。
+     * <p>
+     * 注意：分数与末尾成员的分数相同时，能否进入还取决于成员的排序，这里总是返回true；返回false时一定不能进入。
+     * 已经在zset中的成员总是会更新分数，不受该方法影响。
+     *
+     * @param score 新成员的分数
+     * @return 如果可能进入前capacity名，则返回true
+     */
+    public boolean wouldQualify(long score) {
+        return zsl.length() < capacity || zsl.compareScore(score, zsl.tail.score) <= 0;
+    }
+
+    /**
+     * 有界模式下，zset已满，且新成员排在末尾成员之后时，新成员不能进入前capacity名。
+     *
+     * @param score  新成员的分数
+     * @param member 新成员
+     * @return 如果新成员不能进入，则返回true
+     */
+    private boolean isRejected(long score, K member) {
+        return zsl.length() >= capacity && zsl.compareScoreAndObj(zsl.tail, score, member) < 0;
+    }
+
+    /**
+     * 有界模式下，插入新成员以后，如果成员数量超过了capacity，则淘汰末尾的成员。
+     */
+    private void evictIfOverflow() {
+        if (zsl.length() > capacity) {
+            final SkipListNode<K> tailNode = zsl.tail;
+            dict.remove(tailNode.obj);
+            zsl.zslDelete(tailNode);
+            if (listener != null) {
+                // 末尾成员删除之前的排名就是删除之后的成员数量
+                listener.onRemoved(tailNode.obj, tailNode.score, zsl.length());
+            }
+        }
+    }
+
+    /**
+     * 插入一个新成员，调用者需要保证成员不在zset中
+     */
+    private void insert(long score, K member) {
+        final SkipListNode<K> newNode = zsl.zslInsert(score, member);
+        dict.put(member, newNode);
+        if (listener != null) {
+            listener.onAdded(member, score, rankOf(newNode));
+        }
+        evictIfOverflow();
+    }
+
+    /**
+     * 更新已存在的成员的分数
+     */
+    private void updateScore(SkipListNode<K> node, long score) {
+        if (listener == null) {
+            zsl.zslUpdateScore(node, score);
+            return;
+        }
+        final long oldScore = node.score;
+        final int oldRank = rankOf(node);
+        zsl.zslUpdateScore(node, score);
+        if (oldScore != score) {
+            listener.onScoreChanged(node.obj, oldScore, score, oldRank, rankOf(node));
+        }
+    }
+
+    /**
+     * @return 监听器需要排名时返回节点的排名(0-based)，否则返回-1
+     */
+    private int rankOf(SkipListNode<K> node) {
+        return rankRequired ? zsl.zslGetRank(node) - 1 : -1;
+    }
+
+    /**
+     * 注册了监听器时，批量添加逐个执行，以便报告每个成员的事件
+     */
+    private void zaddEach(long[] scores, K[] members) {
+        for (int index = 0; index < members.length; index++) {
+            zadd(scores[index], members[index]);
+        }
+    }
+
+    /**
+     * 批量添加成员，等价于按顺序对每一个成员调用{@link #zadd(long, Object)}，同一个成员出现多次时，以最后一次的分数为准。
+     * <p>
+     * 如果zset当前为空（例如：服务器启动时加载排行榜），则不会逐个插入，而是：
+     * 1. 一次性创建好容量足够的字典，并为每个成员创建节点。
+     * 2. 如果成员不是有序的，则先对节点排序（数据量大时并行排序），如果已经是有序的，则跳过排序。
+     * 3. 从前往后一次性链接所有节点，并直接计算出每一层的跨度，不需要从header开始查找插入位置。
+     * 因此排序以后的构建是O(N)的，按照排序规则有序的数据（比如通过{@link #zrangeByRank(int, int)}导出的数据）加载最快。
+     * <p>
+     * 如果zset不为空，或者是有界的zset，则等价于{@link #zaddBatch(long[], Object[])}。
+     *
+     * @param scores  成员的分数
+     * @param members 成员id，与scores一一对应
+     */
+    public void zaddAll(@Nonnull long[] scores, @Nonnull K[] members) {
+        if (scores.length != members.length) {
+            throw new IllegalArgumentException("scores.length: " + scores.length + ", members.length: " + members.length);
+        }
+
+        if (zsl.length() > 0 || capacity != UNBOUNDED || listener != null) {
+            zaddBatch(scores, members);
+            return;
+        }
+
+        final Object2ObjectMap<K, SkipListNode<K>> dict = new Object2ObjectOpenHashMap<>(Math.max(ZSetUtils.INIT_CAPACITY, members.length));
+        @SuppressWarnings("unchecked") final SkipListNode<K>[] nodes = (SkipListNode<K>[]) new SkipListNode<?>[members.length];
+        int nodeCount = 0;
+        for (int index = 0; index < members.length; index++) {
+            final SkipListNode<K> oldNode = dict.get(members[index]);
+            if (oldNode != null) {
+                // 重复的成员，节点尚未链接到跳表中，直接修改分数即可
+                oldNode.score = scores[index];
+            } else {
+                final SkipListNode<K> newNode = SkipList.zslCreateNode(ZSetUtils.zslRandomLevel(), scores[index], members[index]);
+                dict.put(members[index], newNode);
+                nodes[nodeCount++] = newNode;
+            }
+        }
+        this.dict = dict;
+        zsl.zslBuild(nodes, nodeCount);
+    }
+
+    /**
+     * 批量添加或更新成员，等价于按顺序对每一个成员调用{@link #zadd(long, Object)}，同一个成员出现多次时，以最后一次的分数为准。
+     * 适用于每一帧（tick）集中提交大量分数更新的场景。
+     * <p>
+     * 1. 更新分数以后位置不变的成员，直接原地修改分数。
+     * 2. 需要移动的成员和新成员先暂存起来，排序以后按顺序插入，相邻的插入共享查找路径（update和rank），
+     * 不必每次都从header开始查找，见{@link SkipList#zslInsertBatch(SkipListNode[], int)}。
+     * 3. 如果批量的成员数量达到zset成员数量的{@code 1/BATCH_REBUILD_RATIO}，则直接合并后重新构建跳表，
+     * 见{@link #zaddAll(long[], Object[])}。
+     * 4. 有界模式下，或者注册了监听器时，逐个调用{@link #zadd(long, Object)}。
+     *
+     * @param scores  成员的分数
+     * @param members 成员id，与scores一一对应
+     */
+    public void zaddBatch(@Nonnull long[] scores, @Nonnull K[] members) {
+        if (scores.length != members.length) {
+            throw new IllegalArgumentException("scores.length: " + scores.length + ", members.length: " + members.length);
+        }
+
+        if (capacity != UNBOUNDED || listener != null) {
+            // 有界模式下，中途淘汰的成员会影响后续的结果，只能逐个添加
+            zaddEach(scores, members);
+            return;
+        }
+
+        if (zsl.length() == 0) {
+            zaddAll(scores, members);
+            return;
+        }
+
+        if ((long) members.length * BATCH_REBUILD_RATIO >= zsl.length()) {
+            zaddBatchRebuild(scores, members);
+            return;
+        }
+
+        // pending - 需要插入的节点：新成员的节点和需要移动位置的节点
+        // linkedNodes - 已经在跳表中的成员的节点，下标与members一致
+        // linkedIndexes - 已经在跳表中的成员的下标
+        @SuppressWarnings("unchecked") final SkipListNode<K>[] pending = (SkipListNode<K>[]) new SkipListNode<?>[members.length];
+        @SuppressWarnings("unchecked") final SkipListNode<K>[] linkedNodes = (SkipListNode<K>[]) new SkipListNode<?>[members.length];
+        final int[] linkedIndexes = new int[members.length];
+        int pendingCount = 0;
+        int linkedCount = 0;
+        for (int index = 0; index < members.length; index++) {
+            final SkipListNode<K> node = dict.get(members[index]);
+            if (node == null) {
+                final SkipListNode<K> newNode = SkipList.zslCreateNode(ZSetUtils.zslRandomLevel(), scores[index], members[index]);
+                dict.put(members[index], newNode);
+                pending[pendingCount++] = newNode;
+            } else if (!zsl.zslIsLinked(node)) {
+                // 本批次中新创建的节点，直接修改分数即可
+                node.score = scores[index];
+            } else {
+                linkedNodes[index] = node;
+                linkedIndexes[linkedCount++] = index;
+            }
+        }
+
+        if (linkedCount > 0) {
+            // 按照节点当前的位置排序，同一个成员的多次更新相邻，且按照下标排序，只保留最后一次
+            IntArrays.quickSort(linkedIndexes, 0, linkedCount, (a, b) -> {
+                final SkipListNode<K> nodeB = linkedNodes[b];
+                final int r = zsl.compareScoreAndObj(linkedNodes[a], nodeB.score, nodeB.obj);
+                return r != 0 ? r : Integer.compare(a, b);
+            });
+
+            @SuppressWarnings("unchecked") final SkipListNode<K>[] nodes = (SkipListNode<K>[]) new SkipListNode<?>[linkedCount];
+            final long[] newScores = new long[linkedCount];
+            int nodeCount = 0;
+            for (int i = 0; i < linkedCount; i++) {
+                final int index = linkedIndexes[i];
+                if (i + 1 < linkedCount && linkedNodes[linkedIndexes[i + 1]] == linkedNodes[index]) {
+                    continue;
+                }
+                nodes[nodeCount] = linkedNodes[index];
+                newScores[nodeCount] = scores[index];
+                nodeCount++;
+            }
+            pendingCount = zsl.zslUpdateScoreBatch(nodes, newScores, nodeCount, pending, pendingCount);
+        }
+
+        zsl.zslInsertBatch(pending, pendingCount);
+    }
+
+    /**
+     * 批量添加或更新成员，见{@link #zaddBatch(long[], Object[])}。
+     *
+     * @param members 成员信息
+     */
+    public void zaddBatch(@Nonnull List<Object2LongMember<K>> members) {
+        final long[] scores = new long[members.size()];
+        @SuppressWarnings("unchecked") final K[] objs = (K[]) new Object[members.size()];
+        for (int index = 0; index < objs.length; index++) {
+            final Object2LongMember<K> member = members.get(index);
+            scores[index] = member.getScore();
+            objs[index] = member.getMember();
+        }
+        zaddBatch(scores, objs);
+    }
+
+    /**
+     * 批量更新的成员较多时，修改所有成员的分数，然后与原有的成员合并，重新构建跳表。
+     * 原有的节点是有序的，排序对于基本有序的数据是自适应的。
+     */
+    private void zaddBatchRebuild(@Nonnull long[] scores, @Nonnull K[] members) {
+        @SuppressWarnings("unchecked") final SkipListNode<K>[] nodes = (SkipListNode<K>[]) new SkipListNode<?>[zsl.length() + members.length];
+        int nodeCount = zsl.zslCopyNodes(nodes);
+        for (int index = 0; index < members.length; index++) {
+            final SkipListNode<K> oldNode = dict.get(members[index]);
+            if (oldNode != null) {
+                oldNode.score = scores[index];
+            } else {
+                final SkipListNode<K> newNode = SkipList.zslCreateNode(ZSetUtils.zslRandomLevel(), scores[index], members[index]);
+                dict.put(members[index], newNode);
+                nodes[nodeCount++] = newNode;
+            }
+        }
+        zsl.zslRebuild(nodes, nodeCount);
+    }
+
     // -------------------------------------------------------- remove -----------------------------------------------
 
     /**
@@ -188,13 +565,18 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return 如果成员存在，则返回对应的score，否则返回null。
      */
     public Long zrem(@Nonnull K member) {
-        final Long oldScore = dict.remove(member);
-        if (oldScore != null) {
-            zsl.zslDelete(oldScore, member);
-            return oldScore;
-        } else {
+        final SkipListNode<K> oldNode = dict.remove(member);
+        if (oldNode == null) {
             return null;
         }
+        if (listener == null) {
+            zsl.zslDelete(oldNode);
+            return oldNode.score;
+        }
+        final int rank = rankOf(oldNode);
+        zsl.zslDelete(oldNode);
+        listener.onRemoved(member, oldNode.score, rank);
+        return oldNode.score;
     }
 
     // region 通过score删除成员
@@ -227,7 +609,17 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return 删除的成员数目
      */
     private int zremrangeByScore(@Nonnull ZLongScoreRangeSpec spec) {
-        return zsl.zslDeleteRangeByScore(spec, dict);
+        if (listener == null) {
+            return zsl.zslDeleteRangeByScore(spec, dict);
+        }
+        final List<Object2LongMember<K>> removed = zrangeByScoreWithOptions(spec, 0, -1, false);
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        final int startRank = rankRequired ? zrank(removed.get(0).getMember()) : -1;
+        final int count = zsl.zslDeleteRangeByScore(spec, dict);
+        listener.onRangeRemoved(removed, startRank);
+        return count;
     }
 
     // endregion
@@ -269,6 +661,9 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
         }
         final SkipListNode<K> delete = zsl.zslDeleteByRank(rank + 1, dict);
         assert null != delete;
+        if (listener != null) {
+            listener.onRemoved(delete.obj, delete.score, rank);
+        }
         return new Object2LongMember<>(delete.obj, delete.score);
     }
 
@@ -294,7 +689,22 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
             return 0;
         }
 
-        return zsl.zslDeleteRangeByRank(start + 1, end + 1, dict);
+        return zremrangeByRankInternal(start, end);
+    }
+
+    /**
+     * @param start 起始排名(0-based) inclusive，调用者需要保证区间有效
+     * @param end   截止排名(0-based) inclusive
+     * @return 删除的成员数目
+     */
+    private int zremrangeByRankInternal(int start, int end) {
+        if (listener == null) {
+            return zsl.zslDeleteRangeByRank(start + 1, end + 1, dict);
+        }
+        final List<Object2LongMember<K>> removed = zrangeByRank(start, end);
+        final int count = zsl.zslDeleteRangeByRank(start + 1, end + 1, dict);
+        listener.onRangeRemoved(removed, start);
+        return count;
     }
 
     // endregion
@@ -312,7 +722,7 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
         if (zsl.length() <= count) {
             return 0;
         }
-        return zsl.zslDeleteRangeByRank(count + 1, zsl.length(), dict);
+        return zremrangeByRankInternal(count, zsl.length() - 1);
     }
 
     /**
@@ -326,7 +736,7 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
         if (zsl.length() <= count) {
             return 0;
         }
-        return zsl.zslDeleteRangeByRank(1, zsl.length() - count, dict);
+        return zremrangeByRankInternal(0, zsl.length() - count - 1);
     }
     // endregion
 
@@ -340,7 +750,31 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return score
      */
     public Long zscore(@Nonnull K member) {
-        return dict.get(member);
+        final SkipListNode<K> node = dict.get(member);
+        return node == null ? null : node.score;
+    }
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，则返回给定的默认值 - 该方法不会产生装箱。
+     *
+     * @param member       成员id
+     * @param defaultValue 成员不存在时返回的值
+     * @return score
+     */
+    public long zscoreOrDefault(@Nonnull K member, long defaultValue) {
+        final SkipListNode<K> node = dict.get(member);
+        return node == null ? defaultValue : node.score;
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(@Nonnull K member) {
+        return dict.containsKey(member);
     }
 
     /**
@@ -354,12 +788,12 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
      */
     public int zrank(@Nonnull K member) {
-        final Long score = dict.get(member);
-        if (score == null) {
+        final SkipListNode<K> node = dict.get(member);
+        if (node == null) {
             return -1;
         }
         // 0 < zslGetRank <= size
-        return zsl.zslGetRank(score, member) - 1;
+        return zsl.zslGetRank(node) - 1;
     }
 
     /**
@@ -373,12 +807,27 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
      * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
      */
     public int zrevrank(@Nonnull K member) {
-        final Long score = dict.get(member);
-        if (score == null) {
+        final SkipListNode<K> node = dict.get(member);
+        if (node == null) {
             return -1;
         }
         // 0 < zslGetRank <= size
-        return zsl.length() - zsl.zslGetRank(score, member);
+        return zsl.length() - zsl.zslGetRank(node);
+    }
+
+    /**
+     * 返回有序集中排在(score, member)之前的成员数量，即(score, member)插入到有序集中时的排名。
+     * member不需要是有序集的成员，如果member是有序集的成员且分数等于score，则结果等于{@link #zrank(Object)}。
+     * 可用于在多个有序集中计算全局排名 - 全局排名等于每个有序集中排在它前面的成员数量之和。
+     * <p>
+     * <b>Time complexity:</b> O(log(N))
+     *
+     * @param score  分数
+     * @param member 成员id
+     * @return 排在它前面的成员数量
+     */
+    public int zcountBefore(long score, @Nonnull K member) {
+        return zsl.zslCountBefore(score, member);
     }
 
     /**
@@ -501,7 +950,7 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
             if (reverse) {
                 listNode = listNode.backward;
             } else {
-                listNode = listNode.levelInfo[0].forward;
+                listNode = listNode.forward0;
             }
         }
 
@@ -526,7 +975,7 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
             if (reverse) {
                 listNode = listNode.backward;
             } else {
-                listNode = listNode.levelInfo[0].forward;
+                listNode = listNode.forward0;
             }
         }
         return result;
@@ -583,13 +1032,89 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
         if (reverse) {
             listNode = start > 0 ? zsl.zslGetElementByRank(zslLength - start) : zsl.tail;
         } else {
-            listNode = start > 0 ? zsl.zslGetElementByRank(start + 1) : zsl.header.levelInfo[0].forward;
+            listNode = start > 0 ? zsl.zslGetElementByRank(start + 1) : zsl.header.forward0;
+        }
+
+        final List<Object2LongMember<K>> result = new ArrayList<>(rangeLen);
+        while (rangeLen-- > 0 && listNode != null) {
+            result.add(new Object2LongMember<>(listNode.obj, listNode.score));
+            listNode = reverse ? listNode.backward : listNode.forward0;
+        }
+        return result;
+    }
+    // endregion
+
+    // region 乐观读
+
+    // 以下方法供StampedObject2LongZSet在不加锁的情况下读取，读取期间其它线程可能正在修改跳表。
+    // 调用者必须在读取以后校验期间没有写操作，校验失败时丢弃结果（包括抛出的异常），然后加锁重新读取。
+    // 这些方法保证：遍历的节点数有上限（不会因为读到了修改了一半的指针而死循环），创建的对象数量有上限。
+
+    /**
+     * 有界的{@link #zrank(Object)}/{@link #zrevrank(Object)}
+     *
+     * @param member  成员id
+     * @param reverse 是否是逆序排名
+     * @return 排名，成员不存在时返回-1，超出遍历上限时返回{@link #OPTIMISTIC_FAILED}
+     */
+    int zrankOptimistic(@Nonnull K member, boolean reverse) {
+        final SkipListNode<K> node = dict.get(member);
+        if (node == null) {
+            return -1;
+        }
+        final int rank = zsl.zslGetRankBounded(node);
+        if (rank == OPTIMISTIC_FAILED) {
+            return OPTIMISTIC_FAILED;
+        }
+        return reverse ? zsl.length() - rank : rank - 1;
+    }
+
+    /**
+     * 有界的{@link #zmemberByRank(int)}/{@link #zrevmemberByRank(int)}，调用者需要保证排名在[0, zcard)之间
+     *
+     * @param rank    排名 0-based
+     * @param reverse 是否是逆序排名
+     * @return member，超出遍历上限或者读到了不一致的数据时返回null
+     */
+    @Nullable
+    Object2LongMember<K> zmemberByRankOptimistic(int rank, boolean reverse) {
+        final SkipListNode<K> node = zsl.zslGetElementByRankBounded(reverse ? zsl.length() - rank : rank + 1);
+        return node == null ? null : new Object2LongMember<>(node.obj, node.score);
+    }
+
+    /**
+     * 有界的{@link #zrangeByRank(int, int)}/{@link #zrevrangeByRank(int, int)}
+     *
+     * @param start   起始排名(0-based) inclusive
+     * @param end     截止排名(0-based) inclusive
+     * @param reverse 是否逆序返回
+     * @return memberInfo，区间超过{@link #OPTIMISTIC_MAX_RANGE}、超出遍历上限或者读到了不一致的数据时返回null
+     */
+    @Nullable
+    List<Object2LongMember<K>> zrangeByRankOptimistic(int start, int end, boolean reverse) {
+        final int zslLength = zsl.length();
+
+        start = ZSetUtils.convertStartRank(start, zslLength);
+        end = ZSetUtils.convertEndRank(end, zslLength);
+
+        if (ZSetUtils.isRankRangeEmpty(start, end, zslLength)) {
+            return new ArrayList<>();
+        }
+
+        int rangeLen = end - start + 1;
+        if (rangeLen > OPTIMISTIC_MAX_RANGE) {
+            return null;
+        }
+
+        SkipListNode<K> listNode = zsl.zslGetElementByRankBounded(reverse ? zslLength - start : start + 1);
+        if (listNode == null) {
+            return null;
         }
 
         final List<Object2LongMember<K>> result = new ArrayList<>(rangeLen);
         while (rangeLen-- > 0 && listNode != null) {
             result.add(new Object2LongMember<>(listNode.obj, listNode.score));
-            listNode = reverse ? listNode.backward : listNode.levelInfo[0].forward;
+            listNode = reverse ? listNode.backward : listNode.forward0;
         }
         return result;
     }
@@ -627,12 +1152,12 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
     private int zcountInternal(final ZLongScoreRangeSpec range) {
         final SkipListNode<K> firstNodeInRange = zsl.zslFirstInRange(range);
         if (firstNodeInRange != null) {
-            final int firstNodeRank = zsl.zslGetRank(firstNodeInRange.score, firstNodeInRange.obj);
+            final int firstNodeRank = zsl.zslGetRank(firstNodeInRange);
 
             /* 如果firstNodeInRange不为null，那么lastNode也一定不为null(最坏的情况下firstNode就是lastNode) */
             final SkipListNode<K> lastNodeInRange = zsl.zslLastInRange(range);
             assert lastNodeInRange != null;
-            final int lastNodeRank = zsl.zslGetRank(lastNodeInRange.score, lastNodeInRange.obj);
+            final int lastNodeRank = zsl.zslGetRank(lastNodeInRange);
 
             return lastNodeRank - firstNodeRank + 1;
         }
@@ -686,6 +1211,78 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
     }
     // endregion
 
+    // region 快照
+
+    /**
+     * 将所有成员按照排名顺序写入快照，格式见{@link ZSetSnapshotWriter}。
+     * 分数按照排名顺序是有序的，因此只记录与前一个成员分数的差值(变长编码)。
+     *
+     * @param channel  输出，方法返回时不会关闭
+     * @param keyCodec 成员的编解码器
+     * @throws IOException 如果写入失败
+     */
+    public void writeSnapshot(@Nonnull WritableByteChannel channel, @Nonnull ZSetCodec<K> keyCodec) throws IOException {
+        final ZSetSnapshotWriter writer = new ZSetSnapshotWriter(channel, ZSetSnapshotWriter.TYPE_OBJECT2LONG, zsl.length());
+        long prevScore = 0;
+        for (SkipListNode<K> node = zsl.header.directForward(); node != null; node = node.directForward()) {
+            final ByteBuffer buffer = writer.beginMember(ZSetCodecs.MAX_VAR_LONG_SIZE + keyCodec.maxEncodedSize(node.obj));
+            ZSetCodecs.writeVarLong(buffer, node.score - prevScore);
+            keyCodec.encode(node.obj, buffer);
+            writer.endMember();
+            prevScore = node.score;
+        }
+        writer.finish();
+    }
+
+    /**
+     * 从快照中加载成员，等价于{@link #zaddAll(long[], Object[])}。
+     * 快照中的成员是按照排名有序的，如果zset为空，且排序规则与写快照时相同，则跳过排序，O(N)构建跳表，加载速度主要取决于读取速度。
+     *
+     * @param channel  输入，方法返回时不会关闭
+     * @param keyCodec 成员的编解码器
+     * @throws IOException 如果读取失败，或者快照已损坏
+     */
+    public void loadSnapshot(@Nonnull ReadableByteChannel channel, @Nonnull ZSetCodec<K> keyCodec) throws IOException {
+        final ZSetSnapshotReader reader = new ZSetSnapshotReader(channel, ZSetSnapshotWriter.TYPE_OBJECT2LONG);
+        final long[] scores = new long[reader.count()];
+        @SuppressWarnings("unchecked") final K[] members = (K[]) new Object[reader.count()];
+        long score = 0;
+        for (int index = 0; index < members.length; index++) {
+            final ByteBuffer buffer = reader.nextMember();
+            score += ZSetCodecs.readVarLong(buffer);
+            scores[index] = score;
+            members[index] = keyCodec.decode(buffer);
+        }
+        reader.finish();
+        zaddAll(scores, members);
+    }
+    // endregion
+
+    // region 冻结
+
+    /**
+     * 创建一个包含当前所有成员的只读zset，适合不再修改、只需要查询的排行榜(例如：赛季结束后的排行榜)。
+     * 冻结后的zset与当前zset相互独立，当前zset可以继续修改或直接丢弃。
+     * <p>
+     * <b>Time complexity:</b> O(N)
+     *
+     * @return 冻结后的zset，见{@link Object2LongFrozenZSet}
+     */
+    public Object2LongFrozenZSet<K> freeze() {
+        final int length = zsl.length();
+        final long[] scores = new long[length];
+        @SuppressWarnings("unchecked") final K[] members = (K[]) new Object[length];
+        int rank = 0;
+        for (SkipListNode<K> node = zsl.header.directForward(); node != null; node = node.directForward()) {
+            scores[rank] = node.score;
+            members[rank] = node.obj;
+            rank++;
+        }
+        return new Object2LongFrozenZSet<>(zsl.scoreHandler, zsl.objComparator, scores, members);
+    }
+    // endregion
+
+
     /**
      * @return zset中当前的成员信息，用于测试
      */
@@ -709,7 +1306,7 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
          * 更新节点使用的缓存 - 避免频繁的申请空间
          */
         @SuppressWarnings("unchecked")
-        private final SkipListNode<K>[] updateCache = new SkipListNode[ZSKIPLIST_MAXLEVEL];
+        private final SkipListNode<K>[] updateCache = (SkipListNode<K>[]) new SkipListNode<?>[ZSKIPLIST_MAXLEVEL];
         private final int[] rankCache = new int[ZSKIPLIST_MAXLEVEL];
 
         private final Comparator<K> objComparator;
@@ -772,9 +1369,23 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
          * @param obj   obj 分数对应的成员id
          */
         @SuppressWarnings("UnusedReturnValue")
-        SkipListNode zslInsert(long score, K obj) {
+        SkipListNode<K> zslInsert(long score, K obj) {
+            final SkipListNode<K> newNode = zslCreateNode(ZSetUtils.zslRandomLevel(), score, obj);
+            zslInsertNode(newNode);
+            return newNode;
+        }
+
+        /**
+         * 将一个未链接的节点插入到跳表中，节点的层级由节点自身决定。
+         * 新插入的节点和{@link #zslUpdateScore(SkipListNode, long)}中重新插入的节点都通过该方法链接。
+         *
+         * @param newNode 要插入的节点
+         */
+        private void zslInsertNode(final SkipListNode<K> newNode) {
+            final long score = newNode.score;
+            final K obj = newNode.obj;
             // 新节点的level
-            final int level = ZSetUtils.zslRandomLevel();
+            final int level = newNode.level();
 
             // update - 需要更新后继节点的Node，新节点各层的前驱节点
             // 1. 分数小的节点
@@ -799,74 +1410,306 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
                         rank[i] = rank[i + 1];
                     }
 
-                    while (preNode.levelInfo[i].forward != null &&
-                            compareScoreAndObj(preNode.levelInfo[i].forward, score, obj) < 0) {
+                    while (preNode.forward(i) != null &&
+                            compareScoreAndObj(preNode.forward(i), score, obj) < 0) {
                         // preNode的后继节点仍然小于要插入的节点，需要继续前进，同时累计排名
-                        rank[i] += preNode.levelInfo[i].span;
-                        preNode = preNode.levelInfo[i].forward;
+                        rank[i] += preNode.span(i);
+                        preNode = preNode.forward(i);
                     }
 
                     // 这是要插入节点的第i层的前驱节点，此时触发降级
                     update[i] = preNode;
                 }
 
-                if (level > this.level) {
-                    /* 新节点的层级大于当前层级，那么高出来的层级导致需要更新head，且排名和跨度是固定的 */
-                    for (int i = this.level; i < level; i++) {
-                        rank[i] = 0;
-                        update[i] = this.header;
-                        update[i].levelInfo[i].span = this.length;
+                zslLinkNode(newNode, update, rank);
+            } finally {
+                ZSetUtils.releaseUpdate(update, realLength);
+                ZSetUtils.releaseRank(rank, realLength);
+            }
+        }
+
+        /**
+         * 将节点链接到已经找到的位置。
+         *
+         * @param newNode 要插入的节点
+         * @param update  新节点各层的前驱节点
+         * @param rank    新节点各层前驱的排名
+         */
+        private void zslLinkNode(final SkipListNode<K> newNode, final SkipListNode<K>[] update, final int[] rank) {
+            final int level = newNode.level();
+            if (level > this.level) {
+                /* 新节点的层级大于当前层级，那么高出来的层级导致需要更新head，且排名和跨度是固定的 */
+                for (int i = this.level; i < level; i++) {
+                    rank[i] = 0;
+                    update[i] = this.header;
+                    update[i].setSpan(i, this.length);
+                }
+                this.level = level;
+            }
+
+            /* 由于我们允许的重复score，并且zslInsert(该方法)的调用者在插入前必须测试要插入的member是否已经在hash表中。
+             * 因此我们假设key（obj）尚未被插入，并且重复插入score的情况永远不会发生。*/
+            /* we assume the key is not already inside, since we allow duplicated
+             * scores, and the re-insertion of score and redis object should never
+             * happen since the caller of zslInsert() should test in the hash table
+             * if the element is already inside or not.*/
+
+            /* 这些节点的高度小于等于新插入的节点的高度，需要更新指针。此外它们当前的跨度被拆分了两部分，需要重新计算。 */
+            for (int i = 0; i < level; i++) {
+                /* 链接新插入的节点 */
+                newNode.setForward(i, update[i].forward(i));
+                update[i].setForward(i, newNode);
+
+                /* rank[0] 是新节点的直接前驱的排名，每一层都有一个前驱，可以通过彼此的排名计算跨度 */
+                /* 计算新插入节点的跨度 和 重新计算所有前驱节点的跨度，之前的跨度被拆分为了两份*/
+                /* update span covered by update[i] as newNode is inserted here */
+                newNode.setSpan(i, update[i].span(i) - (rank[0] - rank[i]));
+                update[i].setSpan(i, (rank[0] - rank[i]) + 1);
+            }
+
+            /*  这些节点高于新插入的节点，它们的跨度可以简单的+1 */
+            /* increment span for untouched levels */
+            for (int i = level; i < this.level; i++) {
+                update[i].setSpan(i, update[i].span(i) + 1);
+            }
+
+            /* 设置新节点的前向节点(回溯节点) - 这里不包含header，一定注意 */
+            newNode.backward = (update[0] == this.header) ? null : update[0];
+
+            /* 设置新节点的后向节点 */
+            if (newNode.forward0 != null) {
+                newNode.forward0.backward = newNode;
+            } else {
+                this.tail = newNode;
+            }
+
+            this.length++;
+            this.modCount++;
+        }
+
+        /**
+         * 批量更新一组跳表中的节点的分数。
+         * 更新分数以后位置不变的节点，直接原地修改分数；需要移动的节点从跳表中摘下，修改分数后存入pending，由调用者重新插入。
+         * <p>
+         * 节点按照当前的排序规则有序，因此可以像{@link #zslInsertBatch(SkipListNode[], int)}一样共享查找路径：
+         * 前一个节点被摘下（或原地修改）以后，它在各层的前驱仍然小于后一个节点，不必从header开始查找。
+         *
+         * @param nodes        跳表中的节点，按照排序规则有序，且没有重复
+         * @param newScores    节点对应的新分数
+         * @param nodeCount    有效的节点数量
+         * @param pending      存放需要重新插入的节点
+         * @param pendingCount pending中已有的节点数量
+         * @return pending中的节点数量
+         */
+        int zslUpdateScoreBatch(final SkipListNode<K>[] nodes, final long[] newScores, final int nodeCount,
+                                final SkipListNode<K>[] pending, int pendingCount) {
+            final SkipListNode<K>[] update = updateCache;
+            final int[] rank = rankCache;
+            try {
+                for (int i = 0; i < ZSKIPLIST_MAXLEVEL; i++) {
+                    update[i] = header;
+                }
+
+                for (int index = 0; index < nodeCount; index++) {
+                    final SkipListNode<K> node = nodes[index];
+                    if (zslUpdateScoreInPlace(node, newScores[index])) {
+                        continue;
                     }
-                    this.level = level;
+
+                    zslFingerSearch(node.score, node.obj, update, rank);
+                    assert update[0].forward0 == node;
+                    zslDeleteNode(node, update);
+
+                    node.score = newScores[index];
+                    node.forward0 = null;
+                    pending[pendingCount++] = node;
                 }
+                return pendingCount;
+            } finally {
+                ZSetUtils.releaseUpdate(update, ZSKIPLIST_MAXLEVEL);
+                ZSetUtils.releaseRank(rank, ZSKIPLIST_MAXLEVEL);
+            }
+        }
 
-                /* 由于我们允许的重复score，并且zslInsert(该方法)的调用者在插入前必须测试要插入的member是否已经在hash表中。
-                 * 因此我们假设key（obj）尚未被插入，并且重复插入score的情况永远不会发生。*/
-                /* we assume the key is not already inside, since we allow duplicated
-                 * scores, and the re-insertion of score and redis object should never
-                 * happen since the caller of zslInsert() should test in the hash table
-                 * if the element is already inside or not.*/
-                final SkipListNode<K> newNode = zslCreateNode(level, score, obj);
+        /**
+         * 批量插入一组尚未链接的节点，节点之间不能有重复的成员。
+         * <p>
+         * 节点按照排序规则排序以后依次插入，后一个节点的插入位置一定在前一个节点之后，
+         * 因此update和rank在两次插入之间是共享的，见{@link #zslFingerSearch(long, Object, SkipListNode[], int[])}。
+         * 相邻的节点插入位置越近，需要比较的次数越少，最差情况下与单独插入相同。
+         *
+         * @param nodes     节点数组
+         * @param nodeCount 有效的节点数量
+         */
+        void zslInsertBatch(final SkipListNode<K>[] nodes, final int nodeCount) {
+            if (!isSorted(nodes, nodeCount)) {
+                Arrays.sort(nodes, 0, nodeCount, (a, b) -> compareScoreAndObj(a, b.score, b.obj));
+            }
 
-                /* 这些节点的高度小于等于新插入的节点的高度，需要更新指针。此外它们当前的跨度被拆分了两部分，需要重新计算。 */
-                for (int i = 0; i < level; i++) {
-                    /* 链接新插入的节点 */
-                    newNode.levelInfo[i].forward = update[i].levelInfo[i].forward;
-                    update[i].levelInfo[i].forward = newNode;
-
-                    /* rank[0] 是新节点的直接前驱的排名，每一层都有一个前驱，可以通过彼此的排名计算跨度 */
-                    /* 计算新插入节点的跨度 和 重新计算所有前驱节点的跨度，之前的跨度被拆分为了两份*/
-                    /* update span covered by update[i] as newNode is inserted here */
-                    newNode.levelInfo[i].span = update[i].levelInfo[i].span - (rank[0] - rank[i]);
-                    update[i].levelInfo[i].span = (rank[0] - rank[i]) + 1;
+            final SkipListNode<K>[] update = updateCache;
+            final int[] rank = rankCache;
+            try {
+                for (int i = 0; i < ZSKIPLIST_MAXLEVEL; i++) {
+                    update[i] = header;
                 }
 
-                /*  这些节点高于新插入的节点，它们的跨度可以简单的+1 */
-                /* increment span for untouched levels */
-                for (int i = level; i < this.level; i++) {
-                    update[i].levelInfo[i].span++;
+                for (int index = 0; index < nodeCount; index++) {
+                    final SkipListNode<K> newNode = nodes[index];
+                    zslFingerSearch(newNode.score, newNode.obj, update, rank);
+                    zslLinkNode(newNode, update, rank);
+
+                    // 新节点成为后续节点在其各层的前驱
+                    final int newRank = rank[0] + 1;
+                    for (int i = 0, level = newNode.level(); i < level; i++) {
+                        update[i] = newNode;
+                        rank[i] = newRank;
+                    }
                 }
+            } finally {
+                ZSetUtils.releaseUpdate(update, ZSKIPLIST_MAXLEVEL);
+                ZSetUtils.releaseRank(rank, ZSKIPLIST_MAXLEVEL);
+            }
+        }
 
-                /* 设置新节点的前向节点(回溯节点) - 这里不包含header，一定注意 */
-                newNode.backward = (update[0] == this.header) ? null : update[0];
+        /**
+         * 从上一次查找的结果开始，查找指定成员在各层的前驱及其排名。
+         * 调用者需要保证要查找的成员大于上一次查找的成员，且在两次查找之间，update中的节点没有被删除。
+         * <p>
+         * update[i]是上一个成员在第i层的前驱，它仍然小于要查找的成员，因此每一层都从
+         * （上一层下降到的节点，update[i]）中更靠后的那个开始查找，而不是从header开始。
+         * 第一次查找前，update需要全部初始化为header，rank需要全部为0。
+         *
+         * @param score  要查找的成员的分数
+         * @param obj    要查找的成员
+         * @param update 输入为上一次查找的各层前驱，输出为本次查找的各层前驱
+         * @param rank   update中各节点的排名
+         */
+        private void zslFingerSearch(final long score, final K obj, final SkipListNode<K>[] update, final int[] rank) {
+            SkipListNode<K> preNode = header;
+            int preRank = 0;
+            for (int i = this.level - 1; i >= 0; i--) {
+                // 上一个成员在该层的前驱更靠后，从它开始查找
+                if (rank[i] > preRank) {
+                    preNode = update[i];
+                    preRank = rank[i];
+                }
 
-                /* 设置新节点的后向节点 */
-                if (newNode.levelInfo[0].forward != null) {
-                    newNode.levelInfo[0].forward.backward = newNode;
-                } else {
-                    this.tail = newNode;
+                while (preNode.forward(i) != null &&
+                        compareScoreAndObj(preNode.forward(i), score, obj) < 0) {
+                    preRank += preNode.span(i);
+                    preNode = preNode.forward(i);
                 }
 
-                this.length++;
-                this.modCount++;
+                update[i] = preNode;
+                rank[i] = preRank;
+            }
+        }
+
+        /**
+         * 清空跳表，然后使用给定的节点重新构建跳表。
+         * 节点中可以包含跳表中原有的节点，节点的层级保持不变。
+         *
+         * @param nodes     节点数组
+         * @param nodeCount 有效的节点数量
+         */
+        void zslRebuild(final SkipListNode<K>[] nodes, final int nodeCount) {
+            for (int i = 0; i < this.level; i++) {
+                header.setForward(i, null);
+                header.setSpan(i, 0);
+            }
+            this.tail = null;
+            this.length = 0;
+            this.level = 1;
+            zslBuild(nodes, nodeCount);
+        }
+
+        /**
+         * 按照排名顺序将跳表中的所有节点拷贝到数组中
+         *
+         * @param nodes 目标数组，容量必须大于等于跳表的长度
+         * @return 拷贝的节点数量
+         */
+        int zslCopyNodes(final SkipListNode<K>[] nodes) {
+            int nodeCount = 0;
+            for (SkipListNode<K> node = header.forward0; node != null; node = node.forward0) {
+                nodes[nodeCount++] = node;
+            }
+            return nodeCount;
+        }
+
+        /**
+         * 使用一组尚未链接的节点构建跳表，调用者需要保证跳表为空，且节点之间没有重复的成员。
+         * 节点的层级由节点自身决定。
+         * <p>
+         * 节点排好序以后，从前往后链接每一个节点：每一层只需要记录该层最后一个节点及其排名，
+         * 新节点链接到其各层的最后一个节点之后，跨度就是两者的排名之差，因此不需要任何查找。
+         *
+         * @param nodes     节点数组
+         * @param nodeCount 有效的节点数量
+         */
+        void zslBuild(final SkipListNode<K>[] nodes, final int nodeCount) {
+            assert this.length == 0;
+
+            if (!isSorted(nodes, nodeCount)) {
+                // 数组较小时parallelSort内部会使用单线程排序
+                Arrays.parallelSort(nodes, 0, nodeCount, (a, b) -> compareScoreAndObj(a, b.score, b.obj));
+            }
 
-                return newNode;
+            // last - 每一层当前的最后一个节点
+            // lastRank - 每一层当前的最后一个节点的排名
+            final SkipListNode<K>[] last = updateCache;
+            final int[] lastRank = rankCache;
+            int level = 1;
+            try {
+                for (int i = 0; i < ZSKIPLIST_MAXLEVEL; i++) {
+                    last[i] = header;
+                }
+
+                SkipListNode<K> preNode = null;
+                for (int index = 0; index < nodeCount; index++) {
+                    final SkipListNode<K> node = nodes[index];
+                    final int rank = index + 1;
+                    final int nodeLevel = node.level();
+                    for (int i = 0; i < nodeLevel; i++) {
+                        last[i].setForward(i, node);
+                        last[i].setSpan(i, rank - lastRank[i]);
+                        last[i] = node;
+                        lastRank[i] = rank;
+                    }
+                    level = Math.max(level, nodeLevel);
+
+                    node.backward = preNode;
+                    preNode = node;
+                }
+
+                /* 每一层的最后一个节点指向null，跨度延伸到跳表末尾 */
+                for (int i = 0; i < level; i++) {
+                    last[i].setForward(i, null);
+                    last[i].setSpan(i, nodeCount - lastRank[i]);
+                }
+
+                this.tail = preNode;
+                this.length = nodeCount;
+                this.level = level;
+                this.modCount++;
             } finally {
-                ZSetUtils.releaseUpdate(update, realLength);
-                ZSetUtils.releaseRank(rank, realLength);
+                ZSetUtils.releaseUpdate(last, ZSKIPLIST_MAXLEVEL);
+                ZSetUtils.releaseRank(lastRank, ZSKIPLIST_MAXLEVEL);
             }
         }
 
+        /**
+         * @return 如果节点已经按照排序规则有序，则返回true
+         */
+        private boolean isSorted(final SkipListNode<K>[] nodes, final int nodeCount) {
+            for (int index = 1; index < nodeCount; index++) {
+                if (compareScoreAndObj(nodes[index - 1], nodes[index].score, nodes[index].obj) > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         /**
          * Delete an element with matching score/object from the skiplist.
          *
@@ -883,10 +1726,10 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
             try {
                 SkipListNode<K> preNode = this.header;
                 for (int i = this.level - 1; i >= 0; i--) {
-                    while (preNode.levelInfo[i].forward != null &&
-                            compareScoreAndObj(preNode.levelInfo[i].forward, score, obj) < 0) {
+                    while (preNode.forward(i) != null &&
+                            compareScoreAndObj(preNode.forward(i), score, obj) < 0) {
                         // preNode的后继节点仍然小于要删除的节点，需要继续前进
-                        preNode = preNode.levelInfo[i].forward;
+                        preNode = preNode.forward(i);
                     }
                     // 这是目标节点第i层的可能前驱节点
                     update[i] = preNode;
@@ -895,7 +1738,7 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
                 /* 由于可能多个节点拥有相同的分数，因此必须同时比较score和object */
                 /* We may have multiple elements with the same score, what we need
                  * is to find the element with both the right score and object. */
-                final SkipListNode<K> targetNode = preNode.levelInfo[0].forward;
+                final SkipListNode<K> targetNode = preNode.forward0;
                 if (targetNode != null && scoreEquals(targetNode.score, score) && objEquals(targetNode.obj, obj)) {
                     zslDeleteNode(targetNode, update);
                     return true;
@@ -916,27 +1759,27 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
          */
         private void zslDeleteNode(final SkipListNode<K> deleteNode, final SkipListNode<K>[] update) {
             for (int i = 0; i < this.level; i++) {
-                if (update[i].levelInfo[i].forward == deleteNode) {
+                if (update[i].forward(i) == deleteNode) {
                     // 这些节点的高度小于等于要删除的节点，需要合并两个跨度
-                    update[i].levelInfo[i].span += deleteNode.levelInfo[i].span - 1;
-                    update[i].levelInfo[i].forward = deleteNode.levelInfo[i].forward;
+                    update[i].setSpan(i, update[i].span(i) + deleteNode.span(i) - 1);
+                    update[i].setForward(i, deleteNode.forward(i));
                 } else {
                     // 这些节点的高度高于要删除的节点，它们的跨度可以简单的 -1
-                    update[i].levelInfo[i].span--;
+                    update[i].setSpan(i, update[i].span(i) - 1);
                 }
             }
 
-            if (deleteNode.levelInfo[0].forward != null) {
+            if (deleteNode.forward0 != null) {
                 // 要删除的节点有后继节点
-                deleteNode.levelInfo[0].forward.backward = deleteNode.backward;
+                deleteNode.forward0.backward = deleteNode.backward;
             } else {
                 // 要删除的节点是tail节点
                 this.tail = deleteNode.backward;
             }
 
             // 如果删除的节点是最高等级的节点，则检查是否需要降级
-            if (deleteNode.levelInfo.length == this.level) {
-                while (this.level > 1 && this.header.levelInfo[this.level - 1].forward == null) {
+            if (deleteNode.level() == this.level) {
+                while (this.level > 1 && this.header.forward(this.level - 1) == null) {
                     // 如果最高层没有后继节点，则降级
                     this.level--;
                 }
@@ -974,7 +1817,7 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
                 return false;
             }
 
-            final SkipListNode firstNode = this.header.levelInfo[0].forward;
+            final SkipListNode<K> firstNode = this.header.forward0;
             if (firstNode == null || !zslValueLteMax(firstNode.score, range)) {
                 // 列表有序，按照从score小到大，如果首部节点数据大于最大值，那么一定不在范围内
                 return false;
@@ -1014,16 +1857,16 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
             for (int i = this.level - 1; i >= 0; i--) {
                 /* 前进直到出现后继节点大于等于指定最小值的节点 */
                 /* Go forward while *OUT* of range. */
-                while (lastNodeLtMin.levelInfo[i].forward != null &&
-                        !zslValueGteMin(lastNodeLtMin.levelInfo[i].forward.score, range)) {
+                while (lastNodeLtMin.forward(i) != null &&
+                        !zslValueGteMin(lastNodeLtMin.forward(i).score, range)) {
                     // 如果当前节点的后继节点仍然小于指定范围的最小值，则继续前进
-                    lastNodeLtMin = lastNodeLtMin.levelInfo[i].forward;
+                    lastNodeLtMin = lastNodeLtMin.forward(i);
                 }
             }
 
             /* 这里的上下文表明了，一定存在一个节点的值大于等于指定范围的最小值，因此下一个节点一定不为null */
             /* This is an inner range, so the next node cannot be NULL. */
-            final SkipListNode<K> firstNodeGteMin = lastNodeLtMin.levelInfo[0].forward;
+            final SkipListNode<K> firstNodeGteMin = lastNodeLtMin.forward0;
             assert firstNodeGteMin != null;
 
             /* 如果该节点的数据大于max，则不存在再范围内的节点 */
@@ -1054,10 +1897,10 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
             SkipListNode<K> lastNodeLteMax = this.header;
             for (int i = this.level - 1; i >= 0; i--) {
                 /* Go forward while *IN* range. */
-                while (lastNodeLteMax.levelInfo[i].forward != null &&
-                        zslValueLteMax(lastNodeLteMax.levelInfo[i].forward.score, range)) {
+                while (lastNodeLteMax.forward(i) != null &&
+                        zslValueLteMax(lastNodeLteMax.forward(i).score, range)) {
                     // 如果当前节点的后继节点仍然小于最大值，则继续前进
-                    lastNodeLteMax = lastNodeLteMax.levelInfo[i].forward;
+                    lastNodeLteMax = lastNodeLteMax.forward(i);
                 }
             }
 
@@ -1082,32 +1925,32 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
          * sorted set, in order to remove the elements from the hash table too.
          *
          * @param range 范围描述符
-         * @param dict  对象id到score的映射
+         * @param dict  member -> node的字典
          * @return 删除的节点数量
          */
-        int zslDeleteRangeByScore(ZLongScoreRangeSpec range, Map<K, Long> dict) {
+        int zslDeleteRangeByScore(ZLongScoreRangeSpec range, Object2ObjectMap<K, SkipListNode<K>> dict) {
             final SkipListNode<K>[] update = updateCache;
             final int realLength = this.level;
             try {
                 int removed = 0;
                 SkipListNode<K> lastNodeLtMin = this.header;
                 for (int i = this.level - 1; i >= 0; i--) {
-                    while (lastNodeLtMin.levelInfo[i].forward != null &&
-                            !zslValueGteMin(lastNodeLtMin.levelInfo[i].forward.score, range)) {
-                        lastNodeLtMin = lastNodeLtMin.levelInfo[i].forward;
+                    while (lastNodeLtMin.forward(i) != null &&
+                            !zslValueGteMin(lastNodeLtMin.forward(i).score, range)) {
+                        lastNodeLtMin = lastNodeLtMin.forward(i);
                     }
                     update[i] = lastNodeLtMin;
                 }
 
                 /* 当前节点是小于目标范围最小值的最后一个节点，它的下一个节点可能为null，或大于等于最小值 */
                 /* Current node is the last with score < or <= min. */
-                SkipListNode<K> firstNodeGteMin = lastNodeLtMin.levelInfo[0].forward;
+                SkipListNode<K> firstNodeGteMin = lastNodeLtMin.forward0;
 
                 /* 删除在范围内的节点(小于等于最大值的节点) */
                 /* Delete nodes while in range. */
                 while (firstNodeGteMin != null
                         && zslValueLteMax(firstNodeGteMin.score, range)) {
-                    final SkipListNode<K> next = firstNodeGteMin.levelInfo[0].forward;
+                    final SkipListNode<K> next = firstNodeGteMin.forward0;
                     zslDeleteNode(firstNodeGteMin, update);
                     dict.remove(firstNodeGteMin.obj);
                     removed++;
@@ -1128,10 +1971,10 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
          *
          * @param start 起始排名 inclusive
          * @param end   截止排名 inclusive
-         * @param dict  member -> score的字典
+         * @param dict  member -> node的字典
          * @return 删除的成员数量
          */
-        int zslDeleteRangeByRank(int start, int end, Map<K, Long> dict) {
+        int zslDeleteRangeByRank(int start, int end, Object2ObjectMap<K, SkipListNode<K>> dict) {
             final SkipListNode<K>[] update = updateCache;
             final int realLength = this.level;
             try {
@@ -1141,21 +1984,21 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
 
                 SkipListNode<K> lastNodeLtStart = this.header;
                 for (int i = this.level - 1; i >= 0; i--) {
-                    while (lastNodeLtStart.levelInfo[i].forward != null &&
-                            (traversed + lastNodeLtStart.levelInfo[i].span) < start) {
+                    while (lastNodeLtStart.forward(i) != null &&
+                            (traversed + lastNodeLtStart.span(i)) < start) {
                         // 下一个节点的排名还未到范围内，继续前进
-                        traversed += lastNodeLtStart.levelInfo[i].span;
-                        lastNodeLtStart = lastNodeLtStart.levelInfo[i].forward;
+                        traversed += lastNodeLtStart.span(i);
+                        lastNodeLtStart = lastNodeLtStart.forward(i);
                     }
                     update[i] = lastNodeLtStart;
                 }
 
                 traversed++;
 
-                /* levelInfo[0] 最下面一层就是要删除节点的直接前驱 */
-                SkipListNode<K> firstNodeGteStart = lastNodeLtStart.levelInfo[0].forward;
+                /* 第0层就是要删除节点的直接前驱 */
+                SkipListNode<K> firstNodeGteStart = lastNodeLtStart.forward0;
                 while (firstNodeGteStart != null && traversed <= end) {
-                    final SkipListNode<K> next = firstNodeGteStart.levelInfo[0].forward;
+                    final SkipListNode<K> next = firstNodeGteStart.forward0;
                     zslDeleteNode(firstNodeGteStart, update);
                     dict.remove(firstNodeGteStart.obj);
                     removed++;
@@ -1173,10 +2016,10 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
          * (该方法非原生方法)
          *
          * @param rank 排名 1-based
-         * @param dict member -> score的字典
+         * @param dict member -> node的字典
          * @return 删除的节点
          */
-        SkipListNode<K> zslDeleteByRank(int rank, Map<K, Long> dict) {
+        SkipListNode<K> zslDeleteByRank(int rank, Object2ObjectMap<K, SkipListNode<K>> dict) {
             final SkipListNode<K>[] update = updateCache;
             final int realLength = this.level;
             try {
@@ -1184,17 +2027,17 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
 
                 SkipListNode<K> lastNodeLtStart = this.header;
                 for (int i = this.level - 1; i >= 0; i--) {
-                    while (lastNodeLtStart.levelInfo[i].forward != null &&
-                            (traversed + lastNodeLtStart.levelInfo[i].span) < rank) {
+                    while (lastNodeLtStart.forward(i) != null &&
+                            (traversed + lastNodeLtStart.span(i)) < rank) {
                         // 下一个节点的排名还未到范围内，继续前进
-                        traversed += lastNodeLtStart.levelInfo[i].span;
-                        lastNodeLtStart = lastNodeLtStart.levelInfo[i].forward;
+                        traversed += lastNodeLtStart.span(i);
+                        lastNodeLtStart = lastNodeLtStart.forward(i);
                     }
                     update[i] = lastNodeLtStart;
                 }
 
-                /* levelInfo[0] 最下面一层就是要删除节点的直接前驱 */
-                final SkipListNode<K> targetRankNode = lastNodeLtStart.levelInfo[0].forward;
+                /* 第0层就是要删除节点的直接前驱 */
+                final SkipListNode<K> targetRankNode = lastNodeLtStart.forward0;
                 if (null != targetRankNode) {
                     zslDeleteNode(targetRankNode, update);
                     dict.remove(targetRankNode.obj);
@@ -1225,11 +2068,11 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
             int rank = 0;
             SkipListNode<K> firstNodeGteScore = this.header;
             for (int i = this.level - 1; i >= 0; i--) {
-                while (firstNodeGteScore.levelInfo[i].forward != null &&
-                        compareScoreAndObj(firstNodeGteScore.levelInfo[i].forward, score, obj) <= 0) {
+                while (firstNodeGteScore.forward(i) != null &&
+                        compareScoreAndObj(firstNodeGteScore.forward(i), score, obj) <= 0) {
                     // <= 也继续前进，也就是我们期望在目标节点停下来，这样rank也不必特殊处理
-                    rank += firstNodeGteScore.levelInfo[i].span;
-                    firstNodeGteScore = firstNodeGteScore.levelInfo[i].forward;
+                    rank += firstNodeGteScore.span(i);
+                    firstNodeGteScore = firstNodeGteScore.forward(i);
                 }
 
                 /* firstNodeGteScore might be equal to zsl->header, so test if firstNodeGteScore is header */
@@ -1241,6 +2084,153 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
             return 0;
         }
 
+        /**
+         * 计算排在(score, obj)之前的节点数量，(score, obj)不需要在跳表中。
+         *
+         * @param score 分数
+         * @param obj   数据id
+         * @return 节点数量
+         */
+        int zslCountBefore(long score, @Nonnull K obj) {
+            int rank = 0;
+            SkipListNode<K> lastNodeLtScore = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                while (lastNodeLtScore.forward(i) != null &&
+                        compareScoreAndObj(lastNodeLtScore.forward(i), score, obj) < 0) {
+                    rank += lastNodeLtScore.span(i);
+                    lastNodeLtScore = lastNodeLtScore.forward(i);
+                }
+            }
+            return rank;
+        }
+
+        /**
+         * 查找指定节点的排名，不需要比较score和key。
+         * <b>Note</b>：排名从1开始
+         * <p>
+         * 每一层最后一个节点的跨度等于它与表尾的距离，因此任意节点在任意层都满足：span = rank(forward) - rank(node)，其中null的排名视为length。
+         * 从节点出发，一直沿着当前节点的最高层前进到表尾，累加经过的跨度，就得到了节点与表尾的距离。
+         * 前进过程中经过的节点高度不会降低，因此经过的节点数与查找路径相当，为O(log(N))。
+         *
+         * @param node 跳表中的节点
+         * @return 排名，从1开始
+         */
+        int zslGetRank(SkipListNode<K> node) {
+            int spanToTail = 0;
+            SkipListNode<K> curNode = node;
+            while (curNode != null) {
+                final int topLevel = curNode.level() - 1;
+                spanToTail += curNode.span(topLevel);
+                curNode = curNode.forward(topLevel);
+            }
+            return this.length - spanToTail;
+        }
+
+        /**
+         * 有界的{@link #zslGetRank(SkipListNode)}，用于乐观读。
+         *
+         * @param node 节点
+         * @return 排名，从1开始；前进的节点数超过上限时返回{@link #OPTIMISTIC_FAILED}
+         */
+        int zslGetRankBounded(SkipListNode<K> node) {
+            int spanToTail = 0;
+            int steps = 0;
+            SkipListNode<K> curNode = node;
+            while (curNode != null) {
+                if (++steps > OPTIMISTIC_MAX_STEPS) {
+                    return OPTIMISTIC_FAILED;
+                }
+                final int topLevel = curNode.level() - 1;
+                spanToTail += curNode.span(topLevel);
+                curNode = curNode.forward(topLevel);
+            }
+            return this.length - spanToTail;
+        }
+
+        /**
+         * 删除指定节点，不需要比较score和key。
+         * 先通过节点计算出排名，再按照排名查找每一层的前驱节点，与{@link #zslDeleteByRank(int, Object2ObjectMap)}的查找方式一致。
+         *
+         * @param node 跳表中的节点
+         */
+        void zslDelete(SkipListNode<K> node) {
+            final int rank = zslGetRank(node);
+            final SkipListNode<K>[] update = updateCache;
+            final int realLength = this.level;
+            try {
+                int traversed = 0;
+                SkipListNode<K> lastNodeLtRank = this.header;
+                for (int i = this.level - 1; i >= 0; i--) {
+                    while (lastNodeLtRank.forward(i) != null &&
+                            (traversed + lastNodeLtRank.span(i)) < rank) {
+                        traversed += lastNodeLtRank.span(i);
+                        lastNodeLtRank = lastNodeLtRank.forward(i);
+                    }
+                    update[i] = lastNodeLtRank;
+                }
+
+                /* 第0层就是要删除节点的直接前驱 */
+                assert lastNodeLtRank.forward0 == node;
+                zslDeleteNode(node, update);
+            } finally {
+                ZSetUtils.releaseUpdate(update, realLength);
+            }
+        }
+
+        /**
+         * 更新节点的分数。
+         * 如果更新分数以后节点仍然位于前驱和后继之间，则直接原地修改分数，不需要调整节点的位置；
+         * 否则将节点从跳表中摘下，修改分数后重新插入，复用原来的节点和层级，不会创建新的节点。
+         * <p>
+         * 参考redis的zslUpdateScore，不过redis在节点需要移动时会创建新的节点。
+         *
+         * @param node     跳表中的节点
+         * @param newScore 新的分数
+         */
+        void zslUpdateScore(SkipListNode<K> node, long newScore) {
+            if (zslUpdateScoreInPlace(node, newScore)) {
+                return;
+            }
+
+            // 位置发生了变化，摘下节点后重新插入
+            zslDelete(node);
+            node.score = newScore;
+            zslInsertNode(node);
+        }
+
+        /**
+         * 如果更新分数以后节点仍然位于前驱和后继之间，则直接原地修改分数。
+         *
+         * @param node     跳表中的节点
+         * @param newScore 新的分数
+         * @return 如果修改成功则返回true，如果节点需要移动则返回false（此时不会修改分数）
+         */
+        boolean zslUpdateScoreInPlace(SkipListNode<K> node, long newScore) {
+            /* If the node, after the score update, would be still exactly
+             * at the same position, we can just update the score without
+             * actually removing and re-inserting the element in the skiplist. */
+            final SkipListNode<K> next = node.forward0;
+            if ((node.backward == null || compareScoreAndObj(node.backward, newScore, node.obj) < 0) &&
+                    (next == null || compareScoreAndObj(next, newScore, node.obj) > 0)) {
+                node.score = newScore;
+                this.modCount++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 判断节点当前是否链接在跳表中。
+         * 只对跳表中的节点、新创建的节点以及通过{@link #zslUpdateScoreBatch(SkipListNode[], long[], int, SkipListNode[], int)}摘下的节点有效，
+         * 新创建的节点和摘下的节点的{@code forward0}为null，且不是tail节点。
+         *
+         * @param node 节点
+         * @return 如果节点在跳表中，则返回true
+         */
+        boolean zslIsLinked(SkipListNode<K> node) {
+            return node.forward0 != null || node == tail;
+        }
+
         /**
          * 查找指定排名的成员数据，如果不存在，则返回Null。
          * 注意：排名从1开始
@@ -1255,11 +2245,11 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
             int traversed = 0;
             SkipListNode<K> firstNodeGteRank = this.header;
             for (int i = this.level - 1; i >= 0; i--) {
-                while (firstNodeGteRank.levelInfo[i].forward != null &&
-                        (traversed + firstNodeGteRank.levelInfo[i].span) <= rank) {
+                while (firstNodeGteRank.forward(i) != null &&
+                        (traversed + firstNodeGteRank.span(i)) <= rank) {
                     // <= rank 表示我们期望在目标节点停下来
-                    traversed += firstNodeGteRank.levelInfo[i].span;
-                    firstNodeGteRank = firstNodeGteRank.levelInfo[i].forward;
+                    traversed += firstNodeGteRank.span(i);
+                    firstNodeGteRank = firstNodeGteRank.forward(i);
                 }
 
                 if (traversed == rank) {
@@ -1270,6 +2260,35 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
             return null;
         }
 
+        /**
+         * 有界的{@link #zslGetElementByRank(int)}，用于乐观读。
+         * 节点的层级数组是final的，通过第i层指针到达的节点至少有i+1层，因此不会越界。
+         *
+         * @param rank 排名，1开始
+         * @return element，不存在或者前进的节点数超过上限时返回null
+         */
+        @Nullable
+        SkipListNode<K> zslGetElementByRankBounded(int rank) {
+            int traversed = 0;
+            int steps = 0;
+            SkipListNode<K> firstNodeGteRank = this.header;
+            for (int i = this.level - 1; i >= 0; i--) {
+                while (firstNodeGteRank.forward(i) != null &&
+                        (traversed + firstNodeGteRank.span(i)) <= rank) {
+                    if (++steps > OPTIMISTIC_MAX_STEPS) {
+                        return null;
+                    }
+                    traversed += firstNodeGteRank.span(i);
+                    firstNodeGteRank = firstNodeGteRank.forward(i);
+                }
+
+                if (traversed == rank) {
+                    return firstNodeGteRank;
+                }
+            }
+            return null;
+        }
+
         /**
          * @return 跳表中的成员数量
          */
@@ -1286,11 +2305,7 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
          * @return node
          */
         private static <K> SkipListNode<K> zslCreateNode(int level, long score, K obj) {
-            final SkipListNode<K> node = new SkipListNode<>(obj, score, new SkipListLevel[level]);
-            for (int index = 0; index < level; index++) {
-                node.levelInfo[index] = new SkipListLevel<>();
-            }
-            return node;
+            return new SkipListNode<>(obj, score, level);
         }
 
         /**
@@ -1448,12 +2463,19 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
         /**
          * 该节点数据对应的评分 - 如果要通用的话，这里将来将是一个泛型对象，需要实现{@link Comparable}。
          */
-        final long score;
+        long score;
+        /**
+         * 第0层的后继节点和跨度。
+         * 所有节点都有第0层，因此直接内联到节点中，高度为1的节点（约占3/4）不需要额外的数组。
+         */
+        SkipListNode<K> forward0;
+        int span0;
         /**
-         * 该节点的层级信息
-         * level[]存放指向各层链表后一个节点的指针（后向指针）。
+         * 第1层及以上各层的后继节点和跨度，下标i对应第i+1层，高度为1的节点为null。
+         * 使用两个平行数组代替每层一个层级对象，减少对象数量和内存占用。
          */
-        final SkipListLevel<K>[] levelInfo;
+        private final SkipListNode<K>[] forwards;
+        private final int[] spans;
         /**
          * 该节点的前向指针
          * <b>NOTE:</b>(不包含header)
@@ -1462,34 +2484,62 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
          */
         SkipListNode<K> backward;
 
-        private SkipListNode(K obj, long score, SkipListLevel[] levelInfo) {
+        @SuppressWarnings("unchecked")
+        private SkipListNode(K obj, long score, int level) {
             this.obj = obj;
             this.score = score;
-            // noinspection unchecked
-            this.levelInfo = levelInfo;
+            if (level > 1) {
+                this.forwards = (SkipListNode<K>[]) new SkipListNode<?>[level - 1];
+                this.spans = new int[level - 1];
+            } else {
+                this.forwards = null;
+                this.spans = null;
+            }
         }
 
         /**
-         * @return 该节点的直接后继节点
+         * @return 节点的高度
          */
-        SkipListNode<K> directForward() {
-            return levelInfo[0].forward;
+        int level() {
+            return forwards == null ? 1 : forwards.length + 1;
         }
-    }
 
-    /**
-     * 跳表层级
-     */
-    private static class SkipListLevel<K> {
         /**
-         * 每层对应1个后向指针 (后继节点)
+         * @return 节点第i层的后继节点
          */
-        SkipListNode<K> forward;
+        SkipListNode<K> forward(int i) {
+            return i == 0 ? forward0 : forwards[i - 1];
+        }
+
+        void setForward(int i, SkipListNode<K> forward) {
+            if (i == 0) {
+                forward0 = forward;
+            } else {
+                forwards[i - 1] = forward;
+            }
+        }
+
+        /**
+         * @return 节点第i层到后继节点之间的跨度
+         */
+        int span(int i) {
+            return i == 0 ? span0 : spans[i - 1];
+        }
+
+        void setSpan(int i, int span) {
+            if (i == 0) {
+                span0 = span;
+            } else {
+                spans[i - 1] = span;
+            }
+        }
+
         /**
-         * 到后继节点之间的跨度
-         * 它表示当前的指针跨越了多少个节点。span用于计算成员排名(rank)，这是Redis对于SkipList做的一个扩展。
+         * @return 该节点的直接后继节点
          */
-        int span;
+        SkipListNode<K> directForward() {
+            return forward0;
+        }
     }
 
     // region 迭代
@@ -1533,9 +2583,8 @@ public class Object2LongZSet<K> implements Iterable<Object2LongMember<K>> {
 
             checkForComodification();
 
-            // remove lastReturned
-            dict.remove(lastReturned.obj);
-            zsl.zslDelete(lastReturned.score, lastReturned.obj);
+            // remove lastReturned，与zrem走相同的路径，以便通知监听器
+            zrem(lastReturned.obj);
 
             // reset lastReturned
             lastReturned = null;
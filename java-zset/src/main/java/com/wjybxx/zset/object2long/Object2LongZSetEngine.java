@@ -0,0 +1,446 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 单写线程的zset引擎：由一个专用线程持有多个命名的{@link Object2LongZSet}，其它线程通过提交命令的方式访问zset。
+ * <p>
+ * <b>实现</b>
+ * 1. 生产者线程将命令放入无锁队列({@link ConcurrentLinkedQueue})，提交命令不需要加锁，多个生产者之间只在队列尾部产生CAS竞争。
+ * 2. 引擎线程批量的从队列中取出命令，在单线程的{@link Object2LongZSet}上执行，不需要任何锁，执行结果通过{@link CompletableFuture}返回。
+ * 3. 队列为空时引擎线程会挂起，生产者提交命令时如果发现引擎线程已挂起，则唤醒它。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. 命令在引擎线程中执行，命令中不可以执行阻塞操作，也不可以等待引擎中的其它命令，否则引擎将被阻塞或死锁。
+ * 2. 返回的{@link CompletableFuture}在引擎线程中完成，如果在完成之前添加了回调(thenApply等)，回调也将在引擎线程中执行，
+ * 因此回调中不可以执行耗时操作，耗时的回调请使用{@code thenApplyAsync}等方法。
+ * 3. 同一个生产者线程提交的命令按照提交顺序执行。
+ * 4. 命令中不可以泄露zset的引用到其它线程，返回的结果必须是新创建的对象（zset的查询接口都满足该要求）。
+ * 5. 命令队列是无界的，如果生产者提交命令的速度长期大于引擎执行的速度，队列将不断增长，调用者需要自行限流。
+ * 6. 只有写操作(zadd、zincrby、submit、execute)会创建不存在的zset，查询不存在的zset等同于查询空的zset，不会创建zset；
+ * zrem删除最后一个成员以后，zset也会被删除。
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@ThreadSafe
+public class Object2LongZSetEngine<K> {
+
+    /**
+     * 每批最多执行的命令数
+     */
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private static final int ST_NOT_STARTED = 0;
+    private static final int ST_RUNNING = 1;
+    private static final int ST_SHUTDOWN = 2;
+    private static final int ST_TERMINATED = 3;
+
+    private final Comparator<K> objComparator;
+    private final LongScoreHandler scoreHandler;
+
+    /**
+     * 命令队列 - 多生产者单消费者
+     */
+    private final ConcurrentLinkedQueue<Command<K, ?>> commandQueue = new ConcurrentLinkedQueue<>();
+    /**
+     * 引擎线程是否已挂起(或即将挂起)
+     */
+    private final AtomicBoolean sleeping = new AtomicBoolean(false);
+    private final CountDownLatch terminationLatch = new CountDownLatch(1);
+    private final Thread thread;
+
+    private volatile int state = ST_NOT_STARTED;
+
+    /**
+     * 所有的zset - 只由引擎线程访问
+     */
+    private final Map<String, Object2LongZSet<K>> zsetMap = new HashMap<>();
+    /**
+     * 查询不存在的zset时使用的空zset - 只由引擎线程访问，且只执行查询
+     */
+    private final Object2LongZSet<K> emptyZSet;
+
+    private Object2LongZSetEngine(Comparator<K> keyComparator, LongScoreHandler scoreHandler, ThreadFactory threadFactory) {
+        this.objComparator = keyComparator;
+        this.scoreHandler = scoreHandler;
+        this.emptyZSet = Object2LongZSet.newGenericKeyZSet(keyComparator, scoreHandler);
+        this.thread = threadFactory.newThread(this::run);
+    }
+
+    /**
+     * 创建一个键为long类型的引擎
+     *
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param threadFactory 引擎线程的工厂
+     * @return engine
+     */
+    public static Object2LongZSetEngine<Long> newLongKeyEngine(LongScoreHandler scoreHandler, ThreadFactory threadFactory) {
+        return new Object2LongZSetEngine<>(Long::compareTo, scoreHandler, threadFactory);
+    }
+
+    /**
+     * 创建一个键为string类型的引擎
+     *
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param threadFactory 引擎线程的工厂
+     * @return engine
+     */
+    public static Object2LongZSetEngine<String> newStringKeyEngine(LongScoreHandler scoreHandler, ThreadFactory threadFactory) {
+        return new Object2LongZSetEngine<>(String::compareTo, scoreHandler, threadFactory);
+    }
+
+    /**
+     * 创建一个自定义键类型的引擎
+     *
+     * @param keyComparator 键比较器，当score比较结果相等时，比较key - 注意：比较结果必须与key对象的状态改变无关。
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param threadFactory 引擎线程的工厂
+     * @param <K>           键的类型
+     * @return engine
+     */
+    public static <K> Object2LongZSetEngine<K> newGenericKeyEngine(Comparator<K> keyComparator, LongScoreHandler scoreHandler,
+                                                                 ThreadFactory threadFactory) {
+        return new Object2LongZSetEngine<>(keyComparator, scoreHandler, threadFactory);
+    }
+
+    // -------------------------------------------------------- 生命周期 -----------------------------------------------
+
+    /**
+     * 启动引擎线程
+     */
+    public synchronized void start() {
+        if (state != ST_NOT_STARTED) {
+            throw new IllegalStateException("engine already started");
+        }
+        state = ST_RUNNING;
+        thread.start();
+    }
+
+    /**
+     * 关闭引擎：不再接收新的命令，已提交的命令会在引擎线程退出之前执行完毕。
+     */
+    public synchronized void shutdown() {
+        if (state == ST_NOT_STARTED) {
+            state = ST_TERMINATED;
+            terminationLatch.countDown();
+            return;
+        }
+        if (state == ST_RUNNING) {
+            state = ST_SHUTDOWN;
+            wakeup();
+        }
+    }
+
+    /**
+     * 等待引擎线程退出
+     *
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return 如果引擎线程已退出则返回true
+     * @throws InterruptedException 如果等待期间被中断
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminationLatch.await(timeout, unit);
+    }
+
+    /**
+     * @return 当前线程是否是引擎线程
+     */
+    public boolean inEngineThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    // -------------------------------------------------------- 提交命令 -----------------------------------------------
+
+    /**
+     * 提交一个命令，命令将在引擎线程中执行。
+     * 如果指定名字的zset不存在，则会创建一个空的zset。
+     *
+     * @param name    zset的名字
+     * @param command 要执行的命令，返回的结果必须是新创建的对象，不可以是zset本身
+     * @param <R>     结果类型
+     * @return future，命令执行完成以后，结果将设置到future中
+     */
+    public <R> CompletableFuture<R> submit(@Nonnull String name, @Nonnull Function<? super Object2LongZSet<K>, ? extends R> command) {
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        offer(new Command<>(name, true, command, future));
+        return future;
+    }
+
+    /**
+     * 提交一个不需要创建zset的命令(查询和删除)，如果指定名字的zset不存在，则在空的zset上执行。
+     */
+    private <R> CompletableFuture<R> query(String name, Function<? super Object2LongZSet<K>, ? extends R> command) {
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        offer(new Command<>(name, false, command, future));
+        return future;
+    }
+
+    /**
+     * 提交一个不需要结果的命令，命令将在引擎线程中执行 - 不创建future，适合高频的写操作。
+     * 如果指定名字的zset不存在，则会创建一个空的zset。
+     * 如果引擎已关闭，则命令将被丢弃。
+     * 命令抛出的异常没有future可以传递，将交给引擎线程的{@link Thread.UncaughtExceptionHandler}处理(可以通过threadFactory指定)，
+     * 引擎线程不会因此退出。
+     *
+     * @param name    zset的名字
+     * @param command 要执行的命令
+     */
+    public void execute(@Nonnull String name, @Nonnull Consumer<? super Object2LongZSet<K>> command) {
+        offer(new Command<K, Void>(name, true, zset -> {
+            command.accept(zset);
+            return null;
+        }, null));
+    }
+
+    /**
+     * @see Object2LongZSet#zadd(long, Object)
+     */
+    public CompletableFuture<Void> zadd(@Nonnull String name, long score, @Nonnull K member) {
+        return submit(name, zset -> {
+            zset.zadd(score, member);
+            return null;
+        });
+    }
+
+    /**
+     * @see Object2LongZSet#zincrby(long, Object)
+     */
+    public CompletableFuture<Long> zincrby(@Nonnull String name, long increment, @Nonnull K member) {
+        return submit(name, zset -> zset.zincrby(increment, member));
+    }
+
+    /**
+     * @see Object2LongZSet#zrem(Object)
+     */
+    public CompletableFuture<Long> zrem(@Nonnull String name, @Nonnull K member) {
+        return query(name, zset -> {
+            final Long score = zset.zrem(member);
+            if (score != null && zset.zcard() == 0) {
+                zsetMap.remove(name);
+            }
+            return score;
+        });
+    }
+
+    /**
+     * @see Object2LongZSet#zscore(Object)
+     */
+    public CompletableFuture<Long> zscore(@Nonnull String name, @Nonnull K member) {
+        return query(name, zset -> zset.zscore(member));
+    }
+
+    /**
+     * @see Object2LongZSet#zrank(Object)
+     */
+    public CompletableFuture<Integer> zrank(@Nonnull String name, @Nonnull K member) {
+        return query(name, zset -> zset.zrank(member));
+    }
+
+    /**
+     * @see Object2LongZSet#zrevrank(Object)
+     */
+    public CompletableFuture<Integer> zrevrank(@Nonnull String name, @Nonnull K member) {
+        return query(name, zset -> zset.zrevrank(member));
+    }
+
+    /**
+     * @see Object2LongZSet#zrangeByRank(int, int)
+     */
+    public CompletableFuture<List<Object2LongMember<K>>> zrangeByRank(@Nonnull String name, int start, int end) {
+        return query(name, zset -> zset.zrangeByRank(start, end));
+    }
+
+    /**
+     * @see Object2LongZSet#zrevrangeByRank(int, int)
+     */
+    public CompletableFuture<List<Object2LongMember<K>>> zrevrangeByRank(@Nonnull String name, int start, int end) {
+        return query(name, zset -> zset.zrevrangeByRank(start, end));
+    }
+
+    /**
+     * @see Object2LongZSet#zrangeByScore(long, long)
+     */
+    public CompletableFuture<List<Object2LongMember<K>>> zrangeByScore(@Nonnull String name, long start, long end) {
+        return query(name, zset -> zset.zrangeByScore(start, end));
+    }
+
+    /**
+     * @see Object2LongZSet#zcard()
+     */
+    public CompletableFuture<Integer> zcard(@Nonnull String name) {
+        return query(name, Object2LongZSet::zcard);
+    }
+
+    /**
+     * 删除指定名字的zset
+     *
+     * @param name zset的名字
+     * @return 如果zset存在，则返回true
+     */
+    public CompletableFuture<Boolean> del(@Nonnull String name) {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        offer(new Command<K, Boolean>(null, false, ignore -> zsetMap.remove(name) != null, future));
+        return future;
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    private void offer(Command<K, ?> command) {
+        if (state >= ST_SHUTDOWN) {
+            command.reject();
+            return;
+        }
+        commandQueue.offer(command);
+        wakeup();
+        // 可能在放入队列期间引擎已退出，此时命令可能不会被执行
+        if (state == ST_TERMINATED && commandQueue.remove(command)) {
+            command.reject();
+        }
+    }
+
+    private void wakeup() {
+        if (sleeping.get() && sleeping.compareAndSet(true, false)) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                if (runBatch() > 0) {
+                    continue;
+                }
+                if (state >= ST_SHUTDOWN) {
+                    // 执行关闭之前提交的命令
+                    while (runBatch() > 0) {
+                        // continue
+                    }
+                    break;
+                }
+                // 先标记挂起，再检查一次队列，避免错过唤醒
+                sleeping.set(true);
+                if (commandQueue.isEmpty() && state == ST_RUNNING) {
+                    LockSupport.park(this);
+                }
+                sleeping.set(false);
+            }
+        } finally {
+            state = ST_TERMINATED;
+            Command<K, ?> command;
+            while ((command = commandQueue.poll()) != null) {
+                command.reject();
+            }
+            zsetMap.clear();
+            terminationLatch.countDown();
+        }
+    }
+
+    /**
+     * 执行一批命令
+     *
+     * @return 执行的命令数
+     */
+    private int runBatch() {
+        int count = 0;
+        Command<K, ?> command;
+        while (count < MAX_BATCH_SIZE && (command = commandQueue.poll()) != null) {
+            count++;
+            command.run(getZSet(command));
+        }
+        return count;
+    }
+
+    private Object2LongZSet<K> getZSet(Command<K, ?> command) {
+        if (command.name == null) {
+            return null;
+        }
+        if (command.create) {
+            return zsetMap.computeIfAbsent(command.name, this::newZSet);
+        }
+        final Object2LongZSet<K> zset = zsetMap.get(command.name);
+        return zset != null ? zset : emptyZSet;
+    }
+
+    private Object2LongZSet<K> newZSet(String name) {
+        return Object2LongZSet.newGenericKeyZSet(objComparator, scoreHandler);
+    }
+
+    private static final class Command<K, R> {
+
+        /**
+         * zset的名字，为null时表示命令不需要zset
+         */
+        final String name;
+        /**
+         * zset不存在时是否创建
+         */
+        final boolean create;
+        final Function<? super Object2LongZSet<K>, ? extends R> function;
+        /**
+         * 为null时表示不需要结果
+         */
+        final CompletableFuture<R> future;
+
+        Command(String name, boolean create, Function<? super Object2LongZSet<K>, ? extends R> function,
+                @Nullable CompletableFuture<R> future) {
+            this.name = name;
+            this.create = create;
+            this.function = function;
+            this.future = future;
+        }
+
+        void run(Object2LongZSet<K> zset) {
+            try {
+                final R result = function.apply(zset);
+                if (future != null) {
+                    future.complete(result);
+                }
+            } catch (Throwable e) {
+                if (future != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    // 没有future可以传递异常，交给引擎线程的异常处理器，避免异常被静默丢弃
+                    final Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+
+        void reject() {
+            if (future != null) {
+                future.completeExceptionally(new RejectedExecutionException("engine is shutdown"));
+            }
+        }
+    }
+}
@@ -0,0 +1,890 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+import com.wjybxx.zset.ZSetCodec;
+import com.wjybxx.zset.ZSetCodecs;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * {@link Object2LongZSet}的追加日志(类似redis的AOF)，修改操作先作用于zset，再以紧凑的二进制格式追加到日志文件中，
+ * 启动时重放日志即可恢复zset，不必每次修改都保存完整的快照。
+ * <p>
+ * <b>日志格式</b>
+ * 文件头为4字节的魔数和1字节的版本号，之后是连续的记录：4字节的长度 + 4字节的CRC32 + 1字节的类型 + 参数，
+ * 长度和CRC32都只计算类型和参数。分数、排名等数字使用zigzag变长编码，成员使用{@link ZSetCodec}编码。
+ * 版本号不一致的日志(例如没有长度和CRC32的版本2)会被拒绝，需要使用旧版本导出后重新生成。
+ * 只有真正修改了zset的操作才会记录（例如：删除不存在的成员不会产生记录）。
+ * <p>
+ * <b>刷盘策略</b>，见{@link FsyncPolicy}：
+ * 1. ALWAYS: 每条记录都立即写入文件并fsync，最安全也最慢。
+ * 2. EVERY_INTERVAL: 每条记录都立即写入文件(操作系统缓存)，由后台线程每隔N毫秒fsync一次，进程崩溃不丢数据，系统崩溃最多丢失N毫秒的数据。
+ * 3. GROUP_COMMIT: 记录先缓存在内存中，调用者在一批修改完成以后(例如每一帧结束时)调用{@link #commit()}，一次写入、一次fsync。
+ * <p>
+ * <b>重写</b>
+ * 日志会随着修改不断增长（同一个成员可能有大量的zincrby记录），{@link #rewriteAsync()}将zset的当前状态重写为一个新的日志：
+ * 1. 在调用线程中导出zset的所有成员(O(N)的数组拷贝)，之后的新记录除了写入旧日志以外，还会额外缓存一份。
+ * 2. 后台线程将导出的成员按照排名顺序写入临时文件，并fsync。
+ * 3. 后台线程完成以后，下一次修改时(在调用线程中)将缓存的新记录追加到临时文件，然后原子地替换旧日志。
+ * 日志大小超过{@link #setAutoRewriteMinSize(long) autoRewriteMinSize}，且达到上次重写以后大小的2倍时，会自动开始重写。
+ * <p>
+ * <b>重放</b>
+ * 连续的zadd记录不会逐条执行，而是收集起来通过{@link Object2LongZSet#zaddBatch(long[], Object[])}批量添加；
+ * 重写后的日志是按照排名有序的zadd记录，zset为空时会直接O(N)构建跳表，见{@link Object2LongZSet#zaddAll(long[], Object[])}。
+ * 重放在第一条长度无效(超出文件末尾)或者CRC32校验失败的记录处停止，丢弃该记录及之后的数据并截断文件，
+ * 例如：写入时系统崩溃导致的不完整记录，或者文件长度已经增加、但数据没有写入(以0填充)的区域。
+ * 校验通过的记录如果无法解析(例如未知的类型)，说明日志已损坏，打开日志时抛出异常。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. 被包装的zset只能通过journal修改，否则修改不会被记录；读操作可以直接访问{@link #getZSet()}。
+ * 2. 与zset一样，journal不是线程安全的；{@link ZSetCodec}会在后台重写线程中使用，必须是无状态的。
+ * 3. 写文件失败时会抛出{@link UncheckedIOException}，此时zset已经被修改，但日志中可能没有该记录，应当关闭journal。
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@NotThreadSafe
+public class Object2LongZSetJournal<K> implements Closeable {
+
+    /**
+     * "ZAOF"
+     */
+    private static final int MAGIC = 0x5A414F46;
+    /**
+     * 版本1的成员编码为变长的长度 + MemberCodec编码的字节，版本2改为{@link ZSetCodec}编码，
+     * 版本3在每条记录前增加了长度和CRC32，互相不兼容
+     */
+    private static final byte VERSION = 3;
+    private static final int HEADER_SIZE = 5;
+    /**
+     * 记录头：4字节的长度 + 4字节的CRC32
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte ZADD = 1;
+    private static final byte ZINCRBY = 2;
+    private static final byte ZREM = 3;
+    private static final byte ZREM_RANGE_BY_SCORE = 4;
+    private static final byte ZREM_RANGE_BY_RANK = 5;
+    private static final byte ZLIMIT = 6;
+
+    /**
+     * 一条记录除成员以外的最大长度：记录头 + 类型 + 分数
+     */
+    private static final int MAX_RECORD_OVERHEAD = RECORD_HEADER_SIZE + 1 + ZSetCodecs.MAX_VAR_LONG_SIZE;
+    private static final int WRITE_BUFFER_INIT_CAPACITY = 64 * 1024;
+    private static final int READ_BUFFER_CAPACITY = 1024 * 1024;
+    /**
+     * GROUP_COMMIT模式下，缓存的记录超过该值时先写入文件(不fsync)，避免缓冲区无限增长
+     */
+    private static final int GROUP_COMMIT_WRITE_THRESHOLD = 1024 * 1024;
+    private static final long DEFAULT_AUTO_REWRITE_MIN_SIZE = 64 * 1024 * 1024;
+    private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+    private final Path path;
+    private final Path rewritePath;
+    private final Object2LongZSet<K> zset;
+    private final ZSetCodec<K> codec;
+    private final FsyncPolicy fsyncPolicy;
+    /**
+     * EVERY_INTERVAL模式下的fsync线程
+     */
+    private final ScheduledExecutorService syncExecutor;
+
+    /**
+     * 重写完成以后会切换为新的文件，fsync线程也会访问
+     */
+    private volatile FileChannel channel;
+    /**
+     * 已写入文件但还未fsync
+     */
+    private volatile boolean dirty = false;
+    /**
+     * 写模式，尚未写入文件的记录
+     */
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_INIT_CAPACITY);
+    /**
+     * 已写入文件的大小
+     */
+    private long fileSize;
+    /**
+     * 上次重写以后(或打开时)的文件大小
+     */
+    private long lastRewriteSize;
+    private long autoRewriteMinSize = DEFAULT_AUTO_REWRITE_MIN_SIZE;
+
+    /**
+     * 正在进行的重写，null表示没有在重写
+     */
+    private CompletableFuture<Void> rewriteFuture;
+    /**
+     * 重写期间产生的新记录
+     */
+    private ByteBuffer rewriteBuffer;
+
+    private Object2LongZSetJournal(Path path, Object2LongZSet<K> zset, ZSetCodec<K> codec, FsyncPolicy fsyncPolicy,
+                                   FileChannel channel, long fileSize, long syncIntervalMillis) {
+        this.path = path;
+        this.rewritePath = rewritePath(path);
+        this.zset = zset;
+        this.codec = codec;
+        this.fsyncPolicy = fsyncPolicy;
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.lastRewriteSize = fileSize;
+
+        if (fsyncPolicy == FsyncPolicy.EVERY_INTERVAL) {
+            syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "zset-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncExecutor.scheduleWithFixedDelay(this::syncIfDirty, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            syncExecutor = null;
+        }
+    }
+
+    /**
+     * 打开日志，如果日志文件已存在，则将日志重放到zset中，否则创建新的日志文件。
+     * EVERY_INTERVAL模式下，每秒fsync一次。
+     *
+     * @param path        日志文件
+     * @param zset        一般是一个空的zset
+     * @param codec       成员的编解码器
+     * @param fsyncPolicy 刷盘策略
+     * @param <K>         键的类型
+     * @return journal
+     * @throws IOException 如果读写文件失败，或者日志已损坏、版本不兼容
+     */
+    public static <K> Object2LongZSetJournal<K> open(@Nonnull Path path, @Nonnull Object2LongZSet<K> zset,
+                                                     @Nonnull ZSetCodec<K> codec, @Nonnull FsyncPolicy fsyncPolicy) throws IOException {
+        return open(path, zset, codec, fsyncPolicy, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * 打开日志，如果日志文件已存在，则将日志重放到zset中，否则创建新的日志文件。
+     *
+     * @param path               日志文件
+     * @param zset               一般是一个空的zset
+     * @param codec              成员的编解码器
+     * @param fsyncPolicy        刷盘策略
+     * @param syncIntervalMillis EVERY_INTERVAL模式下的fsync间隔
+     * @param <K>                键的类型
+     * @return journal
+     * @throws IOException 如果读写文件失败，或者日志已损坏、版本不兼容
+     */
+    public static <K> Object2LongZSetJournal<K> open(@Nonnull Path path, @Nonnull Object2LongZSet<K> zset,
+                                                     @Nonnull ZSetCodec<K> codec, @Nonnull FsyncPolicy fsyncPolicy,
+                                                     long syncIntervalMillis) throws IOException {
+        if (syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("syncIntervalMillis: " + syncIntervalMillis + " (expected: > 0)");
+        }
+        // 上次未完成的重写
+        Files.deleteIfExists(rewritePath(path));
+
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long fileSize;
+            if (channel.size() == 0) {
+                writeHeader(channel);
+                channel.force(true);
+                fileSize = HEADER_SIZE;
+            } else {
+                fileSize = replay(channel, zset, codec);
+                if (fileSize < channel.size()) {
+                    // 丢弃末尾不完整的记录
+                    channel.truncate(fileSize);
+                }
+            }
+            channel.position(fileSize);
+            return new Object2LongZSetJournal<>(path, zset, codec, fsyncPolicy, channel, fileSize, syncIntervalMillis);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static Path rewritePath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".rewrite");
+    }
+
+    /**
+     * @return 被包装的zset，只能用于读操作
+     */
+    public Object2LongZSet<K> getZSet() {
+        return zset;
+    }
+
+    /**
+     * 设置自动重写的最小文件大小
+     *
+     * @param autoRewriteMinSize 小于等于0表示不自动重写
+     */
+    public void setAutoRewriteMinSize(long autoRewriteMinSize) {
+        this.autoRewriteMinSize = autoRewriteMinSize;
+    }
+
+    // -------------------------------------------------------- 修改操作 -----------------------------------------------
+
+    /**
+     * @see Object2LongZSet#zadd(long, Object)
+     */
+    public void zadd(final long score, @Nonnull final K member) {
+        completeRewriteIfDone();
+        zset.zadd(score, member);
+        appendMemberRecord(ZADD, score, member);
+    }
+
+    /**
+     * 批量添加成员，每个成员记录为一条zadd记录
+     *
+     * @see Object2LongZSet#zaddBatch(long[], Object[])
+     */
+    public void zaddBatch(@Nonnull long[] scores, @Nonnull K[] members) {
+        completeRewriteIfDone();
+        zset.zaddBatch(scores, members);
+        for (int index = 0; index < members.length; index++) {
+            final int start = beginRecord(codec.maxEncodedSize(members[index]));
+            encodeMemberRecord(writeBuffer, ZADD, scores[index], members[index]);
+            copyToRewriteBuffer(start);
+        }
+        afterAppend();
+    }
+
+    /**
+     * @see Object2LongZSet#zincrby(long, Object)
+     */
+    public long zincrby(long increment, @Nonnull K member) {
+        completeRewriteIfDone();
+        final long score = zset.zincrby(increment, member);
+        appendMemberRecord(ZINCRBY, increment, member);
+        return score;
+    }
+
+    /**
+     * @see Object2LongZSet#zrem(Object)
+     */
+    public Long zrem(@Nonnull K member) {
+        completeRewriteIfDone();
+        final Long score = zset.zrem(member);
+        if (score != null) {
+            final int start = beginRecord(codec.maxEncodedSize(member));
+            skipRecordHeader(writeBuffer);
+            writeBuffer.put(ZREM);
+            codec.encode(member, writeBuffer);
+            writeRecordHeader(writeBuffer, start);
+            endRecord(start);
+        }
+        return score;
+    }
+
+    /**
+     * @see Object2LongZSet#zremrangeByScore(long, long)
+     */
+    public int zremrangeByScore(long start, long end) {
+        completeRewriteIfDone();
+        final int removed = zset.zremrangeByScore(start, end);
+        if (removed > 0) {
+            appendRangeRecord(ZREM_RANGE_BY_SCORE, start, end);
+        }
+        return removed;
+    }
+
+    /**
+     * @see Object2LongZSet#zremrangeByRank(int, int)
+     */
+    public int zremrangeByRank(int start, int end) {
+        completeRewriteIfDone();
+        final int removed = zset.zremrangeByRank(start, end);
+        if (removed > 0) {
+            // 记录原始参数，重放时zset的状态相同，结果也相同
+            appendRangeRecord(ZREM_RANGE_BY_RANK, start, end);
+        }
+        return removed;
+    }
+
+    /**
+     * @see Object2LongZSet#zlimit(int)
+     */
+    public int zlimit(int count) {
+        completeRewriteIfDone();
+        final int removed = zset.zlimit(count);
+        if (removed > 0) {
+            final int start = beginRecord(0);
+            skipRecordHeader(writeBuffer);
+            writeBuffer.put(ZLIMIT);
+            ZSetCodecs.writeVarLong(writeBuffer, count);
+            writeRecordHeader(writeBuffer, start);
+            endRecord(start);
+        }
+        return removed;
+    }
+
+    // -------------------------------------------------------- 刷盘与重写 -----------------------------------------------
+
+    /**
+     * 将缓存的记录写入文件，GROUP_COMMIT模式下还会fsync。
+     * GROUP_COMMIT模式下，应当在一批修改完成以后调用，只有调用该方法以后，之前的修改才是持久化的。
+     */
+    public void commit() {
+        completeRewriteIfDone();
+        try {
+            flushWriteBuffer();
+            if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 开始在后台重写日志
+     *
+     * @return 如果已经在重写，则返回false
+     */
+    public boolean rewriteAsync() {
+        completeRewriteIfDone();
+        if (rewriteFuture != null) {
+            return false;
+        }
+        // 导出以后的修改都会记录到rewriteBuffer中，导出之前的修改已经包含在导出的成员中
+        final List<Object2LongMember<K>> members = zset.zrangeByRank(0, -1);
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        rewriteBuffer = ByteBuffer.allocate(WRITE_BUFFER_INIT_CAPACITY);
+        rewriteFuture = future;
+
+        final Thread thread = new Thread(() -> {
+            try {
+                writeRewriteFile(members);
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, "zset-journal-rewrite");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * @return 是否正在重写
+     */
+    public boolean isRewriting() {
+        completeRewriteIfDone();
+        return rewriteFuture != null;
+    }
+
+    /**
+     * 等待正在进行的重写完成，并切换到新的日志
+     */
+    public void awaitRewrite() {
+        if (rewriteFuture != null) {
+            completeRewrite();
+        }
+    }
+
+    /**
+     * @return 日志文件的大小，不包括尚未写入文件的记录
+     */
+    public long fileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 等待正在进行的重写完成，写入所有记录并fsync，然后关闭文件。
+     */
+    @Override
+    public void close() throws IOException {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+        try {
+            awaitRewrite();
+            flushWriteBuffer();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void syncIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            // 重写切换文件时旧的channel已关闭(新文件在切换时已fsync)，或者下次重试
+            dirty = true;
+        }
+    }
+
+    private void completeRewriteIfDone() {
+        if (rewriteFuture != null && rewriteFuture.isDone()) {
+            completeRewrite();
+        }
+    }
+
+    /**
+     * 将重写期间产生的新记录追加到新日志，然后替换旧日志
+     */
+    private void completeRewrite() {
+        final CompletableFuture<Void> future = rewriteFuture;
+        final ByteBuffer buffer = rewriteBuffer;
+        rewriteFuture = null;
+        rewriteBuffer = null;
+
+        FileChannel newChannel = null;
+        try {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            newChannel = FileChannel.open(rewritePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            newChannel.position(newChannel.size());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                newChannel.write(buffer);
+            }
+            newChannel.force(false);
+            Files.move(rewritePath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+            fileSize = lastRewriteSize = newChannel.position();
+        } catch (IOException e) {
+            // 旧日志仍然是完整的
+            closeQuietly(newChannel);
+            deleteQuietly(rewritePath);
+            throw new UncheckedIOException("rewrite journal failed", e);
+        }
+
+        // writeBuffer中尚未写入旧日志的记录，要么已经包含在导出的成员中，要么已经写入了新日志
+        writeBuffer.clear();
+        final FileChannel oldChannel = channel;
+        channel = newChannel;
+        closeQuietly(oldChannel);
+    }
+
+    /**
+     * 将导出的成员写入临时文件，在后台线程执行
+     */
+    private void writeRewriteFile(List<Object2LongMember<K>> members) throws IOException {
+        try (FileChannel rewriteChannel = FileChannel.open(rewritePath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(rewriteChannel);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_CAPACITY);
+            for (Object2LongMember<K> member : members) {
+                final int maxSize = MAX_RECORD_OVERHEAD + codec.maxEncodedSize(member.getMember());
+                if (buffer.remaining() < maxSize) {
+                    writeFully(rewriteChannel, buffer);
+                    buffer = ensureWritable(buffer, maxSize);
+                }
+                encodeMemberRecord(buffer, ZADD, member.getScore(), member.getMember());
+            }
+            writeFully(rewriteChannel, buffer);
+            rewriteChannel.force(false);
+        }
+    }
+
+    /**
+     * 重命名以后fsync目录，保证重命名是持久化的；某些平台不支持，忽略即可
+     */
+    private void syncDirectory() {
+        final Path directory = path.toAbsolutePath().getParent();
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException ignore) {
+            // ignore
+        }
+    }
+
+    // -------------------------------------------------------- 写记录 -----------------------------------------------
+
+    private void appendMemberRecord(byte type, long score, K member) {
+        final int start = beginRecord(codec.maxEncodedSize(member));
+        encodeMemberRecord(writeBuffer, type, score, member);
+        endRecord(start);
+    }
+
+    private void appendRangeRecord(byte type, long start, long end) {
+        final int recordStart = beginRecord(ZSetCodecs.MAX_VAR_LONG_SIZE);
+        skipRecordHeader(writeBuffer);
+        writeBuffer.put(type);
+        ZSetCodecs.writeVarLong(writeBuffer, start);
+        ZSetCodecs.writeVarLong(writeBuffer, end);
+        writeRecordHeader(writeBuffer, recordStart);
+        endRecord(recordStart);
+    }
+
+    /**
+     * @param memberSize 成员编码后的最大长度
+     * @return 记录在writeBuffer中的起始位置
+     */
+    private int beginRecord(int memberSize) {
+        writeBuffer = ensureWritable(writeBuffer, MAX_RECORD_OVERHEAD + memberSize);
+        return writeBuffer.position();
+    }
+
+    private void endRecord(int start) {
+        copyToRewriteBuffer(start);
+        afterAppend();
+    }
+
+    /**
+     * 重写期间，新记录需要额外缓存一份，重写完成以后追加到新日志
+     */
+    private void copyToRewriteBuffer(int start) {
+        if (rewriteBuffer != null) {
+            final int length = writeBuffer.position() - start;
+            rewriteBuffer = ensureWritable(rewriteBuffer, length);
+            rewriteBuffer.put(writeBuffer.array(), start, length);
+        }
+    }
+
+    private void encodeMemberRecord(ByteBuffer buffer, byte type, long score, K member) {
+        final int start = skipRecordHeader(buffer);
+        buffer.put(type);
+        ZSetCodecs.writeVarLong(buffer, score);
+        codec.encode(member, buffer);
+        writeRecordHeader(buffer, start);
+    }
+
+    /**
+     * 预留记录头的位置，记录写完以后再通过{@link #writeRecordHeader(ByteBuffer, int)}填充
+     *
+     * @return 记录的起始位置
+     */
+    private static int skipRecordHeader(ByteBuffer buffer) {
+        final int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_SIZE);
+        return start;
+    }
+
+    /**
+     * 填充记录头：记录头之后到当前位置的长度及其CRC32
+     *
+     * @param start 记录的起始位置
+     */
+    private static void writeRecordHeader(ByteBuffer buffer, int start) {
+        final int payloadStart = start + RECORD_HEADER_SIZE;
+        final int length = buffer.position() - payloadStart;
+        // 会在重写线程中调用，因此不共享CRC32对象
+        final CRC32 crc32 = new CRC32();
+        crc32.update(buffer.array(), payloadStart, length);
+        buffer.putInt(start, length);
+        buffer.putInt(start + 4, (int) crc32.getValue());
+    }
+
+    private void afterAppend() {
+        try {
+            switch (fsyncPolicy) {
+                case ALWAYS: {
+                    flushWriteBuffer();
+                    channel.force(false);
+                    break;
+                }
+                case EVERY_INTERVAL: {
+                    flushWriteBuffer();
+                    dirty = true;
+                    break;
+                }
+                case GROUP_COMMIT: {
+                    if (writeBuffer.position() >= GROUP_COMMIT_WRITE_THRESHOLD) {
+                        flushWriteBuffer();
+                    }
+                    break;
+                }
+                default:
+                    throw new AssertionError(fsyncPolicy);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (rewriteFuture == null && autoRewriteMinSize > 0
+                && fileSize >= autoRewriteMinSize && fileSize >= lastRewriteSize * 2) {
+            rewriteAsync();
+        }
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        if (writeBuffer.position() > 0) {
+            fileSize += writeFully(channel, writeBuffer);
+        }
+    }
+
+    /**
+     * 将写模式的buffer中的数据全部写入文件，然后清空buffer
+     *
+     * @return 写入的字节数
+     */
+    private static int writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        final int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return length;
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.put(VERSION);
+        writeFully(channel, header);
+    }
+
+    private static ByteBuffer ensureWritable(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        int newCapacity = buffer.capacity() << 1;
+        while (newCapacity - buffer.position() < bytes) {
+            newCapacity <<= 1;
+        }
+        final ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity);
+        buffer.flip();
+        newBuffer.put(buffer);
+        return newBuffer;
+    }
+
+    // -------------------------------------------------------- 重放 -----------------------------------------------
+
+    /**
+     * 重放日志
+     * 在第一条长度无效或者CRC32校验失败的记录处停止（不完整的记录、末尾以0填充的区域），之后的数据会被丢弃；
+     * 校验通过但无法解析的记录说明日志已损坏。
+     *
+     * @return 最后一条有效记录的结束位置
+     */
+    private static <K> long replay(FileChannel channel, Object2LongZSet<K> zset, ZSetCodec<K> codec) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.position(0);
+        while (header.hasRemaining()) {
+            if (channel.read(header) < 0) {
+                break;
+            }
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("invalid journal header");
+        }
+        final byte version = header.get();
+        if (version != VERSION) {
+            throw new IOException("unsupported journal version: " + version + " (expected: " + VERSION + ")");
+        }
+
+        final long fileSize = channel.size();
+        final CRC32 crc32 = new CRC32();
+        final ReplayBatch<K> batch = new ReplayBatch<>(zset);
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_CAPACITY);
+        long position = HEADER_SIZE;
+        replay:
+        while (true) {
+            final int read = channel.read(buffer);
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                final int start = buffer.position();
+                final int length = buffer.getInt(start);
+                if (length <= 0 || position + RECORD_HEADER_SIZE + length > fileSize) {
+                    // 记录不完整，或者崩溃后文件长度已经增加，但数据没有写入(以0填充)
+                    break replay;
+                }
+                if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+                    // 等待更多的数据
+                    break;
+                }
+                final int payloadStart = start + RECORD_HEADER_SIZE;
+                crc32.reset();
+                crc32.update(buffer.array(), payloadStart, length);
+                if ((int) crc32.getValue() != buffer.getInt(start + 4)) {
+                    break replay;
+                }
+
+                final int limit = buffer.limit();
+                buffer.limit(payloadStart + length);
+                buffer.position(payloadStart);
+                try {
+                    replayRecord(buffer, zset, codec, batch, position);
+                } catch (BufferUnderflowException e) {
+                    throw new IOException("corrupted journal, truncated record at position " + position);
+                }
+                if (buffer.hasRemaining()) {
+                    throw new IOException("corrupted journal, record length mismatch at position " + position);
+                }
+                buffer.limit(limit);
+                position += RECORD_HEADER_SIZE + length;
+            }
+            buffer.compact();
+            if (read < 0) {
+                break;
+            }
+            if (!buffer.hasRemaining()) {
+                // 单条记录比缓冲区还大
+                buffer = ensureWritable(buffer, buffer.capacity());
+            }
+        }
+        batch.flush();
+        return position;
+    }
+
+    private static <K> void replayRecord(ByteBuffer buffer, Object2LongZSet<K> zset, ZSetCodec<K> codec,
+                                         ReplayBatch<K> batch, long position) throws IOException {
+        final byte type = buffer.get();
+        switch (type) {
+            case ZADD: {
+                final long score = ZSetCodecs.readVarLong(buffer);
+                batch.add(score, codec.decode(buffer));
+                break;
+            }
+            case ZINCRBY: {
+                final long increment = ZSetCodecs.readVarLong(buffer);
+                final K member = codec.decode(buffer);
+                batch.flush();
+                zset.zincrby(increment, member);
+                break;
+            }
+            case ZREM: {
+                final K member = codec.decode(buffer);
+                batch.flush();
+                zset.zrem(member);
+                break;
+            }
+            case ZREM_RANGE_BY_SCORE: {
+                final long start = ZSetCodecs.readVarLong(buffer);
+                final long end = ZSetCodecs.readVarLong(buffer);
+                batch.flush();
+                zset.zremrangeByScore(start, end);
+                break;
+            }
+            case ZREM_RANGE_BY_RANK: {
+                final int start = (int) ZSetCodecs.readVarLong(buffer);
+                final int end = (int) ZSetCodecs.readVarLong(buffer);
+                batch.flush();
+                zset.zremrangeByRank(start, end);
+                break;
+            }
+            case ZLIMIT: {
+                final int count = (int) ZSetCodecs.readVarLong(buffer);
+                batch.flush();
+                zset.zlimit(count);
+                break;
+            }
+            default:
+                throw new IOException("corrupted journal, unknown record type " + type + " at position " + position);
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+            // ignore
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignore) {
+            // ignore
+        }
+    }
+
+    /**
+     * 重放时收集连续的zadd记录，遇到其它记录时先批量添加
+     */
+    private static class ReplayBatch<K> {
+
+        final Object2LongZSet<K> zset;
+        final LongArrayList scores = new LongArrayList();
+        final ObjectArrayList<K> members = new ObjectArrayList<>();
+
+        ReplayBatch(Object2LongZSet<K> zset) {
+            this.zset = zset;
+        }
+
+        void add(long score, K member) {
+            scores.add(score);
+            members.add(member);
+        }
+
+        @SuppressWarnings("unchecked")
+        void flush() {
+            if (members.isEmpty()) {
+                return;
+            }
+            zset.zaddBatch(scores.toLongArray(), (K[]) members.toArray());
+            scores.clear();
+            members.clear();
+        }
+    }
+
+    // -------------------------------------------------------- 刷盘策略 -----------------------------------------------
+
+    /**
+     * 刷盘策略
+     */
+    public enum FsyncPolicy {
+        /**
+         * 每条记录都写入文件并fsync
+         */
+        ALWAYS,
+        /**
+         * 每条记录都写入文件，后台线程定时fsync
+         */
+        EVERY_INTERVAL,
+        /**
+         * 记录缓存在内存中，调用{@link #commit()}时一次写入并fsync
+         */
+        GROUP_COMMIT
+    }
+}
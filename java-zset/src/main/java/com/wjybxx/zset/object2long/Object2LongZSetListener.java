@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+import java.util.List;
+
+/**
+ * {@link Object2LongZSet}的修改监听器，用于缓存、副本、统计等需要观察zset变化的系统。
+ * 通过{@link Object2LongZSet#setListener(Object2LongZSetListener)}注册，未注册监听器时，修改操作只多一次null判断。
+ * <p>
+ * <b>排名</b>
+ * 计算排名的时间复杂度为O(log(N))，因此默认不计算，此时事件中的排名为-1（无需额外计算就能得到的排名仍然会报告）。
+ * 如果需要排名，请重写{@link #isRankRequired()}，该方法只在注册时调用一次。
+ * 删除事件中的排名是删除之前的排名，分数改变事件中分别是改变之前和之后的排名。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. 监听器在修改完成以后同步调用，不可以在回调中修改zset。
+ * 2. 批量添加({@code zaddAll}、{@code zaddBatch}、{@code loadSnapshot})在注册了监听器时逐个执行，以便报告每个成员的事件。
+ * 3. 每个事件都同步回调会使下游的处理进入修改的关键路径，可以使用{@link Object2LongZSetEventBuffer}缓冲以后批量投递。
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public interface Object2LongZSetListener<K> {
+
+    /**
+     * @return 是否需要事件中的排名
+     */
+    default boolean isRankRequired() {
+        return false;
+    }
+
+    /**
+     * 新增了一个成员
+     *
+     * @param member 成员id
+     * @param score  分数
+     * @param rank   新增以后的排名，未计算时为-1
+     */
+    void onAdded(K member, long score, int rank);
+
+    /**
+     * 删除了一个成员
+     *
+     * @param member 成员id
+     * @param score  删除之前的分数
+     * @param rank   删除之前的排名，未计算时为-1
+     */
+    void onRemoved(K member, long score, int rank);
+
+    /**
+     * 成员的分数发生了改变，分数不变时不会调用。
+     *
+     * @param member   成员id
+     * @param oldScore 改变之前的分数
+     * @param newScore 改变之后的分数
+     * @param oldRank  改变之前的排名，未计算时为-1
+     * @param newRank  改变之后的排名，未计算时为-1
+     */
+    void onScoreChanged(K member, long oldScore, long newScore, int oldRank, int newRank);
+
+    /**
+     * 删除了一个排名区间的成员(zremrangeByScore、zremrangeByRank、zlimit、zrevlimit)，默认逐个调用{@link #onRemoved(Object, long, int)}。
+     * EventBuffer将其缓冲为一个{@link com.wjybxx.zset.ZSetEventType#RANGE_REMOVED}事件，
+     * members是新创建的列表，zset不会再修改它，监听器可以直接保存。
+     *
+     * @param members   删除的成员，按照排名顺序
+     * @param startRank 第一个成员删除之前的排名，未计算时为-1。
+     *                  按照排名顺序逐个删除时，每个成员删除之前的排名都等于startRank，因此事件可以按顺序重放。
+     */
+    default void onRangeRemoved(List<Object2LongMember<K>> members, int startRank) {
+        for (Object2LongMember<K> member : members) {
+            onRemoved(member.getMember(), member.getScore(), startRank);
+        }
+    }
+}
@@ -0,0 +1,862 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+import com.wjybxx.zset.ZSetUtils;
+import it.unimi.dsi.fastutil.HashCommon;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按照成员的hash分片的sorted set，key为泛型，score为long类型。
+ * 一个逻辑上的排行榜被拆分为多个独立的{@link Object2LongZSet}分片，每个分片有自己的锁，
+ * 不同分片上的写操作可以并行执行，因此写入的吞吐量随着分片数量的增加而增加，适合写多读少的排行榜。
+ * <p>
+ * <b>全局查询</b>
+ * 1. 全局排名 = 每个分片中排在该成员前面的成员数量之和，见{@link Object2LongZSet#zcountBefore(long, Object)}，时间复杂度为O(K*log(N/K))。
+ * 2. 全局的排名区间查询[start, end]：
+ * 如果start较小(小于{@link #PREFIX_MERGE_THRESHOLD})，则从每个分片中取出前end+1个成员，然后进行K路归并；
+ * 否则先在所有分片中选出全局排名为start的成员（每一轮取范围最大的分片的中间成员，通过zcountBefore计算它的全局排名，缩小每个分片的候选范围），
+ * 得到每个分片中排在它前面的成员数量，再从每个分片的该位置开始只取出M=end-start+1个成员进行K路归并。
+ * 选择的时间复杂度为O(K²*log²(N/K))，与start无关，深分页不会取出start之前的成员，总的时间复杂度为O(K²*log²(N/K) + K*M*log(K))。
+ * 3. 分数区间查询、zcount、zcard会依次查询每一个分片再合并结果。
+ * <p>
+ * <b>一致性保证</b>
+ * 1. 单个成员的操作（zadd、zincrby、zrem、zscore等）是原子的。
+ * 2. 全局查询依次锁定每一个分片，而不是同时锁定所有分片，因此全局查询的结果不是一个快照：
+ * 有并发修改时，结果可能包含查询期间的部分修改；没有并发修改时，结果与{@link Object2LongZSet}完全一致。
+ * 3. {@link #zpopFirst()}、{@link #zpopLast()}、{@link #zlimit(int)}需要比较所有分片，会按照分片下标的顺序锁定所有分片，它们是原子的。
+ * <p>
+ * <b>排序规则</b>
+ * 有序集合里面的成员是不能重复的，都是唯一的，但是，不同成员间有可能有相同的分数。
+ * 当多个成员有相同的分数时，它们将按照键排序。
+ * 即：分数作为第一排序条件，键作为第二排序条件，当分数相同时，比较键的大小。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. ZSET中的排名从0开始（提供给用户的接口，排名都从0开始）
+ * 2. ZSET使用键的<b>compare</b>结果判断两个键是否相等，而不是equals方法，因此必须保证键不同时compare结果一定不为0。
+ * 3. 成员通过hashCode分配到分片，因此“相同”的key必须有相同的hashCode，且equals方法返回true。
+ * <b>手动加粗:key的关键属性最好是number或string且是final的</b>
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@ThreadSafe
+public class ShardedObject2LongZSet<K> {
+
+    /**
+     * 默认的分片数量
+     */
+    public static final int DEFAULT_SHARD_COUNT = 16;
+    /**
+     * 排名区间的起始排名小于该值时，直接归并每个分片的前end+1个成员，这比先选出起始成员更快
+     */
+    private static final int PREFIX_MERGE_THRESHOLD = 256;
+
+    private final Object2LongZSet<K>[] shards;
+    private final ReentrantLock[] locks;
+
+    private final Comparator<K> objComparator;
+    private final LongScoreHandler scoreHandler;
+
+    /**
+     * 正序比较两个成员
+     */
+    private final Comparator<Object2LongMember<K>> memberComparator;
+
+    private ShardedObject2LongZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount: " + shardCount + " (expected: > 0)");
+        }
+        this.objComparator = keyComparator;
+        this.scoreHandler = scoreHandler;
+        this.memberComparator = this::compareMember;
+        @SuppressWarnings("unchecked") final Object2LongZSet<K>[] shards = (Object2LongZSet<K>[]) new Object2LongZSet<?>[shardCount];
+        this.shards = shards;
+        this.locks = new ReentrantLock[shardCount];
+        for (int index = 0; index < shardCount; index++) {
+            shards[index] = Object2LongZSet.newGenericKeyZSet(keyComparator, scoreHandler);
+            locks[index] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 创建一个键为string类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @param shardCount   分片数量
+     * @return zset
+     */
+    public static ShardedObject2LongZSet<String> newStringKeyZSet(LongScoreHandler scoreHandler, int shardCount) {
+        return new ShardedObject2LongZSet<>(String::compareTo, scoreHandler, shardCount);
+    }
+
+    /**
+     * 创建一个键为long类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @param shardCount   分片数量
+     * @return zset
+     */
+    public static ShardedObject2LongZSet<Long> newLongKeyZSet(LongScoreHandler scoreHandler, int shardCount) {
+        return new ShardedObject2LongZSet<>(Long::compareTo, scoreHandler, shardCount);
+    }
+
+    /**
+     * 创建一个键为int类型的zset
+     *
+     * @param scoreHandler score比较器，默认实现见{@link LongScoreHandlers}
+     * @param shardCount   分片数量
+     * @return zset
+     */
+    public static ShardedObject2LongZSet<Integer> newIntKeyZSet(LongScoreHandler scoreHandler, int shardCount) {
+        return new ShardedObject2LongZSet<>(Integer::compareTo, scoreHandler, shardCount);
+    }
+
+    /**
+     * 创建一个自定义键类型的zset
+     *
+     * @param keyComparator 键比较器，当score比较结果相等时，比较key - 注意：比较结果必须与key对象的状态改变无关。
+     *                      <b>请仔细阅读类文档中的注意事项</b>。
+     * @param scoreHandler  score比较器，默认实现见{@link LongScoreHandlers}
+     * @param shardCount    分片数量
+     * @param <K>           键的类型
+     * @return zset
+     */
+    public static <K> ShardedObject2LongZSet<K> newGenericKeyZSet(Comparator<K> keyComparator, LongScoreHandler scoreHandler, int shardCount) {
+        return new ShardedObject2LongZSet<>(keyComparator, scoreHandler, shardCount);
+    }
+
+    /**
+     * @return 分片数量
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    // -------------------------------------------------------- 单成员操作 -----------------------------------------------
+
+    /**
+     * 往有序集合中新增一个成员。
+     * 如果指定添加的成员已经是有序集合里面的成员，则会更新成员的分数（score）并更新到正确的排序位置。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     */
+    public void zadd(final long score, @Nonnull final K member) {
+        final int shardIndex = shardIndex(member);
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            shards[shardIndex].zadd(score, member);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 往有序集合中新增一个成员。当且仅当该成员不在有序集合时才添加。
+     *
+     * @param score  数据的评分
+     * @param member 成员id
+     * @return 添加成功则返回true，否则返回false。
+     */
+    public boolean zaddnx(final long score, @Nonnull final K member) {
+        final int shardIndex = shardIndex(member);
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            return shards[shardIndex].zaddnx(score, member);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，就在有序集中添加一个member，score是increment（就好像它之前的score是0）
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值
+     */
+    public long zincrby(long increment, @Nonnull K member) {
+        final int shardIndex = shardIndex(member);
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            return shards[shardIndex].zincrby(increment, member);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 为有序集的成员member的score值加上增量increment，并更新到正确的排序位置。
+     * 如果有序集中不存在member，则放弃更新并返回0。
+     *
+     * @param increment 自定义增量
+     * @param member    成员id
+     * @return 更新后的值，如果更新失败，则返回0。
+     */
+    public long zincrbyxx(long increment, @Nonnull K member) {
+        final int shardIndex = shardIndex(member);
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            return shards[shardIndex].zincrbyxx(increment, member);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除指定成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回对应的score，否则返回null。
+     */
+    public Long zrem(@Nonnull K member) {
+        final int shardIndex = shardIndex(member);
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            return shards[shardIndex].zrem(member);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，返回null - 这里返回任意的基础值都是不合理的，因此必须返回null。
+     *
+     * @param member 成员id
+     * @return score
+     */
+    public Long zscore(@Nonnull K member) {
+        final int shardIndex = shardIndex(member);
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            return shards[shardIndex].zscore(member);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 返回有序集成员member的score值。
+     * 如果member成员不是有序集的成员，则返回给定的默认值 - 该方法不会产生装箱。
+     *
+     * @param member       成员id
+     * @param defaultValue 成员不存在时返回的值
+     * @return score
+     */
+    public long zscoreOrDefault(@Nonnull K member, long defaultValue) {
+        final int shardIndex = shardIndex(member);
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            return shards[shardIndex].zscoreOrDefault(member, defaultValue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 判断member是否是有序集的成员
+     *
+     * @param member 成员id
+     * @return 如果成员存在，则返回true
+     */
+    public boolean containsMember(@Nonnull K member) {
+        final int shardIndex = shardIndex(member);
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            return shards[shardIndex].containsMember(member);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // -------------------------------------------------------- 全局查询 -----------------------------------------------
+
+    /**
+     * 返回有序集中成员member的排名。
+     * 排名等于每个分片中排在该成员前面的成员数量之和。
+     * <p>
+     * <b>Time complexity:</b> O(K*log(N/K))，K为分片数量
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrank(@Nonnull K member) {
+        final Long score = zscore(member);
+        if (score == null) {
+            return -1;
+        }
+        int rank = 0;
+        for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+            final ReentrantLock lock = locks[shardIndex];
+            lock.lock();
+            try {
+                rank += shards[shardIndex].zcountBefore(score, member);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * 返回有序集中成员member的逆序排名。
+     * 逆序排名等于每个分片中排在该成员后面的成员数量之和。
+     * <p>
+     * <b>Time complexity:</b> O(K*log(N/K))，K为分片数量
+     * <p>
+     * <b>与redis的区别</b>：我们使用-1表示成员不存在，而不是返回null。
+     *
+     * @param member 成员id
+     * @return 如果存在该成员，则返回该成员的排名(0-based)，否则返回-1
+     */
+    public int zrevrank(@Nonnull K member) {
+        final Long score = zscore(member);
+        if (score == null) {
+            return -1;
+        }
+        // 包含成员自身
+        int notBefore = 0;
+        for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+            final ReentrantLock lock = locks[shardIndex];
+            lock.lock();
+            try {
+                final Object2LongZSet<K> shard = shards[shardIndex];
+                notBefore += shard.zcard() - shard.zcountBefore(score, member);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return Math.max(0, notBefore - 1);
+    }
+
+    /**
+     * 获取指定排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Object2LongMember<K> zmemberByRank(int rank) {
+        if (rank < 0) {
+            return null;
+        }
+        final List<Object2LongMember<K>> result = zrangeByRankInternal(rank, rank, false);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * 获取指定逆序排名的成员数据。
+     *
+     * @param rank 排名 0-based
+     * @return memver，如果不存在，则返回null
+     */
+    public Object2LongMember<K> zrevmemberByRank(int rank) {
+        if (rank < 0) {
+            return null;
+        }
+        final List<Object2LongMember<K>> result = zrangeByRankInternal(rank, rank, true);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * 查询指定排名区间的成员信息
+     * 每个分片只取出区间内可能包含的成员，然后进行K路归并，见类文档。
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, false);
+    }
+
+    /**
+     * 查询指定逆序排名区间的成员信息
+     * 每个分片只取出区间内可能包含的成员，然后进行K路归并，见类文档。
+     *
+     * @param start 起始排名(0-based) inclusive
+     * @param end   截止排名(0-based) inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByRank(int start, int end) {
+        return zrangeByRankInternal(start, end, true);
+    }
+
+    private List<Object2LongMember<K>> zrangeByRankInternal(int start, int end, boolean reverse) {
+        // 负数排名需要知道成员数量
+        if (start < 0 || end < 0) {
+            final int zslLength = zcard();
+            start = ZSetUtils.convertStartRank(start, zslLength);
+            end = ZSetUtils.convertEndRank(end, zslLength);
+        }
+        if (start > end) {
+            return new ArrayList<>();
+        }
+        if (start < PREFIX_MERGE_THRESHOLD) {
+            return zrangeByRankPrefix(start, end, reverse);
+        }
+
+        // 选出全局排名为start的成员，得到每个分片的起始排名
+        final int[] offsets = selectOffsets(start, reverse);
+        if (offsets == null) {
+            // 成员数量不足start + 1，或者选择期间有并发修改
+            return zrangeByRankPrefix(start, end, reverse);
+        }
+
+        final int count = end - start + 1;
+        final List<List<Object2LongMember<K>>> shardResults = new ArrayList<>(shards.length);
+        for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+            final ReentrantLock lock = locks[shardIndex];
+            lock.lock();
+            try {
+                final Object2LongZSet<K> shard = shards[shardIndex];
+                final int shardEnd = (int) Math.min(Integer.MAX_VALUE, (long) offsets[shardIndex] + count - 1);
+                shardResults.add(reverse ? shard.zrevrangeByRank(offsets[shardIndex], shardEnd) : shard.zrangeByRank(offsets[shardIndex], shardEnd));
+            } finally {
+                lock.unlock();
+            }
+        }
+        return merge(shardResults, 0, count, reverse ? memberComparator.reversed() : memberComparator);
+    }
+
+    /**
+     * 从每个分片中取出前end+1个成员，然后进行K路归并，时间复杂度为O(K*end)，适合查询头部。
+     */
+    private List<Object2LongMember<K>> zrangeByRankPrefix(int start, int end, boolean reverse) {
+        final List<List<Object2LongMember<K>>> shardResults = new ArrayList<>(shards.length);
+        for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+            final ReentrantLock lock = locks[shardIndex];
+            lock.lock();
+            try {
+                final Object2LongZSet<K> shard = shards[shardIndex];
+                shardResults.add(reverse ? shard.zrevrangeByRank(0, end) : shard.zrangeByRank(0, end));
+            } finally {
+                lock.unlock();
+            }
+        }
+        return merge(shardResults, start, end - start + 1, reverse ? memberComparator.reversed() : memberComparator);
+    }
+
+    /**
+     * 选出全局排名为rank的成员，返回每个分片中排在它前面的成员数量（它们的和等于rank）。
+     * 每个分片维护一个候选区间[lo, hi)，全局排名为rank的成员总是在某个分片的候选区间中。
+     * 每一轮取候选区间最大的分片的中间成员，计算它的全局排名，然后根据结果缩小所有分片的候选区间，
+     * 该分片的候选区间每一轮至少减半，因此最多O(K*log(N/K))轮，每一轮需要K次O(log(N/K))的查询。
+     *
+     * @param rank    全局排名(0-based)
+     * @param reverse 是否是逆序排名
+     * @return 每个分片的起始排名，如果成员数量不足或者选择期间有并发修改导致找不到，则返回null
+     */
+    @Nullable
+    private int[] selectOffsets(int rank, boolean reverse) {
+        final int[] lo = new int[shards.length];
+        final int[] hi = new int[shards.length];
+        final int[] preceding = new int[shards.length];
+        long total = 0;
+        for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+            hi[shardIndex] = shardCard(shardIndex);
+            total += hi[shardIndex];
+        }
+        if (rank >= total) {
+            return null;
+        }
+
+        while (true) {
+            // 候选区间最大的分片
+            int pivotShard = -1;
+            int maxRange = 0;
+            for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+                if (hi[shardIndex] - lo[shardIndex] > maxRange) {
+                    maxRange = hi[shardIndex] - lo[shardIndex];
+                    pivotShard = shardIndex;
+                }
+            }
+            if (pivotShard < 0) {
+                return null;
+            }
+
+            final int mid = (lo[pivotShard] + hi[pivotShard]) >>> 1;
+            final Object2LongMember<K> pivot = shardMemberByRank(pivotShard, mid, reverse);
+            if (pivot == null) {
+                return null;
+            }
+
+            // 成员只会存在于它所在的分片中，因此其它分片中排在它前面的成员数量不包括它自己
+            long pivotRank = 0;
+            for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+                preceding[shardIndex] = shardIndex == pivotShard ? mid : shardCountPreceding(shardIndex, pivot, reverse);
+                pivotRank += preceding[shardIndex];
+            }
+
+            if (pivotRank == rank) {
+                return preceding;
+            }
+            if (pivotRank < rank) {
+                // pivot以及排在它前面的成员都排在目标之前
+                for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+                    lo[shardIndex] = Math.max(lo[shardIndex], shardIndex == pivotShard ? mid + 1 : preceding[shardIndex]);
+                }
+            } else {
+                // pivot以及排在它后面的成员都排在目标之后
+                for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+                    hi[shardIndex] = Math.min(hi[shardIndex], preceding[shardIndex]);
+                }
+            }
+        }
+    }
+
+    private int shardCard(int shardIndex) {
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            return shards[shardIndex].zcard();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object2LongMember<K> shardMemberByRank(int shardIndex, int rank, boolean reverse) {
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            final Object2LongZSet<K> shard = shards[shardIndex];
+            return reverse ? shard.zrevmemberByRank(rank) : shard.zmemberByRank(rank);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 计算分片中排在member前面的成员数量，member不是该分片的成员
+     */
+    private int shardCountPreceding(int shardIndex, Object2LongMember<K> member, boolean reverse) {
+        final ReentrantLock lock = locks[shardIndex];
+        lock.lock();
+        try {
+            final Object2LongZSet<K> shard = shards[shardIndex];
+            final int countBefore = shard.zcountBefore(member.getScore(), member.getMember());
+            return reverse ? shard.zcard() - countBefore : countBefore;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员）。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(long start, long end) {
+        return zrangeByScore(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围区间的所有成员。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrangeByScore(LongScoreRangeSpec spec) {
+        return zrangeByScoreInternal(spec, false);
+    }
+
+    /**
+     * 返回有序集合中的分数在start和end之间的所有成员（包括分数等于start或者end的成员），返回的成员按照逆序排列。
+     *
+     * @param start 起始分数 inclusive
+     * @param end   截止分数 inclusive
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(final long start, final long end) {
+        return zrevrangeByScore(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集合中的分数在指定范围之间的所有成员，返回的成员按照逆序排列。
+     *
+     * @param spec 范围描述信息
+     * @return memberInfo
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(LongScoreRangeSpec spec) {
+        return zrangeByScoreInternal(spec, true);
+    }
+
+    private List<Object2LongMember<K>> zrangeByScoreInternal(LongScoreRangeSpec spec, boolean reverse) {
+        final List<List<Object2LongMember<K>>> shardResults = new ArrayList<>(shards.length);
+        for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+            final ReentrantLock lock = locks[shardIndex];
+            lock.lock();
+            try {
+                final Object2LongZSet<K> shard = shards[shardIndex];
+                shardResults.add(reverse ? shard.zrevrangeByScore(spec) : shard.zrangeByScore(spec));
+            } finally {
+                lock.unlock();
+            }
+        }
+        return merge(shardResults, 0, Integer.MAX_VALUE, reverse ? memberComparator.reversed() : memberComparator);
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间(包括score值等于start或end)的成员
+     *
+     * @param start 起始分数
+     * @param end   截止分数
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(long start, long end) {
+        return zcount(new LongScoreRangeSpec(start, end));
+    }
+
+    /**
+     * 返回有序集key中，score值在指定区间的成员
+     *
+     * @param rangeSpec score区间描述信息
+     * @return 分数区间段内的成员数量
+     */
+    public int zcount(LongScoreRangeSpec rangeSpec) {
+        int count = 0;
+        for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+            final ReentrantLock lock = locks[shardIndex];
+            lock.lock();
+            try {
+                count += shards[shardIndex].zcount(rangeSpec);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return zset中的成员数量
+     */
+    public int zcard() {
+        int count = 0;
+        for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+            final ReentrantLock lock = locks[shardIndex];
+            lock.lock();
+            try {
+                count += shards[shardIndex].zcard();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    // -------------------------------------------------------- 锁定所有分片的操作 -----------------------------------------------
+
+    /**
+     * 删除并返回有序集合中的第一个成员。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopFirst() {
+        lockAll();
+        try {
+            final int shardIndex = bestShard(false);
+            return shardIndex < 0 ? null : shards[shardIndex].zpopFirst();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * 删除并返回有序集合中的最后一个成员。
+     *
+     * @return 如果不存在，则返回null
+     */
+    @Nullable
+    public Object2LongMember<K> zpopLast() {
+        lockAll();
+        try {
+            final int shardIndex = bestShard(true);
+            return shardIndex < 0 ? null : shards[shardIndex].zpopLast();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * 删除zset中尾部多余的成员，将zset中的成员数量限制到count之内。
+     * 保留前面的count个数成员
+     *
+     * @param count 剩余数量限制
+     * @return 删除的成员数量
+     */
+    public int zlimit(int count) {
+        lockAll();
+        try {
+            int zslLength = 0;
+            for (Object2LongZSet<K> shard : shards) {
+                zslLength += shard.zcard();
+            }
+            int removed = 0;
+            for (; zslLength > count; zslLength--, removed++) {
+                shards[bestShard(true)].zpopLast();
+            }
+            return removed;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * 查找首个（或最后一个）成员所在的分片，调用者需要持有所有分片的锁。
+     *
+     * @param last 是否查找最后一个成员
+     * @return 分片下标，如果所有分片都为空，则返回-1
+     */
+    private int bestShard(boolean last) {
+        int bestIndex = -1;
+        Object2LongMember<K> bestMember = null;
+        for (int shardIndex = 0; shardIndex < shards.length; shardIndex++) {
+            final Object2LongZSet<K> shard = shards[shardIndex];
+            final Object2LongMember<K> member = last ? shard.zrevmemberByRank(0) : shard.zmemberByRank(0);
+            if (member == null) {
+                continue;
+            }
+            if (bestMember == null || (last ? compareMember(member, bestMember) > 0 : compareMember(member, bestMember) < 0)) {
+                bestIndex = shardIndex;
+                bestMember = member;
+            }
+        }
+        return bestIndex;
+    }
+
+    /**
+     * 按照分片下标的顺序锁定所有分片，固定的加锁顺序避免死锁。
+     */
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int index = locks.length - 1; index >= 0; index--) {
+            locks[index].unlock();
+        }
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    /**
+     * 计算成员所在的分片
+     */
+    private int shardIndex(@Nonnull K member) {
+        // 混合hash的高位，避免连续的id落入同一个分片
+        return (HashCommon.mix(member.hashCode()) & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /**
+     * K路归并 - 每个分片的结果都是有序的
+     *
+     * @param shardResults 每个分片的结果
+     * @param offset       跳过的成员数量
+     * @param limit        返回的成员数量限制
+     * @param comparator   结果的排序规则
+     * @return 归并后的结果
+     */
+    private List<Object2LongMember<K>> merge(List<List<Object2LongMember<K>>> shardResults, int offset, int limit,
+                                             Comparator<Object2LongMember<K>> comparator) {
+        // 堆中存储的是分片结果的迭代器，按照迭代器的下一个成员排序
+        final PriorityQueue<PeekingIterator<K>> heap = new PriorityQueue<>(shardResults.size(),
+                (a, b) -> comparator.compare(a.peek(), b.peek()));
+        int total = 0;
+        for (List<Object2LongMember<K>> shardResult : shardResults) {
+            if (!shardResult.isEmpty()) {
+                heap.add(new PeekingIterator<>(shardResult.iterator()));
+                total += shardResult.size();
+            }
+        }
+
+        final List<Object2LongMember<K>> result = new ArrayList<>(Math.max(0, Math.min(limit, total - offset)));
+        for (int index = 0; index < offset + limit && !heap.isEmpty(); index++) {
+            final PeekingIterator<K> itr = heap.poll();
+            final Object2LongMember<K> member = itr.next();
+            if (index >= offset) {
+                result.add(member);
+            }
+            if (itr.hasNext()) {
+                heap.add(itr);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 比较两个成员，分数作为第一排序条件，然后，相同分数的成员按照键排序。
+     */
+    private int compareMember(Object2LongMember<K> a, Object2LongMember<K> b) {
+        final int scoreCompareR = scoreHandler.compare(a.getScore(), b.getScore());
+        if (scoreCompareR != 0) {
+            return scoreCompareR;
+        }
+        return objComparator.compare(a.getMember(), b.getMember());
+    }
+
+    /**
+     * 可以查看下一个元素的迭代器
+     */
+    private static class PeekingIterator<K> {
+
+        private final Iterator<Object2LongMember<K>> itr;
+        private Object2LongMember<K> next;
+
+        PeekingIterator(Iterator<Object2LongMember<K>> itr) {
+            this.itr = itr;
+            this.next = itr.next();
+        }
+
+        Object2LongMember<K> peek() {
+            return next;
+        }
+
+        boolean hasNext() {
+            return next != null;
+        }
+
+        Object2LongMember<K> next() {
+            final Object2LongMember<K> result = next;
+            next = itr.hasNext() ? itr.next() : null;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.object2long;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * 使用{@link StampedLock}包装的{@link Object2LongZSet}，适合读多写少（例如：每次写入对应几十次读取）的排行榜。
+ * <p>
+ * <b>实现</b>
+ * 1. 写操作获取写锁，由单线程的{@link Object2LongZSet}执行，跳表本身不做任何修改。
+ * 2. 有界的查询（zscore、zscoreOrDefault、containsMember、zrank、zrevrank、zmemberByRank、zrevmemberByRank、zcard，
+ * 以及不超过{@link Object2LongZSet#OPTIMISTIC_MAX_RANGE}个成员的zrangeByRank、zrevrangeByRank）先进行乐观读：
+ * 不加锁直接读取，读取完毕后校验期间是否有写操作（StampedLock的版本号相当于跳表的modCount），校验通过则直接返回结果，
+ * 否则获取读锁再读取一次。没有写操作时，乐观读不修改任何共享变量，多个核上的读操作之间不会竞争锁状态所在的缓存行。
+ * 3. 乐观读期间可能读到写操作修改了一半的跳表和字典，因此乐观读使用的是{@link Object2LongZSet}中有界的查询：
+ * 遍历的节点数和创建的对象数都有上限，超过上限时放弃乐观读。乐观读抛出的异常只有在校验失败时才会被忽略，
+ * 校验通过说明期间没有写操作，异常是真正的错误，会原样抛出。
+ * 4. 其它查询（分数区间、zcount、大的排名区间、dump）遍历的成员数量取决于数据，无法限制，直接获取读锁。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. 被包装的zset必须只通过该对象访问，否则无法保证线程安全。
+ * 2. 读操作返回的{@link Object2LongMember}、{@link List}都是新创建的对象，可以在锁外安全的使用。
+ * 3. 每次获取读锁都要修改锁的状态，读线程很多时，这个共享变量会成为竞争点；
+ * 如果写操作非常频繁，或者每次读取的耗时很短，读写锁与普通的互斥锁相比并没有优势，请以实际测试为准。
+ *
+ * @param <K> the type of key
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@ThreadSafe
+public class StampedObject2LongZSet<K> {
+
+    private final Object2LongZSet<K> zset;
+    private final StampedLock lock = new StampedLock();
+
+    private StampedObject2LongZSet(Object2LongZSet<K> zset) {
+        this.zset = zset;
+    }
+
+    /**
+     * 包装一个zset，包装以后，不可以再直接访问被包装的zset。
+     *
+     * @param zset 被包装的zset
+     * @param <K>  键的类型
+     * @return 线程安全的zset
+     */
+    public static <K> StampedObject2LongZSet<K> wrap(@Nonnull Object2LongZSet<K> zset) {
+        return new StampedObject2LongZSet<>(zset);
+    }
+
+    // -------------------------------------------------------- 写操作 -----------------------------------------------
+
+    /**
+     * @see Object2LongZSet#zadd(long, Object)
+     */
+    public void zadd(final long score, @Nonnull final K member) {
+        final long stamp = lock.writeLock();
+        try {
+            zset.zadd(score, member);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see Object2LongZSet#zaddnx(long, Object)
+     */
+    public boolean zaddnx(final long score, @Nonnull final K member) {
+        final long stamp = lock.writeLock();
+        try {
+            return zset.zaddnx(score, member);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see Object2LongZSet#zincrby(long, Object)
+     */
+    public long zincrby(long increment, @Nonnull K member) {
+        final long stamp = lock.writeLock();
+        try {
+            return zset.zincrby(increment, member);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see Object2LongZSet#zincrbyxx(long, Object)
+     */
+    public long zincrbyxx(long increment, @Nonnull K member) {
+        final long stamp = lock.writeLock();
+        try {
+            return zset.zincrbyxx(increment, member);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see Object2LongZSet#zaddBatch(long[], Object[])
+     */
+    public void zaddBatch(@Nonnull long[] scores, @Nonnull K[] members) {
+        final long stamp = lock.writeLock();
+        try {
+            zset.zaddBatch(scores, members);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see Object2LongZSet#zrem(Object)
+     */
+    public Long zrem(@Nonnull K member) {
+        final long stamp = lock.writeLock();
+        try {
+            return zset.zrem(member);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see Object2LongZSet#zremrangeByScore(long, long)
+     */
+    public int zremrangeByScore(long start, long end) {
+        final long stamp = lock.writeLock();
+        try {
+            return zset.zremrangeByScore(start, end);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see Object2LongZSet#zremrangeByRank(int, int)
+     */
+    public int zremrangeByRank(int start, int end) {
+        final long stamp = lock.writeLock();
+        try {
+            return zset.zremrangeByRank(start, end);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see Object2LongZSet#zpopFirst()
+     */
+    @Nullable
+    public Object2LongMember<K> zpopFirst() {
+        final long stamp = lock.writeLock();
+        try {
+            return zset.zpopFirst();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see Object2LongZSet#zpopLast()
+     */
+    @Nullable
+    public Object2LongMember<K> zpopLast() {
+        final long stamp = lock.writeLock();
+        try {
+            return zset.zpopLast();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see Object2LongZSet#zlimit(int)
+     */
+    public int zlimit(int count) {
+        final long stamp = lock.writeLock();
+        try {
+            return zset.zlimit(count);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // -------------------------------------------------------- 读操作 -----------------------------------------------
+
+    /**
+     * @see Object2LongZSet#zscore(Object)
+     */
+    public Long zscore(@Nonnull K member) {
+        return optimisticRead(zset -> zset.zscore(member), zset -> zset.zscore(member));
+    }
+
+    /**
+     * @see Object2LongZSet#zscoreOrDefault(Object, long)
+     */
+    public long zscoreOrDefault(@Nonnull K member, long defaultValue) {
+        return optimisticReadLong(zset -> zset.zscoreOrDefault(member, defaultValue));
+    }
+
+    /**
+     * @see Object2LongZSet#containsMember(Object)
+     */
+    public boolean containsMember(@Nonnull K member) {
+        return optimisticReadInt(zset -> zset.containsMember(member) ? 1 : 0, zset -> zset.containsMember(member) ? 1 : 0) == 1;
+    }
+
+    /**
+     * @see Object2LongZSet#zrank(Object)
+     */
+    public int zrank(@Nonnull K member) {
+        return optimisticReadInt(zset -> zset.zrankOptimistic(member, false), zset -> zset.zrank(member));
+    }
+
+    /**
+     * @see Object2LongZSet#zrevrank(Object)
+     */
+    public int zrevrank(@Nonnull K member) {
+        return optimisticReadInt(zset -> zset.zrankOptimistic(member, true), zset -> zset.zrevrank(member));
+    }
+
+    /**
+     * @see Object2LongZSet#zmemberByRank(int)
+     */
+    public Object2LongMember<K> zmemberByRank(int rank) {
+        return optimisticRead(zset -> memberByRankOptimistic(zset, rank, false), zset -> zset.zmemberByRank(rank));
+    }
+
+    /**
+     * @see Object2LongZSet#zrevmemberByRank(int)
+     */
+    public Object2LongMember<K> zrevmemberByRank(int rank) {
+        return optimisticRead(zset -> memberByRankOptimistic(zset, rank, true), zset -> zset.zrevmemberByRank(rank));
+    }
+
+    /**
+     * @see Object2LongZSet#zrangeByRank(int, int)
+     */
+    public List<Object2LongMember<K>> zrangeByRank(int start, int end) {
+        return optimisticRead(zset -> orRetry(zset.zrangeByRankOptimistic(start, end, false)), zset -> zset.zrangeByRank(start, end));
+    }
+
+    /**
+     * @see Object2LongZSet#zrevrangeByRank(int, int)
+     */
+    public List<Object2LongMember<K>> zrevrangeByRank(int start, int end) {
+        return optimisticRead(zset -> orRetry(zset.zrangeByRankOptimistic(start, end, true)), zset -> zset.zrevrangeByRank(start, end));
+    }
+
+    /**
+     * @see Object2LongZSet#zrangeByScore(long, long)
+     */
+    public List<Object2LongMember<K>> zrangeByScore(long start, long end) {
+        return read(zset -> zset.zrangeByScore(start, end));
+    }
+
+    /**
+     * @see Object2LongZSet#zrangeByScore(LongScoreRangeSpec)
+     */
+    public List<Object2LongMember<K>> zrangeByScore(LongScoreRangeSpec spec) {
+        return read(zset -> zset.zrangeByScore(spec));
+    }
+
+    /**
+     * @see Object2LongZSet#zrevrangeByScore(long, long)
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(long start, long end) {
+        return read(zset -> zset.zrevrangeByScore(start, end));
+    }
+
+    /**
+     * @see Object2LongZSet#zrevrangeByScore(LongScoreRangeSpec)
+     */
+    public List<Object2LongMember<K>> zrevrangeByScore(LongScoreRangeSpec spec) {
+        return read(zset -> zset.zrevrangeByScore(spec));
+    }
+
+    /**
+     * @see Object2LongZSet#zcount(long, long)
+     */
+    public int zcount(long start, long end) {
+        return readInt(zset -> zset.zcount(start, end));
+    }
+
+    /**
+     * @see Object2LongZSet#zcount(LongScoreRangeSpec)
+     */
+    public int zcount(LongScoreRangeSpec spec) {
+        return readInt(zset -> zset.zcount(spec));
+    }
+
+    /**
+     * @see Object2LongZSet#zcard()
+     */
+    public int zcard() {
+        return optimisticReadInt(Object2LongZSet::zcard, Object2LongZSet::zcard);
+    }
+
+    /**
+     * @see Object2LongZSet#dump()
+     */
+    public String dump() {
+        return read(Object2LongZSet::dump);
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    /**
+     * 乐观读放弃时返回的对象
+     */
+    private static final Object RETRY = new Object();
+
+    private static Object orRetry(@Nullable Object result) {
+        return result == null ? RETRY : result;
+    }
+
+    private static <K> Object memberByRankOptimistic(Object2LongZSet<K> zset, int rank, boolean reverse) {
+        if (rank < 0 || rank >= zset.zcard()) {
+            return null;
+        }
+        return orRetry(zset.zmemberByRankOptimistic(rank, reverse));
+    }
+
+    /**
+     * 先乐观读，乐观读放弃、校验失败或者校验失败的同时抛出了异常时，获取读锁再读取一次。
+     *
+     * @param optimisticReader 有界的读操作，返回{@link #RETRY}表示放弃乐观读
+     * @param reader           加锁时的读操作
+     * @param <R>              结果类型
+     * @return 读取的结果
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R optimisticRead(Function<Object2LongZSet<K>, Object> optimisticReader, Function<Object2LongZSet<K>, R> reader) {
+        final long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                final Object result = optimisticReader.apply(zset);
+                if (lock.validate(stamp) && result != RETRY) {
+                    return (R) result;
+                }
+            } catch (RuntimeException e) {
+                // 校验通过说明期间没有写操作，这是真正的错误
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        return read(reader);
+    }
+
+    /**
+     * {@link #optimisticRead(Function, Function)}的int特化版本，避免装箱
+     *
+     * @param optimisticReader 有界的读操作，返回{@link Object2LongZSet#OPTIMISTIC_FAILED}表示放弃乐观读
+     * @param reader           加锁时的读操作
+     */
+    private int optimisticReadInt(ToIntFunction<Object2LongZSet<K>> optimisticReader, ToIntFunction<Object2LongZSet<K>> reader) {
+        final long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                final int result = optimisticReader.applyAsInt(zset);
+                if (lock.validate(stamp) && result != Object2LongZSet.OPTIMISTIC_FAILED) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        return readInt(reader);
+    }
+
+    /**
+     * {@link #optimisticRead(Function, Function)}的long特化版本，避免装箱。
+     * 只用于不遍历跳表的查询，因此不会放弃乐观读。
+     */
+    private long optimisticReadLong(ToLongFunction<Object2LongZSet<K>> reader) {
+        final long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                final long result = reader.applyAsLong(zset);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        return readLong(reader);
+    }
+
+    /**
+     * 获取读锁以后读取
+     *
+     * @param reader 读操作 - 必须是只读的
+     * @param <R>    结果类型
+     * @return 读取的结果
+     */
+    private <R> R read(Function<Object2LongZSet<K>, R> reader) {
+        final long stamp = lock.readLock();
+        try {
+            return reader.apply(zset);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * {@link #read(Function)}的int特化版本，避免装箱
+     */
+    private int readInt(ToIntFunction<Object2LongZSet<K>> reader) {
+        final long stamp = lock.readLock();
+        try {
+            return reader.applyAsInt(zset);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * {@link #read(Function)}的long特化版本，避免装箱
+     */
+    private long readLong(ToLongFunction<Object2LongZSet<K>> reader) {
+        final long stamp = lock.readLock();
+        try {
+            return reader.applyAsLong(zset);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
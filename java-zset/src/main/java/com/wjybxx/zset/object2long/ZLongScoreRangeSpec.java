@@ -7,21 +7,21 @@ public final class ZLongScoreRangeSpec {
     /**
      * 最低分数
      */
-    final long min;
+    public final long min;
     /**
      * 是否去除下限
      * exclusive
      */
-    final boolean minex;
+    public final boolean minex;
     /**
      * 最高分数
      */
-    final long max;
+    public final long max;
     /**
      * 是否去除上限
      * exclusive
      */
-    final boolean maxex;
+    public final boolean maxex;
 
     public ZLongScoreRangeSpec(long min, boolean minex, long max, boolean maxex) {
         this.min = min;
@@ -0,0 +1,586 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.server;
+
+import com.wjybxx.zset.object2long.LongScoreHandlers;
+import com.wjybxx.zset.object2long.LongScoreRangeSpec;
+import com.wjybxx.zset.object2long.Object2LongMember;
+import com.wjybxx.zset.object2long.Object2LongZSet;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 执行zset命令，语义与redis一致。
+ * 每个key对应一个{@link Object2LongZSet}，成员为string，分数为long(升序)，当zset为空时删除key（与redis一致）。
+ * <p>
+ * <b>与redis的区别</b>：
+ * 分数是long类型的，命令中的分数必须是整数，"-inf"和"+inf"分别对应{@link Long#MIN_VALUE}和{@link Long#MAX_VALUE}。
+ * 响应中的分数也是整数的形式。
+ * <p>
+ * 只由服务器的io线程调用。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@NotThreadSafe
+final class RespCommandExecutor {
+
+    private static final byte[] NEG_INF = "-inf".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] POS_INF = "+inf".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INF = "inf".getBytes(StandardCharsets.US_ASCII);
+
+    private final Map<String, Object2LongZSet<String>> zsetMap = new HashMap<>();
+
+    /**
+     * 执行一个命令，并将响应写入writer
+     *
+     * @param args   命令参数，第一个为命令名
+     * @param writer 响应输出
+     * @return 如果连接需要关闭，则返回false
+     */
+    boolean execute(List<byte[]> args, RespWriter writer) {
+        final String command = new String(args.get(0), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+        try {
+            switch (command) {
+                case "ZADD":
+                    zadd(args, writer);
+                    break;
+                case "ZINCRBY":
+                    zincrby(args, writer);
+                    break;
+                case "ZREM":
+                    zrem(args, writer);
+                    break;
+                case "ZSCORE":
+                    zscore(args, writer);
+                    break;
+                case "ZRANK":
+                    zrank(args, writer, false);
+                    break;
+                case "ZREVRANK":
+                    zrank(args, writer, true);
+                    break;
+                case "ZRANGE":
+                    zrange(args, writer);
+                    break;
+                case "ZREVRANGE":
+                    zrevrange(args, writer);
+                    break;
+                case "ZRANGEBYSCORE":
+                    zrangeByScore(args, writer, false);
+                    break;
+                case "ZREVRANGEBYSCORE":
+                    zrangeByScore(args, writer, true);
+                    break;
+                case "ZCOUNT":
+                    zcount(args, writer);
+                    break;
+                case "ZCARD":
+                    checkArity(args, 2, command);
+                    final Object2LongZSet<String> zset = zsetMap.get(string(args.get(1)));
+                    writer.integer(zset == null ? 0 : zset.zcard());
+                    break;
+                case "ZPOPMIN":
+                    zpop(args, writer, false);
+                    break;
+                case "ZPOPMAX":
+                    zpop(args, writer, true);
+                    break;
+                case "DEL":
+                    del(args, writer);
+                    break;
+                case "PING":
+                    if (args.size() > 1) {
+                        writer.bulkString(args.get(1));
+                    } else {
+                        writer.simpleString("PONG");
+                    }
+                    break;
+                case "COMMAND":
+                    // 客户端连接时可能查询命令列表，返回空列表即可
+                    writer.arrayHeader(0);
+                    break;
+                case "QUIT":
+                    writer.ok();
+                    return false;
+                default:
+                    throw new RespException("ERR unknown command '" + printable(command) + "'");
+            }
+        } catch (RespException e) {
+            writer.error(e.getMessage());
+        }
+        return true;
+    }
+
+    // -------------------------------------------------------- 命令 -----------------------------------------------
+
+    /**
+     * ZADD key [NX|XX] [CH] score member [score member ...]
+     */
+    private void zadd(List<byte[]> args, RespWriter writer) {
+        boolean nx = false;
+        boolean xx = false;
+        boolean ch = false;
+        int index = 2;
+        for (; index < args.size(); index++) {
+            final String option = new String(args.get(index), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            if (option.equals("NX")) {
+                nx = true;
+            } else if (option.equals("XX")) {
+                xx = true;
+            } else if (option.equals("CH")) {
+                ch = true;
+            } else {
+                break;
+            }
+        }
+        final int pairs = args.size() - index;
+        if (pairs == 0 || (pairs & 1) != 0) {
+            throw new RespException("ERR syntax error");
+        }
+        if (nx && xx) {
+            throw new RespException("ERR XX and NX options at the same time are not compatible");
+        }
+        // 先校验所有分数，避免部分执行
+        final long[] scores = new long[pairs / 2];
+        for (int pair = 0; pair < scores.length; pair++) {
+            scores[pair] = parseScore(args.get(index + pair * 2));
+        }
+
+        final String key = string(args.get(1));
+        Object2LongZSet<String> zset = zsetMap.get(key);
+        if (zset == null) {
+            if (xx) {
+                writer.integer(0);
+                return;
+            }
+            zset = Object2LongZSet.newStringKeyZSet(LongScoreHandlers.scoreHandler(false));
+            zsetMap.put(key, zset);
+        }
+
+        int added = 0;
+        int changed = 0;
+        for (int pair = 0; pair < scores.length; pair++) {
+            final long score = scores[pair];
+            final String member = string(args.get(index + pair * 2 + 1));
+            final Long oldScore = zset.zscore(member);
+            if (oldScore == null) {
+                if (!xx) {
+                    zset.zadd(score, member);
+                    added++;
+                }
+            } else if (!nx && oldScore != score) {
+                zset.zadd(score, member);
+                changed++;
+            }
+        }
+        removeIfEmpty(key, zset);
+        writer.integer(ch ? added + changed : added);
+    }
+
+    /**
+     * ZINCRBY key increment member
+     */
+    private void zincrby(List<byte[]> args, RespWriter writer) {
+        checkArity(args, 4, "zincrby");
+        final long increment = parseScore(args.get(2));
+        final String key = string(args.get(1));
+        final Object2LongZSet<String> zset = zsetMap.computeIfAbsent(key,
+                k -> Object2LongZSet.newStringKeyZSet(LongScoreHandlers.scoreHandler(false)));
+        writer.bulkLong(zset.zincrby(increment, string(args.get(3))));
+    }
+
+    /**
+     * ZREM key member [member ...]
+     */
+    private void zrem(List<byte[]> args, RespWriter writer) {
+        if (args.size() < 3) {
+            throw wrongArity("zrem");
+        }
+        final String key = string(args.get(1));
+        final Object2LongZSet<String> zset = zsetMap.get(key);
+        int removed = 0;
+        if (zset != null) {
+            for (int index = 2; index < args.size(); index++) {
+                if (zset.zrem(string(args.get(index))) != null) {
+                    removed++;
+                }
+            }
+            removeIfEmpty(key, zset);
+        }
+        writer.integer(removed);
+    }
+
+    /**
+     * ZSCORE key member
+     */
+    private void zscore(List<byte[]> args, RespWriter writer) {
+        checkArity(args, 3, "zscore");
+        final Object2LongZSet<String> zset = zsetMap.get(string(args.get(1)));
+        final Long score = zset == null ? null : zset.zscore(string(args.get(2)));
+        if (score == null) {
+            writer.nullBulk();
+        } else {
+            writer.bulkLong(score);
+        }
+    }
+
+    /**
+     * ZRANK key member / ZREVRANK key member
+     */
+    private void zrank(List<byte[]> args, RespWriter writer, boolean reverse) {
+        checkArity(args, 3, reverse ? "zrevrank" : "zrank");
+        final Object2LongZSet<String> zset = zsetMap.get(string(args.get(1)));
+        if (zset == null) {
+            writer.nullBulk();
+            return;
+        }
+        final String member = string(args.get(2));
+        final int rank = reverse ? zset.zrevrank(member) : zset.zrank(member);
+        if (rank < 0) {
+            writer.nullBulk();
+        } else {
+            writer.integer(rank);
+        }
+    }
+
+    /**
+     * ZRANGE key start stop [BYSCORE] [REV] [LIMIT offset count] [WITHSCORES]
+     */
+    private void zrange(List<byte[]> args, RespWriter writer) {
+        if (args.size() < 4) {
+            throw wrongArity("zrange");
+        }
+        boolean byScore = false;
+        boolean reverse = false;
+        boolean withScores = false;
+        int offset = 0;
+        int limit = -1;
+        boolean hasLimit = false;
+        for (int index = 4; index < args.size(); index++) {
+            final String option = new String(args.get(index), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            if (option.equals("BYSCORE")) {
+                byScore = true;
+            } else if (option.equals("REV")) {
+                reverse = true;
+            } else if (option.equals("WITHSCORES")) {
+                withScores = true;
+            } else if (option.equals("LIMIT") && index + 2 < args.size()) {
+                offset = parseInt(args.get(index + 1));
+                limit = parseInt(args.get(index + 2));
+                hasLimit = true;
+                index += 2;
+            } else {
+                throw new RespException("ERR syntax error");
+            }
+        }
+        if (byScore) {
+            // REV时参数顺序为 max min
+            rangeByScore(string(args.get(1)), args.get(reverse ? 3 : 2), args.get(reverse ? 2 : 3),
+                    offset, limit, reverse, withScores, writer);
+        } else {
+            if (hasLimit) {
+                throw new RespException("ERR syntax error, LIMIT is only supported in combination with either BYSCORE or BYLEX");
+            }
+            rangeByRank(string(args.get(1)), parseInt(args.get(2)), parseInt(args.get(3)), reverse, withScores, writer);
+        }
+    }
+
+    /**
+     * ZREVRANGE key start stop [WITHSCORES]
+     */
+    private void zrevrange(List<byte[]> args, RespWriter writer) {
+        if (args.size() != 4 && args.size() != 5) {
+            throw wrongArity("zrevrange");
+        }
+        final boolean withScores = parseWithScores(args, 4);
+        rangeByRank(string(args.get(1)), parseInt(args.get(2)), parseInt(args.get(3)), true, withScores, writer);
+    }
+
+    /**
+     * ZRANGEBYSCORE key min max [WITHSCORES] [LIMIT offset count]
+     * ZREVRANGEBYSCORE key max min [WITHSCORES] [LIMIT offset count]
+     */
+    private void zrangeByScore(List<byte[]> args, RespWriter writer, boolean reverse) {
+        if (args.size() < 4) {
+            throw wrongArity(reverse ? "zrevrangebyscore" : "zrangebyscore");
+        }
+        boolean withScores = false;
+        int offset = 0;
+        int limit = -1;
+        for (int index = 4; index < args.size(); index++) {
+            final String option = new String(args.get(index), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            if (option.equals("WITHSCORES")) {
+                withScores = true;
+            } else if (option.equals("LIMIT") && index + 2 < args.size()) {
+                offset = parseInt(args.get(index + 1));
+                limit = parseInt(args.get(index + 2));
+                index += 2;
+            } else {
+                throw new RespException("ERR syntax error");
+            }
+        }
+        rangeByScore(string(args.get(1)), args.get(reverse ? 3 : 2), args.get(reverse ? 2 : 3),
+                offset, limit, reverse, withScores, writer);
+    }
+
+    /**
+     * ZCOUNT key min max
+     */
+    private void zcount(List<byte[]> args, RespWriter writer) {
+        checkArity(args, 4, "zcount");
+        final Object2LongZSet<String> zset = zsetMap.get(string(args.get(1)));
+        final ScoreBound min = parseScoreBound(args.get(2));
+        final ScoreBound max = parseScoreBound(args.get(3));
+        if (zset == null || isScoreRangeEmpty(min, max)) {
+            writer.integer(0);
+            return;
+        }
+        writer.integer(zset.zcount(new LongScoreRangeSpec(min.score, min.exclusive, max.score, max.exclusive)));
+    }
+
+    /**
+     * ZPOPMIN key [count] / ZPOPMAX key [count]
+     */
+    private void zpop(List<byte[]> args, RespWriter writer, boolean max) {
+        if (args.size() != 2 && args.size() != 3) {
+            throw wrongArity(max ? "zpopmax" : "zpopmin");
+        }
+        final int count = args.size() == 3 ? parseInt(args.get(2)) : 1;
+        if (count < 0) {
+            throw new RespException("ERR value is out of range, must be positive");
+        }
+        final String key = string(args.get(1));
+        final Object2LongZSet<String> zset = zsetMap.get(key);
+        if (zset == null) {
+            writer.arrayHeader(0);
+            return;
+        }
+        final int popCount = Math.min(count, zset.zcard());
+        writer.arrayHeader(popCount * 2);
+        for (int index = 0; index < popCount; index++) {
+            final Object2LongMember<String> member = max ? zset.zpopLast() : zset.zpopFirst();
+            assert member != null;
+            writer.bulkString(member.getMember());
+            writer.bulkLong(member.getScore());
+        }
+        removeIfEmpty(key, zset);
+    }
+
+    /**
+     * DEL key [key ...]
+     */
+    private void del(List<byte[]> args, RespWriter writer) {
+        if (args.size() < 2) {
+            throw wrongArity("del");
+        }
+        int removed = 0;
+        for (int index = 1; index < args.size(); index++) {
+            if (zsetMap.remove(string(args.get(index))) != null) {
+                removed++;
+            }
+        }
+        writer.integer(removed);
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    private void rangeByRank(String key, int start, int end, boolean reverse, boolean withScores, RespWriter writer) {
+        final Object2LongZSet<String> zset = zsetMap.get(key);
+        if (zset == null) {
+            writer.arrayHeader(0);
+            return;
+        }
+        writeMembers(reverse ? zset.zrevrangeByRank(start, end) : zset.zrangeByRank(start, end), withScores, writer);
+    }
+
+    private void rangeByScore(String key, byte[] minArg, byte[] maxArg, int offset, int limit,
+                              boolean reverse, boolean withScores, RespWriter writer) {
+        final ScoreBound min = parseScoreBound(minArg);
+        final ScoreBound max = parseScoreBound(maxArg);
+        final Object2LongZSet<String> zset = zsetMap.get(key);
+        // redis中offset为负数时返回空
+        if (zset == null || offset < 0 || isScoreRangeEmpty(min, max)) {
+            writer.arrayHeader(0);
+            return;
+        }
+        final LongScoreRangeSpec spec = new LongScoreRangeSpec(min.score, min.exclusive, max.score, max.exclusive);
+        writeMembers(zset.zrangeByScoreWithOptions(spec, offset, limit, reverse), withScores, writer);
+    }
+
+    private static void writeMembers(List<Object2LongMember<String>> members, boolean withScores, RespWriter writer) {
+        writer.arrayHeader(withScores ? members.size() * 2 : members.size());
+        for (Object2LongMember<String> member : members) {
+            writer.bulkString(member.getMember());
+            if (withScores) {
+                writer.bulkLong(member.getScore());
+            }
+        }
+    }
+
+    /**
+     * redis中min大于max时区间为空，而{@link Object2LongZSet}会交换它们
+     */
+    private static boolean isScoreRangeEmpty(ScoreBound min, ScoreBound max) {
+        return min.score > max.score || (min.score == max.score && (min.exclusive || max.exclusive));
+    }
+
+    private void removeIfEmpty(String key, Object2LongZSet<String> zset) {
+        if (zset.zcard() == 0) {
+            zsetMap.remove(key);
+        }
+    }
+
+    private static void checkArity(List<byte[]> args, int arity, String command) {
+        if (args.size() != arity) {
+            throw wrongArity(command);
+        }
+    }
+
+    private static RespException wrongArity(String command) {
+        return new RespException("ERR wrong number of arguments for '" + command.toLowerCase(Locale.ROOT) + "' command");
+    }
+
+    private static boolean parseWithScores(List<byte[]> args, int index) {
+        if (args.size() <= index) {
+            return false;
+        }
+        if (new String(args.get(index), StandardCharsets.US_ASCII).equalsIgnoreCase("WITHSCORES")) {
+            return true;
+        }
+        throw new RespException("ERR syntax error");
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 错误消息中不能包含换行
+     */
+    private static String printable(String value) {
+        return value.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * 解析分数，支持"-inf"和"+inf"
+     */
+    private static long parseScore(byte[] bytes) {
+        if (equalsIgnoreCase(bytes, NEG_INF)) {
+            return Long.MIN_VALUE;
+        }
+        if (equalsIgnoreCase(bytes, POS_INF) || equalsIgnoreCase(bytes, INF)) {
+            return Long.MAX_VALUE;
+        }
+        return parseLong(bytes, "ERR value is not an integer or out of range");
+    }
+
+    /**
+     * 解析分数区间的边界，"("前缀表示不包含边界
+     */
+    private static ScoreBound parseScoreBound(byte[] bytes) {
+        if (bytes.length > 0 && bytes[0] == '(') {
+            final byte[] score = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, score, 0, score.length);
+            return new ScoreBound(parseBoundScore(score), true);
+        }
+        return new ScoreBound(parseBoundScore(bytes), false);
+    }
+
+    private static long parseBoundScore(byte[] bytes) {
+        try {
+            return parseScore(bytes);
+        } catch (RespException e) {
+            throw new RespException("ERR min or max is not a float");
+        }
+    }
+
+    private static int parseInt(byte[] bytes) {
+        final long value = parseLong(bytes, "ERR value is not an integer or out of range");
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new RespException("ERR value is not an integer or out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * 直接从字节解析整数，不创建String
+     */
+    private static long parseLong(byte[] bytes, String errorMessage) {
+        if (bytes.length == 0 || bytes.length > 20) {
+            throw new RespException(errorMessage);
+        }
+        int index = 0;
+        final boolean negative = bytes[index] == '-';
+        if (negative || bytes[index] == '+') {
+            index++;
+            if (index == bytes.length) {
+                throw new RespException(errorMessage);
+            }
+        }
+        // 使用负数累加，可以表示Long.MIN_VALUE
+        long result = 0;
+        for (; index < bytes.length; index++) {
+            final int digit = bytes[index] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new RespException(errorMessage);
+            }
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw new RespException(errorMessage);
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw new RespException(errorMessage);
+            }
+            result = -result;
+        }
+        return result;
+    }
+
+    private static boolean equalsIgnoreCase(byte[] bytes, byte[] lowerCaseAscii) {
+        if (bytes.length != lowerCaseAscii.length) {
+            return false;
+        }
+        for (int index = 0; index < bytes.length; index++) {
+            final int b = bytes[index];
+            final int lower = (b >= 'A' && b <= 'Z') ? b + ('a' - 'A') : b;
+            if (lower != lowerCaseAscii[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class ScoreBound {
+
+        final long score;
+        final boolean exclusive;
+
+        ScoreBound(long score, boolean exclusive) {
+            this.score = score;
+            this.exclusive = exclusive;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.server;
+
+/**
+ * 命令执行失败，消息将作为RESP的错误响应返回给客户端（例如："ERR syntax error"）。
+ * 不需要堆栈信息。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+final class RespException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    RespException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RESP2协议的响应编码器 - 直接将响应写入连接的输出缓冲区(堆外内存)，由channel直接写出。
+ * 协议帧和数字都是逐字节写入缓冲区的，不会创建中间的String或byte[]对象。
+ * <p>
+ * 一次读事件中解析出的所有命令(pipeline)的响应都写入同一个缓冲区，最后一次性写出。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+final class RespWriter {
+
+    private static final int INIT_CAPACITY = 16 * 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] NULL_BULK = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = String.valueOf(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 写模式的缓冲区，position为已写入的字节数
+     */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INIT_CAPACITY);
+
+    /**
+     * @return 是否有等待写出的数据
+     */
+    boolean hasPendingBytes() {
+        return buffer.position() > 0;
+    }
+
+    /**
+     * 切换为读模式，用于写入channel。
+     * 写入channel以后需要调用{@link #endFlush()}
+     *
+     * @return 缓冲区
+     */
+    ByteBuffer beginFlush() {
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 保留未写出的数据，切换回写模式
+     */
+    void endFlush() {
+        buffer.compact();
+    }
+
+    void ok() {
+        ensureWritable(OK.length);
+        buffer.put(OK);
+    }
+
+    /**
+     * 简单字符串 - 只能包含ascii字符，且不能包含换行
+     */
+    void simpleString(String value) {
+        ensureWritable(value.length() + 3);
+        buffer.put((byte) '+');
+        putAscii(value);
+        buffer.put(CRLF);
+    }
+
+    /**
+     * 错误 - 只能包含ascii字符，且不能包含换行
+     */
+    void error(String message) {
+        ensureWritable(message.length() + 3);
+        buffer.put((byte) '-');
+        putAscii(message);
+        buffer.put(CRLF);
+    }
+
+    void integer(long value) {
+        ensureWritable(23);
+        buffer.put((byte) ':');
+        putLong(value);
+        buffer.put(CRLF);
+    }
+
+    void nullBulk() {
+        ensureWritable(NULL_BULK.length);
+        buffer.put(NULL_BULK);
+    }
+
+    void bulkString(byte[] value) {
+        ensureWritable(value.length + 15);
+        buffer.put((byte) '$');
+        putLong(value.length);
+        buffer.put(CRLF);
+        buffer.put(value);
+        buffer.put(CRLF);
+    }
+
+    void bulkString(String value) {
+        bulkString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 将数字编码为bulk string，例如分数
+     */
+    void bulkLong(long value) {
+        ensureWritable(30);
+        buffer.put((byte) '$');
+        putLong(stringSize(value));
+        buffer.put(CRLF);
+        putLong(value);
+        buffer.put(CRLF);
+    }
+
+    void arrayHeader(int length) {
+        ensureWritable(15);
+        buffer.put((byte) '*');
+        putLong(length);
+        buffer.put(CRLF);
+    }
+
+    // ------------------------------------------------------- 内部实现 ----------------------------------------
+
+    private void ensureWritable(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        int newCapacity = buffer.capacity() << 1;
+        while (newCapacity - buffer.position() < bytes) {
+            newCapacity <<= 1;
+        }
+        final ByteBuffer newBuffer = ByteBuffer.allocateDirect(newCapacity);
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+    private void putAscii(String value) {
+        for (int index = 0; index < value.length(); index++) {
+            buffer.put((byte) value.charAt(index));
+        }
+    }
+
+    /**
+     * 写入数字的十进制表示，调用者保证空间足够
+     */
+    private void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            buffer.put(MIN_LONG);
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        // 从后往前写
+        final int size = stringSize(value);
+        final int end = buffer.position() + size;
+        for (int index = end - 1; index >= buffer.position(); index--) {
+            buffer.put(index, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * 数字的十进制表示的长度(包括负号)
+     */
+    private static int stringSize(long value) {
+        if (value == Long.MIN_VALUE) {
+            return MIN_LONG.length;
+        }
+        int size = 1;
+        if (value < 0) {
+            size++;
+            value = -value;
+        }
+        while (value >= 10) {
+            value /= 10;
+            size++;
+        }
+        return size;
+    }
+}
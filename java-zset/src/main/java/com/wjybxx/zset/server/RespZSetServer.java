@@ -0,0 +1,480 @@
+/*
+ *  Copyright 2019 wjybxx
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to iBn writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.wjybxx.zset.server;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 兼容redis RESP2协议的zset服务器，现有的redis客户端可以直接访问。
+ * 支持的命令：ZADD、ZINCRBY、ZREM、ZSCORE、ZRANK、ZREVRANK、ZRANGE、ZREVRANGE、ZRANGEBYSCORE、ZREVRANGEBYSCORE、
+ * ZCOUNT、ZCARD、ZPOPMIN、ZPOPMAX，以及DEL、PING、QUIT、COMMAND。命令语义见{@link RespCommandExecutor}。
+ * <p>
+ * <b>实现</b>
+ * 1. 与redis一样，使用单线程的NIO事件循环：一个线程负责接收连接、读取、解析、执行命令和写出响应，zset不需要任何锁。
+ * 2. 支持pipeline：一次读事件中可能读到多个完整的命令，依次执行后，所有响应写入同一个缓冲区，最后一次性写出。
+ * 3. 响应直接编码到连接的堆外缓冲区中，由channel直接写出，见{@link RespWriter}。
+ * 4. 如果响应没有一次写完，则注册写事件，并暂停读取该连接，直到响应写完，避免慢客户端导致缓冲区无限增长。
+ * 5. 与redis一样，未执行完的命令(已解析的参数和读缓冲区)不可以超过{@link #MAX_QUERY_BUFFER_LENGTH}，
+ * 超过时返回协议错误并关闭连接，避免单个客户端耗尽内存。
+ * 6. 大的命令会分多次读取，已解析的参数和正在读取的参数长度会保留到下次读取，不会重复解析。
+ * <p>
+ * <b>NOTE</b>：
+ * 1. 数据只保存在内存中，服务器关闭以后数据将丢失。
+ * 2. 分数是long类型的，见{@link RespCommandExecutor}。
+ * 3. 如果事件循环本身出现IO错误(而不是某个连接出现错误)，服务器将关闭，异常交给服务器线程的{@link Thread.UncaughtExceptionHandler}，
+ * 默认为{@link Thread#getDefaultUncaughtExceptionHandler()}。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+@ThreadSafe
+public class RespZSetServer implements Closeable {
+
+    /**
+     * 单个参数的最大长度
+     */
+    private static final int MAX_BULK_LENGTH = 64 * 1024 * 1024;
+    /**
+     * 单个命令的最大参数数量
+     */
+    private static final int MAX_ARGS = 1024 * 1024;
+    /**
+     * 内联命令(telnet)的最大长度
+     */
+    private static final int MAX_INLINE_LENGTH = 64 * 1024;
+    /**
+     * 单个连接的查询缓冲区的最大长度(类似redis的client-query-buffer-limit)，包括已解析的参数和读缓冲区
+     */
+    private static final int MAX_QUERY_BUFFER_LENGTH = 2 * MAX_BULK_LENGTH;
+
+    private static final int READ_BUFFER_CAPACITY = 16 * 1024;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final RespCommandExecutor executor = new RespCommandExecutor();
+    private final Thread thread;
+    private final CountDownLatch terminationLatch = new CountDownLatch(1);
+
+    private volatile boolean closed = false;
+
+    private RespZSetServer(InetSocketAddress address) throws IOException {
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(address, 1024);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        this.thread = new Thread(this::run, "zset-server-" + getLocalPort());
+    }
+
+    /**
+     * 创建并启动一个服务器
+     *
+     * @param address 监听的地址，端口为0时表示随机端口
+     * @return server
+     * @throws IOException 如果绑定端口失败
+     */
+    public static RespZSetServer start(InetSocketAddress address) throws IOException {
+        final RespZSetServer server = new RespZSetServer(address);
+        server.thread.start();
+        return server;
+    }
+
+    /**
+     * @return 实际监听的端口
+     */
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * 关闭服务器，关闭所有连接
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * 等待服务器关闭
+     *
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return 如果服务器已关闭则返回true
+     * @throws InterruptedException 如果等待期间被中断
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminationLatch.await(timeout, unit);
+    }
+
+    /**
+     * 启动一个独立的服务器
+     *
+     * @param args [port]，默认为6380
+     * @throws Exception error
+     */
+    public static void main(String[] args) throws Exception {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 6380;
+        final RespZSetServer server = start(new InetSocketAddress(port));
+        System.out.println("zset server listening on port " + server.getLocalPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    // ------------------------------------------------------- 事件循环 ----------------------------------------
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                final Iterator<SelectionKey> itr = selector.selectedKeys().iterator();
+                while (itr.hasNext()) {
+                    final SelectionKey key = itr.next();
+                    itr.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        final Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isWritable()) {
+                                connection.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                        } catch (RespException e) {
+                            // 协议错误：返回错误信息以后关闭连接
+                            connection.protocolError(e);
+                        } catch (IOException e) {
+                            // 客户端断开
+                            connection.close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // selector或者监听端口出现错误，服务器无法继续运行，交给服务器线程的异常处理器
+            throw new UncheckedIOException(e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+            terminationLatch.countDown();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            final Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+            // ignore
+        }
+    }
+
+    /**
+     * 客户端连接
+     */
+    private class Connection {
+
+        final SocketChannel channel;
+        final RespWriter writer = new RespWriter();
+        SelectionKey key;
+
+        /**
+         * 读模式之外的时间都是写模式
+         */
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_CAPACITY);
+        /**
+         * 解析出来的命令参数，复用list
+         */
+        final List<byte[]> args = new ArrayList<>();
+        /**
+         * 正在解析的multibulk命令还未读取的参数数量，为0时表示没有正在解析的命令
+         */
+        long multiBulkLength = 0;
+        /**
+         * 正在读取的参数的长度，为-1时表示还未读取参数的长度
+         */
+        long bulkLength = -1;
+        /**
+         * 正在解析的命令已读取的参数的总长度
+         */
+        long argsLength = 0;
+        /**
+         * 执行QUIT以后，写完响应就关闭连接
+         */
+        boolean closeAfterFlush = false;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            if (!readBuffer.hasRemaining()) {
+                final long maxCapacity = MAX_QUERY_BUFFER_LENGTH - argsLength;
+                if (readBuffer.capacity() >= maxCapacity) {
+                    throw new RespException("ERR Protocol error: query buffer limit exceeded");
+                }
+                final ByteBuffer newBuffer = ByteBuffer.allocate((int) Math.min(readBuffer.capacity() << 1, maxCapacity));
+                readBuffer.flip();
+                newBuffer.put(readBuffer);
+                readBuffer = newBuffer;
+            }
+            final int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+
+            // 解析并执行所有完整的命令(pipeline)
+            readBuffer.flip();
+            while (!closeAfterFlush && parseCommand()) {
+                if (!executor.execute(args, writer)) {
+                    closeAfterFlush = true;
+                }
+            }
+            readBuffer.compact();
+            flush();
+        }
+
+        void flush() throws IOException {
+            if (writer.hasPendingBytes()) {
+                final ByteBuffer buffer = writer.beginFlush();
+                try {
+                    channel.write(buffer);
+                } finally {
+                    writer.endFlush();
+                }
+            }
+            if (writer.hasPendingBytes()) {
+                // 等待可写，暂停读取
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (closeAfterFlush) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * 协议错误以后无法继续解析，与redis一样，先返回错误信息(之前的命令的响应仍然有效)，写完以后关闭连接
+         */
+        void protocolError(RespException e) {
+            writer.error(e.getMessage());
+            closeAfterFlush = true;
+            try {
+                flush();
+            } catch (IOException ignore) {
+                close();
+            }
+        }
+
+        void close() {
+            key.cancel();
+            closeQuietly(channel);
+        }
+
+        // ------------------------------------------------------- 协议解析 ----------------------------------------
+
+        /**
+         * 从读缓冲区中解析一个完整的命令，结果存储在{@link #args}中。
+         * 如果数据不完整，则保留已解析的参数，等待更多的数据。
+         *
+         * @return 如果解析出了一个完整的命令，则返回true
+         */
+        boolean parseCommand() {
+            while (readBuffer.hasRemaining()) {
+                final boolean complete;
+                if (multiBulkLength > 0) {
+                    complete = parseMultiBulk();
+                } else {
+                    args.clear();
+                    complete = readBuffer.get(readBuffer.position()) == '*' ? parseMultiBulk() : parseInline();
+                }
+                if (!complete) {
+                    return false;
+                }
+                // 空命令直接跳过
+                if (!args.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * *<count>\r\n$<length>\r\n<bytes>\r\n...
+         * 数据不完整时，已读取的参数保存在{@link #args}中，解析状态保存在{@link #multiBulkLength}和{@link #bulkLength}中，
+         * 下次从中断的地方继续解析。
+         */
+        private boolean parseMultiBulk() {
+            if (multiBulkLength == 0) {
+                final int start = readBuffer.position();
+                readBuffer.get();
+                final long count = readLineLong(MAX_ARGS);
+                if (count == Long.MIN_VALUE) {
+                    readBuffer.position(start);
+                    return false;
+                }
+                if (count <= 0) {
+                    return true;
+                }
+                multiBulkLength = count;
+            }
+            while (multiBulkLength > 0) {
+                if (bulkLength < 0) {
+                    if (!readBuffer.hasRemaining()) {
+                        return false;
+                    }
+                    final int start = readBuffer.position();
+                    if (readBuffer.get() != '$') {
+                        throw new RespException("ERR Protocol error: expected '$'");
+                    }
+                    final long length = readLineLong(MAX_BULK_LENGTH);
+                    if (length == Long.MIN_VALUE) {
+                        readBuffer.position(start);
+                        return false;
+                    }
+                    if (length < 0) {
+                        throw new RespException("ERR Protocol error: invalid bulk length");
+                    }
+                    if (argsLength + length > MAX_QUERY_BUFFER_LENGTH) {
+                        throw new RespException("ERR Protocol error: query buffer limit exceeded");
+                    }
+                    bulkLength = length;
+                }
+                if (readBuffer.remaining() < bulkLength + 2) {
+                    return false;
+                }
+                final byte[] bytes = new byte[(int) bulkLength];
+                readBuffer.get(bytes);
+                if (readBuffer.get() != '\r' || readBuffer.get() != '\n') {
+                    throw new RespException("ERR Protocol error: expected CRLF");
+                }
+                args.add(bytes);
+                argsLength += bulkLength;
+                bulkLength = -1;
+                multiBulkLength--;
+            }
+            argsLength = 0;
+            return true;
+        }
+
+        /**
+         * 内联命令：以空格分隔参数，以换行结束，用于telnet等工具
+         */
+        private boolean parseInline() {
+            final int lineEnd = indexOf('\n');
+            if (lineEnd < 0) {
+                if (readBuffer.remaining() > MAX_INLINE_LENGTH) {
+                    throw new RespException("ERR Protocol error: too big inline request");
+                }
+                return false;
+            }
+            final byte[] line = new byte[lineEnd - readBuffer.position()];
+            readBuffer.get(line);
+            readBuffer.get();
+            final String[] parts = new String(line, StandardCharsets.UTF_8).trim().split("\\s+");
+            for (String part : parts) {
+                if (!part.isEmpty()) {
+                    args.add(part.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 读取一行数字
+         *
+         * @param max 最大值
+         * @return 如果数据不完整，则返回{@link Long#MIN_VALUE}
+         */
+        private long readLineLong(long max) {
+            final int lineEnd = indexOf('\n');
+            if (lineEnd < 0) {
+                if (readBuffer.remaining() > 32) {
+                    throw new RespException("ERR Protocol error: invalid length");
+                }
+                return Long.MIN_VALUE;
+            }
+            if (lineEnd == readBuffer.position() || readBuffer.get(lineEnd - 1) != '\r') {
+                throw new RespException("ERR Protocol error: expected CRLF");
+            }
+            long value = 0;
+            boolean negative = false;
+            for (int index = readBuffer.position(); index < lineEnd - 1; index++) {
+                final byte b = readBuffer.get(index);
+                if (b == '-' && index == readBuffer.position()) {
+                    negative = true;
+                } else if (b >= '0' && b <= '9' && value <= max) {
+                    value = value * 10 + (b - '0');
+                } else {
+                    throw new RespException("ERR Protocol error: invalid length");
+                }
+            }
+            if (value > max) {
+                throw new RespException("ERR Protocol error: invalid length");
+            }
+            readBuffer.position(lineEnd + 1);
+            return negative ? -value : value;
+        }
+
+        private int indexOf(char c) {
+            for (int index = readBuffer.position(); index < readBuffer.limit(); index++) {
+                if (readBuffer.get(index) == c) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    }
+}
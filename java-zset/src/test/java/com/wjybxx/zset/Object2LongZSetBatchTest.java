@@ -0,0 +1,60 @@
+package com.wjybxx.zset;
+
+import com.wjybxx.zset.object2long.LongScoreHandlers;
+import com.wjybxx.zset.object2long.Object2LongMember;
+import com.wjybxx.zset.object2long.Object2LongZSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link Object2LongZSet#zaddBatch(List)}的测试用例
+ * 放在zset所在的包之外，确保调用者可以自己创建{@link Object2LongMember}并批量添加。
+ * 检查批量添加的结果与逐个调用{@link Object2LongZSet#zadd(long, Object)}的结果是否一致。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongZSetBatchTest {
+
+    private static final int MEMBER_COUNT = 10_000;
+    private static final int ROUND_COUNT = 100;
+
+    public static void main(String[] args) {
+        final Object2LongZSet<Long> batchZSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+        final Object2LongZSet<Long> expectedZSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+
+        final Random random = new Random(0);
+        for (int round = 0; round < ROUND_COUNT; round++) {
+            // 批量大小不同时，分别走逐个插入、共享查找路径和重新构建跳表的路径
+            final int batchSize = round % 10 == 0 ? MEMBER_COUNT : random.nextInt(200) + 1;
+            final List<Object2LongMember<Long>> members = new ArrayList<>(batchSize);
+            for (int index = 0; index < batchSize; index++) {
+                final Object2LongMember<Long> member = new Object2LongMember<>((long) random.nextInt(MEMBER_COUNT), random.nextInt(MEMBER_COUNT));
+                members.add(member);
+                expectedZSet.zadd(member.getScore(), member.getMember());
+            }
+            batchZSet.zaddBatch(members);
+            checkZSet(expectedZSet, batchZSet);
+        }
+        System.out.println("Object2LongZSetBatchTest success, zcard = " + batchZSet.zcard());
+    }
+
+    private static void checkZSet(Object2LongZSet<Long> expectedZSet, Object2LongZSet<Long> zSet) {
+        final List<Object2LongMember<Long>> expectedMembers = expectedZSet.zrangeByRank(0, -1);
+        final List<Object2LongMember<Long>> members = zSet.zrangeByRank(0, -1);
+        checkState(expectedMembers.size() == members.size(), "zcard");
+        for (int index = 0; index < expectedMembers.size(); index++) {
+            checkState(expectedMembers.get(index).getMember().equals(members.get(index).getMember())
+                    && expectedMembers.get(index).getScore() == members.get(index).getScore(), "zaddBatch");
+        }
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
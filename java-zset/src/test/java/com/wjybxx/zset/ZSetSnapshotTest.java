@@ -0,0 +1,186 @@
+package com.wjybxx.zset;
+
+import com.wjybxx.zset.generic.GenericZSet;
+import com.wjybxx.zset.generic.Member;
+import com.wjybxx.zset.generic.ScoreHandler;
+import com.wjybxx.zset.generic.ScoreHandlers;
+import com.wjybxx.zset.long2object.Long2ObjectMember;
+import com.wjybxx.zset.long2object.Long2ObjectZSet;
+import com.wjybxx.zset.object2long.LongScoreHandlers;
+import com.wjybxx.zset.object2long.Object2LongMember;
+import com.wjybxx.zset.object2long.Object2LongZSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * zset快照的测试用例
+ * 检查三种zset写入快照再加载以后是否一致，损坏的快照是否能被检测出来；并测试大量成员时的写入和加载速度。
+ * 注意：这只是一个粗略的测试，准确的数据请使用JMH等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class ZSetSnapshotTest {
+
+    private static final int MEMBER_COUNT = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        // 成员数量可以通过参数指定，例如：10000000，需要足够的堆内存
+        final int benchmarkMemberCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        final Path path = Files.createTempFile("zset", ".snapshot");
+        try {
+            object2LongTest(path);
+            genericTest(path);
+            long2ObjectTest(path);
+            corruptionTest(path);
+            // 第一次包括JIT预热
+            benchmark(path, benchmarkMemberCount);
+            benchmark(path, benchmarkMemberCount);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void object2LongTest(Path path) throws IOException {
+        final Object2LongZSet<String> zset = Object2LongZSet.newStringKeyZSet(LongScoreHandlers.scoreHandler(true));
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int index = 0; index < MEMBER_COUNT; index++) {
+            zset.zadd(random.nextLong(), "member" + index);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            zset.writeSnapshot(channel, ZSetCodecs.stringCodec());
+        }
+
+        final Object2LongZSet<String> loaded = Object2LongZSet.newStringKeyZSet(LongScoreHandlers.scoreHandler(true));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            loaded.loadSnapshot(channel, ZSetCodecs.stringCodec());
+        }
+        checkState(loaded.zcard() == zset.zcard(), "object2long zcard");
+        final Iterator<Object2LongMember<String>> itr = loaded.iterator();
+        for (Object2LongMember<String> member : zset) {
+            final Object2LongMember<String> loadedMember = itr.next();
+            checkState(member.getMember().equals(loadedMember.getMember()) && member.getScore() == loadedMember.getScore(), "object2long");
+        }
+    }
+
+    private static void genericTest(Path path) throws IOException {
+        final GenericZSet<String, Long> zset = GenericZSet.newStringKeyZSet(ScoreHandlers.longScoreHandler());
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int index = 0; index < MEMBER_COUNT; index++) {
+            zset.zadd(random.nextLong(), "member" + index);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            zset.writeSnapshot(channel, ZSetCodecs.stringCodec(), ZSetCodecs.longCodec());
+        }
+
+        final GenericZSet<String, Long> loaded = GenericZSet.newStringKeyZSet(ScoreHandlers.longScoreHandler());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            loaded.loadSnapshot(channel, ZSetCodecs.stringCodec(), ZSetCodecs.longCodec());
+        }
+        checkState(loaded.zcard() == zset.zcard(), "generic zcard");
+        final Iterator<Member<String, Long>> itr = loaded.iterator();
+        for (Member<String, Long> member : zset) {
+            final Member<String, Long> loadedMember = itr.next();
+            checkState(member.getMember().equals(loadedMember.getMember()) && member.getScore().equals(loadedMember.getScore()), "generic");
+        }
+    }
+
+    private static void long2ObjectTest(Path path) throws IOException {
+        final Long2ObjectZSet<String> zset = Long2ObjectZSet.newZSet(new StringScoreHandler());
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int index = 0; index < MEMBER_COUNT; index++) {
+            zset.zadd("score" + random.nextInt(1000_000), random.nextLong());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            zset.writeSnapshot(channel, ZSetCodecs.stringCodec());
+        }
+
+        final Long2ObjectZSet<String> loaded = Long2ObjectZSet.newZSet(new StringScoreHandler());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            loaded.loadSnapshot(channel, ZSetCodecs.stringCodec());
+        }
+        checkState(loaded.zcard() == zset.zcard(), "long2object zcard");
+        final Iterator<Long2ObjectMember<String>> itr = loaded.iterator();
+        for (Long2ObjectMember<String> member : zset) {
+            final Long2ObjectMember<String> loadedMember = itr.next();
+            checkState(member.getMember() == loadedMember.getMember() && Objects.equals(member.getScore(), loadedMember.getScore()), "long2object");
+        }
+    }
+
+    /**
+     * 修改快照中的一个字节，加载时应该抛出异常
+     */
+    private static void corruptionTest(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long position = channel.size() / 2;
+            final ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, position);
+            buffer.put(0, (byte) (buffer.get(0) ^ 1));
+            buffer.clear();
+            channel.write(buffer, position);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Long2ObjectZSet.newZSet(new StringScoreHandler()).loadSnapshot(channel, ZSetCodecs.stringCodec());
+            throw new IllegalStateException("corruption not detected");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    private static void benchmark(Path path, int memberCount) throws IOException {
+        final Object2LongZSet<Long> zset = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+        final long[] scores = new long[memberCount];
+        final Long[] members = new Long[memberCount];
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int index = 0; index < memberCount; index++) {
+            scores[index] = random.nextInt(100_000_000);
+            members[index] = (long) index;
+        }
+        zset.zaddAll(scores, members);
+
+        final long writeStartTime = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            zset.writeSnapshot(channel, ZSetCodecs.longCodec());
+        }
+        final long writeNanos = System.nanoTime() - writeStartTime;
+
+        final Object2LongZSet<Long> loaded = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+        final long loadStartTime = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            loaded.loadSnapshot(channel, ZSetCodecs.longCodec());
+        }
+        final long loadNanos = System.nanoTime() - loadStartTime;
+        checkState(loaded.zcard() == zset.zcard(), "benchmark zcard");
+
+        System.out.println(String.format("%d members, %d bytes, write %d ms, load %d ms",
+                memberCount, Files.size(path), writeNanos / 1000_000, loadNanos / 1000_000));
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+
+    private static class StringScoreHandler implements ScoreHandler<String> {
+
+        @Override
+        public int compare(String o1, String o2) {
+            return o1.compareTo(o2);
+        }
+
+        @Override
+        public String sum(String oldScore, String increment) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
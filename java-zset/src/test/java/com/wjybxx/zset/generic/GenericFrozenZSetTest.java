@@ -0,0 +1,77 @@
+package com.wjybxx.zset.generic;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * {@link GenericFrozenZSet}的测试用例
+ * 冻结一个{@link GenericZSet}，检查各个查询的结果是否与跳表一致。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class GenericFrozenZSetTest {
+
+    private static final int MEMBER_COUNT = 100_000;
+
+    public static void main(String[] args) {
+        final GenericZSet<String, Long> zset = GenericZSet.newStringKeyZSet(ScoreHandlers.longScoreHandler());
+        final Random random = new Random(0);
+        for (int index = 0; index < MEMBER_COUNT; index++) {
+            // 分数范围较小，存在大量相同的分数
+            zset.zadd((long) random.nextInt(MEMBER_COUNT / 10), "member" + index);
+        }
+        final GenericFrozenZSet<String, Long> frozen = zset.freeze();
+
+        checkState(frozen.zcard() == zset.zcard(), "zcard");
+        for (int index = 0; index < MEMBER_COUNT + 100; index++) {
+            final String member = "member" + index;
+            checkState(frozen.zrank(member) == zset.zrank(member), "zrank");
+            checkState(frozen.zrevrank(member) == zset.zrevrank(member), "zrevrank");
+            checkState(Objects.equals(frozen.zscore(member), zset.zscore(member)), "zscore");
+        }
+        for (int rank = -1; rank <= MEMBER_COUNT; rank++) {
+            checkState(equals(frozen.zmemberByRank(rank), zset.zmemberByRank(rank)), "zmemberByRank");
+        }
+        for (int index = 0; index < 1000; index++) {
+            final int start = random.nextInt(MEMBER_COUNT * 2) - MEMBER_COUNT;
+            final int end = random.nextInt(MEMBER_COUNT * 2) - MEMBER_COUNT;
+            checkState(equals(frozen.zrangeByRank(start, end), zset.zrangeByRank(start, end)), "zrangeByRank");
+            checkState(equals(frozen.zrevrangeByRank(start, end), zset.zrevrangeByRank(start, end)), "zrevrangeByRank");
+
+            final long min = random.nextInt(MEMBER_COUNT / 10 + 2) - 1;
+            final long max = min + random.nextInt(20) - 5;
+            checkState(equals(frozen.zrangeByScore(min, max), zset.zrangeByScore(min, max)), "zrangeByScore");
+            checkState(frozen.zcount(min, max) == zset.zcount(min, max), "zcount");
+            final ScoreRangeSpec<Long> spec = new ScoreRangeSpec<>(min, random.nextBoolean(), max, random.nextBoolean());
+            checkState(equals(frozen.zrangeByScore(spec), zset.zrangeByScore(spec)), "zrangeByScore spec");
+        }
+    }
+
+    private static boolean equals(Member<String, Long> a, Member<String, Long> b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getMember().equals(b.getMember()) && a.getScore().equals(b.getScore());
+    }
+
+    private static boolean equals(List<Member<String, Long>> a, List<Member<String, Long>> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int index = 0; index < a.size(); index++) {
+            if (!equals(a.get(index), b.get(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.wjybxx.zset.generic;
+
+import com.wjybxx.zset.ZSetEventType;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * {@link ZSetListener}和{@link ZSetEventBuffer}的测试用例
+ * 对zset执行随机操作，通过批量投递的事件修改另一个zset(副本)，检查两个zset是否一致，以及事件中的排名是否正确。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class ZSetListenerTest {
+
+    private static final int MEMBER_COUNT = 1000;
+    private static final int OPERATION_COUNT = 100_000;
+
+    public static void main(String[] args) {
+        final GenericZSet<Long, Long> zset = GenericZSet.newLongKeyZSet(ScoreHandlers.longScoreHandler());
+        final GenericZSet<Long, Long> replica = GenericZSet.newLongKeyZSet(ScoreHandlers.longScoreHandler());
+        final ZSetEventBuffer<Long, Long> buffer = new ZSetEventBuffer<>(events -> apply(replica, events), 64, true);
+        zset.setListener(buffer);
+
+        final Random random = new Random(0);
+        for (int index = 0; index < OPERATION_COUNT; index++) {
+            final long member = random.nextInt(MEMBER_COUNT);
+            final long score = random.nextInt(MEMBER_COUNT);
+            final int operation = random.nextInt(100);
+            if (operation < 35) {
+                zset.zadd(score, member);
+            } else if (operation < 60) {
+                zset.zincrby(score - MEMBER_COUNT / 2, member);
+            } else if (operation < 85) {
+                zset.zrem(member);
+            } else if (operation < 90) {
+                zset.zremrangeByScore(score, score + 10);
+            } else if (operation < 94) {
+                zset.zremrangeByRank((int) member, (int) member + 5);
+            } else if (operation < 95) {
+                final Iterator<Member<Long, Long>> itr = zset.iterator();
+                while (itr.hasNext()) {
+                    if (itr.next().getScore() < score) {
+                        itr.remove();
+                    }
+                }
+            } else {
+                zset.zlimit(MEMBER_COUNT - random.nextInt(10));
+            }
+        }
+        buffer.flush();
+
+        final List<Member<Long, Long>> expectedMembers = zset.zrangeByRank(0, -1);
+        final List<Member<Long, Long>> replicaMembers = replica.zrangeByRank(0, -1);
+        checkState(expectedMembers.size() == replicaMembers.size(), "replica zcard");
+        for (int index = 0; index < expectedMembers.size(); index++) {
+            checkState(expectedMembers.get(index).getMember().equals(replicaMembers.get(index).getMember())
+                    && expectedMembers.get(index).getScore().equals(replicaMembers.get(index).getScore()), "replica");
+        }
+        System.out.println("ZSetListenerTest success, members = " + replica.zcard());
+    }
+
+    private static void apply(GenericZSet<Long, Long> replica, List<ZSetEventBuffer.Event<Long, Long>> events) {
+        for (ZSetEventBuffer.Event<Long, Long> event : events) {
+            if (event.type == ZSetEventType.ADDED) {
+                checkState(event.oldScore == null && replica.zscore(event.member) == null, "added");
+                replica.zadd(event.newScore, event.member);
+                checkState(event.newRank == replica.zrank(event.member), "added rank");
+            } else if (event.type == ZSetEventType.REMOVED) {
+                checkState(event.newScore == null && Objects.equals(replica.zscore(event.member), event.oldScore), "removed");
+                checkState(event.oldRank == replica.zrank(event.member), "removed rank");
+                replica.zrem(event.member);
+            } else if (event.type == ZSetEventType.RANGE_REMOVED) {
+                checkState(event.member == null && !event.members.isEmpty(), "range removed");
+                checkState(event.oldRank == replica.zrank(event.members.get(0).getMember()), "range removed rank");
+                for (Member<Long, Long> member : event.members) {
+                    checkState(Objects.equals(replica.zscore(member.getMember()), member.getScore()), "range removed score");
+                    replica.zrem(member.getMember());
+                }
+            } else {
+                checkState(Objects.equals(replica.zscore(event.member), event.oldScore), "changed");
+                checkState(event.oldRank == replica.zrank(event.member), "changed old rank");
+                replica.zadd(event.newScore, event.member);
+                checkState(event.newRank == replica.zrank(event.member), "changed new rank");
+            }
+        }
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.wjybxx.zset.long2double;
+
+import com.wjybxx.zset.object2double.DoubleScoreHandlers;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.LongStream;
+
+/**
+ * {@link Long2DoubleZSet}的测试用例
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Long2DoubleZSetTest {
+
+    public static void main(String[] args) {
+        final Long2DoubleZSet zSet = Long2DoubleZSet.newZSet(DoubleScoreHandlers.scoreHandler());
+
+        // 插入数据
+        LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+            zSet.zadd(randomScore(), playerId);
+        });
+
+        // 覆盖数据
+        LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+            zSet.zadd(randomScore(), playerId);
+        });
+
+        System.out.println("zcount(-inf, 0.5): " + zSet.zcount(Double.NEGATIVE_INFINITY, 0.5));
+
+        System.out.println("------------------------- dump ----------------------");
+        System.out.println(zSet.dump());
+        System.out.println();
+    }
+
+    private static double randomScore() {
+        return ThreadLocalRandom.current().nextDouble();
+    }
+}
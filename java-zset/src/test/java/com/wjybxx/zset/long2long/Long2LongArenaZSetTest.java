@@ -0,0 +1,50 @@
+package com.wjybxx.zset.long2long;
+
+import com.wjybxx.zset.object2long.LongScoreHandlers;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.LongStream;
+
+/**
+ * {@link Long2LongArenaZSet}的测试用例
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Long2LongArenaZSetTest {
+
+    public static void main(String[] args) {
+        // 积分高的排前面，预分配空间
+        final Long2LongArenaZSet zSet = Long2LongArenaZSet.newZSet(LongScoreHandlers.scoreHandler(true), 10000);
+
+        // 插入数据
+        LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+            zSet.zadd(randomScore(), playerId);
+        });
+
+        // 覆盖数据
+        LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+            zSet.zadd(randomScore(), playerId);
+        });
+
+        // 删除一半数据，再重新插入 - 复用空闲节点
+        LongStream.rangeClosed(1, 5000).forEach(zSet::zrem);
+        LongStream.rangeClosed(1, 5000).forEach(playerId -> {
+            zSet.zadd(randomScore(), playerId);
+        });
+
+        // 增量更新
+        LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+            zSet.zincrby(randomScore(), playerId);
+        });
+
+        System.out.println("------------------------- dump ----------------------");
+        System.out.println(zSet.dump());
+        System.out.println();
+    }
+
+    private static long randomScore() {
+        return ThreadLocalRandom.current().nextLong(0, 10000);
+    }
+}
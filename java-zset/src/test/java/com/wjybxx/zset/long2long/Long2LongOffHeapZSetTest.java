@@ -0,0 +1,88 @@
+package com.wjybxx.zset.long2long;
+
+import com.wjybxx.zset.object2long.LongScoreHandlers;
+
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.LongStream;
+
+/**
+ * {@link Long2LongOffHeapZSet}的测试用例
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Long2LongOffHeapZSetTest {
+
+    public static void main(String[] args) {
+        // 积分高的排前面，用完后需要释放堆外内存
+        try (final Long2LongOffHeapZSet zSet = Long2LongOffHeapZSet.newZSet(LongScoreHandlers.scoreHandler(true), 10000)) {
+            // 插入数据
+            LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+                zSet.zadd(randomScore(), playerId);
+            });
+
+            // 已满
+            try {
+                zSet.zadd(randomScore(), 10001);
+            } catch (IllegalStateException e) {
+                System.out.println(e.getMessage());
+            }
+
+            // 覆盖数据
+            LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+                zSet.zadd(randomScore(), playerId);
+            });
+
+            // 增量更新
+            LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+                zSet.zincrby(randomScore(), playerId);
+            });
+
+            System.out.println("------------------------- top 10 ----------------------");
+            System.out.println(zSet.zrangeByRank(0, 9));
+            System.out.println();
+        }
+
+        closeTest();
+    }
+
+    /**
+     * 释放以后再访问zset（包括释放之前创建的迭代器）应该抛出{@link IllegalStateException}，而不是访问已释放的内存
+     */
+    private static void closeTest() {
+        final Long2LongOffHeapZSet zSet = Long2LongOffHeapZSet.newZSet(LongScoreHandlers.scoreHandler(true), 100);
+        zSet.zadd(1, 1);
+        zSet.zadd(2, 2);
+        final Iterator<Long2LongMember> itr = zSet.iterator();
+        zSet.close();
+        // 重复调用是安全的
+        zSet.close();
+
+        checkClosed(() -> zSet.zadd(3, 3));
+        checkClosed(() -> zSet.zrem(1));
+        checkClosed(() -> zSet.zscore(1));
+        checkClosed(() -> zSet.zrank(1));
+        checkClosed(() -> zSet.zrangeByRank(0, -1));
+        checkClosed(zSet::zcard);
+        checkClosed(itr::next);
+        System.out.println("closeTest success");
+    }
+
+    private static void checkClosed(Runnable task) {
+        try {
+            task.run();
+        } catch (IllegalStateException e) {
+            if ("zset is closed".equals(e.getMessage())) {
+                return;
+            }
+            throw e;
+        }
+        throw new IllegalStateException("closed zset is still accessible");
+    }
+
+    private static long randomScore() {
+        return ThreadLocalRandom.current().nextLong(0, 10000);
+    }
+}
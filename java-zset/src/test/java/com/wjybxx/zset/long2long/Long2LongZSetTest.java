@@ -0,0 +1,44 @@
+package com.wjybxx.zset.long2long;
+
+import com.wjybxx.zset.object2long.LongScoreHandlers;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.LongStream;
+
+/**
+ * {@link Long2LongZSet}的测试用例
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Long2LongZSetTest {
+
+    public static void main(String[] args) {
+        // 积分高的排前面
+        final Long2LongZSet zSet = Long2LongZSet.newZSet(LongScoreHandlers.scoreHandler(true));
+
+        // 插入数据
+        LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+            zSet.zadd(randomScore(), playerId);
+        });
+
+        // 覆盖数据
+        LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+            zSet.zadd(randomScore(), playerId);
+        });
+
+        // 增量更新
+        LongStream.rangeClosed(1, 10000).forEach(playerId -> {
+            zSet.zincrby(randomScore(), playerId);
+        });
+
+        System.out.println("------------------------- dump ----------------------");
+        System.out.println(zSet.dump());
+        System.out.println();
+    }
+
+    private static long randomScore() {
+        return ThreadLocalRandom.current().nextLong(0, 10000);
+    }
+}
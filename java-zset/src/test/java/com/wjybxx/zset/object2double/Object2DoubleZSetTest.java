@@ -0,0 +1,59 @@
+package com.wjybxx.zset.object2double;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * {@link Object2DoubleZSet}的测试用例
+ * 评分类排行榜，score是小数，并测试redis中的-inf/+inf以及NaN的处理。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2DoubleZSetTest {
+
+    public static void main(String[] args) {
+        final Object2DoubleZSet<String> zSet = Object2DoubleZSet.newStringKeyZSet(DoubleScoreHandlers.scoreHandler(true));
+
+        // 插入数据
+        IntStream.rangeClosed(1, 10000).forEach(index -> {
+            zSet.zadd(randomScore(), "member" + index);
+        });
+
+        // 衰减
+        IntStream.rangeClosed(1, 10000).forEach(index -> {
+            zSet.zincrby(-randomScore() / 10, "member" + index);
+        });
+
+        zSet.zadd(Double.POSITIVE_INFINITY, "top");
+        zSet.zadd(Double.NEGATIVE_INFINITY, "bottom");
+
+        try {
+            zSet.zadd(Double.NaN, "nan");
+            throw new AssertionError("NaN must be rejected");
+        } catch (IllegalArgumentException ignore) {
+            System.out.println("reject NaN: " + ignore.getMessage());
+        }
+
+        try {
+            // +inf + -inf = NaN
+            zSet.zincrby(Double.NEGATIVE_INFINITY, "top");
+            throw new AssertionError("NaN must be rejected");
+        } catch (IllegalArgumentException ignore) {
+            System.out.println("reject NaN: " + ignore.getMessage() + ", top score: " + zSet.zscore("top"));
+        }
+
+        System.out.println("zcount(-inf, +inf): " + zSet.zcount(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+        System.out.println("zrangeByScore(+inf, (50): " + zSet.zrangeByScoreWithOptions(
+                new DoubleScoreRangeSpec(Double.POSITIVE_INFINITY, false, 50, true), 0, 5, false));
+
+        System.out.println("------------------------- dump ----------------------");
+        System.out.println(zSet.dump());
+        System.out.println();
+    }
+
+    private static double randomScore() {
+        return ThreadLocalRandom.current().nextDouble(0, 100);
+    }
+}
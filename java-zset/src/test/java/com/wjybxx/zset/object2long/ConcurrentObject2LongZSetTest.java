@@ -0,0 +1,190 @@
+package com.wjybxx.zset.object2long;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link ConcurrentObject2LongZSet}的测试用例
+ * 1. 扩展性测试：线程数从1增长到cpu核数，每个线程执行相同的混合操作(zincrby、zscore、zrank)，
+ * 对比{@link ConcurrentObject2LongZSet}与加全局锁的{@link Object2LongZSet}的吞吐量。
+ * 2. 一致性测试：多线程修改结束以后，与{@link Object2LongZSet}对比结果是否一致。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JMH等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class ConcurrentObject2LongZSetTest {
+
+    private static final int MEMBER_COUNT = 10_000;
+    private static final int OPERATION_COUNT_PER_THREAD = 500_000;
+
+    public static void main(String[] args) throws Exception {
+        scalabilityTest();
+        consistencyTest();
+    }
+
+    private static void scalabilityTest() throws Exception {
+        final int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            final ConcurrentObject2LongZSet<Long> concurrentZSet = ConcurrentObject2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(false));
+            final long concurrentNanos = runMixed(threads, new ZSetOperations() {
+                @Override
+                public void zincrby(long increment, Long member) {
+                    concurrentZSet.zincrby(increment, member);
+                }
+
+                @Override
+                public long zscore(Long member) {
+                    return concurrentZSet.zscoreOrDefault(member, 0);
+                }
+
+                @Override
+                public int zrank(Long member) {
+                    return concurrentZSet.zrank(member);
+                }
+            });
+
+            final Object2LongZSet<Long> lockedZSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(false));
+            final long lockedNanos = runMixed(threads, new ZSetOperations() {
+                @Override
+                public void zincrby(long increment, Long member) {
+                    synchronized (lockedZSet) {
+                        lockedZSet.zincrby(increment, member);
+                    }
+                }
+
+                @Override
+                public long zscore(Long member) {
+                    synchronized (lockedZSet) {
+                        return lockedZSet.zscoreOrDefault(member, 0);
+                    }
+                }
+
+                @Override
+                public int zrank(Long member) {
+                    synchronized (lockedZSet) {
+                        return lockedZSet.zrank(member);
+                    }
+                }
+            });
+
+            final long totalOperations = (long) threads * OPERATION_COUNT_PER_THREAD;
+            System.out.println(String.format("threads %d, concurrent: %d ops/ms, locked: %d ops/ms",
+                    threads, totalOperations * 1000_000 / concurrentNanos, totalOperations * 1000_000 / lockedNanos));
+        }
+    }
+
+    /**
+     * 混合操作：80% zincrby，19.9% zscore，0.1% zrank
+     * 注意：{@link ConcurrentObject2LongZSet#zrank(Object)}的时间复杂度为O(rank)，因此排名查询的比例不能太高。
+     *
+     * @return 耗时(纳秒)
+     */
+    private static long runMixed(int threads, ZSetOperations operations) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final long startTime = System.nanoTime();
+            final List<Future<?>> futures = new ArrayList<>(threads);
+            for (int index = 0; index < threads; index++) {
+                final Random random = new Random(index);
+                futures.add(executor.submit(() -> {
+                    for (int count = 0; count < OPERATION_COUNT_PER_THREAD; count++) {
+                        final long member = random.nextInt(MEMBER_COUNT);
+                        final int operation = random.nextInt(1000);
+                        if (operation < 800) {
+                            operations.zincrby(random.nextInt(100), member);
+                        } else if (operation < 999) {
+                            operations.zscore(member);
+                        } else {
+                            operations.zrank(member);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - startTime;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void consistencyTest() throws Exception {
+        final ConcurrentObject2LongZSet<Long> concurrentZSet = ConcurrentObject2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(false));
+        final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(threads);
+            for (int index = 0; index < threads; index++) {
+                final Random random = new Random(index);
+                futures.add(executor.submit(() -> {
+                    for (int count = 0; count < 100_000; count++) {
+                        final long member = random.nextInt(1000);
+                        final int operation = random.nextInt(10);
+                        if (operation < 5) {
+                            concurrentZSet.zincrby(random.nextInt(100), member);
+                        } else if (operation < 6) {
+                            concurrentZSet.zadd(random.nextInt(1000), member);
+                        } else if (operation < 7) {
+                            concurrentZSet.zaddnx(random.nextInt(1000), member);
+                        } else if (operation < 8) {
+                            concurrentZSet.zrem(member);
+                        } else if (operation < 9) {
+                            concurrentZSet.zpopFirst();
+                        } else {
+                            concurrentZSet.zrank(member);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // 没有并发修改时，结果必须是精确的
+        final Object2LongZSet<Long> zSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(false));
+        for (Object2LongMember<Long> member : concurrentZSet) {
+            zSet.zadd(member.getScore(), member.getMember());
+        }
+        checkState(zSet.zcard() == concurrentZSet.zcard(), "zcard");
+        for (long member = 0; member < 1000; member++) {
+            checkState(Objects.equals(zSet.zscore(member), concurrentZSet.zscore(member)), "zscore");
+            checkState(zSet.zrank(member) == concurrentZSet.zrank(member), "zrank");
+            checkState(zSet.zrevrank(member) == concurrentZSet.zrevrank(member), "zrevrank");
+        }
+        checkState(zSet.zrangeByRank(0, -1).toString().equals(concurrentZSet.zrangeByRank(0, -1).toString()), "zrangeByRank");
+        checkState(zSet.zrangeByScore(500, 100).toString().equals(concurrentZSet.zrangeByScore(500, 100).toString()), "zrangeByScore");
+        for (int rank = -2; rank <= zSet.zcard() + 1; rank++) {
+            checkState(Objects.equals(String.valueOf(zSet.zmemberByRank(rank)), String.valueOf(concurrentZSet.zmemberByRank(rank))), "zmemberByRank");
+            checkState(Objects.equals(String.valueOf(zSet.zrevmemberByRank(rank)), String.valueOf(concurrentZSet.zrevmemberByRank(rank))), "zrevmemberByRank");
+        }
+        checkState(zSet.zlimit(100) == concurrentZSet.zlimit(100), "zlimit");
+        checkState(zSet.zrangeByRank(0, -1).toString().equals(concurrentZSet.zrangeByRank(0, -1).toString()), "zrangeByRank");
+        System.out.println("consistencyTest success, zcard = " + concurrentZSet.zcard());
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+
+    private interface ZSetOperations {
+
+        void zincrby(long increment, Long member);
+
+        long zscore(Long member);
+
+        int zrank(Long member);
+    }
+}
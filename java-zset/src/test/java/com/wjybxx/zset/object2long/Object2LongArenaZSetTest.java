@@ -0,0 +1,40 @@
+package com.wjybxx.zset.object2long;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * {@link Object2LongArenaZSet}的测试用例
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongArenaZSetTest {
+
+    public static void main(String[] args) {
+        // 积分高的排前面
+        final Object2LongArenaZSet<String> zSet = Object2LongArenaZSet.newStringKeyZSet(LongScoreHandlers.scoreHandler(true));
+
+        // 插入数据
+        IntStream.rangeClosed(1, 10000).forEach(playerId -> {
+            zSet.zadd(randomScore(), "player" + playerId);
+        });
+
+        // 删除一半数据，再重新插入 - 复用空闲节点
+        IntStream.rangeClosed(1, 5000).forEach(playerId -> {
+            zSet.zrem("player" + playerId);
+        });
+        IntStream.rangeClosed(1, 5000).forEach(playerId -> {
+            zSet.zadd(randomScore(), "player" + playerId);
+        });
+
+        System.out.println("------------------------- top 10 ----------------------");
+        System.out.println(zSet.zrangeByRank(0, 9));
+        System.out.println();
+    }
+
+    private static long randomScore() {
+        return ThreadLocalRandom.current().nextLong(0, 10000);
+    }
+}
@@ -0,0 +1,106 @@
+package com.wjybxx.zset.object2long;
+
+import java.util.Random;
+
+/**
+ * {@link Object2LongBTreeZSet}的测试用例
+ * 1. 与{@link Object2LongZSet}(跳表)执行相同的操作，检查结果是否一致。
+ * 2. 简单的性能对比：插入、zrank、zrangeByRank。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JMH测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongBTreeZSetTest {
+
+    private static final int MEMBER_COUNT = 1000_000;
+    private static final int QUERY_COUNT = 200_000;
+    private static final int PAGE_SIZE = 20;
+
+    public static void main(String[] args) {
+        // 预热
+        for (int round = 0; round < 2; round++) {
+            benchmark(false);
+        }
+        benchmark(true);
+    }
+
+    private static void benchmark(boolean print) {
+        final Object2LongZSet<Long> skipListZSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+        final Object2LongBTreeZSet<Long> bTreeZSet = Object2LongBTreeZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+
+        // 使用相同的随机种子，保证两个zset执行相同的操作
+        long skipListTime = System.nanoTime();
+        final Random skipListRandom = new Random(MEMBER_COUNT);
+        for (long playerId = 1; playerId <= MEMBER_COUNT; playerId++) {
+            skipListZSet.zadd(skipListRandom.nextInt(MEMBER_COUNT), playerId);
+        }
+        skipListTime = System.nanoTime() - skipListTime;
+
+        long bTreeTime = System.nanoTime();
+        final Random bTreeRandom = new Random(MEMBER_COUNT);
+        for (long playerId = 1; playerId <= MEMBER_COUNT; playerId++) {
+            bTreeZSet.zadd(bTreeRandom.nextInt(MEMBER_COUNT), playerId);
+        }
+        bTreeTime = System.nanoTime() - bTreeTime;
+        printResult(print, "zadd", skipListTime, bTreeTime);
+
+        // zrank
+        long checksum = 0;
+        skipListTime = System.nanoTime();
+        final Random skipListQueryRandom = new Random(QUERY_COUNT);
+        for (int index = 0; index < QUERY_COUNT; index++) {
+            checksum += skipListZSet.zrank((long) skipListQueryRandom.nextInt(MEMBER_COUNT) + 1);
+        }
+        skipListTime = System.nanoTime() - skipListTime;
+
+        bTreeTime = System.nanoTime();
+        final Random bTreeQueryRandom = new Random(QUERY_COUNT);
+        for (int index = 0; index < QUERY_COUNT; index++) {
+            checksum -= bTreeZSet.zrank((long) bTreeQueryRandom.nextInt(MEMBER_COUNT) + 1);
+        }
+        bTreeTime = System.nanoTime() - bTreeTime;
+        checkState(checksum == 0, "zrank");
+        printResult(print, "zrank", skipListTime, bTreeTime);
+
+        // zrangeByRank
+        skipListTime = System.nanoTime();
+        final Random skipListRangeRandom = new Random(QUERY_COUNT);
+        for (int index = 0; index < QUERY_COUNT; index++) {
+            final int start = skipListRangeRandom.nextInt(MEMBER_COUNT);
+            checksum += skipListZSet.zrangeByRank(start, start + PAGE_SIZE - 1).size();
+        }
+        skipListTime = System.nanoTime() - skipListTime;
+
+        bTreeTime = System.nanoTime();
+        final Random bTreeRangeRandom = new Random(QUERY_COUNT);
+        for (int index = 0; index < QUERY_COUNT; index++) {
+            final int start = bTreeRangeRandom.nextInt(MEMBER_COUNT);
+            checksum -= bTreeZSet.zrangeByRank(start, start + PAGE_SIZE - 1).size();
+        }
+        bTreeTime = System.nanoTime() - bTreeTime;
+        checkState(checksum == 0, "zrangeByRank");
+        printResult(print, "zrangeByRank", skipListTime, bTreeTime);
+
+        // 结果一致性
+        checkState(skipListZSet.dump().equals(bTreeZSet.dump()), "dump");
+        checkState(skipListZSet.zrangeByRank(0, 99).toString().equals(bTreeZSet.zrangeByRank(0, 99).toString()), "top 100");
+        if (print) {
+            System.out.println("------------------------- top 10 ----------------------");
+            System.out.println(bTreeZSet.zrangeByRank(0, 9));
+        }
+    }
+
+    private static void printResult(boolean print, String operation, long skipListTime, long bTreeTime) {
+        if (print) {
+            System.out.println(String.format("%-14s skipList: %6d ms, bTree: %6d ms", operation, skipListTime / 1000_000, bTreeTime / 1000_000));
+        }
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.wjybxx.zset.object2long;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * {@link Object2LongCompactZSet}的测试用例
+ * 1. 与{@link Object2LongZSet}(跳表)执行相同的操作，检查结果是否一致，成员数量会反复越过转换阈值。
+ * 2. 简单的内存对比：创建大量的小集合，对比堆内存占用。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JOL等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongCompactZSetTest {
+
+    private static final int MAX_COMPACT_SIZE = 16;
+    private static final int OPERATION_COUNT = 200_000;
+
+    private static final int ZSET_COUNT = 20_000;
+    private static final int ZSET_MEMBER_COUNT = 32;
+
+    public static void main(String[] args) {
+        consistencyTest();
+        memoryTest();
+    }
+
+    private static void consistencyTest() {
+        final Object2LongZSet<Long> skipListZSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+        final Object2LongCompactZSet<Long> compactZSet = Object2LongCompactZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true), MAX_COMPACT_SIZE);
+
+        final Random random = new Random(OPERATION_COUNT);
+        int convertCount = 0;
+        boolean compact = true;
+        for (int index = 0; index < OPERATION_COUNT; index++) {
+            final long member = random.nextInt(MAX_COMPACT_SIZE * 2);
+            final long score = random.nextInt(100);
+            // 交替的增长和收缩阶段，使成员数量反复越过转换阈值
+            final boolean growing = (index / 1000) % 2 == 0;
+            final int operation = random.nextInt(10);
+            final int addBound = growing ? 5 : 1;
+            if (operation < addBound) {
+                skipListZSet.zadd(score, member);
+                compactZSet.zadd(score, member);
+            } else if (operation < addBound + 1) {
+                checkState(skipListZSet.zincrby(score - 50, member) == compactZSet.zincrby(score - 50, member), "zincrby");
+            } else if (operation < 9) {
+                checkState(String.valueOf(skipListZSet.zrem(member)).equals(String.valueOf(compactZSet.zrem(member))), "zrem");
+            } else {
+                checkState(skipListZSet.zcount(score, score + 20) == compactZSet.zcount(score, score + 20), "zcount");
+            }
+
+            checkState(skipListZSet.zrank(member) == compactZSet.zrank(member), "zrank");
+            checkState(skipListZSet.dump().equals(compactZSet.dump()), "dump");
+
+            if (compact != compactZSet.isCompact()) {
+                compact = compactZSet.isCompact();
+                convertCount++;
+            }
+        }
+        System.out.println("consistencyTest success, convertCount = " + convertCount);
+    }
+
+    private static void memoryTest() {
+        final long skipListMemory = usedMemory(() -> {
+            final List<Object2LongZSet<Long>> zSetList = new ArrayList<>(ZSET_COUNT);
+            for (int index = 0; index < ZSET_COUNT; index++) {
+                final Object2LongZSet<Long> zSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+                for (long playerId = 1; playerId <= ZSET_MEMBER_COUNT; playerId++) {
+                    zSet.zadd(playerId * 10, playerId);
+                }
+                zSetList.add(zSet);
+            }
+            return zSetList;
+        });
+
+        final long compactMemory = usedMemory(() -> {
+            final List<Object2LongCompactZSet<Long>> zSetList = new ArrayList<>(ZSET_COUNT);
+            for (int index = 0; index < ZSET_COUNT; index++) {
+                final Object2LongCompactZSet<Long> zSet = Object2LongCompactZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+                for (long playerId = 1; playerId <= ZSET_MEMBER_COUNT; playerId++) {
+                    zSet.zadd(playerId * 10, playerId);
+                }
+                zSetList.add(zSet);
+            }
+            return zSetList;
+        });
+
+        System.out.println(String.format("%d zset * %d member, skipList: %d bytes/zset, compact: %d bytes/zset",
+                ZSET_COUNT, ZSET_MEMBER_COUNT, skipListMemory / ZSET_COUNT, compactMemory / ZSET_COUNT));
+    }
+
+    /**
+     * 粗略计算创建的对象占用的堆内存 - 执行期间保持返回值的引用
+     */
+    private static long usedMemory(Supplier<Object> supplier) {
+        final long before = currentUsedMemory();
+        final Object holder = supplier.get();
+        final long after = currentUsedMemory();
+        if (holder.hashCode() == 0) {
+            System.out.println();
+        }
+        return after - before;
+    }
+
+    private static long currentUsedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int index = 0; index < 3; index++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.wjybxx.zset.object2long;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * {@link Object2LongCowZSet}的测试用例
+ * 1. 一致性测试：与{@link Object2LongZSet}执行相同的操作，并不定期的创建快照，最后检查所有快照仍然等于创建时的zset。
+ * 2. 快照测试：百万成员的zset，写入期间定期创建快照，统计创建快照的耗时以及对写入的影响。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JMH等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongCowZSetTest {
+
+    private static final int OPERATION_COUNT = 200_000;
+
+    private static final int MEMBER_COUNT = 1_000_000;
+    private static final int UPDATE_COUNT = 1_000_000;
+    private static final int SNAPSHOT_INTERVAL = 100_000;
+
+    public static void main(String[] args) {
+        consistencyTest();
+        snapshotTest(false);
+        snapshotTest(true);
+    }
+
+    private static void consistencyTest() {
+        final Object2LongZSet<Long> zSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+        final Object2LongCowZSet<Long> cowZSet = Object2LongCowZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+
+        final List<Object2LongCowZSet<Long>> snapshots = new ArrayList<>();
+        final List<String> expectedSnapshots = new ArrayList<>();
+
+        final Random random = new Random(OPERATION_COUNT);
+        for (int index = 0; index < OPERATION_COUNT; index++) {
+            final long member = random.nextInt(1000);
+            final long score = random.nextInt(500);
+            final int operation = random.nextInt(10);
+            if (operation < 4) {
+                zSet.zadd(score, member);
+                cowZSet.zadd(score, member);
+            } else if (operation < 6) {
+                checkState(zSet.zincrby(score - 250, member) == cowZSet.zincrby(score - 250, member), "zincrby");
+            } else if (operation < 7) {
+                checkState(Objects.equals(zSet.zrem(member), cowZSet.zrem(member)), "zrem");
+            } else if (operation < 8) {
+                checkState(zSet.zrangeByScore(score, score + 20).toString().equals(cowZSet.zrangeByScore(score, score + 20).toString()), "zrangeByScore");
+                checkState(zSet.zcount(score, score + 20) == cowZSet.zcount(score, score + 20), "zcount");
+                final LongScoreRangeSpec spec = new LongScoreRangeSpec(score, random.nextBoolean(), score + random.nextInt(60) - 20, random.nextBoolean());
+                final int offset = random.nextInt(10);
+                final int limit = random.nextInt(10) - 2;
+                final boolean reverse = random.nextBoolean();
+                checkState(zSet.zrangeByScoreWithOptions(spec, offset, limit, reverse).toString()
+                        .equals(cowZSet.zrangeByScoreWithOptions(spec, offset, limit, reverse).toString()), "zrangeByScoreWithOptions");
+                final int rank = random.nextInt(zSet.zcard() + 10) - 5;
+                final Iterator<Object2LongMember<Long>> expectedItr = zSet.zscan(rank);
+                final Iterator<Object2LongMember<Long>> itr = cowZSet.zscan(rank);
+                while (expectedItr.hasNext()) {
+                    checkState(itr.hasNext() && expectedItr.next().toString().equals(itr.next().toString()), "zscan");
+                }
+                checkState(!itr.hasNext(), "zscan");
+            } else if (operation < 9) {
+                final int removeOperation = random.nextInt(5);
+                if (removeOperation == 0) {
+                    checkState(String.valueOf(zSet.zpopLast()).equals(String.valueOf(cowZSet.zpopLast())), "zpopLast");
+                } else if (removeOperation == 1) {
+                    final int start = random.nextInt(zSet.zcard() + 10) - 5;
+                    checkState(zSet.zremrangeByRank(start, start + 3) == cowZSet.zremrangeByRank(start, start + 3), "zremrangeByRank");
+                } else if (removeOperation == 2) {
+                    checkState(zSet.zremrangeByScore(score, score + 2) == cowZSet.zremrangeByScore(score, score + 2), "zremrangeByScore");
+                } else if (removeOperation == 3) {
+                    final int count = zSet.zcard() - random.nextInt(3);
+                    checkState(zSet.zlimit(count) == cowZSet.zlimit(count), "zlimit");
+                } else {
+                    final int count = zSet.zcard() - random.nextInt(3);
+                    checkState(zSet.zrevlimit(count) == cowZSet.zrevlimit(count), "zrevlimit");
+                }
+                checkState(zSet.zcard() == cowZSet.zcard(), "zcard");
+            } else if (random.nextInt(100) == 0) {
+                snapshots.add(cowZSet.snapshot());
+                expectedSnapshots.add(zSet.zrangeByRank(0, -1).toString());
+            }
+
+            checkState(zSet.zrank(member) == cowZSet.zrank(member), "zrank");
+        }
+        checkState(zSet.zrangeByRank(0, -1).toString().equals(cowZSet.zrangeByRank(0, -1).toString()), "zrangeByRank");
+
+        // 快照不受之后修改的影响
+        for (int index = 0; index < snapshots.size(); index++) {
+            checkState(expectedSnapshots.get(index).equals(snapshots.get(index).zrangeByRank(0, -1).toString()), "snapshot");
+        }
+        System.out.println("consistencyTest success, snapshots = " + snapshots.size());
+    }
+
+    private static void snapshotTest(boolean takeSnapshot) {
+        final Object2LongCowZSet<Long> cowZSet = Object2LongCowZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+        for (long member = 0; member < MEMBER_COUNT; member++) {
+            cowZSet.zadd(member, member);
+        }
+
+        final Random random = new Random(MEMBER_COUNT);
+        long snapshotNanos = 0;
+        int snapshotCount = 0;
+        Object2LongCowZSet<Long> snapshot = null;
+        final long startTime = System.nanoTime();
+        for (int index = 1; index <= UPDATE_COUNT; index++) {
+            cowZSet.zincrby(random.nextInt(100), (long) random.nextInt(MEMBER_COUNT));
+
+            if (takeSnapshot && index % SNAPSHOT_INTERVAL == 0) {
+                final long snapshotStartTime = System.nanoTime();
+                snapshot = cowZSet.snapshot();
+                snapshotNanos += System.nanoTime() - snapshotStartTime;
+                snapshotCount++;
+            }
+        }
+        final long costMillis = (System.nanoTime() - startTime) / 1000_000;
+
+        System.out.println(String.format("snapshot %s, %d members, %d zincrby cost %d ms, %d snapshots cost %d ns, first: %s",
+                takeSnapshot, MEMBER_COUNT, UPDATE_COUNT, costMillis, snapshotCount, snapshotNanos,
+                snapshot == null ? null : snapshot.zmemberByRank(0)));
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
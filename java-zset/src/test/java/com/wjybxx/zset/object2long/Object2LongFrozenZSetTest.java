@@ -0,0 +1,197 @@
+package com.wjybxx.zset.object2long;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * {@link Object2LongFrozenZSet}的测试用例
+ * 1. 冻结一个{@link Object2LongZSet}，检查各个查询的结果是否与跳表一致。
+ * 2. 对比跳表和冻结后的内存占用，以及zrank和zcount的速度。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JMH、JOL等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongFrozenZSetTest {
+
+    private static final int MEMBER_COUNT = 100_000;
+    private static final int BENCHMARK_MEMBER_COUNT = 1_000_000;
+    private static final int QUERY_COUNT = 1_000_000;
+
+    public static void main(String[] args) {
+        consistencyTest(LongScoreHandlers.scoreHandler(false));
+        consistencyTest(LongScoreHandlers.scoreHandler(true));
+        // 少于一个块、恰好一个块的边界情况
+        for (int memberCount = 0; memberCount <= 40; memberCount++) {
+            smallTest(memberCount);
+        }
+        benchmark();
+    }
+
+    private static void consistencyTest(LongScoreHandler scoreHandler) {
+        final Object2LongZSet<Long> zset = Object2LongZSet.newLongKeyZSet(scoreHandler);
+        final Random random = new Random(0);
+        for (long member = 0; member < MEMBER_COUNT; member++) {
+            // 分数范围较小，存在大量相同的分数
+            zset.zadd(random.nextInt(MEMBER_COUNT / 10), member);
+        }
+        final Object2LongFrozenZSet<Long> frozen = zset.freeze();
+        checkConsistency(zset, frozen, random, MEMBER_COUNT / 10);
+
+        // 冻结以后修改原zset，不影响冻结的zset
+        final List<Object2LongMember<Long>> before = frozen.zrangeByRank(0, -1);
+        zset.zremrangeByRank(0, 100);
+        checkState(equals(before, frozen.zrangeByRank(0, -1)), "freeze copy");
+    }
+
+    private static void smallTest(int memberCount) {
+        final Object2LongZSet<Long> zset = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(false));
+        for (long member = 0; member < memberCount; member++) {
+            zset.zadd(member / 3, member);
+        }
+        checkConsistency(zset, zset.freeze(), new Random(memberCount), memberCount / 3 + 1);
+    }
+
+    private static void checkConsistency(Object2LongZSet<Long> zset, Object2LongFrozenZSet<Long> frozen, Random random, int scoreBound) {
+        final int memberCount = zset.zcard();
+        checkState(frozen.zcard() == memberCount, "zcard");
+        for (long member = -1; member <= memberCount; member++) {
+            checkState(frozen.zrank(member) == zset.zrank(member), "zrank");
+            checkState(frozen.zrevrank(member) == zset.zrevrank(member), "zrevrank");
+            checkState(String.valueOf(frozen.zscore(member)).equals(String.valueOf(zset.zscore(member))), "zscore");
+        }
+        for (int rank = -1; rank <= memberCount; rank++) {
+            checkState(equals(frozen.zmemberByRank(rank), zset.zmemberByRank(rank)), "zmemberByRank");
+            checkState(equals(frozen.zrevmemberByRank(rank), zset.zrevmemberByRank(rank)), "zrevmemberByRank");
+        }
+        final int bound = Math.max(1, memberCount * 2);
+        for (int index = 0; index < 1000; index++) {
+            final int start = random.nextInt(bound) - memberCount;
+            final int end = random.nextInt(bound) - memberCount;
+            checkState(equals(frozen.zrangeByRank(start, end), zset.zrangeByRank(start, end)), "zrangeByRank");
+            checkState(equals(frozen.zrevrangeByRank(start, end), zset.zrevrangeByRank(start, end)), "zrevrangeByRank");
+
+            final long min = random.nextInt(scoreBound + 2) - 1;
+            final long max = min + random.nextInt(20) - 5;
+            checkState(equals(frozen.zrangeByScore(min, max), zset.zrangeByScore(min, max)), "zrangeByScore");
+            checkState(equals(frozen.zrevrangeByScore(min, max), zset.zrevrangeByScore(min, max)), "zrevrangeByScore");
+            checkState(frozen.zcount(min, max) == zset.zcount(min, max), "zcount");
+            final LongScoreRangeSpec spec = new LongScoreRangeSpec(min, random.nextBoolean(), max, random.nextBoolean());
+            checkState(equals(frozen.zrangeByScore(spec), zset.zrangeByScore(spec)), "zrangeByScore spec");
+            checkState(frozen.zcount(spec) == zset.zcount(spec), "zcount spec");
+        }
+    }
+
+    private static void benchmark() {
+        final Long[] members = new Long[BENCHMARK_MEMBER_COUNT];
+        final long[] scores = new long[BENCHMARK_MEMBER_COUNT];
+        final Random random = new Random(0);
+        for (int index = 0; index < BENCHMARK_MEMBER_COUNT; index++) {
+            members[index] = (long) index;
+            scores[index] = random.nextInt(100_000_000);
+        }
+
+        // 成员对象是共享的，不计入内存占用
+        final AtomicReference<Object2LongZSet<Long>> zsetHolder = new AtomicReference<>();
+        final long skipListMemory = usedMemory(() -> {
+            final Object2LongZSet<Long> zset = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+            for (int index = 0; index < BENCHMARK_MEMBER_COUNT; index++) {
+                zset.zadd(scores[index], members[index]);
+            }
+            zsetHolder.set(zset);
+            return zset;
+        });
+        final Object2LongZSet<Long> zset = zsetHolder.get();
+        final AtomicReference<Object2LongFrozenZSet<Long>> frozenHolder = new AtomicReference<>();
+        final long frozenMemory = usedMemory(() -> {
+            frozenHolder.set(zset.freeze());
+            return frozenHolder.get();
+        });
+        final Object2LongFrozenZSet<Long> frozen = frozenHolder.get();
+        System.out.println(String.format("%d members, skipList: %d bytes/member, frozen: %d bytes/member",
+                BENCHMARK_MEMBER_COUNT, skipListMemory / BENCHMARK_MEMBER_COUNT, frozenMemory / BENCHMARK_MEMBER_COUNT));
+
+        // 先执行一轮，预热JIT
+        for (int round = 0; round < 2; round++) {
+            long sum = 0;
+            long startTime = System.nanoTime();
+            for (int index = 0; index < QUERY_COUNT; index++) {
+                sum += zset.zrank(members[random.nextInt(BENCHMARK_MEMBER_COUNT)]);
+            }
+            final long skipListRankNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int index = 0; index < QUERY_COUNT; index++) {
+                sum += frozen.zrank(members[random.nextInt(BENCHMARK_MEMBER_COUNT)]);
+            }
+            final long frozenRankNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int index = 0; index < QUERY_COUNT; index++) {
+                final long min = random.nextInt(100_000_000);
+                sum += zset.zcount(min, min + 1000);
+            }
+            final long skipListCountNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int index = 0; index < QUERY_COUNT; index++) {
+                final long min = random.nextInt(100_000_000);
+                sum += frozen.zcount(min, min + 1000);
+            }
+            final long frozenCountNanos = System.nanoTime() - startTime;
+
+            System.out.println(String.format("zrank skipList %d ns/op, frozen %d ns/op; zcount skipList %d ns/op, frozen %d ns/op (%d)",
+                    skipListRankNanos / QUERY_COUNT, frozenRankNanos / QUERY_COUNT,
+                    skipListCountNanos / QUERY_COUNT, frozenCountNanos / QUERY_COUNT, sum));
+        }
+    }
+
+    /**
+     * 粗略计算创建的对象占用的堆内存 - 执行期间保持返回值的引用
+     */
+    private static long usedMemory(Supplier<Object> supplier) {
+        final long before = currentUsedMemory();
+        final Object holder = supplier.get();
+        final long after = currentUsedMemory();
+        if (holder.hashCode() == 0) {
+            System.out.println();
+        }
+        return after - before;
+    }
+
+    private static long currentUsedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int index = 0; index < 3; index++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static boolean equals(Object2LongMember<Long> a, Object2LongMember<Long> b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getMember().equals(b.getMember()) && a.getScore() == b.getScore();
+    }
+
+    private static boolean equals(List<Object2LongMember<Long>> a, List<Object2LongMember<Long>> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int index = 0; index < a.size(); index++) {
+            if (!equals(a.get(index), b.get(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
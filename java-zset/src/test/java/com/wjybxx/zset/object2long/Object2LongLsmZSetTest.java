@@ -0,0 +1,184 @@
+package com.wjybxx.zset.object2long;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link Object2LongLsmZSet}的测试用例
+ * 1. 与{@link Object2LongZSet}执行相同的随机操作，检查结果是否一致，期间会多次在后台合并。
+ * 2. 以大量成员作为基础层，对比少量成员变化时的写入和查询速度，以及内存占用。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JMH、JOL等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongLsmZSetTest {
+
+    private static final int MEMBER_COUNT = 10_000;
+    private static final int OPERATION_COUNT = 200_000;
+
+    private static final int BENCHMARK_MEMBER_COUNT = 2_000_000;
+    private static final int BENCHMARK_OPERATION_COUNT = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        consistencyTest(LongScoreHandlers.scoreHandler(false));
+        consistencyTest(LongScoreHandlers.scoreHandler(true));
+        benchmark();
+    }
+
+    private static void consistencyTest(LongScoreHandler scoreHandler) {
+        final Object2LongZSet<Long> expected = Object2LongZSet.newLongKeyZSet(scoreHandler);
+        final Random random = new Random(0);
+        for (long member = 0; member < MEMBER_COUNT; member++) {
+            expected.zadd(random.nextInt(MEMBER_COUNT), member);
+        }
+        final Object2LongLsmZSet<Long> lsmZSet = Object2LongLsmZSet.newZSet(expected.freeze());
+        lsmZSet.setAutoCompactMinSize(2000);
+
+        int compactCount = 0;
+        for (int index = 0; index < OPERATION_COUNT; index++) {
+            final long member = random.nextInt(MEMBER_COUNT * 2);
+            final long score = random.nextInt(MEMBER_COUNT);
+            final int operation = random.nextInt(100);
+            if (operation < 40) {
+                expected.zadd(score, member);
+                lsmZSet.zadd(score, member);
+            } else if (operation < 70) {
+                checkState(expected.zincrby(score - MEMBER_COUNT / 2, member) == lsmZSet.zincrby(score - MEMBER_COUNT / 2, member), "zincrby");
+            } else if (operation < 90) {
+                checkState(String.valueOf(expected.zrem(member)).equals(String.valueOf(lsmZSet.zrem(member))), "zrem");
+            } else if (operation < 92) {
+                checkState(expected.zremrangeByScore(score, score + 5) == lsmZSet.zremrangeByScore(score, score + 5), "zremrangeByScore");
+            } else if (operation < 94) {
+                final int start = random.nextInt(MEMBER_COUNT);
+                checkState(expected.zremrangeByRank(start, start + 5) == lsmZSet.zremrangeByRank(start, start + 5), "zremrangeByRank");
+            } else if (operation < 95) {
+                final int count = MEMBER_COUNT - random.nextInt(10);
+                checkState(expected.zlimit(count) == lsmZSet.zlimit(count), "zlimit");
+            } else if (operation < 96) {
+                checkState(expected.zincrbyxx(score, member) == lsmZSet.zincrbyxx(score, member), "zincrbyxx");
+                checkState(equals(expected.zpopFirst(), lsmZSet.zpopFirst()), "zpopFirst");
+                checkState(equals(expected.zpopLast(), lsmZSet.zpopLast()), "zpopLast");
+                final int rank = random.nextInt(MEMBER_COUNT + 10);
+                checkState(equals(expected.zremByRank(rank), lsmZSet.zremByRank(rank)), "zremByRank");
+            } else if (operation < 97) {
+                final LongScoreRangeSpec spec = new LongScoreRangeSpec(score, random.nextBoolean(), score + random.nextInt(200) - 50, random.nextBoolean());
+                final int offset = random.nextInt(30);
+                final int limit = random.nextInt(30) - 5;
+                final boolean reverse = random.nextBoolean();
+                checkState(equals(expected.zrangeByScoreWithOptions(spec, offset, limit, reverse),
+                        lsmZSet.zrangeByScoreWithOptions(spec, offset, limit, reverse)), "zrangeByScoreWithOptions");
+                final int rank = random.nextInt(MEMBER_COUNT + 10) - 5;
+                final Iterator<Object2LongMember<Long>> expectedItr = expected.zscan(rank);
+                final Iterator<Object2LongMember<Long>> itr = lsmZSet.zscan(rank);
+                for (int count = 0; count < 20 && expectedItr.hasNext(); count++) {
+                    checkState(itr.hasNext() && equals(expectedItr.next(), itr.next()), "zscan");
+                }
+                checkState(expectedItr.hasNext() || !itr.hasNext(), "zscan");
+            } else {
+                final int rank = random.nextInt(MEMBER_COUNT + 10);
+                checkState(equals(expected.zmemberByRank(rank), lsmZSet.zmemberByRank(rank)), "zmemberByRank");
+                checkState(equals(expected.zrangeByRank(rank, rank + 20), lsmZSet.zrangeByRank(rank, rank + 20)), "zrangeByRank");
+                checkState(equals(expected.zrevrangeByRank(rank, rank + 20), lsmZSet.zrevrangeByRank(rank, rank + 20)), "zrevrangeByRank");
+                final LongScoreRangeSpec spec = new LongScoreRangeSpec(score, random.nextBoolean(), score + random.nextInt(20) - 5, random.nextBoolean());
+                checkState(equals(expected.zrangeByScore(spec), lsmZSet.zrangeByScore(spec)), "zrangeByScore");
+                checkState(expected.zcount(spec) == lsmZSet.zcount(spec), "zcount");
+            }
+            checkState(expected.zrank(member) == lsmZSet.zrank(member), "zrank");
+            checkState(expected.zcard() == lsmZSet.zcard(), "zcard");
+            if (lsmZSet.isCompacting()) {
+                compactCount++;
+                // 部分合并在后续的写操作中完成，部分合并立即完成
+                if (random.nextBoolean()) {
+                    lsmZSet.awaitCompaction();
+                }
+            }
+        }
+        lsmZSet.awaitCompaction();
+        checkState(equals(expected.zrangeByRank(0, -1), lsmZSet.zrangeByRank(0, -1)), "zrangeByRank all");
+        final Iterator<Object2LongMember<Long>> itr = lsmZSet.iterator();
+        for (Object2LongMember<Long> member : expected) {
+            checkState(equals(member, itr.next()), "iterator");
+        }
+        checkState(!itr.hasNext(), "iterator");
+        System.out.println("consistencyTest success, compactCount = " + compactCount);
+    }
+
+    private static void benchmark() {
+        final LongScoreHandler scoreHandler = LongScoreHandlers.scoreHandler(true);
+        final Object2LongZSet<Long> zset = Object2LongZSet.newLongKeyZSet(scoreHandler);
+        final Random random = new Random(0);
+        for (long member = 0; member < BENCHMARK_MEMBER_COUNT; member++) {
+            zset.zadd(random.nextInt(100_000_000), member);
+        }
+        final Object2LongLsmZSet<Long> lsmZSet = Object2LongLsmZSet.newZSet(zset.freeze());
+        lsmZSet.setAutoCompactMinSize(BENCHMARK_OPERATION_COUNT / 4);
+
+        // 先执行一轮，预热JIT
+        for (int round = 0; round < 2; round++) {
+            long sum = 0;
+            long startTime = System.nanoTime();
+            for (int index = 0; index < BENCHMARK_OPERATION_COUNT; index++) {
+                sum += zset.zincrby(random.nextInt(1000), (long) random.nextInt(BENCHMARK_MEMBER_COUNT));
+            }
+            final long skipListWriteNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int index = 0; index < BENCHMARK_OPERATION_COUNT; index++) {
+                sum += lsmZSet.zincrby(random.nextInt(1000), (long) random.nextInt(BENCHMARK_MEMBER_COUNT));
+            }
+            final long lsmWriteNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int index = 0; index < BENCHMARK_OPERATION_COUNT; index++) {
+                sum += zset.zrank((long) random.nextInt(BENCHMARK_MEMBER_COUNT));
+            }
+            final long skipListRankNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int index = 0; index < BENCHMARK_OPERATION_COUNT; index++) {
+                sum += lsmZSet.zrank((long) random.nextInt(BENCHMARK_MEMBER_COUNT));
+            }
+            final long lsmRankNanos = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int index = 0; index < BENCHMARK_OPERATION_COUNT; index++) {
+                sum += lsmZSet.zrangeByRank(index, index + 9).size();
+            }
+            final long lsmRangeNanos = System.nanoTime() - startTime;
+
+            System.out.println(String.format("zincrby skipList %d ns/op, lsm %d ns/op; zrank skipList %d ns/op, lsm %d ns/op; lsm zrangeByRank(10) %d ns/op; delta %d (%d)",
+                    skipListWriteNanos / BENCHMARK_OPERATION_COUNT, lsmWriteNanos / BENCHMARK_OPERATION_COUNT,
+                    skipListRankNanos / BENCHMARK_OPERATION_COUNT, lsmRankNanos / BENCHMARK_OPERATION_COUNT,
+                    lsmRangeNanos / BENCHMARK_OPERATION_COUNT, lsmZSet.deltaSize(), sum));
+        }
+        lsmZSet.awaitCompaction();
+    }
+
+    private static boolean equals(Object2LongMember<Long> a, Object2LongMember<Long> b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getMember().equals(b.getMember()) && a.getScore() == b.getScore();
+    }
+
+    private static boolean equals(List<Object2LongMember<Long>> a, List<Object2LongMember<Long>> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int index = 0; index < a.size(); index++) {
+            if (!equals(a.get(index), b.get(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
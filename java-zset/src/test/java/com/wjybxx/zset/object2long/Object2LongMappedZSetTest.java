@@ -0,0 +1,150 @@
+package com.wjybxx.zset.object2long;
+
+import com.wjybxx.zset.ZSetCodecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link Object2LongMappedZSet}的测试用例
+ * 将一个普通的zset写入文件再映射打开，检查各个查询的结果是否与普通的zset一致；并测试打开时间和随机查询的速度。
+ * 注意：这只是一个粗略的测试，准确的数据请使用JMH等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongMappedZSetTest {
+
+    private static final int MEMBER_COUNT = 100_000;
+    private static final int QUERY_COUNT = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        final Path path = Files.createTempFile("zset", ".map");
+        try {
+            consistencyTest(path, LongScoreHandlers.scoreHandler(false));
+            consistencyTest(path, LongScoreHandlers.scoreHandler(true));
+            emptyTest(path);
+            benchmark(path);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void consistencyTest(Path path, LongScoreHandler scoreHandler) throws IOException {
+        final Object2LongZSet<String> zset = Object2LongZSet.newStringKeyZSet(scoreHandler);
+        final Random random = new Random(0);
+        for (int index = 0; index < MEMBER_COUNT; index++) {
+            // 分数范围较小，存在大量相同的分数
+            zset.zadd(random.nextInt(MEMBER_COUNT / 10), "member" + index);
+        }
+        Object2LongMappedZSet.write(zset, path, ZSetCodecs.stringCodec());
+        final Object2LongMappedZSet<String> mapped = Object2LongMappedZSet.open(path, scoreHandler, ZSetCodecs.stringCodec());
+
+        checkState(mapped.zcard() == zset.zcard(), "zcard");
+        for (int index = 0; index < MEMBER_COUNT + 100; index++) {
+            final String member = "member" + index;
+            checkState(mapped.zrank(member) == zset.zrank(member), "zrank");
+            checkState(mapped.zrevrank(member) == zset.zrevrank(member), "zrevrank");
+            checkState(equals(mapped.zscore(member), zset.zscore(member)), "zscore");
+        }
+        for (int rank = -1; rank <= MEMBER_COUNT; rank++) {
+            checkState(equals(mapped.zmemberByRank(rank), zset.zmemberByRank(rank)), "zmemberByRank");
+            checkState(equals(mapped.zrevmemberByRank(rank), zset.zrevmemberByRank(rank)), "zrevmemberByRank");
+        }
+        for (int index = 0; index < 1000; index++) {
+            final int start = random.nextInt(MEMBER_COUNT * 2) - MEMBER_COUNT;
+            final int end = random.nextInt(MEMBER_COUNT * 2) - MEMBER_COUNT;
+            checkState(equals(mapped.zrangeByRank(start, end), zset.zrangeByRank(start, end)), "zrangeByRank");
+            checkState(equals(mapped.zrevrangeByRank(start, end), zset.zrevrangeByRank(start, end)), "zrevrangeByRank");
+
+            final long min = random.nextInt(MEMBER_COUNT / 10 + 2) - 1;
+            final long max = min + random.nextInt(20) - 5;
+            checkState(equals(mapped.zrangeByScore(min, max), zset.zrangeByScore(min, max)), "zrangeByScore");
+            checkState(mapped.zcount(min, max) == zset.zcount(min, max), "zcount");
+            final LongScoreRangeSpec spec = new LongScoreRangeSpec(min, random.nextBoolean(), max, random.nextBoolean());
+            checkState(equals(mapped.zrangeByScore(spec), zset.zrangeByScore(spec)), "zrangeByScore spec");
+        }
+    }
+
+    private static void emptyTest(Path path) throws IOException {
+        final LongScoreHandler scoreHandler = LongScoreHandlers.scoreHandler(false);
+        Object2LongMappedZSet.write(Object2LongZSet.newStringKeyZSet(scoreHandler), path, ZSetCodecs.stringCodec());
+        final Object2LongMappedZSet<String> mapped = Object2LongMappedZSet.open(path, scoreHandler, ZSetCodecs.stringCodec());
+        checkState(mapped.zcard() == 0, "empty zcard");
+        checkState(mapped.zrank("member") == -1, "empty zrank");
+        checkState(mapped.zmemberByRank(0) == null, "empty zmemberByRank");
+        checkState(mapped.zrangeByRank(0, -1).isEmpty(), "empty zrangeByRank");
+        checkState(mapped.zrangeByScore(Long.MIN_VALUE, Long.MAX_VALUE).isEmpty(), "empty zrangeByScore");
+    }
+
+    private static void benchmark(Path path) throws IOException {
+        final int memberCount = 1_000_000;
+        final LongScoreHandler scoreHandler = LongScoreHandlers.scoreHandler(true);
+        final Object2LongZSet<Long> zset = Object2LongZSet.newLongKeyZSet(scoreHandler);
+        final Random random = new Random(0);
+        for (int index = 0; index < memberCount; index++) {
+            zset.zadd(random.nextInt(100_000_000), (long) index);
+        }
+
+        final long writeStartTime = System.nanoTime();
+        Object2LongMappedZSet.write(zset, path, ZSetCodecs.longCodec());
+        final long writeNanos = System.nanoTime() - writeStartTime;
+
+        final long openStartTime = System.nanoTime();
+        final Object2LongMappedZSet<Long> mapped = Object2LongMappedZSet.open(path, scoreHandler, ZSetCodecs.longCodec());
+        final long openNanos = System.nanoTime() - openStartTime;
+
+        // 先执行一轮，预热JIT和页缓存
+        for (int round = 0; round < 2; round++) {
+            long sum = 0;
+            final long rankStartTime = System.nanoTime();
+            for (int index = 0; index < QUERY_COUNT; index++) {
+                sum += mapped.zrank((long) random.nextInt(memberCount));
+            }
+            final long rankNanos = System.nanoTime() - rankStartTime;
+
+            final long rangeStartTime = System.nanoTime();
+            for (int index = 0; index < QUERY_COUNT; index++) {
+                final long min = random.nextInt(100_000_000);
+                sum += mapped.zcount(min, min + 1000);
+            }
+            final long rangeNanos = System.nanoTime() - rangeStartTime;
+            System.out.println(String.format("%d members, %d bytes, write %d ms, open %d us, zrank %d ns/op, zcount %d ns/op (%d)",
+                    memberCount, Files.size(path), writeNanos / 1000_000, openNanos / 1000,
+                    rankNanos / QUERY_COUNT, rangeNanos / QUERY_COUNT, sum));
+        }
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static boolean equals(Object2LongMember<String> a, Object2LongMember<String> b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getMember().equals(b.getMember()) && a.getScore() == b.getScore();
+    }
+
+    private static boolean equals(List<Object2LongMember<String>> a, List<Object2LongMember<String>> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int index = 0; index < a.size(); index++) {
+            if (!equals(a.get(index), b.get(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
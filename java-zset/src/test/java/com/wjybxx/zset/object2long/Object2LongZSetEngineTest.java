@@ -0,0 +1,143 @@
+package com.wjybxx.zset.object2long;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link Object2LongZSetEngine}的测试用例
+ * 多个生产者线程同时执行zincrby，对比通过引擎提交命令与对{@link Object2LongZSet}加全局锁的吞吐量，
+ * 并检查所有增量都被正确的执行了（分数之和等于增量之和）；以及查询不会创建zset，execute的异常交给异常处理器。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JMH等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongZSetEngineTest {
+
+    private static final String RANK_NAME = "rank";
+    private static final int MEMBER_COUNT = 100_000;
+    private static final int WRITE_COUNT_PER_THREAD = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        semanticsTest();
+
+        final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        final Object2LongZSetEngine<Long> engine = Object2LongZSetEngine.newLongKeyEngine(LongScoreHandlers.scoreHandler(true),
+                runnable -> new Thread(runnable, "zset-engine"));
+        engine.start();
+        final long engineStartTime = System.nanoTime();
+        final long engineIncrement = runProducers(threads, (increment, member) ->
+                engine.execute(RANK_NAME, zset -> zset.zincrby(increment, member)));
+        // 命令按照顺序执行，该命令完成时，之前提交的命令都已执行完毕
+        final long engineScoreSum = engine.submit(RANK_NAME, Object2LongZSetEngineTest::sumScore).get();
+        final long engineNanos = System.nanoTime() - engineStartTime;
+        engine.shutdown();
+        checkState(engine.awaitTermination(10, TimeUnit.SECONDS), "shutdown");
+        checkState(engineIncrement == engineScoreSum, "engine");
+
+        final Object2LongZSet<Long> lockedZSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+        final long lockedStartTime = System.nanoTime();
+        final long lockedIncrement = runProducers(threads, (increment, member) -> {
+            synchronized (lockedZSet) {
+                lockedZSet.zincrby(increment, member);
+            }
+        });
+        final long lockedNanos = System.nanoTime() - lockedStartTime;
+        checkState(lockedIncrement == sumScore(lockedZSet), "locked");
+
+        final long totalWrites = (long) threads * WRITE_COUNT_PER_THREAD;
+        System.out.println(String.format("producers %d, engine: %d ops/ms, locked: %d ops/ms",
+                threads, totalWrites * 1000_000 / engineNanos, totalWrites * 1000_000 / lockedNanos));
+    }
+
+    private static void semanticsTest() throws Exception {
+        final AtomicReference<Throwable> uncaught = new AtomicReference<>();
+        final Object2LongZSetEngine<Long> engine = Object2LongZSetEngine.newLongKeyEngine(LongScoreHandlers.scoreHandler(true),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "zset-engine");
+                    thread.setUncaughtExceptionHandler((t, e) -> uncaught.set(e));
+                    return thread;
+                });
+        engine.start();
+        try {
+            // 查询不存在的zset不会创建zset
+            checkState(engine.zscore("unknown", 1L).get() == null, "zscore");
+            checkState(engine.zrank("unknown", 1L).get() == -1, "zrank");
+            checkState(engine.zrangeByRank("unknown", 0, -1).get().isEmpty(), "zrangeByRank");
+            checkState(engine.zcard("unknown").get() == 0, "zcard");
+            checkState(engine.zrem("unknown", 1L).get() == null, "zrem");
+            checkState(!engine.del("unknown").get(), "query created zset");
+
+            // 删除最后一个成员以后，zset也会被删除
+            engine.zadd(RANK_NAME, 1, 1L);
+            checkState(engine.zrem(RANK_NAME, 1L).get() == 1, "zrem");
+            checkState(!engine.del(RANK_NAME).get(), "empty zset not removed");
+
+            // execute的异常交给引擎线程的异常处理器，引擎继续运行
+            engine.execute(RANK_NAME, zset -> {
+                throw new IllegalStateException("expected");
+            });
+            checkState(engine.zcard(RANK_NAME).get() == 0, "engine stopped");
+            checkState(uncaught.get() instanceof IllegalStateException, "uncaught exception");
+        } finally {
+            engine.shutdown();
+            checkState(engine.awaitTermination(10, TimeUnit.SECONDS), "shutdown");
+        }
+    }
+
+    /**
+     * @return 所有线程的增量之和
+     */
+    private static long runProducers(int threads, ZIncrByOperation operation) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Long>> futures = new ArrayList<>(threads);
+            for (int index = 0; index < threads; index++) {
+                final Random random = new Random(index);
+                futures.add(executor.submit(() -> {
+                    long incrementSum = 0;
+                    for (int count = 0; count < WRITE_COUNT_PER_THREAD; count++) {
+                        final long increment = random.nextInt(100);
+                        operation.zincrby(increment, (long) random.nextInt(MEMBER_COUNT));
+                        incrementSum += increment;
+                    }
+                    return incrementSum;
+                }));
+            }
+            long incrementSum = 0;
+            for (Future<Long> future : futures) {
+                incrementSum += future.get();
+            }
+            return incrementSum;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long sumScore(Object2LongZSet<Long> zSet) {
+        long scoreSum = 0;
+        for (Object2LongMember<Long> member : zSet) {
+            scoreSum += member.getScore();
+        }
+        return scoreSum;
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+
+    private interface ZIncrByOperation {
+
+        void zincrby(long increment, Long member);
+    }
+}
@@ -0,0 +1,237 @@
+package com.wjybxx.zset.object2long;
+
+import com.wjybxx.zset.ZSetCodecs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * {@link Object2LongZSetJournal}的测试用例
+ * 对通过journal修改的zset和一个普通的zset执行相同的随机操作，重新打开日志以后，检查恢复的zset与普通的zset是否一致；
+ * 并对比重写前后的重放耗时，以及不同刷盘策略的写入速度。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JMH等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongZSetJournalTest {
+
+    private static final int MEMBER_COUNT = 10_000;
+    private static final int OPERATION_COUNT = 1_000_000;
+    private static final int COMMIT_BATCH_SIZE = 100;
+
+    public static void main(String[] args) throws Exception {
+        final Path directory = Files.createTempDirectory("zset-journal");
+        final Path path = directory.resolve("rank.aof");
+        try {
+            consistencyTest(path);
+            fsyncPolicyTest(directory);
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(directory.resolve("always.aof"));
+            Files.deleteIfExists(directory.resolve("group.aof"));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void consistencyTest(Path path) throws IOException {
+        final Object2LongZSet<Long> expected = newZSet();
+        final Random random = new Random(0);
+
+        Object2LongZSetJournal<Long> journal = Object2LongZSetJournal.open(path, newZSet(),
+                ZSetCodecs.longCodec(), Object2LongZSetJournal.FsyncPolicy.GROUP_COMMIT);
+        journal.setAutoRewriteMinSize(0);
+        randomOperations(journal, expected, random);
+        journal.close();
+
+        // 重写之前，日志中主要是zincrby记录
+        final long sizeBeforeRewrite = Files.size(path);
+        final long replayNanosBeforeRewrite = checkReplay(path, expected);
+
+        // 重写以后，每个成员只有一条zadd记录
+        journal = Object2LongZSetJournal.open(path, newZSet(),
+                ZSetCodecs.longCodec(), Object2LongZSetJournal.FsyncPolicy.GROUP_COMMIT);
+        checkState(journal.rewriteAsync(), "rewriteAsync");
+        journal.awaitRewrite();
+        journal.close();
+        final long replayNanosAfterRewrite = checkReplay(path, expected);
+        System.out.println(String.format("before rewrite: %d bytes, replay %d ms; after rewrite: %d bytes, replay %d ms",
+                sizeBeforeRewrite, replayNanosBeforeRewrite / 1000_000, Files.size(path), replayNanosAfterRewrite / 1000_000));
+
+        // 重写期间的修改
+        journal = Object2LongZSetJournal.open(path, newZSet(),
+                ZSetCodecs.longCodec(), Object2LongZSetJournal.FsyncPolicy.GROUP_COMMIT);
+        checkState(journal.rewriteAsync(), "rewriteAsync");
+        randomOperations(journal, expected, random);
+        journal.close();
+        checkReplay(path, expected);
+
+        // 自动重写
+        journal = Object2LongZSetJournal.open(path, newZSet(),
+                ZSetCodecs.longCodec(), Object2LongZSetJournal.FsyncPolicy.EVERY_INTERVAL, 10);
+        journal.setAutoRewriteMinSize(1024 * 1024);
+        randomOperations(journal, expected, random);
+        journal.close();
+        checkReplay(path, expected);
+
+        // 末尾不完整的记录(记录头的一部分)会被丢弃
+        final long validSize = Files.size(path);
+        appendBytes(path, new byte[]{0, 0, 0, 3, 1, (byte) 0x80});
+        checkReplay(path, expected);
+        checkState(Files.size(path) == validSize, "truncate");
+
+        // 崩溃后末尾以0填充的区域也会被丢弃
+        appendBytes(path, new byte[4096]);
+        checkReplay(path, expected);
+        checkState(Files.size(path) == validSize, "truncate zero filled");
+
+        // 第一个字节是zadd的类型，之后以0填充，不能重放为zadd(0, 0)
+        final byte[] zaddTail = new byte[4096];
+        zaddTail[0] = 1;
+        appendBytes(path, zaddTail);
+        checkReplay(path, expected);
+        checkState(Files.size(path) == validSize, "truncate zadd zero filled");
+
+        // 记录头完整，但数据以0填充(CRC32校验失败)
+        final ByteBuffer tornRecord = ByteBuffer.allocate(8 + 3);
+        tornRecord.putInt(3).putInt(checksum(new byte[]{1, 2, 2}));
+        appendBytes(path, tornRecord.array());
+        checkReplay(path, expected);
+        checkState(Files.size(path) == validSize, "truncate checksum mismatch");
+
+        // 校验通过但类型未知，说明日志已损坏
+        final byte[] unknownPayload = {0, 1, 0};
+        final ByteBuffer unknownRecord = ByteBuffer.allocate(8 + unknownPayload.length);
+        unknownRecord.putInt(unknownPayload.length).putInt(checksum(unknownPayload)).put(unknownPayload);
+        appendBytes(path, unknownRecord.array());
+        try {
+            Object2LongZSetJournal.open(path, newZSet(), ZSetCodecs.longCodec(), Object2LongZSetJournal.FsyncPolicy.ALWAYS).close();
+            throw new IllegalStateException("corruption not detected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // 版本不一致的日志会被拒绝
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1}), 4);
+        }
+        try {
+            Object2LongZSetJournal.open(path, newZSet(), ZSetCodecs.longCodec(), Object2LongZSetJournal.FsyncPolicy.ALWAYS).close();
+            throw new IllegalStateException("version mismatch not detected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static void randomOperations(Object2LongZSetJournal<Long> journal, Object2LongZSet<Long> expected, Random random) {
+        for (int index = 1; index <= OPERATION_COUNT; index++) {
+            final long member = random.nextInt(MEMBER_COUNT);
+            final int operation = random.nextInt(10000);
+            if (operation < 9000) {
+                final long increment = random.nextInt(100);
+                checkState(journal.zincrby(increment, member) == expected.zincrby(increment, member), "zincrby");
+            } else if (operation < 9800) {
+                final long score = random.nextInt(100_000);
+                journal.zadd(score, member);
+                expected.zadd(score, member);
+            } else if (operation < 9990) {
+                checkState(equals(journal.zrem(member), expected.zrem(member)), "zrem");
+            } else if (operation < 9995) {
+                final long start = random.nextInt(100_000);
+                checkState(journal.zremrangeByScore(start, start + 100) == expected.zremrangeByScore(start, start + 100), "zremrangeByScore");
+            } else if (operation < 9998) {
+                final int start = random.nextInt(MEMBER_COUNT);
+                checkState(journal.zremrangeByRank(start, start + 10) == expected.zremrangeByRank(start, start + 10), "zremrangeByRank");
+            } else {
+                final int count = MEMBER_COUNT - random.nextInt(100);
+                checkState(journal.zlimit(count) == expected.zlimit(count), "zlimit");
+            }
+            if (index % COMMIT_BATCH_SIZE == 0) {
+                journal.commit();
+            }
+        }
+        journal.commit();
+    }
+
+    private static void appendBytes(Path path, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(bytes));
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, bytes.length);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * @return 重放耗时
+     */
+    private static long checkReplay(Path path, Object2LongZSet<Long> expected) throws IOException {
+        final long startTime = System.nanoTime();
+        final Object2LongZSetJournal<Long> journal = Object2LongZSetJournal.open(path, newZSet(),
+                ZSetCodecs.longCodec(), Object2LongZSetJournal.FsyncPolicy.ALWAYS);
+        final long replayNanos = System.nanoTime() - startTime;
+        try {
+            final List<Object2LongMember<Long>> expectedMembers = expected.zrangeByRank(0, -1);
+            final List<Object2LongMember<Long>> replayedMembers = journal.getZSet().zrangeByRank(0, -1);
+            checkState(expectedMembers.size() == replayedMembers.size(), "replay zcard");
+            for (int index = 0; index < expectedMembers.size(); index++) {
+                checkState(expectedMembers.get(index).getMember().equals(replayedMembers.get(index).getMember())
+                        && expectedMembers.get(index).getScore() == replayedMembers.get(index).getScore(), "replay");
+            }
+        } finally {
+            journal.close();
+        }
+        return replayNanos;
+    }
+
+    private static void fsyncPolicyTest(Path directory) throws IOException {
+        final int count = 1000;
+        final Object2LongZSetJournal<Long> always = Object2LongZSetJournal.open(directory.resolve("always.aof"), newZSet(),
+                ZSetCodecs.longCodec(), Object2LongZSetJournal.FsyncPolicy.ALWAYS);
+        final long alwaysStartTime = System.nanoTime();
+        for (int index = 0; index < count; index++) {
+            always.zincrby(index, (long) index);
+        }
+        final long alwaysNanos = System.nanoTime() - alwaysStartTime;
+        always.close();
+
+        final Object2LongZSetJournal<Long> group = Object2LongZSetJournal.open(directory.resolve("group.aof"), newZSet(),
+                ZSetCodecs.longCodec(), Object2LongZSetJournal.FsyncPolicy.GROUP_COMMIT);
+        final long groupStartTime = System.nanoTime();
+        for (int index = 0; index < count; index++) {
+            group.zincrby(index, (long) index);
+            if ((index + 1) % COMMIT_BATCH_SIZE == 0) {
+                group.commit();
+            }
+        }
+        final long groupNanos = System.nanoTime() - groupStartTime;
+        group.close();
+        System.out.println(String.format("%d zincrby, always: %d us/op, group commit(%d): %d us/op",
+                count, alwaysNanos / count / 1000, COMMIT_BATCH_SIZE, groupNanos / count / 1000));
+    }
+
+    private static Object2LongZSet<Long> newZSet() {
+        return Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(false));
+    }
+
+    private static boolean equals(Long a, Long b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.wjybxx.zset.object2long;
+
+import com.wjybxx.zset.ZSetEventType;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * {@link Object2LongZSetListener}和{@link Object2LongZSetEventBuffer}的测试用例
+ * 1. 对zset执行随机操作，通过批量投递的事件修改另一个zset(副本)，检查两个zset是否一致，以及事件中的排名是否正确。
+ * 2. 对比未注册监听器、注册了不需要排名的监听器、注册了需要排名的监听器时的写入速度。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JMH等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class Object2LongZSetListenerTest {
+
+    private static final int MEMBER_COUNT = 1000;
+    private static final int OPERATION_COUNT = 200_000;
+    private static final int BATCH_SIZE = 64;
+
+    private static final int BENCHMARK_MEMBER_COUNT = 100_000;
+    private static final int BENCHMARK_OPERATION_COUNT = 1_000_000;
+
+    public static void main(String[] args) {
+        replicaTest(Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(false)), false, true);
+        replicaTest(Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true)), true, false);
+        // 有界模式下淘汰的成员
+        replicaTest(Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true), MEMBER_COUNT / 2), true, true);
+        benchmark();
+    }
+
+    private static void replicaTest(Object2LongZSet<Long> zset, boolean desc, boolean rankRequired) {
+        final Object2LongZSet<Long> replica = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(desc));
+        final Replicator replicator = new Replicator(replica, rankRequired);
+        final Object2LongZSetEventBuffer<Long> buffer = new Object2LongZSetEventBuffer<>(replicator, BATCH_SIZE, rankRequired);
+        zset.setListener(buffer);
+
+        final Random random = new Random(0);
+        for (int index = 0; index < OPERATION_COUNT; index++) {
+            final long member = random.nextInt(MEMBER_COUNT);
+            final long score = random.nextInt(MEMBER_COUNT);
+            final int operation = random.nextInt(100);
+            if (operation < 30) {
+                zset.zadd(score, member);
+            } else if (operation < 55) {
+                zset.zincrby(score - MEMBER_COUNT / 2, member);
+            } else if (operation < 60) {
+                zset.zincrbyxx(0, member);
+            } else if (operation < 65) {
+                zset.zaddnx(score, member);
+            } else if (operation < 85) {
+                zset.zrem(member);
+            } else if (operation < 88) {
+                zset.zremrangeByScore(score, score + 10);
+            } else if (operation < 91) {
+                zset.zremrangeByRank((int) member, (int) member + 5);
+            } else if (operation < 93) {
+                zset.zpopFirst();
+            } else if (operation < 95) {
+                zset.zlimit(MEMBER_COUNT - random.nextInt(10));
+            } else if (operation < 96) {
+                zset.zrevlimit(MEMBER_COUNT - random.nextInt(10));
+            } else if (operation < 97) {
+                removeByIterator(zset, score);
+            } else {
+                final long[] scores = new long[10];
+                final Long[] members = new Long[10];
+                for (int i = 0; i < 10; i++) {
+                    scores[i] = random.nextInt(MEMBER_COUNT);
+                    members[i] = (long) random.nextInt(MEMBER_COUNT);
+                }
+                zset.zaddBatch(scores, members);
+            }
+            if (index % 1000 == 0) {
+                buffer.flush();
+                checkReplica(zset, replica);
+            }
+        }
+        buffer.flush();
+        checkReplica(zset, replica);
+        System.out.println("replicaTest success, events = " + replicator.eventCount);
+    }
+
+    /**
+     * 通过迭代器删除分数小于指定分数的成员
+     */
+    private static void removeByIterator(Object2LongZSet<Long> zset, long maxScore) {
+        final Iterator<Object2LongMember<Long>> itr = zset.iterator();
+        while (itr.hasNext()) {
+            if (itr.next().getScore() < maxScore) {
+                itr.remove();
+            }
+        }
+    }
+
+    private static void checkReplica(Object2LongZSet<Long> zset, Object2LongZSet<Long> replica) {
+        final List<Object2LongMember<Long>> expectedMembers = zset.zrangeByRank(0, -1);
+        final List<Object2LongMember<Long>> replicaMembers = replica.zrangeByRank(0, -1);
+        checkState(expectedMembers.size() == replicaMembers.size(), "replica zcard");
+        for (int index = 0; index < expectedMembers.size(); index++) {
+            checkState(expectedMembers.get(index).getMember().equals(replicaMembers.get(index).getMember())
+                    && expectedMembers.get(index).getScore() == replicaMembers.get(index).getScore(), "replica");
+        }
+    }
+
+    private static void benchmark() {
+        final Random random = new Random(0);
+        final Object2LongZSet<Long> zset = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+        final long[] counter = new long[1];
+        final Object2LongZSetEventBuffer<Long> buffer = new Object2LongZSetEventBuffer<>(events -> counter[0] += events.size(), 1024, false);
+        final Object2LongZSetEventBuffer<Long> rankBuffer = new Object2LongZSetEventBuffer<>(events -> counter[0] += events.size(), 1024, true);
+
+        // 先执行一轮，预热JIT
+        for (int round = 0; round < 2; round++) {
+            zset.setListener(null);
+            final long noListenerNanos = zincrby(zset, random);
+            zset.setListener(buffer);
+            final long bufferNanos = zincrby(zset, random);
+            zset.setListener(rankBuffer);
+            final long rankBufferNanos = zincrby(zset, random);
+            System.out.println(String.format("zincrby no listener %d ns/op, buffer %d ns/op, buffer with rank %d ns/op (%d)",
+                    noListenerNanos / BENCHMARK_OPERATION_COUNT, bufferNanos / BENCHMARK_OPERATION_COUNT,
+                    rankBufferNanos / BENCHMARK_OPERATION_COUNT, counter[0]));
+        }
+    }
+
+    private static long zincrby(Object2LongZSet<Long> zset, Random random) {
+        final long startTime = System.nanoTime();
+        for (int index = 0; index < BENCHMARK_OPERATION_COUNT; index++) {
+            zset.zincrby(random.nextInt(100), (long) random.nextInt(BENCHMARK_MEMBER_COUNT));
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * 将事件应用到副本，并检查事件中的排名
+     */
+    private static class Replicator implements Consumer<List<Object2LongZSetEventBuffer.Event<Long>>> {
+
+        private final Object2LongZSet<Long> replica;
+        private final boolean rankRequired;
+        private long eventCount;
+
+        Replicator(Object2LongZSet<Long> replica, boolean rankRequired) {
+            this.replica = replica;
+            this.rankRequired = rankRequired;
+        }
+
+        @Override
+        public void accept(List<Object2LongZSetEventBuffer.Event<Long>> events) {
+            for (Object2LongZSetEventBuffer.Event<Long> event : events) {
+                eventCount++;
+                if (event.type == ZSetEventType.ADDED) {
+                    checkState(!replica.containsMember(event.member), "added");
+                    replica.zadd(event.newScore, event.member);
+                    checkRank(event.newRank, event.member);
+                } else if (event.type == ZSetEventType.REMOVED) {
+                    checkState(replica.zscore(event.member) == event.oldScore, "removed score");
+                    checkRank(event.oldRank, event.member);
+                    replica.zrem(event.member);
+                } else if (event.type == ZSetEventType.RANGE_REMOVED) {
+                    checkState(event.member == null && !event.members.isEmpty(), "range removed");
+                    // 区间删除只有一个事件，成员按照排名顺序，第一个成员的排名就是区间的起始排名
+                    checkRank(event.oldRank, event.members.get(0).getMember());
+                    for (Object2LongMember<Long> member : event.members) {
+                        checkState(replica.zscore(member.getMember()) == member.getScore(), "range removed score");
+                        replica.zrem(member.getMember());
+                    }
+                } else {
+                    checkState(replica.zscore(event.member) == event.oldScore && event.oldScore != event.newScore, "changed score");
+                    checkRank(event.oldRank, event.member);
+                    replica.zadd(event.newScore, event.member);
+                    checkRank(event.newRank, event.member);
+                }
+            }
+        }
+
+        private void checkRank(int rank, Long member) {
+            if (rankRequired) {
+                checkState(rank == replica.zrank(member), "rank");
+            } else {
+                checkState(rank == -1 || rank == replica.zrank(member), "rank");
+            }
+        }
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.wjybxx.zset.object2long;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link ShardedObject2LongZSet}的测试用例
+ * 1. 一致性测试：与{@link Object2LongZSet}执行相同的操作，检查全局排名、排名区间、分数区间的结果是否一致。
+ * 2. 写入测试：多个线程同时执行zincrby，对比不同分片数量下的吞吐量。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JMH等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class ShardedObject2LongZSetTest {
+
+    private static final int OPERATION_COUNT = 200_000;
+
+    private static final int MEMBER_COUNT = 100_000;
+    private static final int WRITE_COUNT_PER_THREAD = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        consistencyTest();
+        writeTest();
+    }
+
+    private static void consistencyTest() {
+        final Object2LongZSet<Long> zSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true));
+        final ShardedObject2LongZSet<Long> shardedZSet = ShardedObject2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(true),
+                ShardedObject2LongZSet.DEFAULT_SHARD_COUNT);
+
+        final Random random = new Random(OPERATION_COUNT);
+        for (int index = 0; index < OPERATION_COUNT; index++) {
+            final long member = random.nextInt(1000);
+            final long score = random.nextInt(500);
+            final int operation = random.nextInt(10);
+            if (operation < 4) {
+                zSet.zadd(score, member);
+                shardedZSet.zadd(score, member);
+            } else if (operation < 6) {
+                checkState(zSet.zincrby(score - 250, member) == shardedZSet.zincrby(score - 250, member), "zincrby");
+            } else if (operation < 7) {
+                checkState(Objects.equals(zSet.zrem(member), shardedZSet.zrem(member)), "zrem");
+            } else if (operation < 8) {
+                // 头部的排名区间直接归并，深分页先选出起始成员
+                final int start = random.nextBoolean() ? random.nextInt(50) - 10 : random.nextInt(1100) - 300;
+                checkState(zSet.zrangeByRank(start, start + 20).toString().equals(shardedZSet.zrangeByRank(start, start + 20).toString()), "zrangeByRank");
+                checkState(zSet.zrevrangeByRank(start, start + 20).toString().equals(shardedZSet.zrevrangeByRank(start, start + 20).toString()), "zrevrangeByRank");
+            } else if (operation < 9) {
+                checkState(zSet.zrangeByScore(score, score + 20).toString().equals(shardedZSet.zrangeByScore(score, score + 20).toString()), "zrangeByScore");
+                checkState(zSet.zcount(score, score + 20) == shardedZSet.zcount(score, score + 20), "zcount");
+            } else {
+                checkState(String.valueOf(zSet.zpopFirst()).equals(String.valueOf(shardedZSet.zpopFirst())), "zpopFirst");
+            }
+
+            final int rank = random.nextInt(1000);
+            checkState(String.valueOf(zSet.zmemberByRank(rank)).equals(String.valueOf(shardedZSet.zmemberByRank(rank))), "zmemberByRank");
+            checkState(String.valueOf(zSet.zrevmemberByRank(rank)).equals(String.valueOf(shardedZSet.zrevmemberByRank(rank))), "zrevmemberByRank");
+            checkState(zSet.zrank(member) == shardedZSet.zrank(member), "zrank");
+            checkState(zSet.zrevrank(member) == shardedZSet.zrevrank(member), "zrevrank");
+        }
+        checkState(zSet.zcard() == shardedZSet.zcard(), "zcard");
+        System.out.println("consistencyTest success, zcard = " + zSet.zcard());
+    }
+
+    private static void writeTest() throws Exception {
+        final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        for (int shardCount = 1; shardCount <= 64; shardCount *= 4) {
+            final ShardedObject2LongZSet<Long> shardedZSet = ShardedObject2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(false), shardCount);
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                final long startTime = System.nanoTime();
+                final List<Future<?>> futures = new ArrayList<>(threads);
+                for (int index = 0; index < threads; index++) {
+                    final Random random = new Random(index);
+                    futures.add(executor.submit(() -> {
+                        for (int count = 0; count < WRITE_COUNT_PER_THREAD; count++) {
+                            shardedZSet.zincrby(random.nextInt(100), (long) random.nextInt(MEMBER_COUNT));
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                final long costNanos = System.nanoTime() - startTime;
+                System.out.println(String.format("threads %d, shards %d, zincrby: %d ops/ms, first: %s",
+                        threads, shardCount, (long) threads * WRITE_COUNT_PER_THREAD * 1000_000 / costNanos, shardedZSet.zmemberByRank(0)));
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+}
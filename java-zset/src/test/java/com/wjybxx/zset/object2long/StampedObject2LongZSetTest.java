@@ -0,0 +1,174 @@
+package com.wjybxx.zset.object2long;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link StampedObject2LongZSet}的测试用例
+ * 一个写线程不停的执行zincrby，多个读线程执行zscore、zrank、zrangeByRank，检查读取的结果是否正确，
+ * 并对比与加全局锁的{@link Object2LongZSet}的读取吞吐量。
+ * 成员集合是固定的，写线程只修改分数，因此读线程可以检查：排名总是在[0, MEMBER_COUNT)之间，分页总是满的且有序。
+ * 注意：这只是一个粗略的对比，准确的数据请使用JMH等工具测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class StampedObject2LongZSetTest {
+
+    private static final int MEMBER_COUNT = 100_000;
+    private static final int READ_COUNT_PER_THREAD = 500_000;
+    private static final int PAGE_SIZE = 20;
+
+    public static void main(String[] args) throws Exception {
+        final int readerThreads = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+
+        final StampedObject2LongZSet<Long> stampedZSet = StampedObject2LongZSet.wrap(newZSet());
+        final long stampedNanos = runReadMostly(readerThreads, new ZSetOperations() {
+            @Override
+            public void zincrby(long increment, Long member) {
+                stampedZSet.zincrby(increment, member);
+            }
+
+            @Override
+            public long zscore(Long member) {
+                return stampedZSet.zscoreOrDefault(member, 0);
+            }
+
+            @Override
+            public int zrank(Long member) {
+                return stampedZSet.zrank(member);
+            }
+
+            @Override
+            public List<Object2LongMember<Long>> zrangeByRank(int start, int end) {
+                return stampedZSet.zrangeByRank(start, end);
+            }
+        });
+
+        final Object2LongZSet<Long> lockedZSet = newZSet();
+        final long lockedNanos = runReadMostly(readerThreads, new ZSetOperations() {
+            @Override
+            public void zincrby(long increment, Long member) {
+                synchronized (lockedZSet) {
+                    lockedZSet.zincrby(increment, member);
+                }
+            }
+
+            @Override
+            public long zscore(Long member) {
+                synchronized (lockedZSet) {
+                    return lockedZSet.zscoreOrDefault(member, 0);
+                }
+            }
+
+            @Override
+            public int zrank(Long member) {
+                synchronized (lockedZSet) {
+                    return lockedZSet.zrank(member);
+                }
+            }
+
+            @Override
+            public List<Object2LongMember<Long>> zrangeByRank(int start, int end) {
+                synchronized (lockedZSet) {
+                    return lockedZSet.zrangeByRank(start, end);
+                }
+            }
+        });
+
+        final long totalReads = (long) readerThreads * READ_COUNT_PER_THREAD;
+        System.out.println(String.format("readers %d, stamped: %d reads/ms, locked: %d reads/ms",
+                readerThreads, totalReads * 1000_000 / stampedNanos, totalReads * 1000_000 / lockedNanos));
+    }
+
+    private static Object2LongZSet<Long> newZSet() {
+        final Object2LongZSet<Long> zSet = Object2LongZSet.newLongKeyZSet(LongScoreHandlers.scoreHandler(false));
+        for (long member = 0; member < MEMBER_COUNT; member++) {
+            zSet.zadd(member, member);
+        }
+        return zSet;
+    }
+
+    /**
+     * 一个写线程，多个读线程，读线程的操作比例：40% zscore，40% zrank，20% zrangeByRank
+     *
+     * @return 读线程的耗时(纳秒)
+     */
+    private static long runReadMostly(int readerThreads, ZSetOperations operations) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(readerThreads + 1);
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        try {
+            final Future<?> writerFuture = executor.submit(() -> {
+                final Random random = new Random(MEMBER_COUNT);
+                while (!stop.get()) {
+                    operations.zincrby(random.nextInt(100), (long) random.nextInt(MEMBER_COUNT));
+                    // 写入之间稍作停顿，模拟读多写少
+                    LockSupport.parkNanos(1000);
+                }
+            });
+
+            final long startTime = System.nanoTime();
+            final List<Future<?>> futures = new ArrayList<>(readerThreads);
+            for (int index = 0; index < readerThreads; index++) {
+                final Random random = new Random(index);
+                futures.add(executor.submit(() -> {
+                    for (int count = 0; count < READ_COUNT_PER_THREAD; count++) {
+                        final long member = random.nextInt(MEMBER_COUNT);
+                        final int operation = random.nextInt(10);
+                        if (operation < 4) {
+                            operations.zscore(member);
+                        } else if (operation < 8) {
+                            final int rank = operations.zrank(member);
+                            checkState(rank >= 0 && rank < MEMBER_COUNT, "zrank");
+                        } else {
+                            final int start = random.nextInt(MEMBER_COUNT - PAGE_SIZE);
+                            checkPage(operations.zrangeByRank(start, start + PAGE_SIZE - 1));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            final long costNanos = System.nanoTime() - startTime;
+
+            stop.set(true);
+            writerFuture.get();
+            return costNanos;
+        } finally {
+            stop.set(true);
+            executor.shutdown();
+        }
+    }
+
+    private static void checkPage(List<Object2LongMember<Long>> page) {
+        checkState(page.size() == PAGE_SIZE, "zrangeByRank");
+        for (int index = 1; index < page.size(); index++) {
+            checkState(page.get(index - 1).getScore() <= page.get(index).getScore(), "zrangeByRank");
+        }
+    }
+
+    private static void checkState(boolean expression, String operation) {
+        if (!expression) {
+            throw new IllegalStateException(operation + " result mismatch");
+        }
+    }
+
+    private interface ZSetOperations {
+
+        void zincrby(long increment, Long member);
+
+        long zscore(Long member);
+
+        int zrank(Long member);
+
+        List<Object2LongMember<Long>> zrangeByRank(int start, int end);
+    }
+}
@@ -0,0 +1,276 @@
+package com.wjybxx.zset.server;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RespZSetServer}的测试用例
+ * 通过本地回环连接服务器，先检查各个命令的响应，然后测试pipeline和请求-响应模式下的延迟分布。
+ * 注意：这只是一个粗略的测试，与redis对比时，请使用redis-benchmark等工具在相同的环境下测试。
+ *
+ * @author agent
+ * @version 1.0
+ * date - 2026/10/16
+ */
+public class RespZSetServerTest {
+
+    private static final int MEMBER_COUNT = 10_000;
+    private static final int REQUEST_COUNT = 100_000;
+    private static final int PIPELINE_SIZE = 100;
+    private static final int LARGE_COMMAND_MEMBER_COUNT = 500_000;
+
+    public static void main(String[] args) throws Exception {
+        final RespZSetServer server = RespZSetServer.start(new InetSocketAddress("127.0.0.1", 0));
+        try {
+            try (Socket socket = new Socket("127.0.0.1", server.getLocalPort())) {
+                socket.setTcpNoDelay(true);
+                final Client client = new Client(socket);
+                commandTest(client);
+                pipelineTest(client);
+                largeCommandTest(client);
+                latencyTest(client);
+            }
+            try (Socket socket = new Socket("127.0.0.1", server.getLocalPort())) {
+                protocolErrorTest(new Client(socket));
+            }
+        } finally {
+            server.close();
+            checkState(server.awaitTermination(10, TimeUnit.SECONDS), "close");
+        }
+    }
+
+    private static void commandTest(Client client) throws IOException {
+        checkReply(client.call("PING"), "PONG");
+        checkReply(client.call("ZADD", "rank", "10", "a", "20", "b", "30", "c"), 3L);
+        checkReply(client.call("ZADD", "rank", "NX", "100", "a"), 0L);
+        checkReply(client.call("ZADD", "rank", "XX", "CH", "15", "a"), 1L);
+        checkReply(client.call("ZINCRBY", "rank", "10", "b"), "30");
+        checkReply(client.call("ZSCORE", "rank", "a"), "15");
+        checkReply(client.call("ZSCORE", "rank", "d"), null);
+        checkReply(client.call("ZRANK", "rank", "a"), 0L);
+        checkReply(client.call("ZREVRANK", "rank", "a"), 2L);
+        checkReply(client.call("ZRANK", "rank", "d"), null);
+        checkReply(client.call("ZCARD", "rank"), 3L);
+        checkReply(client.call("ZCOUNT", "rank", "(15", "+inf"), 2L);
+        checkReply(client.call("ZRANGE", "rank", "0", "-1"), Arrays.asList("a", "b", "c"));
+        checkReply(client.call("ZRANGE", "rank", "0", "0", "WITHSCORES"), Arrays.asList("a", "15"));
+        checkReply(client.call("ZREVRANGE", "rank", "0", "1"), Arrays.asList("c", "b"));
+        checkReply(client.call("ZRANGEBYSCORE", "rank", "20", "30", "LIMIT", "1", "1"), Arrays.asList("c"));
+        checkReply(client.call("ZREVRANGEBYSCORE", "rank", "+inf", "-inf"), Arrays.asList("c", "b", "a"));
+        checkReply(client.call("ZRANGE", "rank", "(15", "30", "BYSCORE"), Arrays.asList("b", "c"));
+        checkReply(client.call("ZPOPMIN", "rank"), Arrays.asList("a", "15"));
+        checkReply(client.call("ZPOPMAX", "rank", "5"), Arrays.asList("c", "30", "b", "30"));
+        checkReply(client.call("ZCARD", "rank"), 0L);
+        checkReply(client.call("ZREM", "rank", "a"), 0L);
+        checkError(client.call("ZADD", "rank", "1.5", "a"));
+        checkError(client.call("ZADD", "rank", "1"));
+        checkError(client.call("UNKNOWN"));
+    }
+
+    /**
+     * 协议错误时，服务器返回错误信息以后关闭连接
+     */
+    private static void protocolErrorTest(Client client) throws IOException {
+        client.send("PING");
+        client.writeLine("*1");
+        client.writeLine("PING");
+        client.flush();
+        checkReply(client.read(), "PONG");
+        final Object reply = client.read();
+        checkState(reply instanceof ErrorReply && ((ErrorReply) reply).message.startsWith("ERR Protocol error"),
+                "expected protocol error, but " + reply);
+        checkState(client.input.read() < 0, "connection not closed");
+    }
+
+    /**
+     * 一次发送多个命令，再依次读取响应
+     */
+    private static void pipelineTest(Client client) throws IOException {
+        for (int index = 0; index < MEMBER_COUNT; index++) {
+            client.send("ZADD", "pipeline", String.valueOf(index), "member" + index);
+        }
+        client.send("ZCARD", "pipeline");
+        client.send("ZREVRANGE", "pipeline", "0", "0");
+        client.flush();
+        for (int index = 0; index < MEMBER_COUNT; index++) {
+            checkReply(client.read(), 1L);
+        }
+        checkReply(client.read(), (long) MEMBER_COUNT);
+        checkReply(client.read(), Arrays.asList("member" + (MEMBER_COUNT - 1)));
+    }
+
+    /**
+     * 一个很大的命令需要多次读取，已解析的参数不会重复解析
+     */
+    private static void largeCommandTest(Client client) throws IOException {
+        final String[] args = new String[2 + LARGE_COMMAND_MEMBER_COUNT * 2];
+        args[0] = "ZADD";
+        args[1] = "large";
+        for (int index = 0; index < LARGE_COMMAND_MEMBER_COUNT; index++) {
+            args[2 + index * 2] = String.valueOf(index);
+            args[3 + index * 2] = "member" + index;
+        }
+        final long startTime = System.nanoTime();
+        checkReply(client.call(args), (long) LARGE_COMMAND_MEMBER_COUNT);
+        final long nanos = System.nanoTime() - startTime;
+        checkReply(client.call("ZCARD", "large"), (long) LARGE_COMMAND_MEMBER_COUNT);
+        checkReply(client.call("ZREVRANGE", "large", "0", "0"), Arrays.asList("member" + (LARGE_COMMAND_MEMBER_COUNT - 1)));
+        System.out.println(String.format("zadd %d members in one command: %d ms", LARGE_COMMAND_MEMBER_COUNT, nanos / 1000_000));
+    }
+
+    private static void latencyTest(Client client) throws IOException {
+        final Random random = new Random(0);
+        // 预热
+        for (int index = 0; index < REQUEST_COUNT; index++) {
+            client.call("ZINCRBY", "latency", String.valueOf(random.nextInt(100)), "member" + random.nextInt(MEMBER_COUNT));
+        }
+
+        final long[] latencies = new long[REQUEST_COUNT];
+        for (int index = 0; index < REQUEST_COUNT; index++) {
+            final long startTime = System.nanoTime();
+            client.call("ZINCRBY", "latency", String.valueOf(random.nextInt(100)), "member" + random.nextInt(MEMBER_COUNT));
+            latencies[index] = System.nanoTime() - startTime;
+        }
+        Arrays.sort(latencies);
+        System.out.println(String.format("request-response zincrby: p50 %dus, p99 %dus, p999 %dus",
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999)));
+
+        final long pipelineStartTime = System.nanoTime();
+        for (int batch = 0; batch < REQUEST_COUNT / PIPELINE_SIZE; batch++) {
+            for (int index = 0; index < PIPELINE_SIZE; index++) {
+                client.send("ZINCRBY", "latency", String.valueOf(random.nextInt(100)), "member" + random.nextInt(MEMBER_COUNT));
+            }
+            client.flush();
+            for (int index = 0; index < PIPELINE_SIZE; index++) {
+                client.read();
+            }
+        }
+        final long pipelineNanos = System.nanoTime() - pipelineStartTime;
+        System.out.println(String.format("pipeline(%d) zincrby: %d ops/ms", PIPELINE_SIZE, REQUEST_COUNT * 1000_000L / pipelineNanos));
+    }
+
+    private static long percentile(long[] sortedLatencies, double percentile) {
+        return sortedLatencies[(int) (sortedLatencies.length * percentile)] / 1000;
+    }
+
+    private static void checkReply(Object reply, Object expected) {
+        checkState(expected == null ? reply == null : expected.equals(reply), "expected " + expected + ", but " + reply);
+    }
+
+    private static void checkError(Object reply) {
+        checkState(reply instanceof ErrorReply, "expected error, but " + reply);
+    }
+
+    private static void checkState(boolean expression, String message) {
+        if (!expression) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static class ErrorReply {
+
+        final String message;
+
+        ErrorReply(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "-" + message;
+        }
+    }
+
+    /**
+     * 一个简单的阻塞式RESP2客户端
+     * 简单字符串和bulk string解析为String，整数解析为Long，数组解析为List
+     */
+    private static class Client {
+
+        private final DataInputStream input;
+        private final OutputStream output;
+
+        Client(Socket socket) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.output = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        Object call(String... args) throws IOException {
+            send(args);
+            flush();
+            return read();
+        }
+
+        void send(String... args) throws IOException {
+            writeLine("*" + args.length);
+            for (String arg : args) {
+                final byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                writeLine("$" + bytes.length);
+                output.write(bytes);
+                output.write('\r');
+                output.write('\n');
+            }
+        }
+
+        void flush() throws IOException {
+            output.flush();
+        }
+
+        Object read() throws IOException {
+            final int type = input.read();
+            final String line = readLine();
+            switch (type) {
+                case '+':
+                    return line;
+                case '-':
+                    return new ErrorReply(line);
+                case ':':
+                    return Long.parseLong(line);
+                case '$': {
+                    final int length = Integer.parseInt(line);
+                    if (length < 0) {
+                        return null;
+                    }
+                    final byte[] bytes = new byte[length];
+                    input.readFully(bytes);
+                    readLine();
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+                case '*': {
+                    final int length = Integer.parseInt(line);
+                    final Object[] elements = new Object[length];
+                    for (int index = 0; index < length; index++) {
+                        elements[index] = read();
+                    }
+                    return Arrays.asList(elements);
+                }
+                default:
+                    throw new IOException("unexpected reply type " + type);
+            }
+        }
+
+        private void writeLine(String line) throws IOException {
+            output.write(line.getBytes(StandardCharsets.US_ASCII));
+            output.write('\r');
+            output.write('\n');
+        }
+
+        private String readLine() throws IOException {
+            final StringBuilder sb = new StringBuilder();
+            int b;
+            while ((b = input.read()) != '\r') {
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                sb.append((char) b);
+            }
+            input.read();
+            return sb.toString();
+        }
+    }
+}